@@ -1,79 +1,72 @@
 package com.wiqer.redis;
 
-import com.wiqer.redis.aof.Aof;
-import com.wiqer.redis.command.Command;
-import com.wiqer.redis.command.CommonCommandFactory;
-import com.wiqer.redis.core.RedisCore;
-import com.wiqer.redis.resp.*;
-import com.wiqer.redis.util.TraceIdUtil;
+import com.wiqer.redis.resp.Errors;
+import com.wiqer.redis.resp.RespDecoder;
+import com.wiqer.redis.resp.RespRequest;
+import com.wiqer.redis.trace.Tracer;
 import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.codec.ByteToMessageDecoder;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.List;
 
 /**
+ * 命令解码器，基于可续传的{@link RespDecoder}，半包时保留解析进度等待后续数据
+ * <p>
+ * 输出的{@link RespRequest}借用入站缓冲区，由{@link CommandHandler}执行完毕后释放
+ * <p>
+ * 每sampleRate条请求为一条附加{@link com.wiqer.redis.trace.RequestTrace}，
+ * 只有下一条请求需要采样时才读取时钟，关闭采样时没有额外开销
+ *
  * @author lilan
  */
 @Slf4j
-public class CommandDecoder extends LengthFieldBasedFrameDecoder {
+public class CommandDecoder extends ByteToMessageDecoder {
 
-    private static final int MAX_FRAME_LENGTH = Integer.MAX_VALUE;
-    private static final int INITIAL_LENGTH_FIELD_OFFSET = 0;
-    private static final int LENGTH_FIELD_LENGTH = 4;
-    private static final String UNSUPPORTED_COMMAND_FORMAT = "unsupport command:%s";
+    private final RespDecoder respDecoder = new RespDecoder();
+    private final int sampleRate;
+    /**
+     * 距下一条采样请求还剩的请求数
+     */
+    private int untilSample;
 
-    private final Aof aof;
-    private final RedisCore redisCore;
-
-    public CommandDecoder(RedisCore redisCore, Aof aof) {
-        super(MAX_FRAME_LENGTH, INITIAL_LENGTH_FIELD_OFFSET, LENGTH_FIELD_LENGTH);
-        this.aof = aof;
-        this.redisCore = redisCore;
+    /**
+     * @param sampleRate 每N条请求采样一条，0表示不采样
+     */
+    public CommandDecoder(int sampleRate) {
+        this.sampleRate = sampleRate;
+        this.untilSample = sampleRate;
     }
 
     @Override
-    public Object decode(ChannelHandlerContext ctx, ByteBuf in) {
-        TraceIdUtil.newTraceId();
-        if (!in.isReadable()) {
-            return null;
-        }
-        return decodeCommand(ctx, in);
-    }
-
-    private Object decodeCommand(ChannelHandlerContext ctx, ByteBuf in) {
-        int mark = in.readerIndex();
+    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) {
+        long decodeStart = untilSample == 1 ? System.nanoTime() : 0;
+        RespRequest request;
         try {
-            List<Resp> respList = Resp.decode(in);
-            if (respList == null || respList.isEmpty()) {
-                return null;
-            }
-            return processCommand(ctx, respList);
-        } catch (Exception e) {
-            in.readerIndex(mark);
-            log.error("命令解码失败", e);
-            return null;
+            request = respDecoder.decode(in);
+        } catch (IllegalStateException e) {
+            handleProtocolError(ctx, in, e);
+            return;
         }
-    }
-
-    private Object processCommand(ChannelHandlerContext ctx, List<Resp> respList) {
-        Command command = processReadCommand(respList);
-        if (command == null) {
-            handleUnsupportedCommand(ctx, respList);
+        if (request != null) {
+            if (sampleRate > 0 && --untilSample == 0) {
+                untilSample = sampleRate;
+                request.setTrace(Tracer.start(decodeStart));
+            }
+            out.add(request);
         }
-        return command;
     }
 
-    private Command processReadCommand(List<Resp> respList) {
-        return CommonCommandFactory.create(redisCore).from(respList);
-    }
-
-    private void handleUnsupportedCommand(ChannelHandlerContext ctx, List<Resp> respList) {
-        if (!respList.isEmpty() && respList.get(0) instanceof BulkString bulkString) {
-            String errorMessage = String.format(UNSUPPORTED_COMMAND_FORMAT,
-                    bulkString.getContent().toUtf8String());
-            ctx.writeAndFlush(new Errors(errorMessage));
-        }
+    /**
+     * 协议错误无法继续同步帧边界，与redis一致：回复错误后关闭连接
+     */
+    private void handleProtocolError(ChannelHandlerContext ctx, ByteBuf in, IllegalStateException e) {
+        log.warn("命令解码失败 - 远程地址: {}, {}", ctx.channel().remoteAddress(), e.getMessage());
+        respDecoder.reset();
+        in.skipBytes(in.readableBytes());
+        // 编码器位于解码器之后，需要从pipeline尾部写出
+        ctx.channel().writeAndFlush(new Errors("ERR " + e.getMessage())).addListener(ChannelFutureListener.CLOSE);
     }
 }
@@ -1,43 +1,455 @@
 package com.wiqer.redis;
 
+import com.wiqer.redis.aof.Aof;
+import com.wiqer.redis.aof.AofBuffer;
+import com.wiqer.redis.command.Argv;
 import com.wiqer.redis.command.Command;
+import com.wiqer.redis.command.CommonCommandType;
+import com.wiqer.redis.command.WriteCommand;
+import com.wiqer.redis.core.RedisCore;
+import com.wiqer.redis.resp.BulkString;
 import com.wiqer.redis.resp.Errors;
+import com.wiqer.redis.resp.Resp;
+import com.wiqer.redis.resp.RespRequest;
+import com.wiqer.redis.shard.ReplyCollector;
+import com.wiqer.redis.shard.ReplyMerge;
+import com.wiqer.redis.shard.Shard;
+import com.wiqer.redis.shard.ShardGroup;
+import com.wiqer.redis.shard.ShardPart;
+import com.wiqer.redis.trace.RequestTrace;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.ChannelOutboundBuffer;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.ReferenceCountUtil;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * 命令分发处理器，运行在连接的IO线程上
+ * <p>
+ * 命令名在命令表中查找后先校验参数个数，命令由表中无状态的处理器执行，不为每条请求创建对象；
+ * 不访问数据的命令直接在IO线程上执行；带key的命令按{@link ShardGroup}路由到key所在分片，
+ * 同一读批次内发往同一分片的命令攒成一批投递，分片线程执行并编码后把结果交回IO线程
+ * <p>
+ * 每条请求按到达顺序占一个回复槽位，只有队首槽位完成后才写出，分片之间执行快慢不同也不会打乱回复顺序；
+ * 写出的回复在一批结果处理完或读批次结束时统一flush，积压达到阈值或出站缓冲超过高水位变为不可写时提前flush
+ * <p>
+ * 连接不可写期间关闭autoRead，慢客户端不再读入新请求，出站积压最多是已读入请求的回复；
+ * 积压超过{@link OutputBufferLimit}时关闭连接
+ * <p>
+ * 开启AOF时，分片线程把一批命令中成功的写命令整批追加到{@link Aof}，appendfsync为always时这批回复等落盘后才交回IO线程；
+ * 落盘失败时其中写命令的回复改为MISCONF错误，AOF恢复写入之前分片拒绝执行写命令
+ * <p>
+ * 请求的参数借用入站缓冲区，由执行它的线程在命令执行完毕后释放；拆分到多个分片的请求每个部分各持有一次引用
+ * <p>
+ * 被采样的请求的{@link RequestTrace}随第一个部分交给分片线程，依次记录分派、执行、写出和flush的时间
+ */
 @Slf4j
-public class CommandHandler extends SimpleChannelInboundHandler<Command> {
+public class CommandHandler extends ChannelInboundHandlerAdapter {
     private static final String COMMAND_EXECUTION_ERROR = "命令执行出错: {}";
+    private static final String UNSUPPORTED_COMMAND_FORMAT = "unsupport command:%s";
     private static final String CHANNEL_INACTIVE_MESSAGE = "Channel 已断开连接";
     private static final String EXCEPTION_CAUGHT_MESSAGE = "异常被捕获";
+    private static final Errors BATCH_ABORTED = new Errors("ERR command aborted");
 
     // 添加连接统计
     private static final AtomicInteger ACTIVE_CONNECTIONS = new AtomicInteger(0);
     private static final int MAX_CONNECTIONS = 10000;
+    /**
+     * 未flush的回复数达到该值时提前flush，避免超长管道把回复全部堆在出站缓冲里
+     */
+    private static final int MAX_PENDING_REPLIES = 128;
+    /**
+     * 发往同一分片的命令攒到该数量时提前投递，不等读批次结束
+     */
+    private static final int MAX_BATCH_SIZE = 128;
+
+    private final ShardGroup shardGroup;
+    /**
+     * 未开启AOF时为null
+     */
+    private final Aof aof;
+    private final Map<OutputBufferLimit.ClientClass, OutputBufferLimit> outputBufferLimits;
+    /**
+     * 以下状态仅在IO线程上访问
+     */
+    private final ArrayDeque<ReplySlot> slots = new ArrayDeque<>();
+    private final List<ShardTask>[] batches;
+    private ReplyCollector localCollector;
+    private final Argv localArgv = new Argv();
+    /**
+     * 自上次flush以来写出的回复数
+     */
+    private int pendingReplies;
+    /**
+     * 已写出、等待flush的采样请求
+     */
+    private final List<RequestTrace> unflushedTraces = new ArrayList<>();
+    /**
+     * 已请求关闭连接，之后完成的回复直接释放
+     */
+    private boolean closing;
+    /**
+     * 出站积压首次超过soft限制的时间，未超过时为0
+     */
+    private long softLimitReachedNanos;
+    /**
+     * 超过soft限制期间安排的复查，连接不读回复时不再有写出触发检查
+     */
+    private ScheduledFuture<?> softLimitRecheck;
+
+    @SuppressWarnings("unchecked")
+    public CommandHandler(ShardGroup shardGroup, Aof aof, Map<OutputBufferLimit.ClientClass, OutputBufferLimit> outputBufferLimits) {
+        this.shardGroup = shardGroup;
+        this.aof = aof;
+        this.outputBufferLimits = outputBufferLimits;
+        this.batches = (List<ShardTask>[]) new List<?>[shardGroup.size()];
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        if (!(msg instanceof RespRequest request)) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+        if (closing) {
+            request.release();
+            return;
+        }
+        List<Resp> args = request.getArgs();
+        CommonCommandType type = ShardGroup.typeOf(args);
+        if (type == null) {
+            replyError(ctx, request, unsupportedCommand(args));
+            return;
+        }
+        if (!type.isArityValid(args.size())) {
+            replyError(ctx, request, new Errors(type.arityError()));
+            return;
+        }
+        if (type.isLocal()) {
+            executeLocal(ctx, type, request);
+            return;
+        }
+        List<ShardPart> parts;
+        try {
+            parts = shardGroup.split(type, args);
+        } catch (IllegalArgumentException e) {
+            replyError(ctx, request, errorOf(e));
+            return;
+        }
+        ReplySlot slot = new ReplySlot(type.getMerge(), parts, isResp3(ctx));
+        slot.trace = request.getTrace();
+        if (slot.trace != null) {
+            slot.trace.queued(type.name());
+        }
+        slots.add(slot);
+        if (parts.size() > 1) {
+            request.retain(parts.size() - 1);
+        }
+        for (int i = 0; i < parts.size(); i++) {
+            enqueue(ctx, new ShardTask(slot, i, type.getCommand(), parts.get(i).getArgs(), request,
+                    i == 0 ? slot.trace : null));
+        }
+    }
 
     @Override
-    protected void channelRead0(ChannelHandlerContext ctx, Command command) {
-        if (command == null) {
-            log.warn("收到空命令");
+    public void channelReadComplete(ChannelHandlerContext ctx) {
+        submitAll(ctx);
+        flushReplies(ctx);
+        ctx.fireChannelReadComplete();
+    }
+
+    /**
+     * 不访问数据的命令，在IO线程上执行，回复在命令执行后按连接当前的协议编码，HELLO切换协议后的回复即使用新协议
+     */
+    private void executeLocal(ChannelHandlerContext ctx, CommonCommandType type, RespRequest request) {
+        if (localCollector == null) {
+            localCollector = new ReplyCollector(ctx);
+        }
+        localCollector.reset(true, false);
+        RequestTrace trace = request.getTrace();
+        if (trace != null) {
+            trace.queued(type.name());
+            trace.executeStart();
+        }
+        try {
+            execute(type.getCommand(), shardGroup.get(0).getRedisCore(), localArgv.reset(request.getArgs()), localCollector, null, null);
+        } finally {
+            request.release();
+        }
+        if (trace != null) {
+            trace.executeEnd();
+        }
+        ReplySlot slot = ReplySlot.completed((Resp) localCollector.result(), isResp3(ctx));
+        slot.closeAfter = localCollector.isCloseRequested();
+        slot.trace = trace;
+        slots.add(slot);
+        drain(ctx);
+    }
+
+    private void replyError(ChannelHandlerContext ctx, RespRequest request, Errors error) {
+        request.release();
+        slots.add(ReplySlot.completed(error, isResp3(ctx)));
+        drain(ctx);
+    }
+
+    private void enqueue(ChannelHandlerContext ctx, ShardTask task) {
+        int index = task.slot.parts.get(task.partIndex).getShard().getIndex();
+        List<ShardTask> batch = batches[index];
+        if (batch == null) {
+            batch = batches[index] = new ArrayList<>();
+        }
+        batch.add(task);
+        if (batch.size() >= MAX_BATCH_SIZE) {
+            submit(ctx, index);
+        }
+    }
+
+    private void submitAll(ChannelHandlerContext ctx) {
+        for (int i = 0; i < batches.length; i++) {
+            if (batches[i] != null) {
+                submit(ctx, i);
+            }
+        }
+    }
+
+    private void submit(ChannelHandlerContext ctx, int index) {
+        List<ShardTask> batch = batches[index];
+        batches[index] = null;
+        Shard shard = shardGroup.get(index);
+        shard.getExecutor().execute(() -> {
+            AofBuffer aofBuffer = aof == null ? null : new AofBuffer();
+            ByteBuf writes = null;
+            try {
+                Errors refused = aof == null ? null : misconf(aof.getWriteError());
+                executeBatch(ctx, shard, batch, aofBuffer, refused);
+                writes = aofBuffer == null ? null : aofBuffer.take();
+            } finally {
+                // 无论执行是否出错都要交回IO线程，否则这批回复槽位不会完成，连接之后的回复全部卡住
+                if (writes == null) {
+                    ctx.executor().execute(() -> complete(ctx, batch, null));
+                } else {
+                    aof.append(shard.getIndex(), writes, failure -> ctx.executor().execute(() -> complete(ctx, batch, failure)));
+                }
+            }
+        });
+    }
+
+    /**
+     * 在分片线程上执行一批命令，单分片的命令直接编码，拆分的命令保留回复等待合并
+     *
+     * @param aofBuffer 收集需要写入AOF的命令，未开启AOF时为null
+     * @param refused   AOF写入失败时写命令的回复，否则为null
+     */
+    private static void executeBatch(ChannelHandlerContext ctx, Shard shard, List<ShardTask> batch, AofBuffer aofBuffer,
+                                     Errors refused) {
+        ReplyCollector collector = new ReplyCollector(ctx);
+        for (ShardTask task : batch) {
+            collector.reset(task.slot.parts.size() > 1, task.slot.resp3);
+            if (task.trace != null) {
+                task.trace.executeStart();
+                collector.setTrace(task.trace);
+            }
+            try {
+                execute(task.command, shard.getRedisCore(), shard.getArgv().reset(task.args), collector, aofBuffer, refused);
+                task.result = collector.result();
+                task.close = collector.isCloseRequested();
+            } catch (Exception e) {
+                // 回复编码失败，丢弃已编码的部分，改以错误回复，不影响同批其他命令
+                log.error(COMMAND_EXECUTION_ERROR, e.toString());
+                if (collector.result() instanceof List<?> encoded) {
+                    encoded.forEach(ReferenceCountUtil::release);
+                }
+                task.result = errorOf(e);
+            } finally {
+                task.request.release();
+            }
+            if (task.trace != null) {
+                task.trace.executeEnd();
+            }
+        }
+    }
+
+    /**
+     * @param aofBuffer 不为null时，执行成功的写命令追加到其中
+     * @param refused   不为null时写命令不执行，以它回复
+     */
+    private static void execute(Command command, RedisCore redisCore, Argv argv, ReplyCollector collector, AofBuffer aofBuffer,
+                                Errors refused) {
+        if (refused != null && command instanceof WriteCommand) {
+            collector.write(refused);
             return;
         }
         try {
-            processCommand(ctx, command);
+            if (aofBuffer != null && command instanceof WriteCommand writeCommand) {
+                Resp reply = writeCommand.handle(redisCore, argv);
+                if (!(reply instanceof Errors)) {
+                    writeCommand.propagate(redisCore, argv, reply, aofBuffer);
+                }
+                collector.write(reply);
+            } else {
+                command.handle(collector, redisCore, argv);
+            }
         } catch (Exception e) {
-            handleCommandError(ctx, e);
+            log.error(COMMAND_EXECUTION_ERROR, e.toString());
+            collector.write(errorOf(e));
+        }
+    }
+
+    /**
+     * @param aofFailure always策略下这批写命令落盘失败的原因，成功或不需要等待落盘时为null
+     */
+    private void complete(ChannelHandlerContext ctx, List<ShardTask> batch, Exception aofFailure) {
+        Errors failed = misconf(aofFailure);
+        for (ShardTask task : batch) {
+            if (task.result == null) {
+                // 分片上这批命令没有执行到它
+                task.result = BATCH_ABORTED;
+            } else if (failed != null && task.command instanceof WriteCommand) {
+                if (task.result instanceof List<?> encoded) {
+                    encoded.forEach(ReferenceCountUtil::release);
+                }
+                task.result = failed;
+            }
+            task.slot.complete(task.partIndex, task.result, task.close);
+        }
+        drain(ctx);
+        flushReplies(ctx);
+    }
+
+    /**
+     * 异常没有message时以异常类名回复，Errors的内容不能为null
+     */
+    private static Errors errorOf(Exception e) {
+        String message = e.getMessage();
+        return new Errors(message != null ? message : "ERR " + e.getClass().getSimpleName());
+    }
+
+    private static Errors misconf(Exception aofError) {
+        return aofError == null ? null : new Errors("MISCONF Errors writing to the AOF file: " + aofError.getMessage());
+    }
+
+    /**
+     * 按请求顺序写出队首已完成的回复
+     */
+    private void drain(ChannelHandlerContext ctx) {
+        ReplySlot slot;
+        while ((slot = slots.peek()) != null && slot.pending == 0) {
+            slots.poll();
+            List<Object> out;
+            try {
+                out = slot.encode(ctx);
+            } catch (Exception e) {
+                log.error("回复编码失败", e);
+                closing = true;
+                ctx.close();
+                continue;
+            }
+            if (closing) {
+                out.forEach(ReferenceCountUtil::release);
+                continue;
+            }
+            for (Object byteBuf : out) {
+                ctx.write(byteBuf, ctx.voidPromise());
+            }
+            if (slot.trace != null) {
+                slot.trace.written();
+                unflushedTraces.add(slot.trace);
+            }
+            if (slot.closeAfter) {
+                closing = true;
+                pendingReplies = 0;
+                ctx.writeAndFlush(Unpooled.EMPTY_BUFFER).addListener(ChannelFutureListener.CLOSE);
+                reportFlushed();
+            } else if (++pendingReplies >= MAX_PENDING_REPLIES || !ctx.channel().isWritable()) {
+                flushReplies(ctx);
+                checkOutputBufferLimit(ctx);
+            }
+        }
+    }
+
+    /**
+     * 在提前flush后检查，积压超过hard限制，或超过soft限制持续指定时间时关闭连接；
+     * 超过soft限制后在IO线程上定时复查，直到积压降到soft限制以下或连接被关闭
+     */
+    private void checkOutputBufferLimit(ChannelHandlerContext ctx) {
+        ChannelOutboundBuffer outboundBuffer = ctx.channel().unsafe().outboundBuffer();
+        if (closing || outboundBuffer == null) {
+            return;
+        }
+        long pendingBytes = outboundBuffer.totalPendingWriteBytes();
+        OutputBufferLimit limit = outputBufferLimits.get(OutputBufferLimit.clientClass(ctx.channel()));
+        boolean exceeded = limit.isHardReached(pendingBytes);
+        if (!exceeded && limit.isSoftReached(pendingBytes)) {
+            long now = Math.max(System.nanoTime(), 1);
+            long softNanos = TimeUnit.SECONDS.toNanos(limit.getSoftSeconds());
+            if (softLimitReachedNanos == 0) {
+                softLimitReachedNanos = now;
+            } else {
+                exceeded = now - softLimitReachedNanos >= softNanos;
+            }
+            if (!exceeded && softLimitRecheck == null) {
+                softLimitRecheck = ctx.executor().schedule(() -> {
+                    softLimitRecheck = null;
+                    checkOutputBufferLimit(ctx);
+                }, softLimitReachedNanos + softNanos - now, TimeUnit.NANOSECONDS);
+            }
+        } else if (!exceeded) {
+            softLimitReachedNanos = 0;
+            cancelSoftLimitRecheck();
+        }
+        if (exceeded) {
+            log.warn("连接出站积压{}字节，超过输出缓冲限制，关闭连接 - 远程地址: {}", pendingBytes, ctx.channel().remoteAddress());
+            cancelSoftLimitRecheck();
+            closing = true;
+            pendingReplies = 0;
+            ctx.close();
+        }
+    }
+
+    private void cancelSoftLimitRecheck() {
+        if (softLimitRecheck != null) {
+            softLimitRecheck.cancel(false);
+            softLimitRecheck = null;
+        }
+    }
+
+    private void flushReplies(ChannelHandlerContext ctx) {
+        if (pendingReplies > 0) {
+            pendingReplies = 0;
+            ctx.flush();
+            reportFlushed();
+        }
+    }
+
+    private void reportFlushed() {
+        if (!unflushedTraces.isEmpty()) {
+            for (RequestTrace trace : unflushedTraces) {
+                trace.flushed();
+            }
+            unflushedTraces.clear();
         }
     }
 
-    private void processCommand(ChannelHandlerContext ctx, Command command) {
-        command.handle(ctx);
+    private static boolean isResp3(ChannelHandlerContext ctx) {
+        return Boolean.TRUE.equals(ctx.channel().attr(Resp.RESP3).get());
     }
 
-    private void handleCommandError(ChannelHandlerContext ctx, Exception e) {
-        log.error(COMMAND_EXECUTION_ERROR, e.getMessage());
-        ctx.writeAndFlush(new Errors(e.getMessage()));
+    private static Errors unsupportedCommand(List<Resp> args) {
+        String name = !args.isEmpty() && args.get(0) instanceof BulkString bulkString
+                ? bulkString.getContent().toUtf8String() : "";
+        return new Errors(String.format(UNSUPPORTED_COMMAND_FORMAT, name));
     }
 
     @Override
@@ -55,20 +467,33 @@ public class CommandHandler extends SimpleChannelInboundHandler<Command> {
     public void channelInactive(ChannelHandlerContext ctx) {
         ACTIVE_CONNECTIONS.decrementAndGet();
         log.info(CHANNEL_INACTIVE_MESSAGE + " - 远程地址: {}", ctx.channel().remoteAddress());
+        // 已收到的命令仍然执行，回复随后释放
+        submitAll(ctx);
+        closing = true;
+        cancelSoftLimitRecheck();
         ctx.fireChannelInactive();
     }
 
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        if (closing) {
+            // 主动关闭时未写出的回复以voidPromise失败
+            log.debug(EXCEPTION_CAUGHT_MESSAGE, cause);
+            ctx.close();
+            return;
+        }
         log.error(EXCEPTION_CAUGHT_MESSAGE, cause);
         ctx.close();
     }
 
     @Override
     public void channelWritabilityChanged(ChannelHandlerContext ctx) {
-        if (!ctx.channel().isWritable()) {
+        // 不可写期间暂停读取，恢复可写后autoRead会重新发起读
+        boolean writable = ctx.channel().isWritable();
+        if (!writable) {
             ctx.channel().flush();
         }
+        ctx.channel().config().setAutoRead(writable);
         ctx.fireChannelWritabilityChanged();
     }
 
@@ -76,4 +501,84 @@ public class CommandHandler extends SimpleChannelInboundHandler<Command> {
     public static int getActiveConnections() {
         return ACTIVE_CONNECTIONS.get();
     }
+
+    /**
+     * 一条请求的回复槽位，所有部分完成后才能写出
+     */
+    private static final class ReplySlot {
+        private final ReplyMerge merge;
+        private final List<ShardPart> parts;
+        /**
+         * 分派时连接的协议，之后的HELLO不影响已分派命令的回复
+         */
+        private final boolean resp3;
+        private final Resp[] replies;
+        private List<Object> encoded;
+        private int pending;
+        private boolean closeAfter;
+        private RequestTrace trace;
+
+        private ReplySlot(ReplyMerge merge, List<ShardPart> parts, boolean resp3) {
+            this.merge = merge;
+            this.parts = parts;
+            this.resp3 = resp3;
+            this.replies = new Resp[Math.max(parts.size(), 1)];
+            this.pending = parts.size();
+        }
+
+        private static ReplySlot completed(Resp reply, boolean resp3) {
+            ReplySlot slot = new ReplySlot(ReplyMerge.NONE, List.of(), resp3);
+            slot.replies[0] = reply;
+            return slot;
+        }
+
+        @SuppressWarnings("unchecked")
+        private void complete(int partIndex, Object result, boolean close) {
+            if (result instanceof List) {
+                encoded = (List<Object>) result;
+            } else {
+                replies[partIndex] = (Resp) result;
+            }
+            closeAfter |= close;
+            pending--;
+        }
+
+        private List<Object> encode(ChannelHandlerContext ctx) {
+            if (encoded != null) {
+                return encoded;
+            }
+            long start = trace == null ? 0 : System.nanoTime();
+            Resp reply = replies.length == 1 ? replies[0] : merge.merge(parts, Arrays.asList(replies));
+            List<Object> out = new ArrayList<>(1);
+            ResponseEncoder.encode(ctx.alloc(), reply, resp3, out);
+            if (trace != null) {
+                trace.addEncodeNanos(System.nanoTime() - start);
+            }
+            return out;
+        }
+    }
+
+    /**
+     * 投递到分片线程的一个命令部分，result在分片线程上写入，随后在IO线程上读取；只有第一个部分带trace
+     */
+    private static final class ShardTask {
+        private final ReplySlot slot;
+        private final int partIndex;
+        private final Command command;
+        private final List<Resp> args;
+        private final RespRequest request;
+        private final RequestTrace trace;
+        private Object result;
+        private boolean close;
+
+        private ShardTask(ReplySlot slot, int partIndex, Command command, List<Resp> args, RespRequest request,
+                          RequestTrace trace) {
+            this.slot = slot;
+            this.partIndex = partIndex;
+            this.command = command;
+            this.args = args;
+            this.request = request;
+            this.trace = trace;
+        }
+    }
 }
@@ -3,23 +3,38 @@ package com.wiqer.redis;
 import com.wiqer.redis.aof.Aof;
 import com.wiqer.redis.netty.channel.DefaultChannelSelectStrategy;
 import com.wiqer.redis.netty.channel.LocalChannelOption;
+import com.wiqer.redis.netty.channel.epoll.EpollChannelOption;
+import com.wiqer.redis.netty.channel.kqueue.KqueueChannelOption;
+import com.wiqer.redis.netty.channel.shm.ShmServer;
 import com.wiqer.redis.core.RedisCore;
+import com.wiqer.redis.shard.ShardGroup;
+import com.wiqer.redis.snapshot.Snapshot;
 import com.wiqer.redis.util.PropertiesUtil;
 import io.netty.bootstrap.ServerBootstrap;
-import io.netty.channel.ChannelFuture;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.ChannelPipeline;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.kqueue.KQueue;
+import io.netty.channel.unix.DomainSocketAddress;
 import io.netty.handler.logging.LogLevel;
 import io.netty.handler.logging.LoggingHandler;
 import io.netty.util.concurrent.EventExecutorGroup;
+import io.netty.util.internal.StringUtil;
 import lombok.extern.slf4j.Slf4j;
 
 import java.net.InetSocketAddress;
-import java.util.concurrent.ThreadFactory;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.net.SocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -28,44 +43,39 @@ import java.util.concurrent.TimeUnit;
 @Slf4j
 public class MyRedisServer implements RedisServer, AutoCloseable {
     private static final int DEFAULT_BACKLOG = 1024;
-    private static final int DEFAULT_THREAD_COUNT = 1;
     private static final String SERVER_START_SUCCESS = "Redis服务器启动成功 - 监听地址: {}";
     private static final String SERVER_START_FAILED = "Redis服务器启动失败";
     private static final String SERVER_SHUTDOWN = "Redis服务器正在关闭...";
 
-    private final RedisCore redisCore;
+    private final ShardGroup shardGroup;
+    private final Map<OutputBufferLimit.ClientClass, OutputBufferLimit> outputBufferLimits;
+    private final int traceSampleRate;
     private final ServerBootstrap serverBootstrap;
-    private final EventExecutorGroup redisSingleEventExecutor;
     private final LocalChannelOption channelOption;
+    /**
+     * unix domain socket使用的传输，TCP传输不支持domain socket时单独创建
+     */
+    private LocalChannelOption<?> unixChannelOption;
+    private ShmServer shmServer;
     private volatile boolean isRunning;
-    private ChannelFuture serverChannelFuture;
+    private final List<Channel> serverChannels = new ArrayList<>();
     private Aof aof;
+    private final Snapshot snapshot;
 
     public MyRedisServer() {
         this(new DefaultChannelSelectStrategy().select());
     }
 
     public MyRedisServer(LocalChannelOption channelOption) {
-        this.redisCore = new RedisCore();
+        this.outputBufferLimits = OutputBufferLimit.load();
+        this.traceSampleRate = PropertiesUtil.getTraceSampleRate();
+        this.shardGroup = new ShardGroup(PropertiesUtil.getShardCount());
+        this.snapshot = new Snapshot(shardGroup);
         this.serverBootstrap = new ServerBootstrap();
         this.channelOption = channelOption;
-        this.redisSingleEventExecutor = createEventExecutor();
         this.isRunning = false;
     }
 
-    private EventExecutorGroup createEventExecutor() {
-        return new NioEventLoopGroup(DEFAULT_THREAD_COUNT, new ThreadFactory() {
-            private final AtomicInteger threadCount = new AtomicInteger(1);
-
-            @Override
-            public Thread newThread(Runnable r) {
-                Thread thread = new Thread(r, "Redis-Worker-" + threadCount.getAndIncrement());
-                thread.setDaemon(true);
-                return thread;
-            }
-        });
-    }
-
     @Override
     public void start() {
         if (isRunning) {
@@ -76,9 +86,14 @@ public class MyRedisServer implements RedisServer, AutoCloseable {
         configureAndStartServer();
     }
 
+    /**
+     * 与redis一致，开启AOF时以AOF恢复数据，否则加载快照
+     */
     private void initializeAof() {
         if (PropertiesUtil.getAppendOnly()) {
-            aof = new Aof(this.redisCore);
+            aof = new Aof(shardGroup);
+        } else {
+            snapshot.load();
         }
     }
 
@@ -89,15 +104,30 @@ public class MyRedisServer implements RedisServer, AutoCloseable {
                     .handler(new LoggingHandler(LogLevel.INFO))
                     .option(ChannelOption.SO_BACKLOG, DEFAULT_BACKLOG)
                     .option(ChannelOption.SO_REUSEADDR, true)
-                    .option(ChannelOption.SO_KEEPALIVE, PropertiesUtil.getTcpKeepAlive())
+                    .childOption(ChannelOption.SO_KEEPALIVE, PropertiesUtil.getTcpKeepAlive())
+                    .childOption(ChannelOption.TCP_NODELAY, PropertiesUtil.getTcpNoDelay())
+                    .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, writeBufferWaterMark())
                     .localAddress(new InetSocketAddress(
                             PropertiesUtil.getNodeAddress(),
                             PropertiesUtil.getNodePort()))
                     .childHandler(createChannelInitializer());
+            if (PropertiesUtil.getSoSndBuf() > 0) {
+                serverBootstrap.childOption(ChannelOption.SO_SNDBUF, PropertiesUtil.getSoSndBuf());
+            }
+            if (PropertiesUtil.getSoRcvBuf() > 0) {
+                serverBootstrap.childOption(ChannelOption.SO_RCVBUF, PropertiesUtil.getSoRcvBuf());
+            }
+            channelOption.configure(serverBootstrap);
 
-            serverChannelFuture = serverBootstrap.bind().sync();
+            // 每次bind创建一个监听socket，依次注册到boss组的下一个线程
+            for (int i = 0; i < channelOption.listeners(); i++) {
+                Channel serverChannel = serverBootstrap.bind().sync().channel();
+                serverChannels.add(serverChannel);
+                log.info(SERVER_START_SUCCESS, serverChannel.localAddress());
+            }
+            bindUnixSocket();
+            startShmServer();
             isRunning = true;
-            log.info(SERVER_START_SUCCESS, serverChannelFuture.channel().localAddress());
         } catch (Exception e) {
             log.error(SERVER_START_FAILED, e);
             close();
@@ -105,16 +135,93 @@ public class MyRedisServer implements RedisServer, AutoCloseable {
         }
     }
 
-    private ChannelInitializer<SocketChannel> createChannelInitializer() {
+    /**
+     * 同机客户端通过unix domain socket连接，省去TCP回环协议栈，与TCP连接共用同一套pipeline
+     */
+    private void bindUnixSocket() throws Exception {
+        String path = PropertiesUtil.getUnixSocket();
+        if (StringUtil.isNullOrEmpty(path)) {
+            return;
+        }
+        unixChannelOption = selectUnixChannelOption();
+        if (unixChannelOption == null) {
+            log.warn("当前平台不支持unix domain socket，忽略unixsocket配置: {}", path);
+            return;
+        }
+        // 与redis一致，启动时删除上次遗留的socket文件
+        Files.deleteIfExists(Path.of(path));
+        Channel serverChannel = new ServerBootstrap()
+                .group(unixChannelOption.boss(), unixChannelOption.selectors())
+                .channel(unixChannelOption.getDomainSocketChannelClass())
+                .option(ChannelOption.SO_BACKLOG, DEFAULT_BACKLOG)
+                .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, writeBufferWaterMark())
+                .localAddress(new DomainSocketAddress(path))
+                .childHandler(createChannelInitializer())
+                .bind().sync().channel();
+        serverChannels.add(serverChannel);
+        String perm = PropertiesUtil.getUnixSocketPerm();
+        if (!StringUtil.isNullOrEmpty(perm)) {
+            Files.setPosixFilePermissions(Path.of(path), toPermissions(Integer.parseInt(perm.trim(), 8)));
+        }
+        log.info(SERVER_START_SUCCESS, serverChannel.localAddress());
+    }
+
+    /**
+     * 实验性的共享内存传输，同机客户端通过映射文件中的无锁环收发RESP字节流
+     */
+    private void startShmServer() throws Exception {
+        String directory = PropertiesUtil.getShmDir();
+        if (StringUtil.isNullOrEmpty(directory)) {
+            return;
+        }
+        shmServer = new ShmServer(Path.of(directory), createChannelInitializer());
+        shmServer.start();
+        log.info(SERVER_START_SUCCESS, "shm:" + shmServer.getDirectory());
+    }
+
+    private LocalChannelOption<?> selectUnixChannelOption() {
+        if (channelOption.getDomainSocketChannelClass() != null) {
+            return channelOption;
+        }
+        if (Epoll.isAvailable()) {
+            return new EpollChannelOption();
+        }
+        if (KQueue.isAvailable()) {
+            return new KqueueChannelOption();
+        }
+        return null;
+    }
+
+    private static Set<PosixFilePermission> toPermissions(int mode) {
+        StringBuilder permissions = new StringBuilder();
+        for (int shift = 6; shift >= 0; shift -= 3) {
+            int bits = mode >> shift;
+            permissions.append((bits & 4) != 0 ? 'r' : '-')
+                    .append((bits & 2) != 0 ? 'w' : '-')
+                    .append((bits & 1) != 0 ? 'x' : '-');
+        }
+        return PosixFilePermissions.fromString(permissions.toString());
+    }
+
+    private static WriteBufferWaterMark writeBufferWaterMark() {
+        return new WriteBufferWaterMark(
+                PropertiesUtil.getWriteBufferLowWaterMark(),
+                PropertiesUtil.getWriteBufferHighWaterMark());
+    }
+
+    private ChannelInitializer<Channel> createChannelInitializer() {
         return new ChannelInitializer<>() {
             @Override
-            protected void initChannel(SocketChannel socketChannel) {
-                ChannelPipeline pipeline = socketChannel.pipeline();
-                pipeline.addLast(
-                        new ResponseEncoder(),
-                        new CommandDecoder(redisCore, aof)
-                );
-                pipeline.addLast(redisSingleEventExecutor, new CommandHandler());
+            protected void initChannel(Channel channel) {
+                if (aof != null) {
+                    channel.attr(Aof.AOF).set(aof);
+                }
+                channel.attr(Snapshot.SNAPSHOT).set(snapshot);
+                ChannelPipeline pipeline = channel.pipeline();
+                // 命令回复由分片线程编码后以缓冲区写出，编码器只处理IO线程上直接写出的回复
+                pipeline.addLast(new ResponseEncoder());
+                pipeline.addLast(new CommandDecoder(traceSampleRate));
+                pipeline.addLast(new CommandHandler(shardGroup, aof, outputBufferLimits));
             }
         };
     }
@@ -127,8 +234,15 @@ public class MyRedisServer implements RedisServer, AutoCloseable {
         log.info(SERVER_SHUTDOWN);
         isRunning = false;
         try {
-            if (serverChannelFuture != null) {
-                serverChannelFuture.channel().close().sync();
+            for (Channel serverChannel : serverChannels) {
+                SocketAddress localAddress = serverChannel.localAddress();
+                serverChannel.close().sync();
+                if (localAddress instanceof DomainSocketAddress address) {
+                    Files.deleteIfExists(Path.of(address.path()));
+                }
+            }
+            if (shmServer != null) {
+                shmServer.close();
             }
             shutdownExecutors();
             if (aof != null) {
@@ -142,7 +256,11 @@ public class MyRedisServer implements RedisServer, AutoCloseable {
     private void shutdownExecutors() {
         gracefulShutdown(channelOption.boss(), "Boss EventLoopGroup");
         gracefulShutdown(channelOption.selectors(), "Worker EventLoopGroup");
-        gracefulShutdown(redisSingleEventExecutor, "Single EventExecutor");
+        if (unixChannelOption != null && unixChannelOption != channelOption) {
+            gracefulShutdown(unixChannelOption.boss(), "Unix Boss EventLoopGroup");
+            gracefulShutdown(unixChannelOption.selectors(), "Unix Worker EventLoopGroup");
+        }
+        gracefulShutdown(shardGroup.getExecutorGroup(), "Shard EventExecutorGroup");
     }
 
     private void gracefulShutdown(EventExecutorGroup executor, String executorName) {
@@ -158,8 +276,15 @@ public class MyRedisServer implements RedisServer, AutoCloseable {
         }
     }
 
+    /**
+     * 分片数大于1时只返回第一个分片，其余分片的数据只能通过命令访问
+     */
     @Override
     public RedisCore getRedisCore() {
-        return redisCore;
+        return shardGroup.get(0).getRedisCore();
+    }
+
+    public ShardGroup getShardGroup() {
+        return shardGroup;
     }
 }
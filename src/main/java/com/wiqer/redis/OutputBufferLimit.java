@@ -0,0 +1,126 @@
+package com.wiqer.redis;
+
+import com.wiqer.redis.util.PropertiesUtil;
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+import io.netty.util.internal.StringUtil;
+import lombok.Getter;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 按客户端类别限制连接的出站缓冲，与redis的client-output-buffer-limit一致
+ * <p>
+ * 积压超过hard限制立即关闭连接；超过soft限制并持续softSeconds秒后关闭连接；限制为0表示不限制
+ * <p>
+ * 配置格式为&lt;class&gt; &lt;hard&gt; &lt;soft&gt; &lt;soft seconds&gt;，可以重复多组，
+ * 大小支持kb、mb、gb后缀，例如normal 0 0 0 replica 256mb 64mb 60 pubsub 32mb 8mb 60
+ * <p>
+ * 目前没有订阅与复制，连接都按normal限制，pubsub与replica只为兼容redis的配置格式而解析
+ *
+ * @author lilan
+ */
+@Getter
+public class OutputBufferLimit {
+
+    /**
+     * 连接的客户端类别，未设置时为{@link ClientClass#NORMAL}；目前没有命令设置它
+     */
+    public static final AttributeKey<ClientClass> CLIENT_CLASS = AttributeKey.valueOf("clientClass");
+
+    public static final String DEFAULT = "normal 0 0 0 replica 256mb 64mb 60 pubsub 32mb 8mb 60";
+
+    private final long hardBytes;
+    private final long softBytes;
+    private final long softSeconds;
+
+    public OutputBufferLimit(long hardBytes, long softBytes, long softSeconds) {
+        this.hardBytes = hardBytes;
+        this.softBytes = softBytes;
+        this.softSeconds = softSeconds;
+    }
+
+    public enum ClientClass {
+        NORMAL,
+        /**
+         * 订阅了频道的连接
+         */
+        PUBSUB,
+        REPLICA
+    }
+
+    public static ClientClass clientClass(Channel channel) {
+        ClientClass clientClass = channel.attr(CLIENT_CLASS).get();
+        return clientClass == null ? ClientClass.NORMAL : clientClass;
+    }
+
+    /**
+     * 读取client_output_buffer_limit配置
+     */
+    public static Map<ClientClass, OutputBufferLimit> load() {
+        return parse(PropertiesUtil.getClientOutputBufferLimit());
+    }
+
+    public boolean isHardReached(long bytes) {
+        return hardBytes > 0 && bytes >= hardBytes;
+    }
+
+    public boolean isSoftReached(long bytes) {
+        return softBytes > 0 && bytes >= softBytes;
+    }
+
+    /**
+     * 未出现的类别使用{@link #DEFAULT}中的值
+     *
+     * @throws IllegalArgumentException 格式错误
+     */
+    public static Map<ClientClass, OutputBufferLimit> parse(String config) {
+        Map<ClientClass, OutputBufferLimit> limits = new EnumMap<>(ClientClass.class);
+        if (!DEFAULT.equals(config)) {
+            limits.putAll(parse(DEFAULT));
+        }
+        if (StringUtil.isNullOrEmpty(config) || config.isBlank()) {
+            return limits;
+        }
+        String[] fields = config.trim().split("\\s+");
+        if (fields.length % 4 != 0) {
+            throw new IllegalArgumentException("client_output_buffer_limit格式错误: " + config);
+        }
+        for (int i = 0; i < fields.length; i += 4) {
+            String name = fields[i].toLowerCase(Locale.ROOT);
+            ClientClass clientClass = switch (name) {
+                case "normal" -> ClientClass.NORMAL;
+                case "pubsub" -> ClientClass.PUBSUB;
+                case "replica", "slave" -> ClientClass.REPLICA;
+                default -> throw new IllegalArgumentException("未知的客户端类别: " + fields[i]);
+            };
+            limits.put(clientClass, new OutputBufferLimit(
+                    parseBytes(fields[i + 1]), parseBytes(fields[i + 2]), Long.parseLong(fields[i + 3])));
+        }
+        return limits;
+    }
+
+    private static long parseBytes(String value) {
+        String lower = value.toLowerCase(Locale.ROOT);
+        long unit = 1;
+        if (lower.endsWith("gb")) {
+            unit = 1L << 30;
+        } else if (lower.endsWith("mb")) {
+            unit = 1L << 20;
+        } else if (lower.endsWith("kb")) {
+            unit = 1L << 10;
+        }
+        if (unit > 1) {
+            lower = lower.substring(0, lower.length() - 2);
+        } else if (lower.endsWith("b")) {
+            lower = lower.substring(0, lower.length() - 1);
+        }
+        long bytes = Long.parseLong(lower) * unit;
+        if (bytes < 0) {
+            throw new IllegalArgumentException("client_output_buffer_limit不能为负数: " + value);
+        }
+        return bytes;
+    }
+}
@@ -1,22 +1,103 @@
 package com.wiqer.redis;
 
 import com.wiqer.redis.resp.Resp;
+import com.wiqer.redis.resp.RespArray;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.codec.MessageToByteEncoder;
+import io.netty.handler.codec.MessageToMessageEncoder;
+import io.netty.util.ReferenceCountUtil;
+import lombok.extern.slf4j.Slf4j;
 
 import java.util.List;
 
-public class ResponseEncoder extends MessageToByteEncoder<Resp> {
+/**
+ * 回复编码器
+ * <p>
+ * 共享的常量回复直接写出预编码缓冲区的retainedDuplicate，不做任何编码；
+ * 标量回复先计算编码长度，一次分配大小合适的缓冲区后写入；
+ * 数组回复从元素迭代器流式写入，每满{@link #CHUNK_SIZE}字节切出一个缓冲区，大数组不会整体扩容拷贝；
+ * 第一个缓冲区按元素个数估算大小，写入时按需扩容，小数组回复不会占用整块{@link #CHUNK_SIZE}
+ * <p>
+ * 命令回复由分片线程通过{@link #encode}直接编码，数组元素可以安全地引用分片内的数据结构；
+ * pipeline中的编码器只处理在IO线程上直接写出的回复，例如协议错误
+ * <p>
+ * 按连接的{@link Resp#RESP3}属性选择编码，未协商时为RESP2
+ */
+@Slf4j
+public class ResponseEncoder extends MessageToMessageEncoder<Resp> {
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+    /**
+     * 估算数组回复第一个缓冲区时每个元素的字节数，元素只能在编码时遍历一次
+     */
+    private static final int ELEMENT_ESTIMATE = 16;
 
     @Override
-    protected void encode(ChannelHandlerContext channelHandlerContext, Resp resp, ByteBuf byteBuf) {
+    protected void encode(ChannelHandlerContext channelHandlerContext, Resp resp, List<Object> out) {
+        boolean resp3 = Boolean.TRUE.equals(channelHandlerContext.channel().attr(Resp.RESP3).get());
         try {
-            Resp.write(List.of(resp), byteBuf);
-            byteBuf.writeBytes(byteBuf);
+            encode(channelHandlerContext.alloc(), resp, resp3, out);
         } catch (Exception e) {
+            log.error("回复编码失败", e);
             channelHandlerContext.close();
         }
     }
 
+    /**
+     * 将回复编码为一个或多个缓冲区，按顺序加入out
+     *
+     * @throws RuntimeException 编码失败，本次加入out的缓冲区已释放
+     */
+    public static void encode(ByteBufAllocator alloc, Resp resp, boolean resp3, List<Object> out) {
+        ByteBuf shared = resp.preEncoded(resp3);
+        if (shared != null) {
+            out.add(shared.retainedDuplicate());
+            return;
+        }
+        boolean array = resp instanceof RespArray;
+        ByteBuf byteBuf = alloc.ioBuffer(array ? estimateArray((RespArray) resp) : Resp.encodedLength(resp));
+        int start = out.size();
+        out.add(byteBuf);
+        try {
+            if (array) {
+                writeArray(alloc, (RespArray) resp, byteBuf, out, resp3);
+            } else {
+                Resp.write(resp, byteBuf, resp3);
+            }
+        } catch (RuntimeException e) {
+            List<Object> added = out.subList(start, out.size());
+            added.forEach(ReferenceCountUtil::release);
+            added.clear();
+            throw e;
+        }
+    }
+
+    private static int estimateArray(RespArray respArray) {
+        long estimate = Resp.encodedLength(respArray) + (long) Math.max(respArray.getSize(), 0) * ELEMENT_ESTIMATE;
+        return (int) Math.min(estimate, CHUNK_SIZE);
+    }
+
+    /**
+     * @param byteBuf 当前写入的缓冲区，已加入out
+     * @return 写完后的当前缓冲区，写满时新分配的缓冲区按顺序加入out
+     */
+    private static ByteBuf writeArray(ByteBufAllocator alloc, RespArray respArray, ByteBuf byteBuf, List<Object> out, boolean resp3) {
+        if (!Resp.writeAggregateHeader(respArray, byteBuf, resp3)) {
+            return byteBuf;
+        }
+        for (Object element : respArray.getElements()) {
+            if (element instanceof RespArray nested && nested.preEncoded(resp3) == null) {
+                byteBuf = writeArray(alloc, nested, byteBuf, out, resp3);
+            } else {
+                Resp.writeElement(element, byteBuf, resp3);
+            }
+            if (byteBuf.readableBytes() >= CHUNK_SIZE) {
+                byteBuf = alloc.ioBuffer(CHUNK_SIZE);
+                out.add(byteBuf);
+            }
+        }
+        return byteBuf;
+    }
+
 }
@@ -1,77 +1,184 @@
 package com.wiqer.redis.aof;
 
-import com.wiqer.redis.command.CommonCommandFactory;
-import com.wiqer.redis.core.RedisCore;
-import com.wiqer.redis.aof.queue.RingBlockingQueue;
-import com.wiqer.redis.command.WriteCommand;
-import com.wiqer.redis.resp.Resp;
-import com.wiqer.redis.util.Format;
+import com.wiqer.redis.aof.queue.FullPolicy;
+import com.wiqer.redis.aof.queue.MpscRingQueue;
+import com.wiqer.redis.shard.ShardGroup;
+import com.wiqer.redis.snapshot.SnapshotLoader;
+import com.wiqer.redis.snapshot.SnapshotWriter;
 import com.wiqer.redis.util.PropertiesUtil;
+import com.wiqer.redis.util.ThreadFactoryUtil;
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.util.AttributeKey;
+import io.netty.util.internal.PlatformDependent;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
-import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 /**
  * Redis AOF持久化实现类
  * 通过记录所有的写操作命令来实现数据持久化
  * 特点：
  * 1. 使用分段存储，每个文件限制大小为64MB
- * 2. 使用内存映射提高I/O性能
- * 3. 支持命令的批量写入和读取
+ * 2. 使用内存映射提高I/O性能，每段打开时一次映射整段，写入时整批拷贝，不逐字节写、不反复重新映射
+ * 3. 分片线程每执行完一批命令，把其中成功的写命令整批交给AOF线程，AOF线程一次取出所有积压的批次写入
  * 4. 采用单线程处理确保命令顺序
+ * 5. 分片线程经无锁的{@link MpscRingQueue}交出批次，队列满时按配置的{@link FullPolicy}等待或丢弃
+ * <p>
+ * 刷盘按{@link AppendFsync}：always下一次force覆盖本轮写入的所有批次（group commit），
+ * 这些批次的回复在force之后才写出；everysec下每秒最多force一次；no下只在关闭时force
+ * <p>
+ * 写入或force失败时与redis的MISCONF相同：always下这一轮的批次回复错误而不是成功，之后拒绝执行写命令，
+ * 没有写入的批次按顺序保留，AOF线程每轮先补写它们，补写并force成功后恢复接受写命令
+ * <p>
+ * 启动时先由{@link AofReplayer}同步重放已有的段，重放完成后才开始接受写入
+ * <p>
+ * BGREWRITEAOF把当前数据重写为基础文件，之后的段从K+1开始编号，manifest文件fileName_manifest记录当前的K与基础文件格式；
+ * 没有manifest时从第0段开始重放。aof_use_rdb_preamble为yes时基础文件fileName_base_K.rdb是{@link SnapshotWriter}写出的二进制快照，
+ * 启动时由{@link SnapshotLoader}并行加载，只重放其后的段；为no时基础文件fileName_base_K.aof是RESP命令
+ * <p>
+ * 每批命令写成一条带长度、CRC32C与序号的记录，格式见{@link AofRecord}；旧格式的段照常重放，之后的写入换到新的一段
  *
  * @author lilan
  */
 @Slf4j
 public class Aof {
 
+    /**
+     * 连接上的AOF实例，未开启AOF时不设置
+     */
+    public static final AttributeKey<Aof> AOF = AttributeKey.valueOf("aof");
+
     private static final String SUFFIX = ".aof";
+    private static final String IMAGE_SUFFIX = ".rdb";
+    private static final String REWRITE_TEMP = "_rewrite.tmp";
+    private static final String REWRITE_TAIL_TEMP = "_rewrite_tail.tmp";
+    private static final String MANIFEST = "_manifest";
+    private static final String MANIFEST_IMAGE = "rdb";
+    private static final String MANIFEST_COMMANDS = "aof";
     private static final int SHIFT_BIT = 26;
     private static final int ONE_PIECE = 1 << SHIFT_BIT;
-    private static final int INITIAL_BUFFER_SIZE = 8888;
-    private static final int MAX_BUFFER_SIZE = 2147483647;
-    private static final int QUEUE_INITIAL_CAPACITY = 8888;
-    private static final int QUEUE_MAX_CAPACITY = 888888;
+    private static final int QUEUE_CAPACITY = 1 << 16;
+    private static final long DROP_LOG_INTERVAL = 1024;
     private static final long CLEANUP_TIMEOUT_SECONDS = 5;
+    private static final long EVERYSEC_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long SNAPSHOT_WAIT_MILLIS = 10;
 
-    private final AtomicLong aofPutIndex = new AtomicLong(0L);
     private final String fileName;
-    private final RingBlockingQueue<List<Resp>> runtimeRespQueue;
-    private final ByteBuf bufferPolled;
-    private final ScheduledThreadPoolExecutor persistenceExecutor;
+    @Getter
+    private final AppendFsync appendFsync;
+    private final MpscRingQueue<Batch> runtimeRespQueue;
+    private final ExecutorService persistenceExecutor;
+    /**
+     * 启动时的重放进度与吞吐
+     */
+    @Getter
+    private final AofReplayer replayer;
 
     @Getter
-    private final RedisCore redisCore;
-    private final ReadWriteLock reentrantLock = new ReentrantReadWriteLock();
+    private final ShardGroup shardGroup;
     private volatile boolean isRunning = true;
+    private final AtomicBoolean rewriting = new AtomicBoolean();
+    /**
+     * 重写时基础文件是否写为二进制快照
+     */
+    private final boolean useRdbPreamble;
+
+    /**
+     * 以下状态只在AOF线程上访问，启动重放期间由启动线程访问
+     */
+    private long segmentId;
+    private int putIndex;
+    private RandomAccessFile segmentFile;
+    private MappedByteBuffer mappedByteBuffer;
+    /**
+     * 当前段的稀疏索引与最后一项所指的偏移
+     */
+    private FileChannel indexChannel;
+    private int indexedIndex;
+    /**
+     * 当前段下一条记录的序号
+     */
+    private long sequence;
+    /**
+     * 当前段中已force的位置，之后到putIndex的内容还没有force
+     */
+    private int syncedIndex;
+    private long lastFsyncNanos;
+    /**
+     * 当前基础文件的编号，-1表示没有基础文件
+     */
+    private long baseId = -1;
+    /**
+     * 当前基础文件是否为二进制快照
+     */
+    private boolean baseImage;
+    /**
+     * 进行中的重写，只在AOF线程上访问
+     */
+    private Rewrite rewrite;
+    /**
+     * 写入失败后还没有写入的批次，按原来的顺序补写，只在AOF线程上访问
+     */
+    private final ArrayDeque<ByteBuf> unwritten = new ArrayDeque<>();
+    /**
+     * 最近一轮写入或force失败的原因，恢复后为null；不为null时拒绝执行写命令
+     */
+    @Getter
+    private volatile Exception writeError;
+
+    public Aof(ShardGroup shardGroup) {
+        this(shardGroup, PropertiesUtil.getAofPath(), AppendFsync.parse(PropertiesUtil.getAppendFsync()),
+                FullPolicy.parse(PropertiesUtil.getAofQueueFullPolicy()));
+    }
+
+    public Aof(ShardGroup shardGroup, String fileName, AppendFsync appendFsync) {
+        this(shardGroup, fileName, appendFsync, FullPolicy.BLOCK);
+    }
 
-    public Aof(RedisCore redisCore) {
-        this.redisCore = redisCore;
-        this.fileName = PropertiesUtil.getAofPath();
-        this.runtimeRespQueue = new RingBlockingQueue<>(QUEUE_INITIAL_CAPACITY, QUEUE_MAX_CAPACITY);
-        this.bufferPolled = PooledByteBufAllocator.DEFAULT.buffer(INITIAL_BUFFER_SIZE, MAX_BUFFER_SIZE);
+    /**
+     * @param fullPolicy 交给AOF线程的队列满时分片线程的处理方式，drop会丢失这些批次的持久化
+     */
+    public Aof(ShardGroup shardGroup, String fileName, AppendFsync appendFsync, FullPolicy fullPolicy) {
+        this.shardGroup = shardGroup;
+        this.fileName = fileName;
+        this.appendFsync = appendFsync;
+        this.runtimeRespQueue = new MpscRingQueue<>(QUEUE_CAPACITY, fullPolicy);
         this.persistenceExecutor = createExecutor();
+        this.replayer = new AofReplayer(shardGroup, PropertiesUtil.getAofReplayThreads());
+        this.useRdbPreamble = PropertiesUtil.getAofUseRdbPreamble();
         initializeDirectory();
         start();
     }
 
-    private ScheduledThreadPoolExecutor createExecutor() {
-        return new ScheduledThreadPoolExecutor(1, r -> {
-            Thread thread = new Thread(r, "Aof_Single_Thread");
+    private ExecutorService createExecutor() {
+        // 开启绑核时AOF线程绑定到aof_cpulist，与命令执行线程分开配置，刷盘不与它们争抢
+        ThreadFactory threadFactory = ThreadFactoryUtil.create("Aof_Single_Thread", false, PropertiesUtil.getAofCpus());
+        return Executors.newSingleThreadExecutor(r -> {
+            Thread thread = threadFactory.newThread(r);
+            thread.setName("Aof_Single_Thread");
             thread.setUncaughtExceptionHandler((t, e) ->
                     log.error("Uncaught exception in AOF thread: ", e));
             return thread;
@@ -90,26 +197,327 @@ public class Aof {
         }
     }
 
-    public void put(Resp resp) {
-        runtimeRespQueue.offer(List.of(resp));
+    /**
+     * 追加分片线程一批命令中需要记录的写命令，由分片线程调用，同一分片的批次按调用顺序写入
+     *
+     * @param shard     执行这批命令的分片
+     * @param commands  RESP数组编码的命令，由AOF线程写入后释放
+     * @param onDurable always策略下在这批命令force之后或者写入失败时由AOF线程调用，参数为失败原因，成功时为null；
+     *                  其他策略下立即在当前线程以null调用
+     */
+    public void append(int shard, ByteBuf commands, Consumer<Exception> onDurable) {
+        boolean always = appendFsync == AppendFsync.ALWAYS;
+        try {
+            if (!runtimeRespQueue.enqueue(new Batch(shard, commands, always ? onDurable : null, null))) {
+                long dropped = runtimeRespQueue.getDropped();
+                if (dropped % DROP_LOG_INTERVAL == 1) {
+                    log.warn("AOF队列已满，丢弃{}字节的命令，累计丢弃{}批", commands.readableBytes(), dropped);
+                }
+                commands.release();
+                // always策略下被丢弃的命令没有落盘，不能回复成功
+                onDurable.accept(always ? new IllegalStateException("AOF queue is full, commands dropped") : null);
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("写入AOF队列被中断，丢弃{}字节的命令", commands.readableBytes());
+            commands.release();
+            onDurable.accept(always ? e : null);
+            return;
+        }
+        if (!always) {
+            onDurable.accept(null);
+        }
+    }
+
+    /**
+     * 在AOF线程上按队列顺序执行，排在调用之前已入队的批次之后
+     */
+    private void enqueueControl(Runnable control) throws InterruptedException {
+        if (!isRunning) {
+            throw new IllegalStateException("AOF已关闭");
+        }
+        runtimeRespQueue.put(new Batch(-1, null, null, control));
     }
 
-    public void put(List<Resp> resp) {
-        runtimeRespQueue.offer(resp);
+    /**
+     * 开始后台重写
+     *
+     * @return 已有重写在进行时返回false
+     */
+    public boolean rewrite() {
+        if (!rewriting.compareAndSet(false, true)) {
+            return false;
+        }
+        Thread thread = ThreadFactoryUtil.create("Aof_Rewrite_Thread", true).newThread(() -> {
+            try {
+                doRewrite();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.warn("AOF重写被中断");
+            } catch (Exception e) {
+                log.error("AOF重写失败", e);
+            } finally {
+                rewriting.set(false);
+            }
+        });
+        thread.setName("Aof_Rewrite_Thread");
+        thread.start();
+        return true;
     }
 
     /**
-     * 启动数据持久化和磁盘数据同步任务
+     * fullPolicy为drop时因队列已满没有写入AOF的批次数
+     */
+    public long getDroppedBatches() {
+        return runtimeRespQueue.getDropped();
+    }
+
+    public boolean isRewriting() {
+        return rewriting.get();
+    }
+
+    /**
+     * 基础文件写到临时文件，各分片切点之后的写命令由AOF线程另存一份，
+     * 完成时写为新的第一段，再原子地切换到新的基础文件
+     */
+    private void doRewrite() throws Exception {
+        long start = System.nanoTime();
+        Path temp = Path.of(fileName + REWRITE_TEMP);
+        enqueueControl(() -> rewrite = new Rewrite(shardGroup.size()));
+        CompletableFuture<Long> finished = new CompletableFuture<>();
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            if (useRdbPreamble) {
+                writeImage(channel);
+            } else {
+                writeCommandBase(channel);
+            }
+            channel.force(true);
+        } catch (Exception e) {
+            enqueueControl(this::abortRewrite);
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        enqueueControl(() -> finishRewrite(temp, finished));
+        try {
+            long size = finished.get();
+            log.info("AOF重写完成，基础文件{}字节，耗时{}ms", size, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (ExecutionException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+    }
+
+    /**
+     * 与BGSAVE相同，所有分片同时切点后不停止执行命令，写时复制得到切点时刻的数据；有BGSAVE在进行时等它结束
+     */
+    private void writeImage(FileChannel channel) throws IOException, InterruptedException {
+        while (!shardGroup.tryBeginSnapshot()) {
+            Thread.sleep(SNAPSHOT_WAIT_MILLIS);
+        }
+        try {
+            SnapshotWriter writer = new SnapshotWriter(shardGroup);
+            writer.cut(this::markCut);
+            writer.write(channel);
+        } finally {
+            shardGroup.endSnapshot();
+        }
+    }
+
+    /**
+     * 没有写时复制，逐个分片在其线程上导出为RESP命令，只阻塞正在导出的分片
+     */
+    private void writeCommandBase(FileChannel channel) throws Exception {
+        ByteBuffer magic = ByteBuffer.wrap(AofRecord.MAGIC);
+        while (magic.hasRemaining()) {
+            channel.write(magic);
+        }
+        long nextSequence = 0;
+        for (int i = 0; i < shardGroup.size(); i++) {
+            int index = i;
+            List<ByteBuf> chunks = shardGroup.get(i).getExecutor().submit(() -> {
+                List<ByteBuf> exported = AofRewriter.rewrite(shardGroup.get(index).getRedisCore());
+                markCut(index);
+                return exported;
+            }).get();
+            nextSequence = writeRecords(channel, chunks, nextSequence);
+        }
+    }
+
+    /**
+     * 分片线程上于切点调用，与该分片之后的批次同在分片线程上入队，此后的批次都要另存
+     */
+    private void markCut(int index) {
+        try {
+            enqueueControl(() -> {
+                if (rewrite != null) {
+                    rewrite.cut[index] = true;
+                }
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IllegalStateException e) {
+            // AOF已关闭，重写在完成时失败
+            log.debug("AOF已关闭，不再记录分片{}的切点", index);
+        }
+    }
+
+    /**
+     * 每个缓冲区写成一条记录，释放缓冲区
+     *
+     * @return 下一条记录的序号
+     */
+    private static long writeRecords(FileChannel channel, List<ByteBuf> buffers, long sequence) throws IOException {
+        try {
+            List<ByteBuffer> nioBuffers = new ArrayList<>();
+            for (ByteBuf buffer : buffers) {
+                if (!buffer.isReadable()) {
+                    continue;
+                }
+                nioBuffers.add(AofRecord.header(sequence++, buffer));
+                Collections.addAll(nioBuffers, buffer.nioBuffers());
+            }
+            ByteBuffer[] array = nioBuffers.toArray(new ByteBuffer[0]);
+            long remaining = 0;
+            for (ByteBuffer nioBuffer : array) {
+                remaining += nioBuffer.remaining();
+            }
+            while (remaining > 0) {
+                remaining -= channel.write(array);
+            }
+        } finally {
+            buffers.forEach(ByteBuf::release);
+        }
+        return sequence;
+    }
+
+    /**
+     * AOF线程上执行：把切点之后另存的命令写为临时段，关闭当前段，
+     * 临时文件改名为下一个编号的基础文件与其后的第一段，更新manifest后从这一段继续写，再删除旧的基础文件与段
      * <p>
-     * 本方法负责启动两个任务：一是从磁盘加载所有段的数据到内存，二是定期将所有段的数据从内存同步到磁盘
-     * 使用persistenceExecutor执行器来管理这些任务，确保它们可以异步执行，提高系统的响应速度和处理能力
+     * manifest更新之前失败时继续写旧的段；新的第一段与旧的段之间隔着基础文件的编号，旧manifest下不会被重放
      */
-    public void start() {
-        // 加载磁盘上所有段的数据到内存中，启动时执行一次
-        persistenceExecutor.execute(this::pickupDiskDataAllSegment);
+    private void finishRewrite(Path temp, CompletableFuture<Long> finished) {
+        Rewrite done = rewrite;
+        rewrite = null;
+        if (done == null) {
+            finished.completeExceptionally(new IllegalStateException("重写已被中止"));
+            return;
+        }
+        if (writeError != null) {
+            // 补写的批次可能已经在基础文件或另存的命令中，切换后会重复
+            done.incremental.forEach(ByteBuf::release);
+            finished.completeExceptionally(new IOException("AOF写入失败，放弃重写", writeError));
+            return;
+        }
+        Path tail = Path.of(fileName + REWRITE_TAIL_TEMP);
+        try {
+            long tailSize;
+            long tailSequence;
+            try (FileChannel channel = FileChannel.open(tail, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteBuffer magic = ByteBuffer.wrap(AofRecord.MAGIC);
+                while (magic.hasRemaining()) {
+                    channel.write(magic);
+                }
+                List<ByteBuf> incremental = done.incremental;
+                done.incremental = new ArrayList<>();
+                tailSequence = writeRecords(channel, incremental, 0);
+                channel.force(true);
+                tailSize = channel.size();
+            }
+            closeSegment();
+            long oldBaseId = baseId;
+            boolean oldBaseImage = baseImage;
+            long lastSegmentId = segmentId;
+            long newBaseId = segmentId + 1;
+            String firstSegment = segmentPath(newBaseId + 1);
+            try {
+                Files.move(temp, Path.of(basePath(newBaseId, useRdbPreamble)), StandardCopyOption.ATOMIC_MOVE);
+                Files.deleteIfExists(AofRecord.indexPath(firstSegment));
+                Files.move(tail, Path.of(firstSegment), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                writeManifest(newBaseId, useRdbPreamble);
+            } catch (IOException e) {
+                openSegment();
+                throw e;
+            }
+            baseId = newBaseId;
+            baseImage = useRdbPreamble;
+            segmentId = newBaseId + 1;
+            putIndex = (int) tailSize;
+            sequence = tailSequence;
+            openSegment();
+            if (oldBaseId >= 0) {
+                Files.deleteIfExists(Path.of(basePath(oldBaseId, oldBaseImage)));
+            }
+            for (long id = oldBaseId + 1; id <= lastSegmentId; id++) {
+                Files.deleteIfExists(Path.of(segmentPath(id)));
+                Files.deleteIfExists(AofRecord.indexPath(segmentPath(id)));
+            }
+            finished.complete(Files.size(Path.of(basePath(newBaseId, useRdbPreamble))));
+        } catch (IOException e) {
+            done.incremental.forEach(ByteBuf::release);
+            try {
+                Files.deleteIfExists(tail);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            finished.completeExceptionally(e);
+            if (segmentFile == null) {
+                // 新的基础文件已生效而新段打开失败，与打开段失败一样停止写入
+                isRunning = false;
+            }
+        }
+    }
+
+    private void abortRewrite() {
+        if (rewrite != null) {
+            rewrite.incremental.forEach(ByteBuf::release);
+            rewrite = null;
+        }
+    }
+
+    /**
+     * 先写临时文件再改名，manifest要么是旧内容要么是新内容
+     */
+    private void writeManifest(long id, boolean image) throws IOException {
+        Path manifest = Path.of(fileName + MANIFEST);
+        Path temp = Path.of(fileName + MANIFEST + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            String content = id + " " + (image ? MANIFEST_IMAGE : MANIFEST_COMMANDS);
+            channel.write(ByteBuffer.wrap(content.getBytes(StandardCharsets.US_ASCII)));
+            channel.force(true);
+        }
+        Files.move(temp, manifest, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * manifest内容为基础文件编号与格式，只有编号时是RESP命令的基础文件
+     */
+    private void readManifest() {
+        Path manifest = Path.of(fileName + MANIFEST);
+        baseId = -1;
+        baseImage = false;
+        if (!Files.exists(manifest)) {
+            return;
+        }
+        try {
+            String[] fields = Files.readString(manifest, StandardCharsets.US_ASCII).trim().split("\\s+");
+            baseId = Long.parseLong(fields[0]);
+            baseImage = fields.length > 1 && fields[1].equals(MANIFEST_IMAGE);
+        } catch (IOException | NumberFormatException e) {
+            throw new IllegalStateException("读取AOF manifest失败: " + manifest, e);
+        }
+    }
 
-        // 定期将所有段的数据从内存同步到磁盘上，首次执行延迟10秒后进行，之后每隔1秒执行一次
-        persistenceExecutor.scheduleAtFixedRate(this::downDiskAllSegment, 10, 1, TimeUnit.SECONDS);
+    /**
+     * 重放已有的段，然后启动AOF线程
+     */
+    public void start() {
+        pickupDiskDataAllSegment();
+        persistenceExecutor.execute(this::writeLoop);
     }
 
     public void close() {
@@ -122,9 +530,6 @@ public class Aof {
                     log.error("AOF executor did not terminate");
                 }
             }
-            if (bufferPolled != null && bufferPolled.refCnt() > 0) {
-                bufferPolled.release();
-            }
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             log.error("Interrupted while closing AOF", e);
@@ -132,170 +537,323 @@ public class Aof {
     }
 
     /**
-     * 将内存中的所有数据段持久化到磁盘
-     * 该方法主要用于将Redis响应队列中的数据异步写入到持久化文件中
+     * AOF线程的主循环：取出积压的所有批次一起写入，按策略force后通知等待落盘的回复；关闭时写完队列中剩余的批次
      */
-    public void downDiskAllSegment() {
-        if (!isRunning || !reentrantLock.writeLock().tryLock()) {
-            return;
-        }
+    private void writeLoop() {
+        List<Batch> batches = new ArrayList<>();
         try {
-            processSegments();
-        } catch (Exception e) {
-            log.error("Error during disk write operation", e);
+            openSegment();
+            lastFsyncNanos = System.nanoTime();
+            while (isRunning || !runtimeRespQueue.isEmpty()) {
+                Batch first = runtimeRespQueue.poll(EVERYSEC_NANOS, TimeUnit.NANOSECONDS);
+                if (first != null) {
+                    batches.add(first);
+                    runtimeRespQueue.drainTo(batches);
+                }
+                writeBatches(batches);
+                batches.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            log.error("打开AOF段失败，停止写入AOF", e);
         } finally {
-            reentrantLock.writeLock().unlock();
-        }
-    }
-
-    private void processSegments() {
-        long segmentId = -1;
-        // 遍历所有数据段，直到当前数据段与待写入索引指示的数据段一致
-        Segment:
-        while (segmentId != (aofPutIndex.get() >> SHIFT_BIT)) {
-            segmentId = (aofPutIndex.get() >> SHIFT_BIT);
-            // 打开或创建一个文件通道，用于读写指定的数据段文件
-            try (RandomAccessFile randomAccessFile = new RandomAccessFile(fileName + "_" + segmentId + SUFFIX, "rw");
-                 FileChannel channel = randomAccessFile.getChannel()) {
-                long len = channel.size();
-                int putIndex = Format.uintNBit(aofPutIndex.get(), SHIFT_BIT);
-                long baseOffset = aofPutIndex.get() - putIndex;
-
-                // 调整数据段长度，确保有足够的空间写入数据
-                if (len - putIndex < 1L << (SHIFT_BIT - 2)) {
-                    len = segmentId + 1 << (SHIFT_BIT - 2);
+            abortRewrite();
+            if (!unwritten.isEmpty()) {
+                log.error("关闭时仍有{}批命令没有写入AOF", unwritten.size());
+                unwritten.forEach(ByteBuf::release);
+                unwritten.clear();
+            }
+            closeSegment();
+        }
+    }
+
+    private void writeBatches(List<Batch> batches) {
+        Exception failure = null;
+        if (writeError != null) {
+            try {
+                writeUnwritten();
+            } catch (Exception e) {
+                failure = e;
+            }
+        }
+        for (Batch batch : batches) {
+            if (batch.control != null) {
+                // 写入失败后仍然执行控制操作，等待它的重写线程不会因此挂起
+                batch.control.run();
+                continue;
+            }
+            if (rewrite != null && rewrite.cut[batch.shard]) {
+                rewrite.incremental.add(batch.commands.retainedDuplicate());
+            }
+            if (failure == null) {
+                try {
+                    writeCommands(batch.commands);
+                    continue;
+                } catch (Exception e) {
+                    failure = e;
                 }
+            }
+            unwritten.add(batch.commands.retain());
+        }
+        if (failure == null) {
+            long now = System.nanoTime();
+            boolean due = switch (appendFsync) {
+                case ALWAYS -> true;
+                case EVERYSEC -> now - lastFsyncNanos >= EVERYSEC_NANOS;
+                case NO -> false;
+            };
+            try {
+                if (due && putIndex > syncedIndex) {
+                    force();
+                    lastFsyncNanos = now;
+                }
+            } catch (Exception e) {
+                failure = e;
+            }
+        }
+        if (failure != null && writeError == null) {
+            log.error("写入AOF失败，拒绝执行写命令直到补写成功", failure);
+        } else if (failure == null && writeError != null) {
+            log.info("AOF补写成功，恢复执行写命令");
+        }
+        writeError = failure;
+        for (Batch batch : batches) {
+            if (batch.commands == null) {
+                continue;
+            }
+            batch.commands.release();
+            if (batch.onDurable != null) {
+                try {
+                    batch.onDurable.accept(failure);
+                } catch (RuntimeException e) {
+                    // 关闭期间连接的IO线程可能已经停止
+                    log.debug("通知AOF落盘失败", e);
+                }
+            }
+        }
+    }
 
-                MappedByteBuffer mappedByteBuffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, len);
-
-                // 循环处理响应队列中的数据，直到队列为空或数据写满当前数据段
-                do {
-                    List<Resp> list = runtimeRespQueue.peek();
-                    if (list == null || list.isEmpty()) {
-                        clean(mappedByteBuffer);
-                        break Segment;
-                    }
-
-                    // 将响应数据序列化到缓冲区，并判断当前数据段是否有足够的空间写入
-                    Resp.write(list, bufferPolled);
-                    int respLen = bufferPolled.readableBytes();
-
-                    if ((mappedByteBuffer.capacity() <= respLen + putIndex)) {
-                        len += 1L << (SHIFT_BIT - 3);
-                        if (len > ONE_PIECE) {
-                            bufferPolled.release();
-                            aofPutIndex.set(baseOffset + ONE_PIECE);
-                            break;
-                        }
-                        mappedByteBuffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, len);
-                    }
-
-                    // 将缓冲区中的数据写入到数据段文件中
-                    while (respLen > 0) {
-                        respLen--;
-                        mappedByteBuffer.put(putIndex++, bufferPolled.readByte());
-                    }
-
-                    aofPutIndex.set(baseOffset + putIndex);
-                    runtimeRespQueue.poll();
-                    bufferPolled.clear();
-
-                    // 根据需要扩展数据段长度，如果超出最大长度则进行清理并跳出循环
-                    if (len - putIndex < (1L << (SHIFT_BIT - 3))) {
-                        len += 1L << (SHIFT_BIT - 3);
-                        if (len > ONE_PIECE) {
-                            bufferPolled.release();
-                            clean(mappedByteBuffer);
-                            aofPutIndex.set(baseOffset + ONE_PIECE);
-                            break;
-                        }
-                        mappedByteBuffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, len);
-                    }
-                } while (true);
-            } catch (IOException e) {
-                log.error("IO Exception in downDiskAllSegment", e);
+    /**
+     * 按顺序补写上次失败时留下的批次并force，失败时留下还没有写入的批次
+     */
+    private void writeUnwritten() throws IOException {
+        ByteBuf commands;
+        while ((commands = unwritten.peek()) != null) {
+            writeCommands(commands);
+            unwritten.poll().release();
+        }
+        if (putIndex > syncedIndex) {
+            force();
+            lastFsyncNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * 整批写成当前段的一条记录，剩余空间不足时换到下一段；单批超过一段大小时整批写入同一段
+     */
+    private void writeCommands(ByteBuf commands) throws IOException {
+        int length = commands.readableBytes();
+        if (length == 0) {
+            return;
+        }
+        int recordLength = AofRecord.HEADER_LENGTH + length;
+        if (putIndex > AofRecord.MAGIC.length && (long) putIndex + recordLength > ONE_PIECE) {
+            nextSegment();
+        }
+        if (putIndex - indexedIndex >= AofRecord.INDEX_INTERVAL) {
+            AofRecord.appendIndex(indexChannel, putIndex, sequence);
+            indexedIndex = putIndex;
+        }
+        ensureMapped(putIndex + recordLength);
+        mappedByteBuffer.putInt(putIndex, length)
+                .putInt(putIndex + Integer.BYTES, AofRecord.checksum(sequence, commands))
+                .putLong(putIndex + Integer.BYTES * 2, sequence);
+        commands.readBytes(mappedByteBuffer.slice(putIndex + AofRecord.HEADER_LENGTH, length));
+        putIndex += recordLength;
+        sequence++;
+    }
+
+    /**
+     * 每段按整段大小映射一次，只有单批超过一段时才重新映射到更大
+     */
+    private void ensureMapped(int required) throws IOException {
+        if (mappedByteBuffer != null && mappedByteBuffer.capacity() >= required) {
+            return;
+        }
+        // 同一文件的新旧映射共享页缓存，旧映射中未force的内容随新映射一起force
+        unmap(mappedByteBuffer);
+        mappedByteBuffer = segmentFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, Math.max(required, ONE_PIECE));
+    }
+
+    /**
+     * 只force上次force之后写入的范围
+     */
+    private void force() {
+        mappedByteBuffer.force(syncedIndex, putIndex - syncedIndex);
+        syncedIndex = putIndex;
+    }
+
+    /**
+     * 从重放结束的位置继续写，截掉其后的填充或损坏内容，以及指向截掉部分的索引项；新段先写入文件头
+     */
+    private void openSegment() throws IOException {
+        String path = segmentPath(segmentId);
+        segmentFile = new RandomAccessFile(path, "rw");
+        segmentFile.getChannel().truncate(putIndex);
+        syncedIndex = putIndex;
+        ensureMapped(Math.max(putIndex, AofRecord.MAGIC.length));
+        if (putIndex == 0) {
+            mappedByteBuffer.put(0, AofRecord.MAGIC);
+            putIndex = AofRecord.MAGIC.length;
+        }
+        int[] offsets = AofRecord.readIndex(AofRecord.indexPath(path));
+        int kept = 0;
+        while (kept < offsets.length && offsets[kept] < putIndex) {
+            kept++;
+        }
+        indexedIndex = kept == 0 ? 0 : offsets[kept - 1];
+        indexChannel = FileChannel.open(AofRecord.indexPath(path), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        indexChannel.truncate((long) kept * AofRecord.INDEX_ENTRY_LENGTH);
+        indexChannel.position((long) kept * AofRecord.INDEX_ENTRY_LENGTH);
+    }
+
+    private void nextSegment() throws IOException {
+        closeSegment();
+        segmentId++;
+        putIndex = 0;
+        sequence = 0;
+        openSegment();
+    }
+
+    /**
+     * force并关闭当前段，截掉映射扩展出的填充
+     */
+    private void closeSegment() {
+        if (segmentFile == null) {
+            return;
+        }
+        try {
+            if (mappedByteBuffer != null) {
+                force();
+                unmap(mappedByteBuffer);
+                mappedByteBuffer = null;
+            }
+            segmentFile.getChannel().truncate(putIndex);
+            segmentFile.close();
+            if (indexChannel != null) {
+                indexChannel.close();
             }
+        } catch (IOException e) {
+            log.error("关闭AOF段{}失败", segmentId, e);
         }
+        segmentFile = null;
+        indexChannel = null;
+    }
+
+    private String segmentPath(long id) {
+        return fileName + "_" + id + SUFFIX;
+    }
+
+    private String basePath(long id, boolean image) {
+        return fileName + "_base_" + id + (image ? IMAGE_SUFFIX : SUFFIX);
     }
 
     /**
-     * 从所有段中获取磁盘数据
-     * 该方法通过读取和处理每个段的AOF文件来恢复数据
+     * 按manifest加载或重放基础文件，再重放其后的所有段，并等待分片线程执行完重放的命令；
+     * 记录最后一段中有效内容的结束位置，AOF线程从这里继续写
      */
     public void pickupDiskDataAllSegment() {
-        // 获取写锁以确保线程安全
-        reentrantLock.writeLock().lock();
         try {
-            long segmentId = -1;
-            // 循环读取直到追上当前的AOF索引
-            Segment:
-            while (segmentId != (aofPutIndex.get() >> SHIFT_BIT)) {
-                segmentId = (aofPutIndex.get() >> SHIFT_BIT);
-                int putIndex = Format.uintNBit(aofPutIndex.get(), SHIFT_BIT);
-                long baseOffset = aofPutIndex.get() - putIndex;
-
-                // 打开并映射AOF文件到内存
-                try (RandomAccessFile randomAccessFile = new RandomAccessFile(fileName + "_" + segmentId + SUFFIX, "r");
-                     FileChannel channel = randomAccessFile.getChannel()) {
-                    long len = channel.size();
-                    MappedByteBuffer mappedByteBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, len);
-
-                    // 分配缓冲区以读取AOF文件内容
-                    ByteBuf bufferPolled = PooledByteBufAllocator.DEFAULT.buffer((int) len);
-                    try {
-                        bufferPolled.writeBytes(mappedByteBuffer);
-
-                        // 循环处理AOF文件中的命令
-                        do {
-                            try {
-                                List<Resp> list = Resp.decode(bufferPolled);
-                                WriteCommand command = (WriteCommand) CommonCommandFactory.create(redisCore).from(list);
-                                command.handle();
-                            } catch (Exception e) {
-                                break Segment;
-                            }
-
-                            // 更新读取索引
-                            putIndex = bufferPolled.readerIndex();
-                            aofPutIndex.set(putIndex + baseOffset);
-
-                            // 如果读取索引超过一段的大小，则更新aofPutIndex并中断循环
-                            if (putIndex > ONE_PIECE) {
-                                aofPutIndex.set(baseOffset + ONE_PIECE);
-                                break;
-                            }
-                        } while (true);
-                    } finally {
-                        // 释放缓冲区并清理内存映射文件
-                        bufferPolled.release();
-                        clean(mappedByteBuffer);
-                    }
-                } catch (IOException e) {
-                    log.error("Failed to process AOF file for segment {}", segmentId, e);
-                    break;
-                }
+            // 上次重写没有完成
+            Files.deleteIfExists(Path.of(fileName + REWRITE_TEMP));
+            Files.deleteIfExists(Path.of(fileName + REWRITE_TAIL_TEMP));
+        } catch (IOException e) {
+            log.warn("删除AOF重写临时文件失败", e);
+        }
+        readManifest();
+        List<String> paths = new ArrayList<>();
+        boolean commandBase = baseId >= 0 && !baseImage;
+        if (commandBase) {
+            paths.add(basePath(baseId, false));
+        } else if (baseId >= 0) {
+            loadImage(Path.of(basePath(baseId, true)));
+        }
+        long firstSegmentId = baseId + 1;
+        for (long id = firstSegmentId; new File(segmentPath(id)).exists(); id++) {
+            paths.add(segmentPath(id));
+        }
+        AofReplayer.FileEnd[] ends = replayer.replay(paths);
+        if (commandBase && ends[0].getValidEnd() < 0) {
+            throw new IllegalStateException("重放AOF基础文件失败: " + basePath(baseId, false));
+        }
+        int firstSegment = commandBase ? 1 : 0;
+        segmentId = firstSegmentId;
+        putIndex = 0;
+        sequence = 0;
+        // 从最后一个读取成功的段继续写；读取失败的段从头重写
+        for (int i = firstSegment; i < paths.size(); i++) {
+            segmentId = firstSegmentId + i - firstSegment;
+            AofReplayer.FileEnd end = ends[i];
+            if (end.getValidEnd() < 0) {
+                putIndex = 0;
+                sequence = 0;
+                break;
+            }
+            putIndex = (int) end.getValidEnd();
+            sequence = end.getNextSequence();
+            if (!end.isFramed() && putIndex > 0) {
+                // 旧格式的段不再追加记录
+                segmentId++;
+                putIndex = 0;
+                sequence = 0;
             }
-        } catch (Exception e) {
-            log.error("Failed to pickup disk data from all segments", e);
-        } finally {
-            // 释放写锁
-            reentrantLock.writeLock().unlock();
         }
     }
 
-    public static void clean(final MappedByteBuffer buffer) {
-        if (buffer == null) {
-            return;
-        }
-        buffer.force();
+    /**
+     * 二进制快照的基础文件整块校验，不完整或损坏时拒绝启动
+     */
+    private void loadImage(Path path) {
         try {
-            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
-            cleanerMethod.setAccessible(true);
-            Object cleaner = cleanerMethod.invoke(buffer);
-            Method cleanMethod = cleaner.getClass().getMethod("clean");
-            cleanMethod.invoke(cleaner);
-        } catch (Exception e) {
-            log.error("Unexpected error during cleanup: ", e);
+            new SnapshotLoader(shardGroup, PropertiesUtil.getSnapshotLoadThreads()).load(path);
+        } catch (IOException e) {
+            throw new IllegalStateException("读取AOF基础文件失败: " + path, e);
+        }
+    }
+
+    private static void unmap(MappedByteBuffer buffer) {
+        if (buffer != null) {
+            PlatformDependent.freeDirectBuffer(buffer);
+        }
+    }
+
+    /**
+     * 分片线程交来的一批写命令，或者需要在AOF线程上按顺序执行的控制操作
+     */
+    private static final class Batch {
+        private final int shard;
+        private final ByteBuf commands;
+        private final Consumer<Exception> onDurable;
+        private final Runnable control;
+
+        private Batch(int shard, ByteBuf commands, Consumer<Exception> onDurable, Runnable control) {
+            this.shard = shard;
+            this.commands = commands;
+            this.onDurable = onDurable;
+            this.control = control;
+        }
+    }
+
+    /**
+     * 进行中的重写：cut[i]表示分片i已过切点，之后该分片的批次另存到incremental
+     */
+    private static final class Rewrite {
+        private final boolean[] cut;
+        private List<ByteBuf> incremental = new ArrayList<>();
+
+        private Rewrite(int shardCount) {
+            cut = new boolean[shardCount];
         }
     }
 }
@@ -0,0 +1,78 @@
+package com.wiqer.redis.aof;
+
+import com.wiqer.redis.command.Argv;
+import com.wiqer.redis.datatype.BytesWrapper;
+import com.wiqer.redis.resp.Resp;
+import com.wiqer.redis.resp.RespType;
+import com.wiqer.redis.util.Format;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 分片线程执行一批命令时攒下需要写入AOF的命令，以RESP数组编码到同一个缓冲区，整批交给{@link Aof}
+ * <p>
+ * 参数在追加时拷贝，之后请求缓冲区释放不影响已追加的内容
+ *
+ * @author lilan
+ */
+public final class AofBuffer {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private ByteBuf buffer;
+
+    /**
+     * 原样记录一条命令
+     */
+    public void append(Argv argv) {
+        begin(argv.count());
+        for (int i = 0; i < argv.count(); i++) {
+            arg(argv.get(i));
+        }
+    }
+
+    /**
+     * 开始记录一条改写后的命令，之后依次追加argc个参数
+     */
+    public AofBuffer begin(int argc) {
+        if (buffer == null) {
+            buffer = PooledByteBufAllocator.DEFAULT.directBuffer(INITIAL_CAPACITY);
+        }
+        buffer.writeByte(RespType.MULTYBULK.getCode());
+        Format.writeLong(buffer, argc);
+        buffer.writeShort(Resp.CRLF);
+        return this;
+    }
+
+    public AofBuffer arg(BytesWrapper arg) {
+        Resp.writeElement(arg, buffer, false);
+        return this;
+    }
+
+    /**
+     * 以十进制bulk string记录整数参数，例如分数、时间戳
+     */
+    public AofBuffer arg(long arg) {
+        return arg(new BytesWrapper(Long.toString(arg).getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    /**
+     * 已攒下的字节数
+     */
+    public int size() {
+        return buffer == null ? 0 : buffer.readableBytes();
+    }
+
+    /**
+     * 取出攒下的命令，之后重新开始攒
+     *
+     * @return 没有需要记录的命令时返回null
+     */
+    public ByteBuf take() {
+        ByteBuf taken = buffer;
+        buffer = null;
+        return taken;
+    }
+}
@@ -0,0 +1,168 @@
+package com.wiqer.redis.aof;
+
+import io.netty.buffer.ByteBuf;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+/**
+ * AOF文件的记录格式
+ * <p>
+ * 文件以{@link #MAGIC}开头，之后是连续的记录，每条记录是AOF线程写入的一批命令：
+ * <pre>
+ * | 长度 int | CRC32C int | 序号 long | RESP编码的命令 |
+ * </pre>
+ * CRC32C覆盖序号与命令，序号在同一文件内从0开始递增；长度为0的记录头是映射扩展出的填充
+ * <p>
+ * 每个段另有稀疏索引文件path.idx，段内每写过{@link #INDEX_INTERVAL}字节记一项：
+ * <pre>
+ * | 记录偏移 int | 序号 long | CRC32C int |
+ * </pre>
+ * 索引只是提示，不force，使用前先校验所指的记录；记录的长度损坏时，重放从其后的索引项继续，不逐字节查找
+ * <p>
+ * 不以{@link #MAGIC}开头的文件按旧格式作为连续的RESP命令重放
+ *
+ * @author lilan
+ */
+@Slf4j
+final class AofRecord {
+
+    static final byte[] MAGIC = "EFAOF01\n".getBytes(StandardCharsets.US_ASCII);
+    static final int HEADER_LENGTH = 16;
+    static final int INDEX_ENTRY_LENGTH = 16;
+    static final int INDEX_INTERVAL = 1 << 20;
+    private static final String INDEX_SUFFIX = ".idx";
+
+    private AofRecord() {
+    }
+
+    static Path indexPath(String path) {
+        return Path.of(path + INDEX_SUFFIX);
+    }
+
+    static boolean isFramed(ByteBuf file) {
+        if (file.readableBytes() < MAGIC.length) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (file.getByte(file.readerIndex() + i) != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static int checksum(long sequence, ByteBuf payload) {
+        CRC32C crc = new CRC32C();
+        crc.update(ByteBuffer.allocate(Long.BYTES).putLong(0, sequence));
+        for (ByteBuffer nioBuffer : payload.nioBuffers()) {
+            crc.update(nioBuffer);
+        }
+        return (int) crc.getValue();
+    }
+
+    /**
+     * 写到文件通道时使用的记录头
+     */
+    static ByteBuffer header(long sequence, ByteBuf payload) {
+        return ByteBuffer.allocate(HEADER_LENGTH)
+                .putInt(0, payload.readableBytes())
+                .putInt(Integer.BYTES, checksum(sequence, payload))
+                .putLong(Integer.BYTES * 2, sequence);
+    }
+
+    /**
+     * 校验position处的记录
+     *
+     * @param file         整个文件，记录位置相对于readerIndex为0的文件开头
+     * @param lastSequence 之前最后一条有效记录的序号，记录的序号必须比它大
+     * @return 命令部分的长度，不是有效记录时返回-1
+     */
+    static int verify(ByteBuf file, int position, long lastSequence) {
+        int limit = file.writerIndex();
+        if (position < 0 || (long) position + HEADER_LENGTH > limit) {
+            return -1;
+        }
+        int length = file.getInt(position);
+        if (length <= 0 || (long) position + HEADER_LENGTH + length > limit) {
+            return -1;
+        }
+        long sequence = file.getLong(position + Integer.BYTES * 2);
+        if (sequence <= lastSequence) {
+            return -1;
+        }
+        int checksum = checksum(sequence, file.slice(position + HEADER_LENGTH, length));
+        return checksum == file.getInt(position + Integer.BYTES) ? length : -1;
+    }
+
+    static long sequence(ByteBuf file, int position) {
+        return file.getLong(position + Integer.BYTES * 2);
+    }
+
+    /**
+     * 记录头全为0，即到达映射扩展出的填充
+     */
+    static boolean isPadding(ByteBuf file, int position) {
+        int end = Math.min(file.writerIndex(), position + HEADER_LENGTH);
+        for (int i = position; i < end; i++) {
+            if (file.getByte(i) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static void appendIndex(FileChannel channel, int offset, long sequence) throws IOException {
+        ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_LENGTH)
+                .putInt(0, offset)
+                .putLong(Integer.BYTES, sequence)
+                .putInt(Integer.BYTES + Long.BYTES, indexChecksum(offset, sequence));
+        while (entry.hasRemaining()) {
+            channel.write(entry);
+        }
+    }
+
+    /**
+     * 读取索引中连续有效的项，遇到校验失败或偏移不递增的项即停止
+     *
+     * @return 升序的记录偏移，没有索引文件时为空
+     */
+    static int[] readIndex(Path path) {
+        byte[] bytes;
+        try {
+            if (!Files.exists(path)) {
+                return new int[0];
+            }
+            bytes = Files.readAllBytes(path);
+        } catch (IOException e) {
+            log.warn("读取AOF索引{}失败", path, e);
+            return new int[0];
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int[] offsets = new int[bytes.length / INDEX_ENTRY_LENGTH];
+        int count = 0;
+        while (buffer.remaining() >= INDEX_ENTRY_LENGTH) {
+            int offset = buffer.getInt();
+            long sequence = buffer.getLong();
+            int checksum = buffer.getInt();
+            if (checksum != indexChecksum(offset, sequence) || (count > 0 && offset <= offsets[count - 1])) {
+                break;
+            }
+            offsets[count++] = offset;
+        }
+        return Arrays.copyOf(offsets, count);
+    }
+
+    private static int indexChecksum(int offset, long sequence) {
+        CRC32C crc = new CRC32C();
+        crc.update(ByteBuffer.allocate(Integer.BYTES + Long.BYTES).putInt(0, offset).putLong(Integer.BYTES, sequence));
+        return (int) crc.getValue();
+    }
+}
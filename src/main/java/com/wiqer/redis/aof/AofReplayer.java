@@ -0,0 +1,584 @@
+package com.wiqer.redis.aof;
+
+import com.wiqer.redis.command.Command;
+import com.wiqer.redis.command.CommonCommandType;
+import com.wiqer.redis.command.WriteCommand;
+import com.wiqer.redis.resp.Resp;
+import com.wiqer.redis.resp.RespDecoder;
+import com.wiqer.redis.resp.RespRequest;
+import com.wiqer.redis.shard.Shard;
+import com.wiqer.redis.shard.ShardGroup;
+import com.wiqer.redis.shard.ShardPart;
+import com.wiqer.redis.util.ThreadFactoryUtil;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.internal.PlatformDependent;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 启动时的AOF重放流水线
+ * <p>
+ * 1. 解析线程直接在只读映射上用{@link RespDecoder}解码，参数借用映射中的字节，不做拷贝；
+ * 多个文件由多个解析线程同时解析，同一文件内解析与执行重叠进行；超过{@link #MAP_WINDOW}的文件分成多个窗口映射，
+ * 跨过窗口结尾的记录或命令从它的开头重新映射下一个窗口
+ * 2. 解析线程同时按key把命令分到各分片，每{@link #COMMANDS_PER_CHUNK}条命令为一块
+ * 3. 调用线程按文件顺序取出各块，把每个分片的命令整批投递到分片线程执行，同一分片内保持文件中的顺序
+ * 4. 一个文件的命令在所有分片上执行完后才解除它的所有映射
+ * <p>
+ * 带记录头的文件逐条校验CRC32C与序号：结尾不完整或是填充时停在最后一条有效记录之后；
+ * 中间的记录损坏时跳到下一条能通过校验的记录，长度完好时直接跳过这一条，否则用段的稀疏索引定位，
+ * 没有可用的索引项才逐字节查找。旧格式的文件解码失败或结尾不完整时记录偏移并停止重放该文件
+ * <p>
+ * 执行失败的命令计数并在结束时汇总
+ *
+ * @author lilan
+ */
+@Slf4j
+public final class AofReplayer {
+
+    private static final int COMMANDS_PER_CHUNK = 4096;
+    /**
+     * 每个文件已解析、尚未投递的块数上限，限制解析线程领先执行的距离
+     */
+    private static final int MAX_PENDING_CHUNKS = 32;
+    /**
+     * 已投递、分片线程尚未执行完的块数上限，限制借用映射的命令在分片队列中的积压
+     */
+    private static final int MAX_APPLYING_CHUNKS = 64;
+    private static final long PROGRESS_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(5);
+    private static final int MAX_LOGGED_FAILURES = 10;
+    /**
+     * 一次映射的最大长度，单次映射不能超过2GB
+     */
+    private static final int MAP_WINDOW = 1 << 30;
+    /**
+     * 非最后一个窗口末尾留给下一个窗口逐字节查找的长度，不超过它的记录不会因为跨过窗口结尾而被漏掉
+     */
+    private static final int SCAN_WINDOW = MAP_WINDOW / 2;
+
+    private final ShardGroup shardGroup;
+    private final int parserThreads;
+
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final AtomicLong parsedBytes = new AtomicLong();
+    private final AtomicLong commands = new AtomicLong();
+    private final AtomicLong failedCommands = new AtomicLong();
+    private final AtomicLong skippedBytes = new AtomicLong();
+    private final Semaphore applying = new Semaphore(MAX_APPLYING_CHUNKS);
+    private volatile long startNanos;
+    private volatile long endNanos;
+
+    public AofReplayer(ShardGroup shardGroup, int parserThreads) {
+        this.shardGroup = shardGroup;
+        this.parserThreads = Math.max(parserThreads, 1);
+    }
+
+    /**
+     * 按顺序重放文件，返回前等待分片线程执行完所有命令
+     *
+     * @param paths 按重放顺序排列
+     * @return 每个文件有效内容的结束位置与格式
+     */
+    public FileEnd[] replay(List<String> paths) {
+        FileEnd[] ends = new FileEnd[paths.size()];
+        if (paths.isEmpty()) {
+            return ends;
+        }
+        startNanos = System.nanoTime();
+        for (String path : paths) {
+            totalBytes.addAndGet(new File(path).length());
+        }
+        ThreadFactory threadFactory = ThreadFactoryUtil.create("Aof_Replay_Parser_", true);
+        ExecutorService parsers = Executors.newFixedThreadPool(Math.min(parserThreads, paths.size()), threadFactory);
+        try {
+            List<ParsedFile> files = new ArrayList<>(paths.size());
+            for (String path : paths) {
+                ParsedFile file = new ParsedFile(path);
+                files.add(file);
+                // 线程池按提交顺序开始解析，调用线程等待的文件总是已经开始解析
+                parsers.execute(file::parse);
+            }
+            boolean failed = false;
+            for (int i = 0; i < files.size(); i++) {
+                if (failed) {
+                    ends[i] = FileEnd.FAILED;
+                    continue;
+                }
+                ParsedFile file = files.get(i);
+                dispatch(file);
+                if (file.error != null) {
+                    log.error("读取AOF文件{}失败，停止重放", file.path, file.error);
+                    ends[i] = FileEnd.FAILED;
+                    failed = true;
+                } else {
+                    ends[i] = new FileEnd(file.validEnd, file.framed, file.lastSequence + 1);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("AOF重放被中断", e);
+        } finally {
+            parsers.shutdownNow();
+        }
+        shardGroup.awaitIdle();
+        endNanos = System.nanoTime();
+        if (commands.get() > 0) {
+            log.info("AOF重放完成，{}个文件{}MB，{}条命令，{}条执行失败，耗时{}ms，{}MB/s", paths.size(),
+                    totalBytes.get() >> 20, commands.get(), failedCommands.get(),
+                    TimeUnit.NANOSECONDS.toMillis(endNanos - startNanos), String.format("%.1f", mbPerSecond()));
+        }
+        return ends;
+    }
+
+    /**
+     * 按顺序取出一个文件的块并投递到各分片，最后安排在所有分片执行完后解除映射
+     */
+    private void dispatch(ParsedFile file) throws InterruptedException {
+        long lastProgress = System.nanoTime();
+        while (true) {
+            Chunk chunk = file.chunks.take();
+            if (chunk == Chunk.END) {
+                break;
+            }
+            applying.acquire();
+            AtomicInteger shards = new AtomicInteger(chunk.shards);
+            for (int i = 0; i < chunk.byShard.length; i++) {
+                List<Replayed> batch = chunk.byShard[i];
+                if (batch != null) {
+                    Shard shard = shardGroup.get(i);
+                    shard.getExecutor().execute(() -> {
+                        apply(shard, batch);
+                        if (shards.decrementAndGet() == 0) {
+                            applying.release();
+                        }
+                    });
+                }
+            }
+            long now = System.nanoTime();
+            if (now - lastProgress >= PROGRESS_INTERVAL_NANOS) {
+                lastProgress = now;
+                log.info("AOF重放进度{}%，{}/{}MB，{}MB/s", String.format("%.1f", percent()),
+                        parsedBytes.get() >> 20, totalBytes.get() >> 20, String.format("%.1f", mbPerSecond()));
+            }
+        }
+        if (!file.mappings.isEmpty()) {
+            AtomicInteger pending = new AtomicInteger(shardGroup.size());
+            for (int i = 0; i < shardGroup.size(); i++) {
+                shardGroup.get(i).getExecutor().execute(() -> {
+                    if (pending.decrementAndGet() == 0) {
+                        file.mappings.forEach(PlatformDependent::freeDirectBuffer);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * 在分片线程上按顺序执行
+     */
+    private void apply(Shard shard, List<Replayed> batch) {
+        for (Replayed replayed : batch) {
+            try {
+                replayed.command.handle(shard.getRedisCore(), shard.getArgv().reset(replayed.args));
+            } catch (Exception e) {
+                if (failedCommands.incrementAndGet() <= MAX_LOGGED_FAILURES) {
+                    log.error("AOF重放命令失败: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * 已解析字节数占全部文件大小的百分比
+     */
+    public double percent() {
+        long total = totalBytes.get();
+        return total == 0 ? 100 : parsedBytes.get() * 100.0 / total;
+    }
+
+    public double mbPerSecond() {
+        long end = endNanos == 0 ? System.nanoTime() : endNanos;
+        return end == startNanos ? 0 : parsedBytes.get() * 1e9 / (end - startNanos) / (1 << 20);
+    }
+
+    public long getCommands() {
+        return commands.get();
+    }
+
+    public long getFailedCommands() {
+        return failedCommands.get();
+    }
+
+    /**
+     * 因记录损坏跳过的字节数，不含文件结尾截掉的部分
+     */
+    public long getSkippedBytes() {
+        return skippedBytes.get();
+    }
+
+    /**
+     * 一个文件重放结束的位置
+     */
+    @Getter
+    public static final class FileEnd {
+        private static final FileEnd FAILED = new FileEnd(-1, false, 0);
+
+        /**
+         * 最后一条有效记录或完整命令的结束位置，读取失败的文件及其之后的文件为-1
+         */
+        private final long validEnd;
+        /**
+         * 是否带记录头，旧格式的文件不能再追加记录
+         */
+        private final boolean framed;
+        /**
+         * 在这个文件之后追加记录时使用的序号
+         */
+        private final long nextSequence;
+
+        private FileEnd(long validEnd, boolean framed, long nextSequence) {
+            this.validEnd = validEnd;
+            this.framed = framed;
+            this.nextSequence = nextSequence;
+        }
+    }
+
+    /**
+     * 一个文件的解析结果，解析线程写入，调用线程按顺序读取
+     */
+    private final class ParsedFile {
+        private final String path;
+        private final BlockingQueue<Chunk> chunks = new ArrayBlockingQueue<>(MAX_PENDING_CHUNKS);
+        private final List<MappedByteBuffer> mappings = new ArrayList<>(1);
+        private volatile long validEnd;
+        private volatile boolean framed;
+        private volatile long lastSequence = -1;
+        private volatile Exception error;
+        private final RespDecoder decoder = new RespDecoder();
+        private Chunk chunk;
+        private long reported;
+        private int[] index;
+
+        private ParsedFile(String path) {
+            this.path = path;
+        }
+
+        private void parse() {
+            try {
+                decode();
+            } catch (IOException | RuntimeException e) {
+                error = e;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                // 解析线程出任何错都要放入END，否则调用线程在dispatch中一直等待
+                try {
+                    chunks.put(Chunk.END);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        private void decode() throws IOException, InterruptedException {
+            try (RandomAccessFile file = new RandomAccessFile(path, "r")) {
+                FileChannel channel = file.getChannel();
+                long length = channel.size();
+                if (length == 0) {
+                    return;
+                }
+                ByteBuf window = map(channel, 0, length);
+                chunk = new Chunk(shardGroup.size());
+                framed = AofRecord.isFramed(window);
+                long windowStart = 0;
+                long next = framed ? AofRecord.MAGIC.length : 0;
+                validEnd = next;
+                while (true) {
+                    boolean last = windowStart + window.writerIndex() == length;
+                    int from = (int) (next - windowStart);
+                    next = framed ? decodeRecords(window, windowStart, from, last) : decodeCommands(window, windowStart, from, last);
+                    if (next < 0) {
+                        break;
+                    }
+                    windowStart = next;
+                    window = map(channel, windowStart, length);
+                }
+            }
+            parsedBytes.addAndGet(validEnd - reported);
+            if (chunk.count > 0) {
+                commands.addAndGet(chunk.count);
+                chunks.put(chunk);
+            }
+        }
+
+        /**
+         * 从start开始映射一个窗口，映射保留到这个文件的命令全部执行完；start处的记录比窗口大时窗口扩大到能容纳这条记录
+         */
+        private ByteBuf map(FileChannel channel, long start, long length) throws IOException {
+            long size = Math.min(length - start, MAP_WINDOW);
+            if (framed && size < length - start) {
+                ByteBuffer header = ByteBuffer.allocate(Integer.BYTES);
+                channel.read(header, start);
+                long span = AofRecord.HEADER_LENGTH + (long) header.getInt(0);
+                if (!header.hasRemaining() && span > size && span <= length - start && span <= Integer.MAX_VALUE) {
+                    size = span;
+                }
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+            mappings.add(mapped);
+            return Unpooled.wrappedBuffer(mapped);
+        }
+
+        /**
+         * @param buffer      windowStart开始的一个窗口
+         * @param from        窗口内开始解析的位置
+         * @param last        窗口是否到达文件结尾
+         * @return 需要从该位置映射下一个窗口继续解析时返回文件偏移，解析结束时返回-1
+         */
+        private long decodeRecords(ByteBuf buffer, long windowStart, int from, boolean last) throws InterruptedException {
+            int position = from;
+            long sequence = lastSequence;
+            int end = buffer.writerIndex();
+            while (position < end) {
+                if (!last && position > 0 && crossesWindow(buffer, position)) {
+                    break;
+                }
+                int length = AofRecord.verify(buffer, position, sequence);
+                if (length < 0) {
+                    int next = resync(buffer, windowStart, position, sequence, last);
+                    if (next < 0) {
+                        if (!AofRecord.isPadding(buffer, position)) {
+                            log.warn("AOF文件{}在偏移{}处的记录不完整，忽略之后的{}字节", path, windowStart + position,
+                                    end - position);
+                        }
+                        lastSequence = sequence;
+                        return -1;
+                    }
+                    log.error("AOF文件{}在偏移{}到{}之间的记录损坏，已跳过", path, windowStart + position, windowStart + next);
+                    skippedBytes.addAndGet(next - position);
+                    position = next;
+                    if (!last && AofRecord.verify(buffer, position, sequence) < 0) {
+                        // 窗口内没有找到有效记录，从查找结束的位置映射下一个窗口继续查找
+                        lastSequence = sequence;
+                        return windowStart + position;
+                    }
+                    continue;
+                }
+                sequence = AofRecord.sequence(buffer, position);
+                decodeRecord(buffer.slice(position + AofRecord.HEADER_LENGTH, length), windowStart + position);
+                position += AofRecord.HEADER_LENGTH + length;
+                validEnd = windowStart + position;
+                flushIfFull();
+            }
+            lastSequence = sequence;
+            return last ? -1 : windowStart + position;
+        }
+
+        /**
+         * 记录头或记录头中长度所指的结尾超出了窗口
+         */
+        private boolean crossesWindow(ByteBuf buffer, int position) {
+            int end = buffer.writerIndex();
+            if (position + AofRecord.HEADER_LENGTH > end) {
+                return true;
+            }
+            return (long) position + AofRecord.HEADER_LENGTH + buffer.getInt(position) > end;
+        }
+
+        /**
+         * 查找损坏的记录之后第一条有效记录的位置；全为0的记录头只有索引指向其后的有效记录时才算损坏
+         *
+         * @return 没有之后的有效记录时返回-1；非最后一个窗口内找不到时返回窗口之外的索引项或查找结束的位置，由下一个窗口继续
+         */
+        private int resync(ByteBuf buffer, long windowStart, int position, long last, boolean lastWindow) {
+            boolean padding = AofRecord.isPadding(buffer, position);
+            if (!padding && position + AofRecord.HEADER_LENGTH <= buffer.writerIndex()) {
+                long next = (long) position + AofRecord.HEADER_LENGTH + buffer.getInt(position);
+                if (next > position + AofRecord.HEADER_LENGTH && next < buffer.writerIndex()
+                        && AofRecord.verify(buffer, (int) next, last) >= 0) {
+                    return (int) next;
+                }
+            }
+            if (index == null) {
+                index = AofRecord.readIndex(AofRecord.indexPath(path));
+            }
+            for (int offset : index) {
+                long next = offset - windowStart;
+                if (next <= position) {
+                    continue;
+                }
+                if (next >= buffer.writerIndex()) {
+                    // 索引项在窗口之外，从它映射下一个窗口后再校验
+                    if (!lastWindow) {
+                        return (int) next;
+                    }
+                    break;
+                }
+                if (AofRecord.verify(buffer, (int) next, last) >= 0) {
+                    return (int) next;
+                }
+            }
+            if (!padding) {
+                // 非最后一个窗口只查找到离结尾还有SCAN_WINDOW的位置，之后的记录可能跨过窗口结尾，由下一个窗口查找
+                int scanEnd = lastWindow ? buffer.writerIndex() - AofRecord.HEADER_LENGTH + 1
+                        : Math.max(buffer.writerIndex() - SCAN_WINDOW, position + 1);
+                for (int next = position + 1; next < scanEnd; next++) {
+                    if (AofRecord.verify(buffer, next, last) >= 0) {
+                        return next;
+                    }
+                }
+                if (!lastWindow) {
+                    return scanEnd;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * 记录已通过校验，解码失败只可能是写入方的问题，跳过这条记录中剩余的命令
+         */
+        private void decodeRecord(ByteBuf payload, long position) {
+            while (payload.isReadable()) {
+                RespRequest request;
+                try {
+                    request = decoder.decode(payload);
+                } catch (IllegalStateException e) {
+                    request = null;
+                }
+                if (request == null) {
+                    decoder.reset();
+                    log.error("AOF文件{}在偏移{}处的记录无法解码，跳过其中剩余的命令", path, position);
+                    return;
+                }
+                request.release();
+                route(request.getArgs(), chunk);
+            }
+        }
+
+        /**
+         * 参数与{@link #decodeRecords}相同
+         */
+        private long decodeCommands(ByteBuf buffer, long windowStart, int from, boolean last) throws InterruptedException {
+            buffer.readerIndex(from);
+            // 映射扩展出的填充为0，遇到0即为有效内容的结尾
+            while (buffer.isReadable() && buffer.getByte(buffer.readerIndex()) != 0) {
+                int start = buffer.readerIndex();
+                RespRequest request;
+                try {
+                    request = decoder.decode(buffer);
+                } catch (IllegalStateException e) {
+                    log.warn("AOF文件{}在偏移{}处损坏，忽略之后的内容: {}", path, windowStart + buffer.readerIndex(), e.getMessage());
+                    return -1;
+                }
+                if (request == null) {
+                    if (!last && start > 0) {
+                        // 命令跨过窗口结尾，从它的开头映射下一个窗口
+                        decoder.reset();
+                        return windowStart + start;
+                    }
+                    log.warn("AOF文件{}在偏移{}处不完整，忽略之后的内容", path, windowStart + buffer.readerIndex());
+                    return -1;
+                }
+                // 参数借用的是映射本身，释放frame不影响读取，映射在执行完后统一解除
+                request.release();
+                route(request.getArgs(), chunk);
+                validEnd = windowStart + buffer.readerIndex();
+                flushIfFull();
+            }
+            return !last && !buffer.isReadable() ? windowStart + buffer.readerIndex() : -1;
+        }
+
+        private void flushIfFull() throws InterruptedException {
+            if (chunk.count >= COMMANDS_PER_CHUNK) {
+                parsedBytes.addAndGet(validEnd - reported);
+                reported = validEnd;
+                commands.addAndGet(chunk.count);
+                chunks.put(chunk);
+                chunk = new Chunk(shardGroup.size());
+            }
+        }
+
+        private void route(List<Resp> args, Chunk chunk) {
+            CommonCommandType type = ShardGroup.typeOf(args);
+            if (type == null) {
+                if (failedCommands.incrementAndGet() <= MAX_LOGGED_FAILURES) {
+                    log.warn("AOF文件{}中有不支持的命令，已跳过", path);
+                }
+                return;
+            }
+            Command command = type.getCommand();
+            if (!(command instanceof WriteCommand writeCommand)) {
+                return;
+            }
+            List<ShardPart> parts;
+            try {
+                parts = shardGroup.split(type, args);
+            } catch (IllegalArgumentException e) {
+                if (failedCommands.incrementAndGet() <= MAX_LOGGED_FAILURES) {
+                    log.warn("AOF文件{}中的命令无法重放: {}", path, e.getMessage());
+                }
+                return;
+            }
+            for (ShardPart part : parts) {
+                chunk.add(part.getShard().getIndex(), new Replayed(writeCommand, part.getArgs()));
+            }
+            chunk.count++;
+        }
+    }
+
+    /**
+     * 一块命令按分片分好的批次，没有命令的分片为null
+     */
+    private static final class Chunk {
+        private static final Chunk END = new Chunk(0);
+
+        private final List<Replayed>[] byShard;
+        /**
+         * 有命令的分片数
+         */
+        private int shards;
+        private int count;
+
+        @SuppressWarnings("unchecked")
+        private Chunk(int shardCount) {
+            byShard = (List<Replayed>[]) new List<?>[shardCount];
+        }
+
+        private void add(int shard, Replayed replayed) {
+            if (byShard[shard] == null) {
+                byShard[shard] = new ArrayList<>();
+                shards++;
+            }
+            byShard[shard].add(replayed);
+        }
+    }
+
+    private static final class Replayed {
+        private final WriteCommand command;
+        private final List<Resp> args;
+
+        private Replayed(WriteCommand command, List<Resp> args) {
+            this.command = command;
+            this.args = args;
+        }
+    }
+}
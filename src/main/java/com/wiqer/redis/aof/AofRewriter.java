@@ -0,0 +1,119 @@
+package com.wiqer.redis.aof;
+
+import com.wiqer.redis.core.RedisCore;
+import com.wiqer.redis.datatype.BytesWrapper;
+import com.wiqer.redis.datatype.RedisData;
+import com.wiqer.redis.datatype.RedisHash;
+import com.wiqer.redis.datatype.RedisList;
+import com.wiqer.redis.datatype.RedisSet;
+import com.wiqer.redis.datatype.RedisStream;
+import com.wiqer.redis.datatype.RedisString;
+import com.wiqer.redis.datatype.RedisZset;
+import io.netty.buffer.ByteBuf;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 把一个分片的数据导出为重建它所需的最少命令，用于AOF重写
+ * <p>
+ * 与redis的rewriteAppendOnlyFile一致：集合类型每条命令最多带{@link #ITEMS_PER_COMMAND}个元素，
+ * 带过期时间的key随后跟一条PEXPIREAT，已过期的key不导出
+ *
+ * @author lilan
+ */
+final class AofRewriter {
+
+    private static final int ITEMS_PER_COMMAND = 64;
+    /**
+     * 导出结果按该大小切成多个缓冲区，不需要一个覆盖整个分片的连续缓冲区
+     */
+    private static final int CHUNK_SIZE = 4 << 20;
+
+    private static final BytesWrapper SET = name("SET");
+    private static final BytesWrapper RPUSH = name("RPUSH");
+    private static final BytesWrapper SADD = name("SADD");
+    private static final BytesWrapper HSET = name("HSET");
+    private static final BytesWrapper ZADD = name("ZADD");
+    private static final BytesWrapper XADD = name("XADD");
+    private static final BytesWrapper PEXPIREAT = name("PEXPIREAT");
+
+    private final AofBuffer buffer = new AofBuffer();
+    private final List<ByteBuf> chunks = new ArrayList<>();
+
+    private AofRewriter() {
+    }
+
+    /**
+     * 必须在分片线程上调用，导出期间分片不执行其他命令
+     *
+     * @return RESP编码的命令，由调用方释放
+     */
+    static List<ByteBuf> rewrite(RedisCore redisCore) {
+        AofRewriter rewriter = new AofRewriter();
+        redisCore.forEach(rewriter::rewrite);
+        ByteBuf last = rewriter.buffer.take();
+        if (last != null) {
+            rewriter.chunks.add(last);
+        }
+        return rewriter.chunks;
+    }
+
+    private void rewrite(BytesWrapper key, RedisData redisData) {
+        if (redisData instanceof RedisString redisString) {
+            buffer.begin(3).arg(SET).arg(key).arg(redisString.getValue());
+        } else if (redisData instanceof RedisList redisList) {
+            rewriteItems(RPUSH, key, redisList.values(), 1, (item, out) -> out.arg(item));
+        } else if (redisData instanceof RedisSet redisSet) {
+            rewriteItems(SADD, key, redisSet.smembers(), 1, (item, out) -> out.arg(item));
+        } else if (redisData instanceof RedisHash redisHash) {
+            rewriteItems(HSET, key, redisHash.getMap().entrySet(), 2,
+                    (entry, out) -> out.arg(entry.getKey()).arg(entry.getValue()));
+        } else if (redisData instanceof RedisZset redisZset) {
+            rewriteItems(ZADD, key, redisZset.members(), 2,
+                    (member, out) -> out.arg(member.getScore()).arg(member.getKey()));
+        } else if (redisData instanceof RedisStream redisStream) {
+            for (Map.Entry<RedisStream.StreamId, List<BytesWrapper>> entry : redisStream.entries().entrySet()) {
+                buffer.begin(3 + entry.getValue().size()).arg(XADD).arg(key)
+                        .arg(name(entry.getKey().toString()));
+                entry.getValue().forEach(buffer::arg);
+            }
+        } else {
+            throw new IllegalStateException("不支持重写的数据类型: " + redisData.getClass().getSimpleName());
+        }
+        if (redisData.timeout() != -1) {
+            buffer.begin(3).arg(PEXPIREAT).arg(key).arg(redisData.timeout());
+        }
+        if (buffer.size() >= CHUNK_SIZE) {
+            chunks.add(buffer.take());
+        }
+    }
+
+    /**
+     * @param width 每个元素占的参数个数
+     */
+    private <T> void rewriteItems(BytesWrapper command, BytesWrapper key, Collection<T> items, int width, ItemWriter<T> writer) {
+        Iterator<T> iterator = items.iterator();
+        int remaining = items.size();
+        while (remaining > 0) {
+            int count = Math.min(remaining, ITEMS_PER_COMMAND);
+            buffer.begin(2 + count * width).arg(command).arg(key);
+            for (int i = 0; i < count; i++) {
+                writer.write(iterator.next(), buffer);
+            }
+            remaining -= count;
+        }
+    }
+
+    private static BytesWrapper name(String name) {
+        return new BytesWrapper(name.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private interface ItemWriter<T> {
+        void write(T item, AofBuffer out);
+    }
+}
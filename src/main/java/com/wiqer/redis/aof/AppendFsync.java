@@ -0,0 +1,40 @@
+package com.wiqer.redis.aof;
+
+import io.netty.util.internal.StringUtil;
+
+import java.util.Locale;
+
+/**
+ * AOF刷盘策略，与redis的appendfsync一致
+ *
+ * @author lilan
+ */
+public enum AppendFsync {
+    /**
+     * 每批命令写入后立即刷盘，回复在刷盘之后才写出
+     */
+    ALWAYS,
+    /**
+     * 每秒最多刷盘一次，宕机最多丢失约1秒的写入
+     */
+    EVERYSEC,
+    /**
+     * 不主动刷盘，由操作系统决定何时写回
+     */
+    NO;
+
+    /**
+     * @param value 为空时使用everysec
+     * @throws IllegalArgumentException 不是always、everysec、no之一
+     */
+    public static AppendFsync parse(String value) {
+        if (StringUtil.isNullOrEmpty(value) || value.isBlank()) {
+            return EVERYSEC;
+        }
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("appendfsync只能是always、everysec或no: " + value);
+        }
+    }
+}
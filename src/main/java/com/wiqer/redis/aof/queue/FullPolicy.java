@@ -0,0 +1,40 @@
+package com.wiqer.redis.aof.queue;
+
+import io.netty.util.internal.StringUtil;
+
+import java.util.Locale;
+
+/**
+ * {@link MpscRingQueue}已满时生产者的处理方式
+ *
+ * @author lilan
+ */
+public enum FullPolicy {
+    /**
+     * 短暂自旋后park，消费者腾出空间后唤醒
+     */
+    BLOCK,
+    /**
+     * 一直自旋等待，延迟最低，但等待期间占满CPU
+     */
+    SPIN,
+    /**
+     * 立即放弃并计数
+     */
+    DROP;
+
+    /**
+     * @param value 为空时使用block
+     * @throws IllegalArgumentException 不是block、spin、drop之一
+     */
+    public static FullPolicy parse(String value) {
+        if (StringUtil.isNullOrEmpty(value) || value.isBlank()) {
+            return BLOCK;
+        }
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("队列满时的策略只能是block、spin或drop: " + value);
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package com.wiqer.redis.aof.queue;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 无锁的多生产者、单消费者有界环形队列
+ * 特点：
+ * 1. 每个槽位带一个序号，生产者CAS递增尾序号占得槽位，写入元素后发布槽位序号，不加锁
+ * 2. 头、尾序号各自填充到独立的缓存行，消费者只写头序号
+ * 3. 消费者用{@link #drainTo}一次取出所有已发布的元素，整批只更新一次头序号
+ * 4. 队列满时按{@link FullPolicy}阻塞、自旋或丢弃，丢弃的元素计数
+ * 5. 消费者在队列为空时可以park，生产者发布后唤醒它；等待空间而park的生产者在消费者取走元素后依次被唤醒
+ * <p>
+ * 只能有一个线程调用poll、drainTo等消费方法
+ *
+ * @author lilan
+ */
+public final class MpscRingQueue<E> {
+
+    private static final VarHandle SEQUENCES = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final VarHandle ELEMENTS = MethodHandles.arrayElementVarHandle(Object[].class);
+    private static final VarHandle WAITING_CONSUMER;
+    /**
+     * park之前的自旋次数，单核上自旋只会推迟对方线程运行，不自旋
+     */
+    private static final int SPINS = Runtime.getRuntime().availableProcessors() > 1 ? 128 : 0;
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    static {
+        try {
+            WAITING_CONSUMER = MethodHandles.lookup().findVarHandle(MpscRingQueue.class, "waitingConsumer", Thread.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final int capacity;
+    private final int mask;
+    private final long[] sequences;
+    private final Object[] elements;
+    private final FullPolicy fullPolicy;
+
+    /**
+     * 下一个要占用的位置，生产者竞争更新
+     */
+    private final PaddedSequence tail = new PaddedSequence(0);
+    /**
+     * 下一个要读取的位置，只有消费者更新
+     */
+    private final PaddedSequence head = new PaddedSequence(0);
+    /**
+     * 在poll中park的消费者，为null表示消费者没有等待；只有把它换成null的生产者负责唤醒
+     */
+    private volatile Thread waitingConsumer;
+    /**
+     * 等待空间而park的生产者，消费者取走元素后唤醒一个，它入队成功后再唤醒下一个，避免同时唤醒所有生产者
+     */
+    private final ConcurrentLinkedQueue<Thread> waitingProducers = new ConcurrentLinkedQueue<>();
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * @param capacity 向上取整为2的幂
+     */
+    public MpscRingQueue(int capacity, FullPolicy fullPolicy) {
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("容量必须在1到2^30之间: " + capacity);
+        }
+        this.capacity = 1 << (32 - Integer.numberOfLeadingZeros(capacity - 1));
+        this.mask = this.capacity - 1;
+        this.sequences = new long[this.capacity];
+        this.elements = new Object[this.capacity];
+        this.fullPolicy = fullPolicy;
+        for (int i = 0; i < this.capacity; i++) {
+            sequences[i] = i;
+        }
+    }
+
+    /**
+     * 尝试一次入队，不等待
+     *
+     * @return 队列已满时返回false，不计入丢弃
+     */
+    public boolean offer(E e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        while (true) {
+            long t = tail.get();
+            int slot = (int) t & mask;
+            long diff = (long) SEQUENCES.getAcquire(sequences, slot) - t;
+            if (diff == 0) {
+                if (tail.compareAndSet(t, t + 1)) {
+                    ELEMENTS.setRelease(elements, slot, e);
+                    // volatile写与消费者对waitingConsumer的volatile写构成Dekker式同步，不会漏掉唤醒
+                    SEQUENCES.setVolatile(sequences, slot, t + 1);
+                    Thread consumer = waitingConsumer;
+                    if (consumer != null && WAITING_CONSUMER.compareAndSet(this, consumer, null)) {
+                        LockSupport.unpark(consumer);
+                    }
+                    return true;
+                }
+            } else if (diff < 0) {
+                // 槽位上一轮的元素还没被取走
+                return false;
+            }
+            // 其他生产者先占了这个位置，重读尾序号
+        }
+    }
+
+    /**
+     * 按队列的{@link FullPolicy}入队
+     *
+     * @return 只有drop策略下队列已满时返回false
+     * @throws InterruptedException 等待空间时被中断
+     */
+    public boolean enqueue(E e) throws InterruptedException {
+        if (offer(e)) {
+            return true;
+        }
+        switch (fullPolicy) {
+            case DROP -> {
+                dropped.increment();
+                return false;
+            }
+            case SPIN -> {
+                while (!offer(e)) {
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException();
+                    }
+                    Thread.onSpinWait();
+                }
+                return true;
+            }
+            default -> {
+                put(e);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 入队，队列满时不论策略都等待，用于不能丢弃的元素
+     *
+     * @throws InterruptedException 等待空间时被中断
+     */
+    public void put(E e) throws InterruptedException {
+        for (int i = 0; i < SPINS; i++) {
+            if (offer(e)) {
+                return;
+            }
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            Thread.onSpinWait();
+        }
+        Thread current = Thread.currentThread();
+        // 只登记一次，超时醒来仍在等待队列中，不重复加入
+        waitingProducers.add(current);
+        try {
+            while (true) {
+                // 先让消费者看到等待的生产者，再重试
+                VarHandle.fullFence();
+                if (offer(e)) {
+                    break;
+                }
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                LockSupport.parkNanos(this, MAX_PARK_NANOS);
+                if (!waitingProducers.contains(current)) {
+                    // 被唤醒时已移出等待队列，重试失败需要重新登记
+                    waitingProducers.add(current);
+                }
+            }
+        } finally {
+            if (!waitingProducers.remove(current)) {
+                // 消耗了一次唤醒，入队成功或被中断后传给下一个生产者
+                signalProducer();
+            }
+        }
+    }
+
+    private void signalProducer() {
+        if (waitingProducers.isEmpty()) {
+            return;
+        }
+        Thread producer = waitingProducers.poll();
+        if (producer != null) {
+            LockSupport.unpark(producer);
+        }
+    }
+
+    /**
+     * @return 队列为空或下一个位置的生产者还没有写完时返回null
+     */
+    public E poll() {
+        long h = head.getPlain();
+        E e = take(h);
+        if (e != null) {
+            head.setRelease(h + 1);
+            VarHandle.fullFence();
+            signalProducer();
+        }
+        return e;
+    }
+
+    /**
+     * 等待到有元素可取或超时，等待期间park
+     *
+     * @return 超时返回null
+     */
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        E e = poll();
+        if (e != null) {
+            return e;
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (int i = 0; i < SPINS; i++) {
+            Thread.onSpinWait();
+            if ((e = poll()) != null) {
+                return e;
+            }
+        }
+        try {
+            while (true) {
+                waitingConsumer = Thread.currentThread();
+                // 先让生产者看到等待的消费者，再检查槽位
+                VarHandle.fullFence();
+                if ((e = poll()) != null) {
+                    return e;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return null;
+                }
+                LockSupport.parkNanos(this, remaining);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        } finally {
+            waitingConsumer = null;
+        }
+    }
+
+    /**
+     * 取出所有已发布的元素，整批只更新一次头序号
+     *
+     * @return 取出的个数
+     */
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        long h = head.getPlain();
+        int n = 0;
+        E e;
+        while (n < maxElements && (e = take(h + n)) != null) {
+            c.add(e);
+            n++;
+        }
+        if (n > 0) {
+            head.setRelease(h + n);
+            // 交还的槽位对等待的生产者可见之后再检查是否有生产者在等待
+            VarHandle.fullFence();
+            signalProducer();
+        }
+        return n;
+    }
+
+    /**
+     * 取出位置index上已发布的元素并把槽位交还给下一轮的生产者，不更新头序号
+     */
+    @SuppressWarnings("unchecked")
+    private E take(long index) {
+        int slot = (int) index & mask;
+        if ((long) SEQUENCES.getAcquire(sequences, slot) != index + 1) {
+            return null;
+        }
+        E e = (E) ELEMENTS.getAcquire(elements, slot);
+        elements[slot] = null;
+        SEQUENCES.setRelease(sequences, slot, index + capacity);
+        return e;
+    }
+
+    /**
+     * 近似值，包括已占位但还没写完的元素
+     */
+    public int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, capacity));
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public FullPolicy getFullPolicy() {
+        return fullPolicy;
+    }
+
+    /**
+     * drop策略下因队列已满被丢弃的元素个数
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+}
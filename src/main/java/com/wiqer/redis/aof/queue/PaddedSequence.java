@@ -0,0 +1,61 @@
+package com.wiqer.redis.aof.queue;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * 前后各填充一个缓存行的long，生产者与消费者各自更新的序号不落在同一缓存行上
+ * <p>
+ * 填充放在父类与子类中，字段布局不受JVM字段重排影响
+ *
+ * @author lilan
+ */
+final class PaddedSequence extends SequenceValue {
+
+    long p9, p10, p11, p12, p13, p14, p15;
+
+    private static final VarHandle VALUE;
+
+    static {
+        try {
+            VALUE = MethodHandles.lookup().findVarHandle(SequenceValue.class, "value", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    PaddedSequence(long initial) {
+        value = initial;
+    }
+
+    long get() {
+        return (long) VALUE.getVolatile(this);
+    }
+
+    long getPlain() {
+        return value;
+    }
+
+    void set(long newValue) {
+        VALUE.setVolatile(this, newValue);
+    }
+
+    /**
+     * 只保证之前的写入对读到新值的线程可见，用于只有一个线程写的序号
+     */
+    void setRelease(long newValue) {
+        VALUE.setRelease(this, newValue);
+    }
+
+    boolean compareAndSet(long expected, long newValue) {
+        return VALUE.compareAndSet(this, expected, newValue);
+    }
+}
+
+abstract class SequenceLhsPadding {
+    long p1, p2, p3, p4, p5, p6, p7;
+}
+
+abstract class SequenceValue extends SequenceLhsPadding {
+    long value;
+}
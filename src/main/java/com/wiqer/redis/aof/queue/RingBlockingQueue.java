@@ -344,12 +344,15 @@ public class RingBlockingQueue<E> extends AbstractQueue<E> implements BlockingQu
         final AtomicInteger count = this.count;
         putLock.lockInterruptibly();
         try {
-            while (count.get() == capacity) {
+            while (count.get() >= maxSize) {
                 notFull.await();
             }
-            offer(o);
-            c = count.get();
-            if (c + 1 < capacity) {
+            if (!offer(o)) {
+                throw new IllegalStateException("Queue full");
+            }
+            // offer已经计入count，c为放入之前的元素数
+            c = count.get() - 1;
+            if (c + 1 < maxSize) {
                 notFull.signal();
             }
         } finally {
@@ -371,15 +374,17 @@ public class RingBlockingQueue<E> extends AbstractQueue<E> implements BlockingQu
         final AtomicInteger count = this.count;
         putLock.lockInterruptibly();
         try {
-            while (count.get() == capacity) {
+            while (count.get() >= maxSize) {
                 if (nanos <= 0) {
                     return false;
                 }
                 nanos = notFull.awaitNanos(nanos);
             }
-            offer(o);
-            c = count.get();
-            if (c + 1 < capacity) {
+            if (!offer(o)) {
+                return false;
+            }
+            c = count.get() - 1;
+            if (c + 1 < maxSize) {
                 notFull.signal();
             }
         } finally {
@@ -403,14 +408,15 @@ public class RingBlockingQueue<E> extends AbstractQueue<E> implements BlockingQu
                 notEmpty.await();
             }
             x = poll();
-            c = count.get();
+            // poll已经从count中扣除，c为取出之前的元素数
+            c = count.get() + 1;
             if (c > 1) {
                 notEmpty.signal();
             }
         } finally {
             takeLock.unlock();
         }
-        if (c == capacity) {
+        if (c >= maxSize) {
             signalNotFull();
         }
         return x;
@@ -432,14 +438,15 @@ public class RingBlockingQueue<E> extends AbstractQueue<E> implements BlockingQu
                 nanos = notEmpty.awaitNanos(nanos);
             }
             x = poll();
-            c = count.get();
+            // poll已经从count中扣除，c为取出之前的元素数
+            c = count.get() + 1;
             if (c > 1) {
                 notEmpty.signal();
             }
         } finally {
             takeLock.unlock();
         }
-        if (c == capacity) {
+        if (c >= maxSize) {
             signalNotFull();
         }
         return x;
@@ -717,8 +724,9 @@ public class RingBlockingQueue<E> extends AbstractQueue<E> implements BlockingQu
                 }
                 return i;
             } finally {
+                // poll已经从count中逐个扣除
                 if (i > 0) {
-                    signalNotFull = (count.getAndAdd(-i) == capacity);
+                    signalNotFull = count.get() + i >= maxSize;
                 }
             }
         } finally {
@@ -0,0 +1,85 @@
+package com.wiqer.redis.command;
+
+import com.wiqer.redis.datatype.BytesWrapper;
+import com.wiqer.redis.resp.BulkString;
+import com.wiqer.redis.resp.Resp;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * 命令参数视图，下标0为命令名，其余参数按下标取出借用请求缓冲区的内容，不做拷贝
+ * <p>
+ * 由执行命令的线程持有并复用：IO线程上每个连接一个，分片线程上每个分片一个；
+ * 只在一次{@link Command#handle}调用内有效，命令需要保存参数时自行persist
+ *
+ * @author lilan
+ */
+public final class Argv {
+
+    private static final String NOT_INTEGER = "ERR value is not an integer or out of range";
+
+    private List<Resp> args;
+
+    private final Range range = new Range();
+
+    public Argv reset(List<Resp> args) {
+        this.args = args;
+        return this;
+    }
+
+    public int count() {
+        return args.size();
+    }
+
+    public BytesWrapper get(int index) {
+        return ((BulkString) args.get(index)).getContent();
+    }
+
+    public String string(int index) {
+        return get(index).toUtf8String();
+    }
+
+    /**
+     * @throws NumberFormatException 不是整数或超出int范围，message即为错误回复
+     */
+    public int intValue(int index) {
+        long value;
+        try {
+            value = get(index).parseLong();
+        } catch (NumberFormatException e) {
+            throw new NumberFormatException(NOT_INTEGER);
+        }
+        if (value != (int) value) {
+            throw new NumberFormatException(NOT_INTEGER);
+        }
+        return (int) value;
+    }
+
+    public boolean equalsIgnoreCase(int index, String option) {
+        return string(index).equalsIgnoreCase(option);
+    }
+
+    /**
+     * 从from开始的其余参数，返回的列表同样被复用，不能保存
+     */
+    public List<BytesWrapper> from(int from) {
+        range.from = from;
+        return range;
+    }
+
+    private final class Range extends AbstractList<BytesWrapper> implements RandomAccess {
+        private int from;
+
+        @Override
+        public BytesWrapper get(int index) {
+            return Argv.this.get(from + index);
+        }
+
+        @Override
+        public int size() {
+            return Math.max(args.size() - from, 0);
+        }
+    }
+}
@@ -1,38 +1,30 @@
 package com.wiqer.redis.command;
 
 import com.wiqer.redis.core.RedisCore;
-import com.wiqer.redis.resp.Resp;
 import io.netty.channel.ChannelHandlerContext;
 
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
-import java.util.List;
 
 /**
+ * 命令处理器，每个{@link CommonCommandType}对应一个无状态实例，被所有连接和分片共享
+ * <p>
+ * 参数个数已由命令表按arity校验，实现只需按下标读取参数
+ *
  * @author lilan
  */
 public interface Command {
 
     Charset CHARSET = StandardCharsets.UTF_8;
 
-    /**
-     * 获取接口类型
-     *
-     * @return 接口类型
-     */
-    String type();
-
-    /**
-     * 注入属性
-     *
-     * @param array 操作数组
-     */
-    void init(RedisCore redisCore, List<Resp> array);
-
     /**
      * 处理消息命令
+     * <p>
+     * 回复只需ctx.write，由CommandHandler在读批次结束或积压达到阈值时统一flush
      *
-     * @param ctx 管道
+     * @param ctx       管道
+     * @param redisCore 命令所在分片的数据
+     * @param argv      请求参数，只在本次调用内有效
      */
-    void handle(ChannelHandlerContext ctx);
+    void handle(ChannelHandlerContext ctx, RedisCore redisCore, Argv argv);
 }
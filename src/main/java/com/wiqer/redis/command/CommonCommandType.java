@@ -2,94 +2,221 @@ package com.wiqer.redis.command;
 
 import com.wiqer.redis.command.impl.*;
 import com.wiqer.redis.command.impl.hash.Hdel;
+import com.wiqer.redis.command.impl.hash.Hgetall;
 import com.wiqer.redis.command.impl.hash.Hscan;
 import com.wiqer.redis.command.impl.hash.Hset;
+import com.wiqer.redis.command.impl.list.Lpop;
 import com.wiqer.redis.command.impl.list.Lpush;
 import com.wiqer.redis.command.impl.list.Lrange;
 import com.wiqer.redis.command.impl.list.Lrem;
+import com.wiqer.redis.command.impl.list.Rpop;
 import com.wiqer.redis.command.impl.set.Sadd;
 import com.wiqer.redis.command.impl.set.Scan;
+import com.wiqer.redis.command.impl.set.Smembers;
+import com.wiqer.redis.command.impl.set.Spop;
 import com.wiqer.redis.command.impl.set.Srem;
 import com.wiqer.redis.command.impl.set.Sscan;
+import com.wiqer.redis.command.impl.stream.Xadd;
+import com.wiqer.redis.command.impl.stream.Xlen;
 import com.wiqer.redis.command.impl.string.*;
 import com.wiqer.redis.command.impl.zset.Zadd;
+import com.wiqer.redis.command.impl.zset.Zpopmin;
 import com.wiqer.redis.command.impl.zset.Zrem;
 import com.wiqer.redis.command.impl.zset.Zrevrange;
+import com.wiqer.redis.datatype.BytesWrapper;
+import com.wiqer.redis.shard.ReplyMerge;
 import lombok.Getter;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.function.Function;
-import java.util.function.Supplier;
-import java.util.stream.Collectors;
 
 @Getter
 public enum CommonCommandType {
-    auth(Auth::new),
-    config(Config::new),
-    scan(Scan::new),//
-    info(Info::new),
-    client(Client::new),
-    type(Type::new),//
-    get(Get::new),
-    quit(Quit::new),//
-    lrange(Lrange::new),
-    sscan(Sscan::new),
-    hscan(Hscan::new),
-    zrevrange(Zrevrange::new),
-    exists(Exists::new),
-    ping(Ping::new),
-    select(Select::new),
-    keys(Keys::new),
-    mget(Mget::new),
-
-    set(Set::new),
-    ttl(Ttl::new),
-    setnx(SetNx::new),
-    lpush(Lpush::new),
-    lrem(Lrem::new),
-    rpush(Rpush::new),
-    del(Del::new),
-    sadd(Sadd::new),//
-    srem(Srem::new),
-    hset(Hset::new),
-    hdel(Hdel::new),//
-    zadd(Zadd::new),
-    zrem(Zrem::new),
-    setex(SetEx::new),
-    expire(Expire::new),
-    incr(Incr::new),
-    decr(Decr::new),
-    mset(Mset::new),
+    auth(new Auth(), -2),
+    hello(new Hello(), -1),
+    config(new Config(), -2),
+    scan(new Scan(), -2, ReplyMerge.SCAN),
+    info(new Info(), -1),
+    bgrewriteaof(new Bgrewriteaof(), 1),
+    bgsave(new Bgsave(), 1),
+    lastsave(new Lastsave(), 1),
+    client(new Client(), -2),
+    type(new Type(), 2, 1, 1, 1),
+    get(new Get(), 2, 1, 1, 1),
+    quit(new Quit(), -1),
+    lrange(new Lrange(), 4, 1, 1, 1),
+    sscan(new Sscan(), -3, 1, 1, 1),
+    hscan(new Hscan(), -3, 1, 1, 1),
+    hgetall(new Hgetall(), 2, 1, 1, 1),
+    smembers(new Smembers(), 2, 1, 1, 1),
+    zrevrange(new Zrevrange(), -4, 1, 1, 1),
+    exists(new Exists(), -2, 1, -1, 1, ReplyMerge.SUM),
+    ping(new Ping(), -1),
+    select(new Select(), 2),
+    keys(new Keys(), 2, ReplyMerge.CONCAT),
+    mget(new Mget(), -2, 1, -1, 1, ReplyMerge.ORDERED),
+    xlen(new Xlen(), 2, 1, 1, 1),
+
+    set(new Set(), -3, 1, 1, 1),
+    ttl(new Ttl(), 2, 1, 1, 1),
+    setnx(new SetNx(), 3, 1, 1, 1),
+    lpush(new Lpush(), -3, 1, 1, 1),
+    lrem(new Lrem(), 4, 1, 1, 1),
+    rpush(new Rpush(), -3, 1, 1, 1),
+    del(new Del(), -2, 1, -1, 1, ReplyMerge.SUM),
+    sadd(new Sadd(), -3, 1, 1, 1),
+    srem(new Srem(), -3, 1, 1, 1),
+    hset(new Hset(), -4, 1, 1, 1),
+    hdel(new Hdel(), -3, 1, 1, 1),
+    zadd(new Zadd(), -4, 1, 1, 1),
+    zrem(new Zrem(), -3, 1, 1, 1),
+    setex(new SetEx(), 4, 1, 1, 1),
+    expire(new Expire(), -3, 1, 1, 1),
+    pexpireat(new Pexpireat(), 3, 1, 1, 1),
+    incr(new Incr(), 2, 1, 1, 1),
+    decr(new Decr(), 2, 1, 1, 1),
+    mset(new Mset(), -3, 1, -1, 2, ReplyMerge.ALL_OK),
+    lpop(new Lpop(), -2, 1, 1, 1),
+    rpop(new Rpop(), -2, 1, 1, 1),
+    spop(new Spop(), -2, 1, 1, 1),
+    zpopmin(new Zpopmin(), -2, 1, 1, 1),
+    xadd(new Xadd(), -5, 1, 1, 1),
     ;
 
-    private final Supplier<Command> supplier;
+    /**
+     * 无状态的命令处理器，所有连接和分片共享
+     */
+    private final Command command;
+
+    /**
+     * 参数个数（含命令名），与redis一致：正数要求恰好相等，负数要求不少于其绝对值
+     */
+    private final int arity;
+
+    /**
+     * 第一个key的参数下标，0表示命令不带key
+     */
+    private final int firstKey;
+
+    /**
+     * 最后一个key的参数下标，负数从末尾倒数
+     */
+    private final int lastKey;
+
+    /**
+     * 相邻两个key的参数下标间隔，例如MSET的key、value交替为2
+     */
+    private final int keyStep;
+
+    /**
+     * key落在多个分片时合并各分片回复的方式，NONE表示不允许跨分片
+     */
+    private final ReplyMerge merge;
+
+    /**
+     * 不访问数据的命令，直接在IO线程上执行
+     */
+    CommonCommandType(Command command, int arity) {
+        this(command, arity, 0, 0, 0, ReplyMerge.NONE);
+    }
+
+    /**
+     * 遍历全部数据的命令，在所有分片上执行后合并
+     */
+    CommonCommandType(Command command, int arity, ReplyMerge merge) {
+        this(command, arity, 0, 0, 0, merge);
+    }
+
+    CommonCommandType(Command command, int arity, int firstKey, int lastKey, int keyStep) {
+        this(command, arity, firstKey, lastKey, keyStep, ReplyMerge.NONE);
+    }
+
+    CommonCommandType(Command command, int arity, int firstKey, int lastKey, int keyStep, ReplyMerge merge) {
+        this.command = command;
+        this.arity = arity;
+        this.firstKey = firstKey;
+        this.lastKey = lastKey;
+        this.keyStep = keyStep;
+        this.merge = merge;
+    }
+
+    public boolean isLocal() {
+        return firstKey == 0 && merge == ReplyMerge.NONE;
+    }
 
-    CommonCommandType(Supplier<Command> supplier) {
-        this.supplier = supplier;
+    public boolean isBroadcast() {
+        return firstKey == 0 && merge != ReplyMerge.NONE;
     }
 
-    private static final Map<String, CommonCommandType> COMMAND_MAP;
+    /**
+     * @param argc 参数个数，含命令名
+     */
+    public boolean isArityValid(int argc) {
+        return arity >= 0 ? argc == arity : argc >= -arity;
+    }
 
-    static {
-        COMMAND_MAP = Arrays.stream(values())
-                .collect(Collectors.toMap(
-                        CommonCommandType::name,
-                        Function.identity(),
-                        (existing, replacement) -> existing,
-                        HashMap::new
-                ));
+    public String arityError() {
+        return "ERR wrong number of arguments for '" + name() + "' command";
     }
 
-    public static CommonCommandType getType(String commandName) {
-        if (commandName == null) {
-            throw new IllegalArgumentException("Command name cannot be null");
+    /**
+     * 按命令名字节大小写不敏感的完美哈希表：启动时挑选一个使所有命令名互不冲突的种子，
+     * 查找时只计算一次哈希、比较一个候选，命中和未命中都不分配对象
+     */
+    private static final int TABLE_SIZE = 256;
+    private static final CommonCommandType[] TABLE = new CommonCommandType[TABLE_SIZE];
+    private static final byte[][] NAMES = new byte[TABLE_SIZE][];
+    private static final int SEED = findSeed();
+
+    /**
+     * @param name 命令名，可以借用请求缓冲区
+     * @return 不支持的命令返回null
+     */
+    public static CommonCommandType lookup(BytesWrapper name) {
+        int length = name.length();
+        int h = SEED ^ length;
+        for (int i = 0; i < length; i++) {
+            h = (h ^ toLower(name.byteAt(i))) * 0x01000193;
         }
-        CommonCommandType type = COMMAND_MAP.get(commandName.toLowerCase());
-        if (type == null) {
-            throw new IllegalArgumentException("Unsupported command: " + commandName);
+        int index = (h ^ (h >>> 16)) & (TABLE_SIZE - 1);
+        byte[] candidate = NAMES[index];
+        if (candidate == null || candidate.length != length) {
+            return null;
         }
-        return type;
+        for (int i = 0; i < length; i++) {
+            if (candidate[i] != toLower(name.byteAt(i))) {
+                return null;
+            }
+        }
+        return TABLE[index];
+    }
+
+    private static int findSeed() {
+        for (int seed = 0x811c9dc5; ; seed++) {
+            Arrays.fill(TABLE, null);
+            Arrays.fill(NAMES, null);
+            boolean perfect = true;
+            for (CommonCommandType type : values()) {
+                byte[] name = type.name().getBytes(StandardCharsets.US_ASCII);
+                int h = seed ^ name.length;
+                for (byte b : name) {
+                    h = (h ^ b) * 0x01000193;
+                }
+                int index = (h ^ (h >>> 16)) & (TABLE_SIZE - 1);
+                if (TABLE[index] != null) {
+                    perfect = false;
+                    break;
+                }
+                TABLE[index] = type;
+                NAMES[index] = name;
+            }
+            if (perfect) {
+                return seed;
+            }
+        }
+    }
+
+    private static int toLower(byte b) {
+        return b >= 'A' && b <= 'Z' ? b + ('a' - 'A') : b;
     }
 }
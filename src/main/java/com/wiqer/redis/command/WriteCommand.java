@@ -1,5 +1,7 @@
 package com.wiqer.redis.command;
 
+import com.wiqer.redis.aof.AofBuffer;
+import com.wiqer.redis.core.RedisCore;
 import com.wiqer.redis.resp.Resp;
 import io.netty.channel.ChannelHandlerContext;
 
@@ -11,11 +13,21 @@ public interface WriteCommand extends Command {
     /**
      * for aof
      */
-    Resp handle();
+    Resp handle(RedisCore redisCore, Argv argv);
+
+    /**
+     * 命令执行成功后写入AOF的形式，默认原样记录；结果依赖随机数或当前时间的命令改写为确定的形式，重放时得到相同的数据
+     *
+     * @param redisCore 执行命令的分片，可以读取命令写入的结果
+     * @param reply     {@link #handle(RedisCore, Argv)}的返回值，不是错误
+     */
+    default void propagate(RedisCore redisCore, Argv argv, Resp reply, AofBuffer aof) {
+        aof.append(argv);
+    }
 
     @Override
-    default void handle(ChannelHandlerContext ctx) {
-        ctx.writeAndFlush(handle());
+    default void handle(ChannelHandlerContext ctx, RedisCore redisCore, Argv argv) {
+        ctx.write(handle(redisCore, argv));
     }
 
 }
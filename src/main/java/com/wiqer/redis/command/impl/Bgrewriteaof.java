@@ -0,0 +1,28 @@
+package com.wiqer.redis.command.impl;
+
+import com.wiqer.redis.aof.Aof;
+import com.wiqer.redis.command.Argv;
+import com.wiqer.redis.command.Command;
+import com.wiqer.redis.core.RedisCore;
+import com.wiqer.redis.resp.SimpleString;
+import io.netty.channel.ChannelHandlerContext;
+
+/**
+ * BGREWRITEAOF，在后台把当前数据重写为最少的命令，替换已有的AOF段
+ */
+public class Bgrewriteaof implements Command {
+
+    private static final SimpleString STARTED = new SimpleString("Background append only file rewriting started");
+
+    @Override
+    public void handle(ChannelHandlerContext ctx, RedisCore redisCore, Argv argv) {
+        Aof aof = ctx.channel().attr(Aof.AOF).get();
+        if (aof == null) {
+            throw new IllegalStateException("ERR appendonly is not enabled");
+        }
+        if (!aof.rewrite()) {
+            throw new IllegalStateException("ERR Background append only file rewriting already in progress");
+        }
+        ctx.write(STARTED);
+    }
+}
@@ -0,0 +1,25 @@
+package com.wiqer.redis.command.impl;
+
+import com.wiqer.redis.command.Argv;
+import com.wiqer.redis.command.Command;
+import com.wiqer.redis.core.RedisCore;
+import com.wiqer.redis.resp.SimpleString;
+import com.wiqer.redis.snapshot.Snapshot;
+import io.netty.channel.ChannelHandlerContext;
+
+/**
+ * BGSAVE，回复时所有分片已经过切点，之后的写命令不在这次快照中
+ */
+public class Bgsave implements Command {
+
+    private static final SimpleString STARTED = new SimpleString("Background saving started");
+
+    @Override
+    public void handle(ChannelHandlerContext ctx, RedisCore redisCore, Argv argv) {
+        Snapshot snapshot = ctx.channel().attr(Snapshot.SNAPSHOT).get();
+        if (!snapshot.save()) {
+            throw new IllegalStateException("ERR Background save already in progress");
+        }
+        ctx.write(STARTED);
+    }
+}
@@ -1,44 +1,48 @@
 package com.wiqer.redis.command.impl;
 
-import com.wiqer.redis.core.AbstractCore;
-import com.wiqer.redis.core.RedisCore;
+import com.wiqer.redis.command.Argv;
 import com.wiqer.redis.command.Command;
-import com.wiqer.redis.command.CommonCommandType;
-import com.wiqer.redis.datatype.RedisString;
+import com.wiqer.redis.core.RedisCore;
 import com.wiqer.redis.resp.BulkString;
-import com.wiqer.redis.resp.Resp;
+import com.wiqer.redis.resp.RespArray;
+import com.wiqer.redis.util.PropertiesUtil;
 import io.netty.channel.ChannelHandlerContext;
 import lombok.extern.slf4j.Slf4j;
 
-import java.util.List;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
+/**
+ * CONFIG GET parameter，只支持压测客户端启动时查询的几个参数，parameter为*时返回全部
+ */
 @Slf4j
-public class Config extends AbstractCore<RedisString> implements Command {
+public class Config implements Command {
 
-    private String param;
+    private static final Map<String, BulkString> PARAMETERS = new LinkedHashMap<>();
 
-    @Override
-    public String type() {
-        return CommonCommandType.config.name();
+    static {
+        PARAMETERS.put("databases", BulkString.ONE);
+        PARAMETERS.put("save", new BulkString(new byte[0]));
+        PARAMETERS.put("appendonly", new BulkString((PropertiesUtil.getAppendOnly() ? "yes" : "no").getBytes(CHARSET)));
     }
 
     @Override
-    public void init(RedisCore redisCore, List<Resp> array) {
-        if (array.size() != 3) {
-            throw new IllegalStateException();
+    public void handle(ChannelHandlerContext ctx, RedisCore redisCore, Argv argv) {
+        if (argv.count() != 3 || !argv.equalsIgnoreCase(1, "get")) {
+            throw new IllegalArgumentException("ERR unsupported CONFIG subcommand or wrong number of arguments for '"
+                    + argv.string(1) + "'");
         }
-        if (!((BulkString) array.get(1)).getContent().toUtf8String().equals("get")) {
-            throw new IllegalStateException();
+        String param = argv.string(2).toLowerCase();
+        if (param.equals("*")) {
+            ctx.write(RespArray.ofPairs(PARAMETERS.entrySet(), entry -> new BulkString(entry.getKey().getBytes(CHARSET)),
+                    Map.Entry::getValue).asMap());
+            return;
         }
-        param = ((BulkString) array.get(2)).getContent().toUtf8String();
-        setRedisCore(redisCore);
-    }
-
-    @Override
-    public void handle(ChannelHandlerContext ctx) {
-        if (param.equals("*") || param.equals("databases")) {
-            List<BulkString> list = List.of(BulkString.DATABASES, BulkString.ONE);
-            ctx.writeAndFlush(list);
+        BulkString value = PARAMETERS.get(param);
+        if (value == null) {
+            ctx.write(RespArray.EMPTY.asMap());
+            return;
         }
+        ctx.write(RespArray.of(new BulkString(param.getBytes(CHARSET)), value).asMap());
     }
 }
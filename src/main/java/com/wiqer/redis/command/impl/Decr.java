@@ -1,9 +1,8 @@
 package com.wiqer.redis.command.impl;
 
-import com.wiqer.redis.command.CommonCommandType;
-import com.wiqer.redis.core.AbstractCore;
-import com.wiqer.redis.core.RedisCore;
+import com.wiqer.redis.command.Argv;
 import com.wiqer.redis.command.WriteCommand;
+import com.wiqer.redis.core.RedisCore;
 import com.wiqer.redis.datatype.BytesWrapper;
 import com.wiqer.redis.datatype.RedisString;
 import com.wiqer.redis.resp.BulkString;
@@ -12,35 +11,21 @@ import com.wiqer.redis.resp.SimpleString;
 import com.wiqer.redis.util.Format;
 import lombok.extern.slf4j.Slf4j;
 
-import java.util.List;
-
 @Slf4j
-public class Decr extends AbstractCore<RedisString> implements WriteCommand {
-
-    private BytesWrapper key;
-
-    @Override
-    public String type() {
-        return CommonCommandType.decr.name();
-    }
-
-    @Override
-    public void init(RedisCore redisCore, List<Resp> array) {
-        setRedisCore(redisCore);
-        key = ((BulkString) array.get(1)).getContent();
-    }
+public class Decr implements WriteCommand {
 
     @Override
-    public Resp handle() {
-        RedisString redisData = get(key);
+    public Resp handle(RedisCore redisCore, Argv argv) {
+        BytesWrapper key = argv.get(1);
+        RedisString redisData = redisCore.get(key, RedisString.class);
         if (redisData == null) {
             RedisString stringData = RedisString.ZERO();
-            put(key, stringData);
+            redisCore.put(key, stringData);
             return new BulkString(stringData.getValue());
         }
         try {
             BytesWrapper value = redisData.getValue();
-            long v = Format.parseLong(value.getByteArray(), 10);
+            long v = value.parseLong();
             --v;
             BytesWrapper bytesWrapper = new BytesWrapper(Format.toByteArray(v));
             redisData.setValue(bytesWrapper);
@@ -1,42 +1,45 @@
 package com.wiqer.redis.command.impl;
 
-import com.wiqer.redis.command.CommonCommandType;
-import com.wiqer.redis.core.AbstractCore;
-import com.wiqer.redis.core.RedisCore;
+import com.wiqer.redis.aof.AofBuffer;
+import com.wiqer.redis.command.Argv;
 import com.wiqer.redis.command.WriteCommand;
+import com.wiqer.redis.core.RedisCore;
 import com.wiqer.redis.datatype.BytesWrapper;
 import com.wiqer.redis.datatype.RedisData;
-import com.wiqer.redis.resp.BulkString;
 import com.wiqer.redis.resp.Resp;
 import com.wiqer.redis.resp.RespInt;
 
-import java.util.List;
-
-public class Expire extends AbstractCore<RedisData> implements WriteCommand {
-
-    private BytesWrapper key;
-
-    private int second;
-
-    @Override
-    public String type() {
-        return CommonCommandType.expire.name();
-    }
+/**
+ * EXPIRE key seconds
+ * <p>
+ * AOF中改写为绝对时间的PEXPIREAT，重放时不会从重放时刻重新计时；设置后立即过期的key改写为DEL
+ */
+public class Expire implements WriteCommand {
 
-    @Override
-    public void init(RedisCore redisCore, List<Resp> array) {
-        setRedisCore(redisCore);
-        key = ((BulkString) array.get(1)).getContent();
-        second = Integer.parseInt(((BulkString) array.get(2)).getContent().toUtf8String());
-    }
+    private static final BytesWrapper PEXPIREAT = new BytesWrapper("PEXPIREAT".getBytes(CHARSET));
+    private static final BytesWrapper DEL = new BytesWrapper("DEL".getBytes(CHARSET));
 
     @Override
-    public Resp handle() {
-        RedisData redisData = get(key);
+    public Resp handle(RedisCore redisCore, Argv argv) {
+        int second = Integer.parseInt(argv.string(2));
+        RedisData redisData = redisCore.get(argv.get(1));
         if (redisData == null) {
             return RespInt.ZERO;
         }
         redisData.setTimeout(System.currentTimeMillis() + (second * 1000L));
         return RespInt.ONE;
     }
+
+    @Override
+    public void propagate(RedisCore redisCore, Argv argv, Resp reply, AofBuffer aof) {
+        if (reply != RespInt.ONE) {
+            return;
+        }
+        RedisData redisData = redisCore.get(argv.get(1));
+        if (redisData == null) {
+            aof.begin(2).arg(DEL).arg(argv.get(1));
+        } else {
+            aof.begin(3).arg(PEXPIREAT).arg(argv.get(1)).arg(redisData.timeout());
+        }
+    }
 }
@@ -0,0 +1,73 @@
+package com.wiqer.redis.command.impl;
+
+import com.wiqer.redis.command.Argv;
+import com.wiqer.redis.command.Command;
+import com.wiqer.redis.core.RedisCore;
+import com.wiqer.redis.datatype.BytesWrapper;
+import com.wiqer.redis.resp.BulkString;
+import com.wiqer.redis.resp.Errors;
+import com.wiqer.redis.resp.Resp;
+import com.wiqer.redis.resp.RespArray;
+import com.wiqer.redis.resp.RespInt;
+import io.netty.channel.ChannelHandlerContext;
+
+/**
+ * HELLO [protover [AUTH username password] [SETNAME clientname]]
+ * <p>
+ * 协商连接的协议版本，版本保存在channel的{@link Resp#RESP3}属性上，回复本身已按新协议编码
+ */
+public class Hello implements Command {
+
+    private static final BulkString SERVER = bulk("server");
+    private static final BulkString REDIS = bulk("redis");
+    private static final BulkString VERSION = bulk("version");
+    private static final BulkString VERSION_NUMBER = bulk("6.0.0");
+    private static final BulkString PROTO = bulk("proto");
+    private static final BulkString ID = bulk("id");
+    private static final BulkString MODE = bulk("mode");
+    private static final BulkString STANDALONE = bulk("standalone");
+    private static final BulkString ROLE = bulk("role");
+    private static final BulkString MASTER = bulk("master");
+    private static final BulkString MODULES = bulk("modules");
+
+    @Override
+    public void handle(ChannelHandlerContext ctx, RedisCore redisCore, Argv argv) {
+        int protocol = argv.count() > 1 ? argv.intValue(1) : 0;
+        BytesWrapper clientName = null;
+        for (int i = 2; i < argv.count(); i++) {
+            String option = argv.string(i);
+            if ("auth".equalsIgnoreCase(option) && i + 2 < argv.count()) {
+                // 与Auth命令一致，不校验密码
+                i += 2;
+            } else if ("setname".equalsIgnoreCase(option) && i + 1 < argv.count()) {
+                clientName = argv.get(++i);
+            } else {
+                throw new IllegalArgumentException("Syntax error in HELLO option '" + option + "'");
+            }
+        }
+        if (protocol != 0 && protocol != 2 && protocol != 3) {
+            ctx.write(new Errors("NOPROTO unsupported protocol version"));
+            return;
+        }
+        if (protocol != 0) {
+            ctx.channel().attr(Resp.RESP3).set(protocol == 3);
+        }
+        if (clientName != null) {
+            redisCore.putClient(clientName, ctx.channel());
+        }
+        int current = Boolean.TRUE.equals(ctx.channel().attr(Resp.RESP3).get()) ? 3 : 2;
+        ctx.write(RespArray.of(
+                SERVER, REDIS,
+                VERSION, VERSION_NUMBER,
+                PROTO, RespInt.valueOf(current),
+                ID, RespInt.valueOf(ctx.channel().hashCode() & Integer.MAX_VALUE),
+                MODE, STANDALONE,
+                ROLE, MASTER,
+                MODULES, RespArray.EMPTY
+        ).asMap());
+    }
+
+    private static BulkString bulk(String content) {
+        return new BulkString(content.getBytes(CHARSET));
+    }
+}
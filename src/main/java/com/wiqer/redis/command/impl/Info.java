@@ -1,13 +1,10 @@
 package com.wiqer.redis.command.impl;
 
-import com.wiqer.redis.core.AbstractCore;
+import com.wiqer.redis.command.Argv;
 import com.wiqer.redis.core.RedisCore;
 import com.wiqer.redis.command.Command;
-import com.wiqer.redis.command.CommonCommandType;
 import com.wiqer.redis.datatype.BytesWrapper;
-import com.wiqer.redis.datatype.RedisData;
 import com.wiqer.redis.resp.BulkString;
-import com.wiqer.redis.resp.Resp;
 import io.netty.channel.ChannelHandlerContext;
 
 import java.lang.management.ManagementFactory;
@@ -15,20 +12,10 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
-public class Info extends AbstractCore<RedisData> implements Command {
+public class Info implements Command {
 
     @Override
-    public String type() {
-        return CommonCommandType.info.name();
-    }
-
-    @Override
-    public void init(RedisCore redisCore, List<Resp> array) {
-        setRedisCore(redisCore);
-    }
-
-    @Override
-    public void handle(ChannelHandlerContext ctx) {
+    public void handle(ChannelHandlerContext ctx, RedisCore redisCore, Argv argv) {
         List<String> list = new ArrayList<>();
         list.add("redis_version:jfire_redis_mock");
         list.add("os:" + System.getProperty("os.name"));
@@ -41,7 +28,7 @@ public class Info extends AbstractCore<RedisData> implements Command {
         }
         Optional<String> reduce = Optional.of(acc.toString());
         String s = reduce.get();
-        ctx.writeAndFlush(new BulkString(new BytesWrapper(s.getBytes(CHARSET))));
+        ctx.write(new BulkString(new BytesWrapper(s.getBytes(CHARSET))));
     }
 
     private String getPid() {
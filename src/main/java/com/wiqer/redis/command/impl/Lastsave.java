@@ -0,0 +1,19 @@
+package com.wiqer.redis.command.impl;
+
+import com.wiqer.redis.command.Argv;
+import com.wiqer.redis.command.Command;
+import com.wiqer.redis.core.RedisCore;
+import com.wiqer.redis.resp.RespInt;
+import com.wiqer.redis.snapshot.Snapshot;
+import io.netty.channel.ChannelHandlerContext;
+
+/**
+ * LASTSAVE，最近一次成功保存快照的unix时间
+ */
+public class Lastsave implements Command {
+
+    @Override
+    public void handle(ChannelHandlerContext ctx, RedisCore redisCore, Argv argv) {
+        ctx.write(RespInt.valueOf((int) ctx.channel().attr(Snapshot.SNAPSHOT).get().getLastSave()));
+    }
+}
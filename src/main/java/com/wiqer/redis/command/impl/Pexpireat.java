@@ -0,0 +1,27 @@
+package com.wiqer.redis.command.impl;
+
+import com.wiqer.redis.command.Argv;
+import com.wiqer.redis.command.WriteCommand;
+import com.wiqer.redis.core.RedisCore;
+import com.wiqer.redis.datatype.RedisData;
+import com.wiqer.redis.resp.Resp;
+import com.wiqer.redis.resp.RespInt;
+
+/**
+ * PEXPIREAT key unix-time-milliseconds
+ * <p>
+ * 过期时间为绝对时间，AOF重写以它记录过期时间，重放时不会从重放时刻重新计时
+ */
+public class Pexpireat implements WriteCommand {
+
+    @Override
+    public Resp handle(RedisCore redisCore, Argv argv) {
+        long timeout = argv.get(2).parseLong();
+        RedisData redisData = redisCore.get(argv.get(1));
+        if (redisData == null) {
+            return RespInt.ZERO;
+        }
+        redisData.setTimeout(timeout);
+        return RespInt.ONE;
+    }
+}
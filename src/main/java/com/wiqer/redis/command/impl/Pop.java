@@ -0,0 +1,48 @@
+package com.wiqer.redis.command.impl;
+
+import com.wiqer.redis.command.Argv;
+import com.wiqer.redis.command.WriteCommand;
+import com.wiqer.redis.core.RedisCore;
+import com.wiqer.redis.datatype.BytesWrapper;
+import com.wiqer.redis.datatype.RedisList;
+import com.wiqer.redis.resp.BulkString;
+import com.wiqer.redis.resp.Resp;
+import com.wiqer.redis.resp.RespArray;
+
+import java.util.List;
+import java.util.function.BiFunction;
+
+/**
+ * LPOP/RPOP key [count]
+ * 不带count时回复单个元素，带count时回复数组；列表为空后删除key
+ */
+public abstract class Pop implements WriteCommand {
+
+    private final BiFunction<RedisList, Integer, List<BytesWrapper>> popper;
+
+    public Pop(BiFunction<RedisList, Integer, List<BytesWrapper>> popper) {
+        this.popper = popper;
+    }
+
+    @Override
+    public Resp handle(RedisCore redisCore, Argv argv) {
+        BytesWrapper key = argv.get(1);
+        boolean withCount = argv.count() > 2;
+        int count = withCount ? argv.intValue(2) : 1;
+        if (count < 0) {
+            throw new IllegalArgumentException("ERR value is out of range, must be positive");
+        }
+        RedisList redisList = redisCore.get(key, RedisList.class);
+        if (redisList == null) {
+            return withCount ? RespArray.NULL : BulkString.NullBulkString;
+        }
+        List<BytesWrapper> popped = popper.apply(redisList, count);
+        if (redisList.size() == 0) {
+            redisCore.remove(List.of(key));
+        }
+        if (withCount) {
+            return RespArray.ofBulk(popped);
+        }
+        return popped.isEmpty() ? BulkString.NullBulkString : new BulkString(popped.get(0));
+    }
+}
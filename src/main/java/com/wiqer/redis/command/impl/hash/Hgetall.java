@@ -0,0 +1,21 @@
+package com.wiqer.redis.command.impl.hash;
+
+import com.wiqer.redis.command.Argv;
+import com.wiqer.redis.command.Command;
+import com.wiqer.redis.core.RedisCore;
+import com.wiqer.redis.datatype.RedisHash;
+import com.wiqer.redis.resp.RespArray;
+import io.netty.channel.ChannelHandlerContext;
+
+/**
+ * RESP3下回复map，RESP2下回复field、value交替的数组
+ */
+public class Hgetall implements Command {
+
+    @Override
+    public void handle(ChannelHandlerContext ctx, RedisCore redisCore, Argv argv) {
+        RedisHash redisHash = redisCore.get(argv.get(1), RedisHash.class);
+        RespArray entries = redisHash == null ? RespArray.EMPTY : RespArray.ofBulkEntries(redisHash.getMap());
+        ctx.write(entries.asMap());
+    }
+}
@@ -1,49 +1,33 @@
 package com.wiqer.redis.command.impl.hash;
 
-import com.wiqer.redis.command.CommonCommandType;
-import com.wiqer.redis.core.AbstractCore;
-import com.wiqer.redis.core.RedisCore;
+import com.wiqer.redis.command.Argv;
 import com.wiqer.redis.command.WriteCommand;
+import com.wiqer.redis.core.RedisCore;
 import com.wiqer.redis.datatype.BytesWrapper;
 import com.wiqer.redis.datatype.RedisHash;
-import com.wiqer.redis.resp.BulkString;
 import com.wiqer.redis.resp.Resp;
 import com.wiqer.redis.resp.RespInt;
 
-import java.util.List;
-
-public class Hset extends AbstractCore<RedisHash> implements WriteCommand {
-
-    private BytesWrapper key;
-    private BytesWrapper field;
-    private BytesWrapper value;
-
-    @Override
-    public String type() {
-        return CommonCommandType.hset.name();
-    }
-
-    @Override
-    public void init(RedisCore redisCore, List<Resp> array) {
-        setRedisCore(redisCore);
-        key = ((BulkString) array.get(1)).getContent();
-        field = ((BulkString) array.get(2)).getContent();
-        value = ((BulkString) array.get(3)).getContent();
-    }
+/**
+ * HSET key field value [field value ...]
+ */
+public class Hset implements WriteCommand {
 
     @Override
-    public Resp handle() {
-        RedisHash redisData = get(key);
-        int put;
+    public Resp handle(RedisCore redisCore, Argv argv) {
+        if ((argv.count() & 1) != 0) {
+            throw new IllegalArgumentException("ERR wrong number of arguments for 'hset' command");
+        }
+        BytesWrapper key = argv.get(1);
+        RedisHash redisData = redisCore.get(key, RedisHash.class);
+        RedisHash redisHash = redisData == null ? new RedisHash() : redisData;
+        int put = 0;
+        for (int i = 2; i < argv.count(); i += 2) {
+            put += redisHash.put(argv.get(i), argv.get(i + 1));
+        }
         if (redisData == null) {
-            RedisHash redisHash = new RedisHash();
-            put = redisHash.put(field, value);
-            redisHash.put(field, value);
-            put(key, redisHash);
-        } else {
-            put = redisData.put(field, value);
-            redisData.put(field, value);
+            redisCore.put(key, redisHash);
         }
-        return new RespInt(put);
+        return RespInt.valueOf(put);
     }
 }
@@ -1,39 +1,21 @@
 package com.wiqer.redis.command.impl.list;
 
-import com.wiqer.redis.command.CommonCommandType;
-import com.wiqer.redis.core.RedisCore;
-import com.wiqer.redis.core.AbstractCore;
+import com.wiqer.redis.command.Argv;
 import com.wiqer.redis.command.WriteCommand;
+import com.wiqer.redis.core.RedisCore;
 import com.wiqer.redis.datatype.BytesWrapper;
 import com.wiqer.redis.datatype.RedisList;
-import com.wiqer.redis.resp.BulkString;
 import com.wiqer.redis.resp.Resp;
 import com.wiqer.redis.resp.RespInt;
 
-import java.util.List;
-
-public class Lrem extends AbstractCore<RedisList> implements WriteCommand {
-
-    private BytesWrapper key;
-    private BytesWrapper value;
-
-    @Override
-    public String type() {
-        return CommonCommandType.lrem.name();
-    }
-
-    @Override
-    public void init(RedisCore redisCore, List<Resp> array) {
-        setRedisCore(redisCore);
-        key = ((BulkString) array.get(1)).getContent();
-        value = ((BulkString) array.get(3)).getContent();
-    }
+public class Lrem implements WriteCommand {
 
     @Override
-    public Resp handle() {
-        RedisList redisList = get(key);
+    public Resp handle(RedisCore redisCore, Argv argv) {
+        BytesWrapper value = argv.get(3);
+        RedisList redisList = redisCore.get(argv.get(1), RedisList.class);
         int remove = redisList.remove(value);
         redisList.remove(value);
-        return new RespInt(remove);
+        return RespInt.valueOf(remove);
     }
 }
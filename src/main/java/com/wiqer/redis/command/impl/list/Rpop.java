@@ -0,0 +1,11 @@
+package com.wiqer.redis.command.impl.list;
+
+import com.wiqer.redis.command.impl.Pop;
+import com.wiqer.redis.datatype.RedisList;
+
+public class Rpop extends Pop {
+
+    public Rpop() {
+        super(RedisList::rpop);
+    }
+}
@@ -0,0 +1,21 @@
+package com.wiqer.redis.command.impl.set;
+
+import com.wiqer.redis.command.Argv;
+import com.wiqer.redis.command.Command;
+import com.wiqer.redis.core.RedisCore;
+import com.wiqer.redis.datatype.RedisSet;
+import com.wiqer.redis.resp.RespArray;
+import io.netty.channel.ChannelHandlerContext;
+
+/**
+ * RESP3下回复set，RESP2下回复数组
+ */
+public class Smembers implements Command {
+
+    @Override
+    public void handle(ChannelHandlerContext ctx, RedisCore redisCore, Argv argv) {
+        RedisSet redisSet = redisCore.get(argv.get(1), RedisSet.class);
+        RespArray members = redisSet == null ? RespArray.EMPTY : RespArray.ofBulk(redisSet.smembers());
+        ctx.write(members.asSet());
+    }
+}
@@ -0,0 +1,57 @@
+package com.wiqer.redis.command.impl.set;
+
+import com.wiqer.redis.aof.AofBuffer;
+import com.wiqer.redis.command.Argv;
+import com.wiqer.redis.command.WriteCommand;
+import com.wiqer.redis.core.RedisCore;
+import com.wiqer.redis.datatype.BytesWrapper;
+import com.wiqer.redis.datatype.RedisSet;
+import com.wiqer.redis.resp.BulkString;
+import com.wiqer.redis.resp.Resp;
+import com.wiqer.redis.resp.RespArray;
+
+import java.util.List;
+
+/**
+ * SPOP key [count]
+ * <p>
+ * 弹出的元素是随机的，AOF中改写为删除实际弹出元素的SREM
+ */
+public class Spop implements WriteCommand {
+
+    private static final BytesWrapper SREM = new BytesWrapper("SREM".getBytes(CHARSET));
+
+    @Override
+    public Resp handle(RedisCore redisCore, Argv argv) {
+        BytesWrapper key = argv.get(1);
+        boolean withCount = argv.count() > 2;
+        int count = withCount ? argv.intValue(2) : 1;
+        if (count < 0) {
+            throw new IllegalArgumentException("ERR value is out of range, must be positive");
+        }
+        RedisSet redisSet = redisCore.get(key, RedisSet.class);
+        if (redisSet == null) {
+            return withCount ? RespArray.EMPTY.asSet() : BulkString.NullBulkString;
+        }
+        List<BytesWrapper> popped = redisSet.spop(count);
+        if (redisSet.size() == 0) {
+            redisCore.remove(List.of(key));
+        }
+        if (withCount) {
+            return RespArray.ofBulk(popped).asSet();
+        }
+        return popped.isEmpty() ? BulkString.NullBulkString : new BulkString(popped.get(0));
+    }
+
+    @Override
+    public void propagate(RedisCore redisCore, Argv argv, Resp reply, AofBuffer aof) {
+        if (reply instanceof BulkString bulkString && bulkString.getContent() != null) {
+            aof.begin(3).arg(SREM).arg(argv.get(1)).arg(bulkString.getContent());
+        } else if (reply instanceof RespArray array && array.getSize() > 0) {
+            aof.begin(array.getSize() + 2).arg(SREM).arg(argv.get(1));
+            for (Object member : array.getElements()) {
+                aof.arg((BytesWrapper) member);
+            }
+        }
+    }
+}
@@ -1,38 +1,20 @@
 package com.wiqer.redis.command.impl.set;
 
-import com.wiqer.redis.core.AbstractCore;
-import com.wiqer.redis.core.RedisCore;
+import com.wiqer.redis.command.Argv;
 import com.wiqer.redis.command.Command;
-import com.wiqer.redis.command.CommonCommandType;
-import com.wiqer.redis.datatype.BytesWrapper;
+import com.wiqer.redis.core.RedisCore;
 import com.wiqer.redis.datatype.RedisSet;
 import com.wiqer.redis.resp.BulkString;
-import com.wiqer.redis.resp.Resp;
+import com.wiqer.redis.resp.RespArray;
 import io.netty.channel.ChannelHandlerContext;
 
-import java.util.List;
-
-public class Sscan extends AbstractCore<RedisSet> implements Command {
-
-    private BytesWrapper key;
-
-    @Override
-    public String type() {
-        return CommonCommandType.sscan.name();
-    }
-
-    @Override
-    public void init(RedisCore redisCore, List<Resp> array) {
-        setRedisCore(redisCore);
-        key = ((BulkString) array.get(1)).getContent();
-    }
+public class Sscan implements Command {
 
     @Override
-    public void handle(ChannelHandlerContext ctx) {
-        RedisSet redisSet = get(key);
-        List<BulkString> list = redisSet.keys().stream().map(BulkString::new).toList();
-        BulkString bulkString = BulkString.ZERO;
-        ctx.writeAndFlush(List.of(bulkString, list));
+    public void handle(ChannelHandlerContext ctx, RedisCore redisCore, Argv argv) {
+        RedisSet redisSet = redisCore.get(argv.get(1), RedisSet.class);
+        RespArray members = redisSet == null ? RespArray.EMPTY : RespArray.ofBulk(redisSet.keys());
+        ctx.write(RespArray.of(BulkString.ZERO, members));
     }
 
 }
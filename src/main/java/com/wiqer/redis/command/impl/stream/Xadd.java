@@ -0,0 +1,112 @@
+package com.wiqer.redis.command.impl.stream;
+
+import com.wiqer.redis.aof.AofBuffer;
+import com.wiqer.redis.command.Argv;
+import com.wiqer.redis.command.WriteCommand;
+import com.wiqer.redis.core.RedisCore;
+import com.wiqer.redis.datatype.BytesWrapper;
+import com.wiqer.redis.datatype.RedisStream;
+import com.wiqer.redis.resp.BulkString;
+import com.wiqer.redis.resp.Resp;
+
+import java.util.List;
+
+/**
+ * XADD key [NOMKSTREAM] [MAXLEN [=|~] threshold] <*|id> field value [field value ...]
+ * <p>
+ * id支持*、ms-*和ms-seq三种形式，~按精确裁剪处理；AOF中以实际生成的id记录，重放时得到相同的id
+ */
+public class Xadd implements WriteCommand {
+
+    private static final String WRONG_ARGUMENTS = "ERR wrong number of arguments for 'xadd' command";
+
+    @Override
+    public Resp handle(RedisCore redisCore, Argv argv) {
+        BytesWrapper key = argv.get(1);
+        boolean noMkStream = false;
+        long maxLen = -1;
+        int index = 2;
+        while (index < argv.count()) {
+            String option = argv.string(index);
+            if ("nomkstream".equalsIgnoreCase(option)) {
+                noMkStream = true;
+                index++;
+            } else if ("maxlen".equalsIgnoreCase(option)) {
+                String threshold = argv.string(++index);
+                if ("=".equals(threshold) || "~".equals(threshold)) {
+                    threshold = argv.string(++index);
+                }
+                maxLen = Long.parseLong(threshold);
+                index++;
+            } else {
+                break;
+            }
+        }
+        if (index >= argv.count()) {
+            throw new IllegalArgumentException(WRONG_ARGUMENTS);
+        }
+        String id = argv.string(index++);
+        if (index == argv.count() || ((argv.count() - index) & 1) != 0) {
+            throw new IllegalArgumentException(WRONG_ARGUMENTS);
+        }
+        Long ms = null;
+        Long seq = null;
+        if (!"*".equals(id)) {
+            try {
+                int dash = id.indexOf('-');
+                if (dash < 0) {
+                    ms = Long.parseUnsignedLong(id);
+                    seq = 0L;
+                } else {
+                    ms = Long.parseUnsignedLong(id.substring(0, dash));
+                    String seqPart = id.substring(dash + 1);
+                    seq = "*".equals(seqPart) ? null : Long.parseUnsignedLong(seqPart);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("ERR Invalid stream ID specified as stream command argument");
+            }
+        }
+        List<BytesWrapper> fields = argv.from(index);
+        RedisStream redisStream = redisCore.get(key, RedisStream.class);
+        if (redisStream == null) {
+            if (noMkStream) {
+                return BulkString.NullBulkString;
+            }
+            redisStream = new RedisStream();
+            RedisStream.StreamId streamId = redisStream.add(ms, seq, fields);
+            redisCore.put(key, redisStream);
+            return reply(redisStream, streamId, maxLen);
+        }
+        return reply(redisStream, redisStream.add(ms, seq, fields), maxLen);
+    }
+
+    @Override
+    public void propagate(RedisCore redisCore, Argv argv, Resp reply, AofBuffer aof) {
+        if (!(reply instanceof BulkString bulkString) || bulkString.getContent() == null) {
+            return;
+        }
+        int idIndex = 2;
+        while (true) {
+            String option = argv.string(idIndex);
+            if ("nomkstream".equalsIgnoreCase(option)) {
+                idIndex++;
+            } else if ("maxlen".equalsIgnoreCase(option)) {
+                String threshold = argv.string(idIndex + 1);
+                idIndex += "=".equals(threshold) || "~".equals(threshold) ? 3 : 2;
+            } else {
+                break;
+            }
+        }
+        aof.begin(argv.count());
+        for (int i = 0; i < argv.count(); i++) {
+            aof.arg(i == idIndex ? bulkString.getContent() : argv.get(i));
+        }
+    }
+
+    private static Resp reply(RedisStream redisStream, RedisStream.StreamId id, long maxLen) {
+        if (maxLen >= 0) {
+            redisStream.trim(maxLen);
+        }
+        return new BulkString(id.toString().getBytes(CHARSET));
+    }
+}
@@ -0,0 +1,17 @@
+package com.wiqer.redis.command.impl.stream;
+
+import com.wiqer.redis.command.Argv;
+import com.wiqer.redis.command.Command;
+import com.wiqer.redis.core.RedisCore;
+import com.wiqer.redis.datatype.RedisStream;
+import com.wiqer.redis.resp.RespInt;
+import io.netty.channel.ChannelHandlerContext;
+
+public class Xlen implements Command {
+
+    @Override
+    public void handle(ChannelHandlerContext ctx, RedisCore redisCore, Argv argv) {
+        RedisStream redisStream = redisCore.get(argv.get(1), RedisStream.class);
+        ctx.write(redisStream == null ? RespInt.ZERO : RespInt.valueOf(redisStream.size()));
+    }
+}
@@ -1,46 +1,25 @@
 package com.wiqer.redis.command.impl.string;
 
-import com.wiqer.redis.core.AbstractCore;
-import com.wiqer.redis.core.RedisCore;
+import com.wiqer.redis.command.Argv;
 import com.wiqer.redis.command.Command;
-import com.wiqer.redis.command.CommonCommandType;
-import com.wiqer.redis.datatype.BytesWrapper;
+import com.wiqer.redis.core.RedisCore;
+import com.wiqer.redis.datatype.RedisData;
 import com.wiqer.redis.datatype.RedisString;
-import com.wiqer.redis.resp.BulkString;
-import com.wiqer.redis.resp.Resp;
+import com.wiqer.redis.resp.RespArray;
 import io.netty.channel.ChannelHandlerContext;
 
-import java.util.LinkedList;
-import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
-
-public class Mget extends AbstractCore<RedisString> implements Command {
-
-    private List<BytesWrapper> keys;
-
-    @Override
-    public String type() {
-        return CommonCommandType.mget.name();
-    }
-
-    @Override
-    public void init(RedisCore redisCore, List<Resp> array) {
-        keys = Stream.of(array).skip(1).map(resp -> ((BulkString) resp).getContent()).collect(Collectors.toList());
-        setRedisCore(redisCore);
-    }
+/**
+ * 回复在ctx.write时即编码或materialize，可以直接映射复用的参数视图
+ */
+public class Mget implements Command {
 
     @Override
-    public void handle(ChannelHandlerContext ctx) {
-        LinkedList<BytesWrapper> linkedList = new LinkedList<>();
-        keys.forEach(key -> {
-            RedisString redisData = get(key);
-            if (redisData != null) {
-                linkedList.add(redisData.getValue());
-            }
-        });
-        List<BulkString> respArray = linkedList.stream().map(BulkString::new).toList();
-        ctx.writeAndFlush(respArray);
+    public void handle(ChannelHandlerContext ctx, RedisCore redisCore, Argv argv) {
+        ctx.write(RespArray.of(argv.from(1), key -> {
+            // 与redis一致，不是字符串的key回复nil
+            RedisData redisData = redisCore.get(key);
+            return redisData instanceof RedisString redisString ? redisString.getValue() : null;
+        }));
     }
 
 }
@@ -1,38 +1,21 @@
 package com.wiqer.redis.command.impl.string;
 
-import com.wiqer.redis.command.CommonCommandType;
-import com.wiqer.redis.core.AbstractCore;
-import com.wiqer.redis.core.RedisCore;
+import com.wiqer.redis.command.Argv;
 import com.wiqer.redis.command.WriteCommand;
-import com.wiqer.redis.datatype.BytesWrapper;
+import com.wiqer.redis.core.RedisCore;
 import com.wiqer.redis.datatype.RedisString;
-import com.wiqer.redis.resp.BulkString;
 import com.wiqer.redis.resp.Resp;
 import com.wiqer.redis.resp.SimpleString;
 
-import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
-
-public class Mset extends AbstractCore<RedisString> implements WriteCommand {
-
-    private List<BytesWrapper> kvList;
+public class Mset implements WriteCommand {
 
     @Override
-    public String type() {
-        return CommonCommandType.mset.name();
-    }
-
-    @Override
-    public void init(RedisCore redisCore, List<Resp> array) {
-        setRedisCore(redisCore);
-        kvList = Stream.of(array).skip(1).map(resp -> ((BulkString) resp).getContent()).collect(Collectors.toList());
-    }
-
-    @Override
-    public Resp handle() {
-        for (int i = 0; i < kvList.size(); i += 2) {
-            put(kvList.get(i), new RedisString(kvList.get(i + 1)));
+    public Resp handle(RedisCore redisCore, Argv argv) {
+        if ((argv.count() & 1) == 0) {
+            throw new IllegalArgumentException("ERR wrong number of arguments for 'mset' command");
+        }
+        for (int i = 1; i < argv.count(); i += 2) {
+            redisCore.put(argv.get(i), new RedisString(argv.get(i + 1)));
         }
         return SimpleString.OK;
     }
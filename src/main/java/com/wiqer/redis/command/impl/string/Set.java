@@ -1,66 +1,86 @@
 package com.wiqer.redis.command.impl.string;
 
-import com.wiqer.redis.command.CommonCommandType;
-import com.wiqer.redis.core.AbstractCore;
-import com.wiqer.redis.core.RedisCore;
+import com.wiqer.redis.aof.AofBuffer;
+import com.wiqer.redis.command.Argv;
 import com.wiqer.redis.command.WriteCommand;
+import com.wiqer.redis.core.RedisCore;
 import com.wiqer.redis.datatype.BytesWrapper;
+import com.wiqer.redis.datatype.RedisData;
 import com.wiqer.redis.datatype.RedisString;
 import com.wiqer.redis.resp.BulkString;
 import com.wiqer.redis.resp.Resp;
 import com.wiqer.redis.resp.SimpleString;
 
-import java.util.List;
-
-public class Set extends AbstractCore<RedisString> implements WriteCommand {
-
-    private BytesWrapper key;
-    private BytesWrapper value;
-    private long timeout = -1;
-    private boolean notExistSet = false;
-    private boolean existSet = false;
+/**
+ * SET key value [EX seconds|PX milliseconds|EXAT unix-time-seconds|PXAT unix-time-milliseconds] [NX|XX]
+ * <p>
+ * AOF中改写为不带条件的SET，过期时间改写为绝对时间的PXAT，重放时不会从重放时刻重新计时
+ */
+public class Set implements WriteCommand {
 
-    @Override
-    public String type() {
-        return CommonCommandType.set.name();
-    }
+    private static final BytesWrapper SET = new BytesWrapper("SET".getBytes(CHARSET));
+    private static final BytesWrapper PXAT = new BytesWrapper("PXAT".getBytes(CHARSET));
+    private static final BytesWrapper DEL = new BytesWrapper("DEL".getBytes(CHARSET));
 
     @Override
-    public void init(RedisCore redisCore, List<Resp> array) {
-        setRedisCore(redisCore);
-        key = ((BulkString) array.get(1)).getContent();
-        value = ((BulkString) array.get(2)).getContent();
+    public Resp handle(RedisCore redisCore, Argv argv) {
+        BytesWrapper key = argv.get(1);
+        long timeout = -1;
+        boolean absolute = false;
+        boolean notExistSet = false;
+        boolean existSet = false;
         int index = 3;
-        while (index < array.size()) {
-            String string = ((BulkString) array.get(index)).getContent().toUtf8String();
+        while (index < argv.count()) {
+            String string = argv.string(index);
             index++;
-            if (string.startsWith("EX")) {
-                String seconds = ((BulkString) array.get(index)).getContent().toUtf8String();
-                timeout = Integer.parseInt(seconds) * 1000L;
+            if (string.equals("EXAT")) {
+                timeout = Long.parseLong(argv.string(index)) * 1000L;
+                absolute = true;
+            } else if (string.equals("PXAT")) {
+                timeout = Long.parseLong(argv.string(index));
+                absolute = true;
+            } else if (string.startsWith("EX")) {
+                timeout = Integer.parseInt(argv.string(index)) * 1000L;
             } else if (string.startsWith("PX")) {
-                String seconds = ((BulkString) array.get(index)).getContent().toUtf8String();
-                timeout = Integer.parseInt(seconds);
+                timeout = Integer.parseInt(argv.string(index));
             } else if (string.equals("NX")) {
                 notExistSet = true;
             } else if (string.equals("XX")) {
                 existSet = true;
             }
         }
-    }
-
-    @Override
-    public Resp handle() {
-        if ((!notExistSet || !exist(key))
-                && (!existSet || exist(key))) {
-            if (timeout != -1) {
+        if ((!notExistSet || !redisCore.exist(key))
+                && (!existSet || redisCore.exist(key))) {
+            if (timeout != -1 && !absolute) {
                 timeout += System.currentTimeMillis();
             }
             RedisString stringData = new RedisString();
-            stringData.setValue(value);
+            stringData.setValue(argv.get(2));
             stringData.setTimeout(timeout);
-            put(key, stringData);
+            redisCore.put(key, stringData);
             return SimpleString.OK;
         }
         return BulkString.NullBulkString;
     }
+
+    @Override
+    public void propagate(RedisCore redisCore, Argv argv, Resp reply, AofBuffer aof) {
+        if (reply == SimpleString.OK) {
+            propagateValue(redisCore, argv.get(1), argv.get(2), aof);
+        }
+    }
+
+    /**
+     * 以写入后的过期时间记录字符串的写入，写入后立即过期时记录为DEL
+     */
+    static void propagateValue(RedisCore redisCore, BytesWrapper key, BytesWrapper value, AofBuffer aof) {
+        RedisData redisData = redisCore.get(key);
+        if (redisData == null) {
+            aof.begin(2).arg(DEL).arg(key);
+        } else if (redisData.timeout() == -1) {
+            aof.begin(3).arg(SET).arg(key).arg(value);
+        } else {
+            aof.begin(5).arg(SET).arg(key).arg(value).arg(PXAT).arg(redisData.timeout());
+        }
+    }
 }
@@ -1,42 +1,32 @@
 package com.wiqer.redis.command.impl.string;
 
-import com.wiqer.redis.command.CommonCommandType;
-import com.wiqer.redis.core.AbstractCore;
-import com.wiqer.redis.core.RedisCore;
+import com.wiqer.redis.aof.AofBuffer;
+import com.wiqer.redis.command.Argv;
 import com.wiqer.redis.command.WriteCommand;
-import com.wiqer.redis.datatype.BytesWrapper;
+import com.wiqer.redis.core.RedisCore;
 import com.wiqer.redis.datatype.RedisString;
-import com.wiqer.redis.resp.BulkString;
 import com.wiqer.redis.resp.Resp;
 import com.wiqer.redis.resp.SimpleString;
 
-import java.util.List;
-
-public class SetEx extends AbstractCore<RedisString> implements WriteCommand {
-
-    private BytesWrapper key;
-    private int seconds;
-    private BytesWrapper value;
-
-    @Override
-    public String type() {
-        return CommonCommandType.setex.name();
-    }
+/**
+ * SETEX key seconds value
+ * <p>
+ * AOF中改写为SET key value PXAT，见{@link Set}
+ */
+public class SetEx implements WriteCommand {
 
     @Override
-    public void init(RedisCore redisCore, List<Resp> array) {
-        key = ((BulkString) array.get(1)).getContent();
-        seconds = Integer.parseInt(((BulkString) array.get(2)).getContent().toUtf8String());
-        value = ((BulkString) array.get(3)).getContent();
-        setRedisCore(redisCore);
-    }
-
-    @Override
-    public Resp handle() {
+    public Resp handle(RedisCore redisCore, Argv argv) {
+        int seconds = Integer.parseInt(argv.string(2));
         RedisString redisString = new RedisString();
-        redisString.setValue(value);
+        redisString.setValue(argv.get(3));
         redisString.setTimeout(System.currentTimeMillis() + (seconds * 1000L));
-        put(key, redisString);
+        redisCore.put(argv.get(1), redisString);
         return SimpleString.OK;
     }
+
+    @Override
+    public void propagate(RedisCore redisCore, Argv argv, Resp reply, AofBuffer aof) {
+        Set.propagateValue(redisCore, argv.get(1), argv.get(3), aof);
+    }
 }
@@ -1,42 +1,22 @@
 package com.wiqer.redis.command.impl.string;
 
-import com.wiqer.redis.command.CommonCommandType;
-import com.wiqer.redis.core.AbstractCore;
-import com.wiqer.redis.core.RedisCore;
+import com.wiqer.redis.command.Argv;
 import com.wiqer.redis.command.WriteCommand;
+import com.wiqer.redis.core.RedisCore;
 import com.wiqer.redis.datatype.BytesWrapper;
 import com.wiqer.redis.datatype.RedisString;
-import com.wiqer.redis.resp.BulkString;
 import com.wiqer.redis.resp.Resp;
 import com.wiqer.redis.resp.RespInt;
 
-import java.util.List;
-
-public class SetNx extends AbstractCore<RedisString> implements WriteCommand {
-
-    private BytesWrapper key;
-
-    private BytesWrapper value;
-
-    @Override
-    public String type() {
-        return CommonCommandType.setnx.name();
-    }
-
-    @Override
-    public void init(RedisCore redisCore, List<Resp> array) {
-        setRedisCore(redisCore);
-        key = ((BulkString) array.get(1)).getContent();
-        value = ((BulkString) array.get(2)).getContent();
-    }
+public class SetNx implements WriteCommand {
 
     @Override
-    public Resp handle() {
-        boolean exist = exist(key);
-        if (!exist) {
+    public Resp handle(RedisCore redisCore, Argv argv) {
+        BytesWrapper key = argv.get(1);
+        if (!redisCore.exist(key)) {
             RedisString redisString = new RedisString();
-            redisString.setValue(value);
-            put(key, redisString);
+            redisString.setValue(argv.get(2));
+            redisCore.put(key, redisString);
             return RespInt.ONE;
         }
         return RespInt.ZERO;
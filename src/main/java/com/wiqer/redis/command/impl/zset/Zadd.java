@@ -1,52 +1,35 @@
 package com.wiqer.redis.command.impl.zset;
 
-import com.wiqer.redis.command.CommonCommandType;
-import com.wiqer.redis.core.AbstractCore;
-import com.wiqer.redis.core.RedisCore;
+import com.wiqer.redis.command.Argv;
 import com.wiqer.redis.command.WriteCommand;
+import com.wiqer.redis.core.RedisCore;
 import com.wiqer.redis.datatype.BytesWrapper;
 import com.wiqer.redis.datatype.RedisZset;
-import com.wiqer.redis.resp.BulkString;
 import com.wiqer.redis.resp.Resp;
 import com.wiqer.redis.resp.RespInt;
 
 import java.util.ArrayList;
 import java.util.List;
 
-public class Zadd extends AbstractCore<RedisZset> implements WriteCommand {
-
-    private BytesWrapper key;
-
-    private List<RedisZset.ZsetKey> keys;
-
-    @Override
-    public String type() {
-        return CommonCommandType.zadd.name();
-    }
+public class Zadd implements WriteCommand {
 
     @Override
-    public void init(RedisCore redisCore, List<Resp> array) {
-        setRedisCore(redisCore);
-        this.key = ((BulkString) array.get(1)).getContent();
-        this.keys = new ArrayList<>();
-        for (int i = 2; i + 1 < array.size(); i += 2) {
-            long score = Long.parseLong(((BulkString) array.get(i)).getContent().toUtf8String());
-            BytesWrapper member = ((BulkString) array.get(i + 1)).getContent();
-            this.keys.add(new RedisZset.ZsetKey(member, score));
+    public Resp handle(RedisCore redisCore, Argv argv) {
+        BytesWrapper key = argv.get(1);
+        List<RedisZset.ZsetKey> keys = new ArrayList<>((argv.count() - 2) >> 1);
+        for (int i = 2; i + 1 < argv.count(); i += 2) {
+            long score = Long.parseLong(argv.string(i));
+            keys.add(new RedisZset.ZsetKey(argv.get(i + 1), score));
         }
-    }
-
-    @Override
-    public Resp handle() {
-        RedisZset redisData = get(key);
+        RedisZset redisData = redisCore.get(key, RedisZset.class);
         int add;
         if (redisData == null) {
             RedisZset redisZset = new RedisZset();
             add = redisZset.add(keys);
-            put(key, redisZset);
+            redisCore.put(key, redisZset);
         } else {
             add = redisData.add(keys);
         }
-        return new RespInt(add);
+        return RespInt.valueOf(add);
     }
 }
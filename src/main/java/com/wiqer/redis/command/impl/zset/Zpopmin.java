@@ -0,0 +1,36 @@
+package com.wiqer.redis.command.impl.zset;
+
+import com.wiqer.redis.command.Argv;
+import com.wiqer.redis.command.WriteCommand;
+import com.wiqer.redis.core.RedisCore;
+import com.wiqer.redis.datatype.BytesWrapper;
+import com.wiqer.redis.datatype.RedisZset;
+import com.wiqer.redis.resp.Resp;
+import com.wiqer.redis.resp.RespArray;
+import com.wiqer.redis.resp.RespDouble;
+
+import java.util.List;
+
+/**
+ * ZPOPMIN key [count]，回复member、score交替的数组
+ */
+public class Zpopmin implements WriteCommand {
+
+    @Override
+    public Resp handle(RedisCore redisCore, Argv argv) {
+        BytesWrapper key = argv.get(1);
+        int count = argv.count() > 2 ? argv.intValue(2) : 1;
+        if (count < 0) {
+            throw new IllegalArgumentException("ERR value is out of range, must be positive");
+        }
+        RedisZset redisZset = redisCore.get(key, RedisZset.class);
+        if (redisZset == null) {
+            return RespArray.EMPTY;
+        }
+        List<RedisZset.ZsetKey> popped = redisZset.popMin(count);
+        if (redisZset.size() == 0) {
+            redisCore.remove(List.of(key));
+        }
+        return RespArray.ofPairs(popped, RedisZset.ZsetKey::getKey, zsetKey -> new RespDouble(zsetKey.getScore()));
+    }
+}
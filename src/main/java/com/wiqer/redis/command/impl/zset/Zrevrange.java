@@ -1,47 +1,32 @@
 package com.wiqer.redis.command.impl.zset;
 
-import com.wiqer.redis.core.AbstractCore;
-import com.wiqer.redis.core.RedisCore;
+import com.wiqer.redis.command.Argv;
 import com.wiqer.redis.command.Command;
-import com.wiqer.redis.command.CommonCommandType;
-import com.wiqer.redis.datatype.BytesWrapper;
+import com.wiqer.redis.core.RedisCore;
 import com.wiqer.redis.datatype.RedisZset;
-import com.wiqer.redis.resp.BulkString;
-import com.wiqer.redis.resp.Resp;
+import com.wiqer.redis.resp.RespArray;
+import com.wiqer.redis.resp.RespDouble;
 import io.netty.channel.ChannelHandlerContext;
 
 import java.util.List;
-import java.util.stream.Stream;
-
-public class Zrevrange extends AbstractCore<RedisZset> implements Command {
 
-    private BytesWrapper key;
-    private int start;
-    private int end;
-
-    @Override
-    public String type() {
-        return CommonCommandType.zrevrange.name();
-    }
-
-    @Override
-    public void init(RedisCore redisCore, List<Resp> array) {
-        this.key = ((BulkString) array.get(1)).getContent();
-        this.start = Integer.parseInt(((BulkString) array.get(2)).getContent().toUtf8String());
-        this.end = Integer.parseInt(((BulkString) array.get(3)).getContent().toUtf8String());
-        setRedisCore(redisCore);
-    }
+public class Zrevrange implements Command {
 
     @Override
-    public void handle(ChannelHandlerContext ctx) {
-        RedisZset redisZset = get(key);
+    public void handle(ChannelHandlerContext ctx, RedisCore redisCore, Argv argv) {
+        int start = Integer.parseInt(argv.string(2));
+        int end = Integer.parseInt(argv.string(3));
+        boolean withScores = argv.count() > 4 && argv.equalsIgnoreCase(4, "withscores");
+        RedisZset redisZset = redisCore.get(argv.get(1), RedisZset.class);
+        if (redisZset == null) {
+            ctx.write(RespArray.EMPTY);
+            return;
+        }
         List<RedisZset.ZsetKey> keys = redisZset.reRange(start, end);
-        List<Resp> resps = keys.stream().flatMap(key -> {
-            Resp[] info = new Resp[2];
-            info[0] = new BulkString(key.getKey());
-            info[1] = new BulkString(new BytesWrapper(String.valueOf(key.getScore()).getBytes(CHARSET)));
-            return Stream.of(info);
-        }).toList();
-        ctx.writeAndFlush(resps);
+        if (withScores) {
+            ctx.write(RespArray.ofPairs(keys, RedisZset.ZsetKey::getKey, key -> new RespDouble(key.getScore())));
+        } else {
+            ctx.write(RespArray.of(keys, RedisZset.ZsetKey::getKey));
+        }
     }
 }
@@ -0,0 +1,18 @@
+package com.wiqer.redis.core;
+
+import com.wiqer.redis.datatype.BytesWrapper;
+import com.wiqer.redis.datatype.RedisData;
+
+/**
+ * 快照进行中，分片线程第一次访问切点时已存在的key之前，先把它在切点时的值交给快照，之后命令才能修改它
+ *
+ * @author lilan
+ */
+@FunctionalInterface
+public interface CopyOnWrite {
+
+    /**
+     * 在分片线程上调用，返回后data可能被修改
+     */
+    void copy(BytesWrapper key, RedisData data);
+}
@@ -4,37 +4,47 @@ import com.wiqer.redis.BaseHandle;
 import com.wiqer.redis.datatype.*;
 import io.netty.channel.Channel;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentNavigableMap;
-import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.BiConsumer;
 
 /**
+ * 一个数据分片，只由所属分片的执行线程访问
+ *
  * @author lilan
  */
 public class RedisCore implements BaseHandle {
 
+    private static final String WRONG_TYPE = "WRONGTYPE Operation against a key holding the wrong kind of value";
+
     /**
-     * 客户端可能使用hash路由，更换为跳表更好的避免hash冲突
+     * 单线程独占，不需要并发容器；BytesWrapper实现了Comparable，hash冲突严重时HashMap会树化
      */
-    private final ConcurrentNavigableMap<BytesWrapper, RedisData> map =
-            new ConcurrentSkipListMap<>();
+    private final Map<BytesWrapper, RedisData> map = new HashMap<>();
 
     private final ConcurrentHashMap<BytesWrapper, Channel> clients =
             new ConcurrentHashMap<>();
 
     private final Map<Channel, BytesWrapper> clientNames = new ConcurrentHashMap<>();
 
+    /**
+     * 进行中的快照，没有快照时为null
+     */
+    private CopyOnWrite copyOnWrite;
+    private int snapshotEpoch;
+
     @Override
     public Set<BytesWrapper> keys() {
         return map.keySet();
     }
 
     public void putClient(BytesWrapper connectionName, Channel channelContext) {
-        clients.put(connectionName, channelContext);
-        clientNames.put(channelContext, connectionName);
+        BytesWrapper name = connectionName.persist();
+        clients.put(name, channelContext);
+        clientNames.put(channelContext, name);
     }
 
     @Override
@@ -42,9 +52,19 @@ public class RedisCore implements BaseHandle {
         return map.containsKey(key);
     }
 
+    /**
+     * key已存在时只替换value，不存在时才拷贝key，请求中借用的key不会被存入
+     */
     @Override
     public void put(BytesWrapper key, RedisData redisData) {
-        map.put(key, redisData);
+        if (copyOnWrite != null) {
+            beforeWrite(key, map.get(key));
+            // 切点之后写入的值不属于这次快照
+            redisData.setSnapshotEpoch(snapshotEpoch);
+        }
+        if (map.replace(key, redisData) == null) {
+            map.put(key.persist(), redisData);
+        }
     }
 
     /**
@@ -53,6 +73,10 @@ public class RedisCore implements BaseHandle {
     @Override
     public RedisData get(BytesWrapper key) {
         RedisData redisData = map.get(key);
+        if (copyOnWrite != null) {
+            // 不区分读写，取出的值可能被命令原地修改
+            beforeWrite(key, redisData);
+        }
         if (redisData == null || isExpired(redisData)) {
             if (redisData != null) {
                 map.remove(key);
@@ -62,6 +86,18 @@ public class RedisCore implements BaseHandle {
         return redisData;
     }
 
+    /**
+     * @throws IllegalStateException key存在但不是type类型
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends RedisData> T get(BytesWrapper key, Class<T> type) {
+        RedisData redisData = get(key);
+        if (redisData != null && !type.isInstance(redisData)) {
+            throw new IllegalStateException(WRONG_TYPE);
+        }
+        return (T) redisData;
+    }
+
     /**
      * 判断数据是否过期
      */
@@ -70,14 +106,65 @@ public class RedisCore implements BaseHandle {
         return timeout != -1 && timeout < System.currentTimeMillis();
     }
 
+    /**
+     * 遍历所有未过期的key，遍历期间不删除过期的key，用于AOF重写等全量导出
+     */
+    public void forEach(BiConsumer<BytesWrapper, RedisData> action) {
+        for (Map.Entry<BytesWrapper, RedisData> entry : map.entrySet()) {
+            if (!isExpired(entry.getValue())) {
+                action.accept(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
     @Override
     public long remove(List<BytesWrapper> keys) {
+        if (copyOnWrite != null) {
+            keys.forEach(key -> beforeWrite(key, map.get(key)));
+        }
         return keys.stream()
                 .filter(key -> map.remove(key) != null)
                 .count();
     }
 
     public void cleanAll() {
+        if (copyOnWrite != null) {
+            map.forEach(this::beforeWrite);
+        }
         map.clear();
     }
+
+    /**
+     * 在当前位置开始快照：之后第一次访问切点时已存在的key之前，先把它的值交给copyOnWrite
+     *
+     * @return 切点时的所有key，由快照按顺序通过{@link #snapshotValue(BytesWrapper)}取值
+     */
+    public BytesWrapper[] beginSnapshot(CopyOnWrite copyOnWrite) {
+        this.copyOnWrite = copyOnWrite;
+        snapshotEpoch++;
+        return map.keySet().toArray(new BytesWrapper[0]);
+    }
+
+    public void endSnapshot() {
+        copyOnWrite = null;
+    }
+
+    /**
+     * @return key在切点时的值；已经交给快照，或者是切点之后写入的值时返回null
+     */
+    public RedisData snapshotValue(BytesWrapper key) {
+        RedisData redisData = map.get(key);
+        if (redisData == null || redisData.snapshotEpoch() == snapshotEpoch) {
+            return null;
+        }
+        redisData.setSnapshotEpoch(snapshotEpoch);
+        return redisData;
+    }
+
+    private void beforeWrite(BytesWrapper key, RedisData redisData) {
+        if (redisData != null && redisData.snapshotEpoch() != snapshotEpoch) {
+            redisData.setSnapshotEpoch(snapshotEpoch);
+            copyOnWrite.copy(key, redisData);
+        }
+    }
 }
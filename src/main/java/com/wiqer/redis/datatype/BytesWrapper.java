@@ -1,14 +1,25 @@
 package com.wiqer.redis.datatype;
 
-import lombok.EqualsAndHashCode;
+import com.wiqer.redis.util.Format;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
 
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 /**
+ * 二进制安全的字符串
+ * <p>
+ * 两种形态：
+ * 1. 堆内形态：持有独立的byte[]，存入RedisCore的key/value都是这种形态
+ * 2. 借用形态：{@link #wrap(ByteBuf, int, int)}创建，直接引用入站请求缓冲区的一段，不拷贝，
+ * 仅在请求释放前有效；需要存储时调用{@link #persist()}转为堆内形态
+ * <p>
+ * 两种形态之间equals/hashCode/compareTo的结果一致，借用形态可以直接用于查找
+ *
  * @author lilan
  */
-@EqualsAndHashCode
 public class BytesWrapper implements Comparable<BytesWrapper> {
 
     private static final Charset CHARSET = StandardCharsets.UTF_8;
@@ -17,35 +28,165 @@ public class BytesWrapper implements Comparable<BytesWrapper> {
 
     private final byte[] content;
 
+    /**
+     * @param content 内容，调用方转移所有权，不再拷贝
+     */
     public BytesWrapper(byte[] content) {
-        this.content = content.clone();
+        this.content = content;
     }
 
+    /**
+     * 借用缓冲区中的一段，不拷贝也不增加引用计数，生命周期由缓冲区的持有者保证
+     */
+    public static BytesWrapper wrap(ByteBuf buffer, int index, int length) {
+        return new Borrowed(buffer, index, length);
+    }
+
+    public int length() {
+        return content.length;
+    }
+
+    public byte byteAt(int index) {
+        return content[index];
+    }
+
+    /**
+     * 将内容写入缓冲区，不产生中间拷贝
+     */
+    public void writeTo(ByteBuf buffer) {
+        buffer.writeBytes(content);
+    }
+
+    /**
+     * @return 可以长期持有的堆内形态，已经是堆内形态时返回自身
+     */
+    public BytesWrapper persist() {
+        return this;
+    }
+
+    /**
+     * @return 内容的拷贝，热点路径请使用{@link #length()}、{@link #byteAt(int)}、{@link #writeTo(ByteBuf)}
+     */
     public byte[] getByteArray() {
         return content.clone();
     }
 
+    public long parseLong() {
+        return Format.parseLong(content, 10);
+    }
+
     public String toUtf8String() {
         return new String(content, CHARSET);
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof BytesWrapper other)) {
+            return false;
+        }
+        int length = length();
+        if (length != other.length()) {
+            return false;
+        }
+        if (content != null && other.content != null) {
+            return Arrays.equals(content, other.content);
+        }
+        for (int i = 0; i < length; i++) {
+            if (byteAt(i) != other.byteAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 与Arrays.hashCode(byte[])算法一致
+     */
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(content);
+    }
+
     @Override
     public int compareTo(BytesWrapper o) {
         if (this == o) return 0;
         if (o == null) return 1;
-        
-        byte[] v2 = o.content;
-        int len1 = content.length;
-        int len2 = v2.length;
+
+        int len1 = length();
+        int len2 = o.length();
         int lim = Math.min(len1, len2);
 
         for (int k = 0; k < lim; k++) {
-            byte c1 = content[k];
-            byte c2 = v2[k];
+            byte c1 = byteAt(k);
+            byte c2 = o.byteAt(k);
             if (c1 != c2) {
                 return c1 - c2;
             }
         }
         return len1 - len2;
     }
+
+    /**
+     * 借用形态，引用请求缓冲区[index, index + length)
+     */
+    private static final class Borrowed extends BytesWrapper {
+
+        private final ByteBuf buffer;
+        private final int index;
+        private final int length;
+
+        private Borrowed(ByteBuf buffer, int index, int length) {
+            super(null);
+            this.buffer = buffer;
+            this.index = index;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public byte byteAt(int i) {
+            return buffer.getByte(index + i);
+        }
+
+        @Override
+        public void writeTo(ByteBuf out) {
+            out.writeBytes(buffer, index, length);
+        }
+
+        @Override
+        public BytesWrapper persist() {
+            return new BytesWrapper(ByteBufUtil.getBytes(buffer, index, length));
+        }
+
+        @Override
+        public byte[] getByteArray() {
+            return ByteBufUtil.getBytes(buffer, index, length);
+        }
+
+        @Override
+        public long parseLong() {
+            return Format.parseLong(getByteArray(), 10);
+        }
+
+        @Override
+        public String toUtf8String() {
+            return buffer.toString(index, length, CHARSET);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = 1;
+            for (int i = index, end = index + length; i < end; i++) {
+                result = 31 * result + buffer.getByte(i);
+            }
+            return result;
+        }
+    }
 }
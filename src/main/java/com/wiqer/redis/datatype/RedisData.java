@@ -10,8 +10,17 @@ public class RedisData {
 
     private long timeout = -1;
 
+    /**
+     * 已交给第几次快照，与{@link com.wiqer.redis.core.RedisCore}当前的快照编号相同时不再交给这次快照
+     */
+    private int snapshotEpoch;
+
     public long timeout() {
         return timeout;
     }
 
+    public int snapshotEpoch() {
+        return snapshotEpoch;
+    }
+
 }
@@ -19,7 +19,7 @@ public class RedisHash extends RedisData {
         if (field == null || value == null) {
             return 0;
         }
-        return map.put(field, value) == null ? 1 : 0;
+        return map.put(field.persist(), value.persist()) == null ? 1 : 0;
     }
 
     public BytesWrapper get(BytesWrapper field) {
@@ -1,6 +1,7 @@
 package com.wiqer.redis.datatype;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Deque;
 import java.util.LinkedList;
@@ -21,7 +22,7 @@ public class RedisList extends RedisData {
         }
         for (BytesWrapper value : values) {
             if (value != null) {
-                deque.addFirst(value);
+                deque.addFirst(value.persist());
             }
         }
     }
@@ -30,12 +31,20 @@ public class RedisList extends RedisData {
         return deque.size();
     }
 
+    /**
+     * 从头到尾的只读视图
+     */
+    public Collection<BytesWrapper> values() {
+        return Collections.unmodifiableCollection(deque);
+    }
+
     public void lpush(List<BytesWrapper> values) {
         if (values == null || values.isEmpty()) {
             return;
         }
         values.stream()
                 .filter(Objects::nonNull)
+                .map(BytesWrapper::persist)
                 .forEach(deque::addFirst);
     }
 
@@ -45,11 +54,23 @@ public class RedisList extends RedisData {
         }
         values.stream()
                 .filter(Objects::nonNull)
+                .map(BytesWrapper::persist)
                 .forEach(deque::addLast);
     }
 
+    /**
+     * 与redis一致：负数下标从尾部计数，越界的下标截断到列表范围内
+     */
     public List<BytesWrapper> lrang(int start, int end) {
-        if (start < 0 || end < start || deque.isEmpty()) {
+        int size = deque.size();
+        if (start < 0) {
+            start = Math.max(start + size, 0);
+        }
+        if (end < 0) {
+            end += size;
+        }
+        end = Math.min(end, size - 1);
+        if (end < start) {
             return Collections.emptyList();
         }
         return deque.stream()
@@ -58,6 +79,22 @@ public class RedisList extends RedisData {
                 .collect(Collectors.toList());
     }
 
+    public List<BytesWrapper> lpop(int count) {
+        List<BytesWrapper> popped = new ArrayList<>(Math.min(count, deque.size()));
+        while (popped.size() < count && !deque.isEmpty()) {
+            popped.add(deque.pollFirst());
+        }
+        return popped;
+    }
+
+    public List<BytesWrapper> rpop(int count) {
+        List<BytesWrapper> popped = new ArrayList<>(Math.min(count, deque.size()));
+        while (popped.size() < count && !deque.isEmpty()) {
+            popped.add(deque.pollLast());
+        }
+        return popped;
+    }
+
     public int remove(BytesWrapper value) {
         if (value == null) {
             return 0;
@@ -1,8 +1,10 @@
 package com.wiqer.redis.datatype;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
@@ -20,7 +22,7 @@ public class RedisSet extends RedisData {
         }
         return (int) members.stream()
                 .filter(Objects::nonNull)
-                .filter(set::add)
+                .filter(member -> !set.contains(member) && set.add(member.persist()))
                 .count();
     }
 
@@ -38,6 +40,23 @@ public class RedisSet extends RedisData {
         return member != null && set.contains(member);
     }
 
+    /**
+     * 移除并返回最多count个成员，HashSet无序，取迭代顺序的前count个
+     */
+    public List<BytesWrapper> spop(int count) {
+        List<BytesWrapper> popped = new ArrayList<>(Math.min(count, set.size()));
+        Iterator<BytesWrapper> iterator = set.iterator();
+        while (popped.size() < count && iterator.hasNext()) {
+            popped.add(iterator.next());
+            iterator.remove();
+        }
+        return popped;
+    }
+
+    public int size() {
+        return set.size();
+    }
+
     public Collection<BytesWrapper> smembers() {
         return Collections.unmodifiableCollection(set);
     }
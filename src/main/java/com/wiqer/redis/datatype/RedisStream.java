@@ -0,0 +1,132 @@
+package com.wiqer.redis.datatype;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 最简的stream实现，只支持追加与按长度裁剪
+ *
+ * @author lilan
+ */
+public class RedisStream extends RedisData {
+
+    private final TreeMap<StreamId, List<BytesWrapper>> entries = new TreeMap<>();
+
+    private StreamId lastId = StreamId.MIN;
+
+    /**
+     * 追加一条记录
+     *
+     * @param ms     id的毫秒部分，为null时使用当前时间自动生成
+     * @param seq    id的序号部分，为null时自动生成
+     * @param fields field、value交替
+     * @return 记录的id
+     * @throws IllegalArgumentException id不大于当前最大id
+     */
+    public StreamId add(Long ms, Long seq, List<BytesWrapper> fields) {
+        StreamId id = nextId(ms, seq);
+        entries.put(id, fields.stream().map(BytesWrapper::persist).toList());
+        lastId = id;
+        return id;
+    }
+
+    /**
+     * 从头部删除记录，直到不超过maxLen条
+     *
+     * @return 删除的条数
+     */
+    public int trim(long maxLen) {
+        int trimmed = 0;
+        while (entries.size() > maxLen) {
+            entries.pollFirstEntry();
+            trimmed++;
+        }
+        return trimmed;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * 已分配过的最大id，裁剪掉的记录的id也不再分配
+     */
+    public StreamId lastId() {
+        return lastId;
+    }
+
+    /**
+     * 加载快照时按id顺序恢复记录，不检查id
+     */
+    public void restore(StreamId id, List<BytesWrapper> fields) {
+        entries.put(id, fields);
+        if (id.compareTo(lastId) > 0) {
+            lastId = id;
+        }
+    }
+
+    /**
+     * 加载快照时恢复裁剪之前分配过的最大id
+     */
+    public void restoreLastId(StreamId id) {
+        if (id.compareTo(lastId) > 0) {
+            lastId = id;
+        }
+    }
+
+    /**
+     * 按id从小到大的只读视图，value为field、value交替
+     */
+    public Map<StreamId, List<BytesWrapper>> entries() {
+        return Collections.unmodifiableMap(entries);
+    }
+
+    private StreamId nextId(Long ms, Long seq) {
+        if (ms == null) {
+            long now = System.currentTimeMillis();
+            return now > lastId.ms ? new StreamId(now, 0) : new StreamId(lastId.ms, lastId.seq + 1);
+        }
+        if (seq == null) {
+            seq = ms == lastId.ms ? lastId.seq + 1 : 0;
+        }
+        StreamId id = new StreamId(ms, seq);
+        if (id.compareTo(StreamId.MIN) <= 0) {
+            throw new IllegalArgumentException("ERR The ID specified in XADD must be greater than 0-0");
+        }
+        if (id.compareTo(lastId) <= 0) {
+            throw new IllegalArgumentException("ERR The ID specified in XADD is equal or smaller than the target stream top item");
+        }
+        return id;
+    }
+
+    @Getter
+    @EqualsAndHashCode
+    public static class StreamId implements Comparable<StreamId> {
+
+        static final StreamId MIN = new StreamId(0, 0);
+
+        private final long ms;
+        private final long seq;
+
+        public StreamId(long ms, long seq) {
+            this.ms = ms;
+            this.seq = seq;
+        }
+
+        @Override
+        public int compareTo(StreamId other) {
+            int compare = Long.compareUnsigned(ms, other.ms);
+            return compare != 0 ? compare : Long.compareUnsigned(seq, other.seq);
+        }
+
+        @Override
+        public String toString() {
+            return ms + "-" + seq;
+        }
+    }
+}
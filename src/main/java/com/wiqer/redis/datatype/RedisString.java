@@ -15,7 +15,11 @@ public class RedisString extends RedisData {
     private BytesWrapper value;
 
     public RedisString(BytesWrapper value) {
-        this.value = value;
+        setValue(value);
+    }
+
+    public void setValue(BytesWrapper value) {
+        this.value = value == null ? null : value.persist();
     }
 
     public static RedisString ZERO() {
@@ -3,8 +3,13 @@ package com.wiqer.redis.datatype;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.TreeMap;
 import java.util.stream.Collectors;
 
@@ -17,9 +22,42 @@ public class RedisZset extends RedisData {
             new TreeMap<>(Comparator.comparingLong((ZsetKey o) -> o.score)
                     .thenComparing(o -> o.key));
 
+    /**
+     * 成员到分数的索引，按成员删除或更新分数时用来定位有序map中的节点
+     */
+    private final Map<BytesWrapper, Long> scores = new HashMap<>();
+
+    /**
+     * @return 新增的成员个数，已存在的成员只更新分数
+     */
     public int add(List<ZsetKey> keys) {
-        keys.forEach(key -> map.put(key, key.getScore()));
-        return keys.size();
+        int added = 0;
+        for (ZsetKey key : keys) {
+            Long old = scores.get(key.getKey());
+            if (old != null) {
+                if (old == key.getScore()) {
+                    continue;
+                }
+                map.remove(new ZsetKey(key.getKey(), old));
+            } else {
+                added++;
+            }
+            BytesWrapper member = key.getKey().persist();
+            scores.put(member, key.getScore());
+            map.put(new ZsetKey(member, key.getScore()), key.getScore());
+        }
+        return added;
+    }
+
+    public int size() {
+        return map.size();
+    }
+
+    /**
+     * 按分数从小到大的只读视图
+     */
+    public Collection<ZsetKey> members() {
+        return Collections.unmodifiableSet(map.keySet());
     }
 
     public List<ZsetKey> range(int start, int end) {
@@ -43,9 +81,28 @@ public class RedisZset extends RedisData {
     }
 
     public int remove(List<BytesWrapper> members) {
-        return (int) members.stream()
-                .filter(member -> map.remove(new ZsetKey(member, 0)) != null)
-                .count();
+        int removed = 0;
+        for (BytesWrapper member : members) {
+            Long score = scores.remove(member);
+            if (score != null) {
+                map.remove(new ZsetKey(member, score));
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * 移除并返回分数最小的最多count个成员
+     */
+    public List<ZsetKey> popMin(int count) {
+        List<ZsetKey> popped = new ArrayList<>(Math.min(count, map.size()));
+        while (popped.size() < count && !map.isEmpty()) {
+            ZsetKey key = map.pollFirstEntry().getKey();
+            scores.remove(key.getKey());
+            popped.add(key);
+        }
+        return popped;
     }
 
     @Getter
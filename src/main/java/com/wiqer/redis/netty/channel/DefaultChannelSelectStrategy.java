@@ -3,13 +3,28 @@ package com.wiqer.redis.netty.channel;
 import com.wiqer.redis.netty.channel.epoll.EpollChannelOption;
 import com.wiqer.redis.netty.channel.kqueue.KqueueChannelOption;
 import com.wiqer.redis.netty.channel.select.NioSelectChannelOption;
+import com.wiqer.redis.netty.channel.uring.IoUringChannelOption;
+import com.wiqer.redis.util.PropertiesUtil;
 import io.netty.channel.epoll.Epoll;
 import io.netty.channel.kqueue.KQueue;
+import lombok.extern.slf4j.Slf4j;
 
+/**
+ * 按io_uring、kqueue、epoll、NIO的顺序选择当前平台可用的传输；
+ * 配置了只有epoll支持的epoll_busy_poll时，epoll可用则优先于io_uring
+ */
+@Slf4j
 public class DefaultChannelSelectStrategy implements ChannelSelectStrategy {
     @Override
     public LocalChannelOption select() {
 
+        if (PropertiesUtil.getEpollBusyPoll() > 0 && Epoll.isAvailable()) {
+            log.info("配置了epoll_busy_poll，使用epoll传输");
+            return new EpollChannelOption();
+        }
+        if (IoUringChannelOption.isAvailable()) {
+            return new IoUringChannelOption();
+        }
         if (KQueue.isAvailable()) {
             return new KqueueChannelOption();
         }
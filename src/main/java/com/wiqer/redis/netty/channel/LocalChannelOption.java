@@ -1,8 +1,10 @@
 package com.wiqer.redis.netty.channel;
 
 
+import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.Channel;
 import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
 
 
 public interface LocalChannelOption<C extends Channel> {
@@ -20,4 +22,24 @@ public interface LocalChannelOption<C extends Channel> {
      * @return 返回管道类型
      */
     Class<? extends C> getChannelClass();
+
+    /**
+     * @return 绑定的监听socket数，大于1时由传输自身保证端口可以重复绑定
+     */
+    default int listeners() {
+        return 1;
+    }
+
+    /**
+     * @return unix domain socket的监听管道类型，传输不支持时为null
+     */
+    default Class<? extends ServerChannel> getDomainSocketChannelClass() {
+        return null;
+    }
+
+    /**
+     * 设置传输特有的监听与连接参数
+     */
+    default void configure(ServerBootstrap serverBootstrap) {
+    }
 }
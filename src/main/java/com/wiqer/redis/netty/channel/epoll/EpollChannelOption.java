@@ -1,41 +1,38 @@
 package com.wiqer.redis.netty.channel.epoll;
 
 import com.wiqer.redis.netty.channel.LocalChannelOption;
+import com.wiqer.redis.util.PropertiesUtil;
+import com.wiqer.redis.util.ThreadFactoryUtil;
+import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
 import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerDomainSocketChannel;
 import io.netty.channel.epoll.EpollServerSocketChannel;
 
-import java.util.concurrent.ThreadFactory;
-import java.util.concurrent.atomic.AtomicInteger;
-
+/**
+ * epoll传输
+ * <p>
+ * reuseport_listeners大于1时以SO_REUSEPORT绑定多个监听socket，每个注册到不同的boss线程，
+ * 内核按连接hash把accept分摊到各监听socket，部署后的连接风暴不再堵在单个accept线程上
+ */
 public class EpollChannelOption implements LocalChannelOption {
 
     private final EpollEventLoopGroup boss;
     private final EpollEventLoopGroup selectors;
+    private final int listeners;
 
     public EpollChannelOption(EpollEventLoopGroup boss, EpollEventLoopGroup selectors) {
         this.boss = boss;
         this.selectors = selectors;
+        this.listeners = PropertiesUtil.getReusePortListeners();
     }
 
     public EpollChannelOption() {
-        this.boss = new EpollEventLoopGroup(4, new ThreadFactory() {
-            private final AtomicInteger index = new AtomicInteger(0);
-
-            @Override
-            public Thread newThread(Runnable r) {
-                return new Thread(r, "Server_boss_" + index.getAndIncrement());
-            }
-        });
-
-        this.selectors = new EpollEventLoopGroup(8, new ThreadFactory() {
-            private final AtomicInteger index = new AtomicInteger(0);
+        this.listeners = PropertiesUtil.getReusePortListeners();
+        this.boss = new EpollEventLoopGroup(listeners, ThreadFactoryUtil.create("Server_boss_", false));
 
-            @Override
-            public Thread newThread(Runnable r) {
-                return new Thread(r, "Server_selector_" + index.getAndIncrement());
-            }
-        });
+        this.selectors = new EpollEventLoopGroup(8, ThreadFactoryUtil.create("Server_selector_", false, PropertiesUtil.getSelectorCpus()));
     }
 
     @Override
@@ -52,4 +49,28 @@ public class EpollChannelOption implements LocalChannelOption {
     public Class getChannelClass() {
         return EpollServerSocketChannel.class;
     }
+
+    @Override
+    public Class<? extends ServerChannel> getDomainSocketChannelClass() {
+        return EpollServerDomainSocketChannel.class;
+    }
+
+    @Override
+    public int listeners() {
+        return listeners;
+    }
+
+    @Override
+    public void configure(ServerBootstrap serverBootstrap) {
+        if (listeners > 1) {
+            serverBootstrap.option(io.netty.channel.epoll.EpollChannelOption.SO_REUSEPORT, true);
+        }
+        int busyPoll = PropertiesUtil.getEpollBusyPoll();
+        if (busyPoll > 0) {
+            serverBootstrap.childOption(io.netty.channel.epoll.EpollChannelOption.SO_BUSY_POLL, busyPoll);
+        }
+        if (PropertiesUtil.getTcpQuickAck()) {
+            serverBootstrap.childOption(io.netty.channel.epoll.EpollChannelOption.TCP_QUICKACK, true);
+        }
+    }
 }
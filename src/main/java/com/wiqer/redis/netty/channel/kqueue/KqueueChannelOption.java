@@ -1,13 +1,14 @@
 package com.wiqer.redis.netty.channel.kqueue;
 
 import com.wiqer.redis.netty.channel.LocalChannelOption;
+import com.wiqer.redis.util.PropertiesUtil;
+import com.wiqer.redis.util.ThreadFactoryUtil;
 import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
 import io.netty.channel.kqueue.KQueueEventLoopGroup;
+import io.netty.channel.kqueue.KQueueServerDomainSocketChannel;
 import io.netty.channel.kqueue.KQueueServerSocketChannel;
 
-import java.util.concurrent.ThreadFactory;
-import java.util.concurrent.atomic.AtomicInteger;
-
 public class KqueueChannelOption implements LocalChannelOption {
 
     private final KQueueEventLoopGroup boss;
@@ -19,23 +20,9 @@ public class KqueueChannelOption implements LocalChannelOption {
     }
 
     public KqueueChannelOption() {
-        this.boss = new KQueueEventLoopGroup(4, new ThreadFactory() {
-            private final AtomicInteger index = new AtomicInteger(0);
-
-            @Override
-            public Thread newThread(Runnable r) {
-                return new Thread(r, "Server_boss_" + index.getAndIncrement());
-            }
-        });
-
-        this.selectors = new KQueueEventLoopGroup(8, new ThreadFactory() {
-            private final AtomicInteger index = new AtomicInteger(0);
-
-            @Override
-            public Thread newThread(Runnable r) {
-                return new Thread(r, "Server_selector_" + index.getAndIncrement());
-            }
-        });
+        this.boss = new KQueueEventLoopGroup(4, ThreadFactoryUtil.create("Server_boss_", false));
+
+        this.selectors = new KQueueEventLoopGroup(8, ThreadFactoryUtil.create("Server_selector_", false, PropertiesUtil.getSelectorCpus()));
     }
 
     @Override
@@ -52,4 +39,9 @@ public class KqueueChannelOption implements LocalChannelOption {
     public Class getChannelClass() {
         return KQueueServerSocketChannel.class;
     }
+
+    @Override
+    public Class<? extends ServerChannel> getDomainSocketChannelClass() {
+        return KQueueServerDomainSocketChannel.class;
+    }
 }
@@ -1,35 +1,20 @@
 package com.wiqer.redis.netty.channel.local;
 
 import com.wiqer.redis.netty.channel.LocalChannelOption;
+import com.wiqer.redis.util.PropertiesUtil;
+import com.wiqer.redis.util.ThreadFactoryUtil;
 import io.netty.channel.DefaultEventLoopGroup;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.local.LocalServerChannel;
 
-import java.util.concurrent.ThreadFactory;
-import java.util.concurrent.atomic.AtomicInteger;
-
 public class DefaultChannelOption implements LocalChannelOption {
 
     private final DefaultEventLoopGroup boss;
     private final DefaultEventLoopGroup selectors;
 
     public DefaultChannelOption() {
-        this.boss = new DefaultEventLoopGroup(4, new ThreadFactory() {
-            private AtomicInteger index = new AtomicInteger(0);
-
-            @Override
-            public Thread newThread(Runnable r) {
-                return new Thread(r, "Server_boss_" + index.getAndIncrement());
-            }
-        });
-        this.selectors = new DefaultEventLoopGroup(8, new ThreadFactory() {
-            private AtomicInteger index = new AtomicInteger(0);
-
-            @Override
-            public Thread newThread(Runnable r) {
-                return new Thread(r, "Server_selector_" + index.getAndIncrement());
-            }
-        });
+        this.boss = new DefaultEventLoopGroup(4, ThreadFactoryUtil.create("Server_boss_", false));
+        this.selectors = new DefaultEventLoopGroup(8, ThreadFactoryUtil.create("Server_selector_", false, PropertiesUtil.getSelectorCpus()));
     }
 
     @Override
@@ -1,15 +1,14 @@
 package com.wiqer.redis.netty.channel.select;
 
 import com.wiqer.redis.netty.channel.LocalChannelOption;
+import com.wiqer.redis.util.PropertiesUtil;
+import com.wiqer.redis.util.ThreadFactoryUtil;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.util.NettyRuntime;
 import io.netty.util.internal.SystemPropertyUtil;
 
-import java.util.concurrent.ThreadFactory;
-import java.util.concurrent.atomic.AtomicInteger;
-
 public class NioSelectChannelOption implements LocalChannelOption {
     private final NioEventLoopGroup boss;
     private final NioEventLoopGroup selectors;
@@ -20,23 +19,9 @@ public class NioSelectChannelOption implements LocalChannelOption {
     }
 
     public NioSelectChannelOption() {
-        this.boss = new NioEventLoopGroup(4, new ThreadFactory() {
-            private final AtomicInteger index = new AtomicInteger(0);
-
-            @Override
-            public Thread newThread(Runnable r) {
-                return new Thread(r, "Server_boss_" + index.getAndIncrement());
-            }
-        });
-
-        this.selectors = new NioEventLoopGroup(Math.max(1, SystemPropertyUtil.getInt("io.netty.eventLoopThreads", NettyRuntime.availableProcessors())), new ThreadFactory() {
-            private final AtomicInteger index = new AtomicInteger(0);
-
-            @Override
-            public Thread newThread(Runnable r) {
-                return new Thread(r, "Server_selector_" + index.getAndIncrement());
-            }
-        });
+        this.boss = new NioEventLoopGroup(4, ThreadFactoryUtil.create("Server_boss_", false));
+
+        this.selectors = new NioEventLoopGroup(Math.max(1, SystemPropertyUtil.getInt("io.netty.eventLoopThreads", NettyRuntime.availableProcessors())), ThreadFactoryUtil.create("Server_selector_", false, PropertiesUtil.getSelectorCpus()));
     }
 
     @Override
@@ -0,0 +1,29 @@
+package com.wiqer.redis.netty.channel.shm;
+
+import java.net.SocketAddress;
+import java.nio.file.Path;
+
+/**
+ * 共享内存连接的地址，即映射文件的路径
+ *
+ * @author lilan
+ */
+public class ShmAddress extends SocketAddress {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient Path path;
+
+    public ShmAddress(Path path) {
+        this.path = path;
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    @Override
+    public String toString() {
+        return "shm:" + path;
+    }
+}
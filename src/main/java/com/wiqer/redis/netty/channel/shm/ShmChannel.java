@@ -0,0 +1,190 @@
+package com.wiqer.redis.netty.channel.shm;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.AbstractChannel;
+import io.netty.channel.ChannelConfig;
+import io.netty.channel.ChannelMetadata;
+import io.netty.channel.ChannelOutboundBuffer;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.DefaultChannelConfig;
+import io.netty.channel.DefaultEventLoop;
+import io.netty.channel.EventLoop;
+
+import java.net.SocketAddress;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 共享内存连接
+ * <p>
+ * 注册在专用的{@link DefaultEventLoop}上，读请求时轮询请求环：有数据就作为ByteBuf交给pipeline，
+ * 与TCP连接一样经过CommandDecoder、CommandHandler；空闲时先自旋若干次，之后按指数退避park，最长1ms
+ * <p>
+ * 写出的回复拷贝进响应环，环满时保留在出站缓冲中稍后重试，出站积压照常触发高水位不可写
+ *
+ * @author lilan
+ */
+public class ShmChannel extends AbstractChannel {
+
+    private static final ChannelMetadata METADATA = new ChannelMetadata(false);
+    private static final int MAX_READ_BYTES = 64 * 1024;
+    private static final int SPIN_POLLS = 256;
+    private static final long MAX_PARK_MICROS = 1000;
+    private static final long FLUSH_RETRY_MICROS = 20;
+
+    private final ShmFile file;
+    private final SpscRing requests;
+    private final SpscRing responses;
+    private final ShmAddress address;
+    private final ChannelConfig config = new DefaultChannelConfig(this);
+    private final Runnable pollTask = this::poll;
+    private volatile boolean open = true;
+    /**
+     * 以下状态仅在所属事件循环上访问
+     */
+    private boolean readPending;
+    private boolean flushPending;
+    private int idlePolls;
+
+    public ShmChannel(ShmFile file) {
+        super(null);
+        this.file = file;
+        this.requests = file.requestRing();
+        this.responses = file.responseRing();
+        this.address = new ShmAddress(file.getPath());
+    }
+
+    private void poll() {
+        readPending = false;
+        if (!isActive()) {
+            // 客户端已关闭
+            if (isOpen()) {
+                unsafe().close(voidPromise());
+            }
+            return;
+        }
+        int available = requests.available();
+        if (available == 0) {
+            readPending = true;
+            if (++idlePolls <= SPIN_POLLS) {
+                eventLoop().execute(pollTask);
+            } else {
+                long parkMicros = Math.min(MAX_PARK_MICROS, 1L << Math.min(idlePolls - SPIN_POLLS, 10));
+                eventLoop().schedule(pollTask, parkMicros, TimeUnit.MICROSECONDS);
+            }
+            return;
+        }
+        idlePolls = 0;
+        ByteBuf byteBuf = alloc().ioBuffer(Math.min(available, MAX_READ_BYTES));
+        requests.read(byteBuf, byteBuf.writableBytes());
+        pipeline().fireChannelRead(byteBuf);
+        // autoRead时HeadContext在readComplete后再次调用doBeginRead
+        pipeline().fireChannelReadComplete();
+    }
+
+    @Override
+    protected void doBeginRead() {
+        if (!readPending) {
+            readPending = true;
+            eventLoop().execute(pollTask);
+        }
+    }
+
+    @Override
+    protected void doWrite(ChannelOutboundBuffer in) {
+        Object msg;
+        while ((msg = in.current()) != null) {
+            ByteBuf byteBuf = (ByteBuf) msg;
+            int written = responses.write(byteBuf);
+            if (byteBuf.isReadable()) {
+                in.progress(written);
+                scheduleFlush();
+                return;
+            }
+            in.remove();
+        }
+    }
+
+    /**
+     * 响应环已满，等客户端读走后重试
+     */
+    private void scheduleFlush() {
+        if (!flushPending) {
+            flushPending = true;
+            eventLoop().schedule(() -> {
+                flushPending = false;
+                if (isActive()) {
+                    unsafe().flush();
+                }
+            }, FLUSH_RETRY_MICROS, TimeUnit.MICROSECONDS);
+        }
+    }
+
+    @Override
+    protected Object filterOutboundMessage(Object msg) {
+        if (msg instanceof ByteBuf) {
+            return msg;
+        }
+        throw new UnsupportedOperationException("unsupported message type: " + msg.getClass().getSimpleName());
+    }
+
+    @Override
+    protected void doClose() {
+        open = false;
+        file.close();
+    }
+
+    @Override
+    protected void doDisconnect() {
+        doClose();
+    }
+
+    @Override
+    protected void doBind(SocketAddress localAddress) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    protected AbstractUnsafe newUnsafe() {
+        return new AbstractUnsafe() {
+            @Override
+            public void connect(SocketAddress remoteAddress, SocketAddress localAddress, ChannelPromise promise) {
+                promise.setFailure(new UnsupportedOperationException());
+            }
+        };
+    }
+
+    @Override
+    protected boolean isCompatible(EventLoop loop) {
+        return loop instanceof DefaultEventLoop;
+    }
+
+    @Override
+    protected SocketAddress localAddress0() {
+        return address;
+    }
+
+    @Override
+    protected SocketAddress remoteAddress0() {
+        return address;
+    }
+
+    @Override
+    public ChannelConfig config() {
+        return config;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public boolean isActive() {
+        return open && file.state() == ShmFile.ATTACHED;
+    }
+
+    @Override
+    public ChannelMetadata metadata() {
+        return METADATA;
+    }
+}
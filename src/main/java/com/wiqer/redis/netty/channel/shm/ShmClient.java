@@ -0,0 +1,204 @@
+package com.wiqer.redis.netty.channel.shm;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 同机客户端通过共享内存连接服务端，请求与回复都是RESP字节流
+ * <p>
+ * 非线程安全，一个连接只能由一个线程使用；等待服务端时先自旋，之后短暂park
+ * <p>
+ * 回复按类型转换为：简单字符串、bulk string、double、大数为String，整数为Long，nil为null，
+ * 数组、map、set、push为List，错误为{@link ErrorReply}
+ *
+ * @author lilan
+ */
+public class ShmClient implements Closeable {
+
+    public static final int DEFAULT_CAPACITY = 1 << 20;
+
+    private static final AtomicInteger SEQUENCE = new AtomicInteger();
+    private static final int SPIN_WAITS = 1024;
+    private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final ShmFile file;
+    private final SpscRing requests;
+    private final SpscRing responses;
+    private final byte[] readBuffer = new byte[8192];
+    private int readIndex;
+    private int readLimit;
+
+    private ShmClient(ShmFile file) {
+        this.file = file;
+        this.requests = file.requestRing();
+        this.responses = file.responseRing();
+    }
+
+    public static ShmClient connect(Path directory) throws IOException {
+        return connect(directory, DEFAULT_CAPACITY, 5000);
+    }
+
+    /**
+     * 创建连接文件并等待服务端接管
+     *
+     * @param capacity 请求环与响应环各自的容量，必须是2的幂
+     */
+    public static ShmClient connect(Path directory, int capacity, long timeoutMillis) throws IOException {
+        String name = "client-" + ProcessHandle.current().pid() + "-" + SEQUENCE.incrementAndGet() + ShmFile.SUFFIX;
+        ShmFile file = ShmFile.create(directory.resolve(name), capacity);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (file.state() == ShmFile.CLIENT_READY) {
+            if (System.nanoTime() > deadline) {
+                file.close();
+                throw new IOException("共享内存连接超时，服务端未接管: " + file.getPath());
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        return new ShmClient(file);
+    }
+
+    public Object call(String... args) throws IOException {
+        send(args);
+        return readReply();
+    }
+
+    /**
+     * 发送一条命令，不等待回复，可以连续发送实现管道化
+     */
+    public void send(String... args) throws IOException {
+        StringBuilder builder = new StringBuilder().append('*').append(args.length).append("\r\n");
+        for (String arg : args) {
+            builder.append('$').append(arg.getBytes(StandardCharsets.UTF_8).length).append("\r\n").append(arg).append("\r\n");
+        }
+        send(builder.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 发送已编码的请求字节，环满时等待服务端读走
+     */
+    public void send(byte[] request) throws IOException {
+        int offset = 0;
+        int waits = 0;
+        while (offset < request.length) {
+            int written = requests.write(request, offset, request.length - offset);
+            if (written > 0) {
+                offset += written;
+                waits = 0;
+            } else {
+                await(++waits);
+            }
+        }
+    }
+
+    public Object readReply() throws IOException {
+        int type = readByte();
+        switch (type) {
+            case '+':
+            case ',':
+            case '(':
+                return readLine();
+            case '-':
+                return new ErrorReply(readLine());
+            case ':':
+                return Long.parseLong(readLine());
+            case '_':
+                readLine();
+                return null;
+            case '$': {
+                int length = Integer.parseInt(readLine());
+                if (length < 0) {
+                    return null;
+                }
+                byte[] content = new byte[length];
+                for (int i = 0; i < length; i++) {
+                    content[i] = (byte) readByte();
+                }
+                readLine();
+                return new String(content, StandardCharsets.UTF_8);
+            }
+            case '*':
+            case '~':
+            case '>':
+            case '%': {
+                int size = Integer.parseInt(readLine());
+                if (size < 0) {
+                    return null;
+                }
+                size = type == '%' ? size << 1 : size;
+                List<Object> elements = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    elements.add(readReply());
+                }
+                return elements;
+            }
+            default:
+                throw new IOException("unexpected reply type " + (char) type);
+        }
+    }
+
+    private String readLine() throws IOException {
+        StringBuilder line = new StringBuilder();
+        int b;
+        while ((b = readByte()) != '\r') {
+            line.append((char) b);
+        }
+        readByte();
+        return line.toString();
+    }
+
+    private int readByte() throws IOException {
+        int waits = 0;
+        while (readIndex == readLimit) {
+            readIndex = 0;
+            readLimit = responses.read(readBuffer, 0, readBuffer.length);
+            if (readLimit == 0) {
+                await(++waits);
+            }
+        }
+        return readBuffer[readIndex++] & 0xFF;
+    }
+
+    private void await(int waits) throws IOException {
+        if (file.state() != ShmFile.ATTACHED) {
+            throw new IOException("共享内存连接已关闭: " + file.getPath());
+        }
+        if (waits < SPIN_WAITS) {
+            Thread.onSpinWait();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+    }
+
+    @Override
+    public void close() {
+        file.close();
+    }
+
+    /**
+     * 服务端回复的错误
+     */
+    public static class ErrorReply {
+
+        private final String message;
+
+        public ErrorReply(String message) {
+            this.message = message;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return message;
+        }
+    }
+}
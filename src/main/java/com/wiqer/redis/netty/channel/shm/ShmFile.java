@@ -0,0 +1,121 @@
+package com.wiqer.redis.netty.channel.shm;
+
+import lombok.Getter;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 一个共享内存连接对应的映射文件
+ * <p>
+ * 布局：文件头（magic、单个环的容量、连接状态）占一个缓存行，随后是请求环与响应环的头部，最后依次是两个环的数据区
+ * <p>
+ * 客户端先在临时文件中初始化完毕再原子改名为*.shm，服务端扫描目录时只会看到完整的文件；
+ * 状态由客户端置为CLIENT_READY，服务端CAS为ATTACHED接管，任一方关闭时置为CLOSED
+ *
+ * @author lilan
+ */
+public class ShmFile {
+
+    public static final String SUFFIX = ".shm";
+
+    static final int CLIENT_READY = 1;
+    static final int ATTACHED = 2;
+    static final int CLOSED = 3;
+
+    private static final int MAGIC = 0x45465348;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int CAPACITY_OFFSET = 4;
+    private static final int STATE_OFFSET = 8;
+    private static final int REQUEST_RING_OFFSET = 64;
+    private static final int RESPONSE_RING_OFFSET = REQUEST_RING_OFFSET + SpscRing.HEADER_SIZE;
+    private static final int DATA_OFFSET = RESPONSE_RING_OFFSET + SpscRing.HEADER_SIZE;
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+    @Getter
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+
+    private ShmFile(Path path, MappedByteBuffer buffer, int capacity) {
+        this.path = path;
+        this.buffer = buffer;
+        this.capacity = capacity;
+    }
+
+    /**
+     * 客户端创建连接文件
+     *
+     * @param capacity 单个环的容量，必须是2的幂
+     */
+    public static ShmFile create(Path path, int capacity) throws IOException {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("容量必须是2的幂: " + capacity);
+        }
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        ShmFile file = new ShmFile(path, map(temp, DATA_OFFSET + 2L * capacity, true), capacity);
+        file.buffer.putInt(MAGIC_OFFSET, MAGIC);
+        file.buffer.putInt(CAPACITY_OFFSET, capacity);
+        INT.setRelease(file.buffer, STATE_OFFSET, CLIENT_READY);
+        Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE);
+        return file;
+    }
+
+    /**
+     * 服务端打开客户端创建的连接文件
+     *
+     * @throws IllegalStateException 不是合法的连接文件
+     */
+    public static ShmFile open(Path path) throws IOException {
+        MappedByteBuffer buffer = map(path, Files.size(path), false);
+        int capacity = buffer.getInt(CAPACITY_OFFSET);
+        if (buffer.getInt(MAGIC_OFFSET) != MAGIC || Integer.bitCount(capacity) != 1
+                || buffer.capacity() != DATA_OFFSET + 2L * capacity) {
+            throw new IllegalStateException("不是共享内存连接文件: " + path);
+        }
+        return new ShmFile(path, buffer, capacity);
+    }
+
+    private static MappedByteBuffer map(Path path, long size, boolean create) throws IOException {
+        StandardOpenOption[] options = create
+                ? new StandardOpenOption[]{StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE}
+                : new StandardOpenOption[]{StandardOpenOption.READ, StandardOpenOption.WRITE};
+        try (FileChannel channel = FileChannel.open(path, options)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    /**
+     * 客户端写、服务端读
+     */
+    public SpscRing requestRing() {
+        return new SpscRing(buffer, REQUEST_RING_OFFSET, DATA_OFFSET, capacity);
+    }
+
+    /**
+     * 服务端写、客户端读
+     */
+    public SpscRing responseRing() {
+        return new SpscRing(buffer, RESPONSE_RING_OFFSET, DATA_OFFSET + capacity, capacity);
+    }
+
+    int state() {
+        return (int) INT.getAcquire(buffer, STATE_OFFSET);
+    }
+
+    boolean compareAndSetState(int expect, int update) {
+        return INT.compareAndSet(buffer, STATE_OFFSET, expect, update);
+    }
+
+    void close() {
+        INT.setRelease(buffer, STATE_OFFSET, CLOSED);
+    }
+}
@@ -0,0 +1,114 @@
+package com.wiqer.redis.netty.channel.shm;
+
+import com.wiqer.redis.util.ThreadFactoryUtil;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 共享内存监听：定期扫描目录，接管客户端新建的连接文件，为每个文件创建{@link ShmChannel}
+ * <p>
+ * 所有共享内存连接注册在同一个专用线程上，连接关闭后删除其文件
+ *
+ * @author lilan
+ */
+@Slf4j
+public class ShmServer implements AutoCloseable {
+
+    private static final long ACCEPT_INTERVAL_MILLIS = 10;
+
+    private final Path directory;
+    private final ChannelHandler initializer;
+    private final EventLoopGroup group = new DefaultEventLoopGroup(1, ThreadFactoryUtil.create("Server_shm_", false));
+    private final ChannelGroup channels = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
+    /**
+     * 已接管或已忽略的文件
+     */
+    private final Set<Path> attached = ConcurrentHashMap.newKeySet();
+    private Future<?> acceptTask;
+
+    /**
+     * @param initializer 每个连接的pipeline初始化器，必须可共享
+     */
+    public ShmServer(Path directory, ChannelHandler initializer) {
+        this.directory = directory;
+        this.initializer = initializer;
+    }
+
+    public void start() throws IOException {
+        Files.createDirectories(directory);
+        acceptTask = group.next().scheduleWithFixedDelay(this::accept, 0, ACCEPT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private void accept() {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + ShmFile.SUFFIX)) {
+            for (Path path : files) {
+                if (!attached.contains(path)) {
+                    attach(path);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("扫描共享内存目录失败: {}", directory, e);
+        }
+    }
+
+    private void attach(Path path) {
+        ShmFile file;
+        try {
+            file = ShmFile.open(path);
+        } catch (IOException | IllegalStateException e) {
+            log.warn("忽略无法识别的共享内存文件: {}", path);
+            // 记为已处理，之后不再重复扫描
+            attached.add(path);
+            return;
+        }
+        if (!file.compareAndSetState(ShmFile.CLIENT_READY, ShmFile.ATTACHED)) {
+            // 客户端在接管前已经关闭
+            deleteQuietly(path);
+            return;
+        }
+        attached.add(path);
+        ShmChannel channel = new ShmChannel(file);
+        channel.pipeline().addLast(initializer);
+        channel.closeFuture().addListener(future -> {
+            deleteQuietly(path);
+            attached.remove(path);
+        });
+        channels.add(channel);
+        group.register(channel);
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("删除共享内存文件失败: {}", path, e);
+        }
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    @Override
+    public void close() {
+        if (acceptTask != null) {
+            acceptTask.cancel(false);
+        }
+        channels.close().awaitUninterruptibly();
+        group.shutdownGracefully().awaitUninterruptibly();
+    }
+}
@@ -0,0 +1,156 @@
+package com.wiqer.redis.netty.channel.shm;
+
+import io.netty.buffer.ByteBuf;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 共享内存中的单生产者单消费者字节环
+ * <p>
+ * 头部两个long各占一个缓存行：tail只由生产者写，head只由消费者写，
+ * 对方以acquire读取、己方以release发布，不需要锁或CAS；
+ * 读写位置单调递增，按容量取模定位，容量必须是2的幂
+ * <p>
+ * 每个进程内的一个实例只能作为生产者或消费者之一使用
+ *
+ * @author lilan
+ */
+public class SpscRing {
+
+    /**
+     * 环的头部长度：tail与head各一个缓存行
+     */
+    static final int HEADER_SIZE = 128;
+
+    private static final int TAIL = 0;
+    private static final int HEAD = 64;
+    private static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private final ByteBuffer buffer;
+    /**
+     * 拷贝数据用的私有视图，position与limit不与其他实例共享
+     */
+    private final ByteBuffer data;
+    private final int headerOffset;
+    private final int dataOffset;
+    private final int capacity;
+    private final int mask;
+
+    SpscRing(ByteBuffer buffer, int headerOffset, int dataOffset, int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("容量必须是2的幂: " + capacity);
+        }
+        this.buffer = buffer;
+        this.data = buffer.duplicate();
+        this.headerOffset = headerOffset;
+        this.dataOffset = dataOffset;
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * @return 可读字节数
+     */
+    public int available() {
+        return (int) (tailAcquire() - headAcquire());
+    }
+
+    /**
+     * 生产者写入尽可能多的字节，推进src的readerIndex
+     *
+     * @return 写入的字节数，环已满时为0
+     */
+    public int write(ByteBuf src) {
+        long tail = (long) LONG.get(buffer, headerOffset + TAIL);
+        int length = (int) Math.min(capacity - (tail - headAcquire()), src.readableBytes());
+        int index = (int) tail & mask;
+        int first = Math.min(length, capacity - index);
+        src.readBytes(slice(index, first));
+        if (length > first) {
+            src.readBytes(slice(0, length - first));
+        }
+        return publishTail(tail, length);
+    }
+
+    /**
+     * 生产者写入尽可能多的字节
+     *
+     * @return 写入的字节数，环已满时为0
+     */
+    public int write(byte[] src, int offset, int length) {
+        long tail = (long) LONG.get(buffer, headerOffset + TAIL);
+        length = (int) Math.min(capacity - (tail - headAcquire()), length);
+        int index = (int) tail & mask;
+        int first = Math.min(length, capacity - index);
+        slice(index, first).put(src, offset, first);
+        if (length > first) {
+            slice(0, length - first).put(src, offset + first, length - first);
+        }
+        return publishTail(tail, length);
+    }
+
+    /**
+     * 消费者读取不超过max字节写入dst
+     *
+     * @return 读取的字节数，环为空时为0
+     */
+    public int read(ByteBuf dst, int max) {
+        long head = (long) LONG.get(buffer, headerOffset + HEAD);
+        int length = (int) Math.min(tailAcquire() - head, Math.min(max, dst.writableBytes()));
+        int index = (int) head & mask;
+        int first = Math.min(length, capacity - index);
+        dst.writeBytes(slice(index, first));
+        if (length > first) {
+            dst.writeBytes(slice(0, length - first));
+        }
+        return publishHead(head, length);
+    }
+
+    /**
+     * 消费者读取不超过length字节
+     *
+     * @return 读取的字节数，环为空时为0
+     */
+    public int read(byte[] dst, int offset, int length) {
+        long head = (long) LONG.get(buffer, headerOffset + HEAD);
+        length = (int) Math.min(tailAcquire() - head, length);
+        int index = (int) head & mask;
+        int first = Math.min(length, capacity - index);
+        slice(index, first).get(dst, offset, first);
+        if (length > first) {
+            slice(0, length - first).get(dst, offset + first, length - first);
+        }
+        return publishHead(head, length);
+    }
+
+    private ByteBuffer slice(int index, int length) {
+        data.clear();
+        data.position(dataOffset + index).limit(dataOffset + index + length);
+        return data;
+    }
+
+    private int publishTail(long tail, int length) {
+        if (length > 0) {
+            LONG.setRelease(buffer, headerOffset + TAIL, tail + length);
+        }
+        return length;
+    }
+
+    private int publishHead(long head, int length) {
+        if (length > 0) {
+            LONG.setRelease(buffer, headerOffset + HEAD, head + length);
+        }
+        return length;
+    }
+
+    private long tailAcquire() {
+        return (long) LONG.getAcquire(buffer, headerOffset + TAIL);
+    }
+
+    private long headAcquire() {
+        return (long) LONG.getAcquire(buffer, headerOffset + HEAD);
+    }
+}
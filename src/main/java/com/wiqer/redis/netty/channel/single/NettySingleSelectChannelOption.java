@@ -1,13 +1,11 @@
 package com.wiqer.redis.netty.channel.single;
 
 import com.wiqer.redis.netty.channel.LocalChannelOption;
+import com.wiqer.redis.util.ThreadFactoryUtil;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
 
-import java.util.concurrent.ThreadFactory;
-import java.util.concurrent.atomic.AtomicInteger;
-
 public class NettySingleSelectChannelOption implements LocalChannelOption {
     private final NioEventLoopGroup single;
 
@@ -16,14 +14,7 @@ public class NettySingleSelectChannelOption implements LocalChannelOption {
     }
 
     public NettySingleSelectChannelOption() {
-        this.single = new NioEventLoopGroup(new ThreadFactory() {
-            private final AtomicInteger index = new AtomicInteger(0);
-
-            @Override
-            public Thread newThread(Runnable r) {
-                return new Thread(r, "Server_boss_" + index.getAndIncrement());
-            }
-        });
+        this.single = new NioEventLoopGroup(ThreadFactoryUtil.create("Server_boss_", false));
 
     }
 
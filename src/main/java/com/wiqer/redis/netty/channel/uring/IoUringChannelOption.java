@@ -0,0 +1,113 @@
+package com.wiqer.redis.netty.channel.uring;
+
+import com.wiqer.redis.netty.channel.LocalChannelOption;
+import com.wiqer.redis.util.PropertiesUtil;
+import com.wiqer.redis.util.ThreadFactoryUtil;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * io_uring传输，管道化负载下读写通过提交队列批量完成，系统调用次数明显少于epoll
+ * <p>
+ * 实现位于netty-incubator-transport-native-io_uring，只在运行时依赖，这里通过反射加载，
+ * 非Linux平台或内核不支持时{@link #isAvailable()}返回false
+ * <p>
+ * 与epoll相同支持reuseport_listeners与tcp_quickack；io_uring没有SO_BUSY_POLL与unix domain socket，
+ * 配置了epoll_busy_poll时{@link com.wiqer.redis.netty.channel.DefaultChannelSelectStrategy}改选epoll
+ */
+@Slf4j
+public class IoUringChannelOption implements LocalChannelOption<ServerChannel> {
+
+    private static final String PACKAGE = "io.netty.incubator.channel.uring.";
+
+    private final EventLoopGroup boss;
+    private final EventLoopGroup selectors;
+    private final Class<? extends ServerChannel> channelClass;
+    private final int listeners;
+
+    public IoUringChannelOption() {
+        this.listeners = PropertiesUtil.getReusePortListeners();
+        this.boss = newEventLoopGroup(listeners, ThreadFactoryUtil.create("Server_boss_", false));
+        this.selectors = newEventLoopGroup(8, ThreadFactoryUtil.create("Server_selector_", false, PropertiesUtil.getSelectorCpus()));
+        this.channelClass = loadClass("IOUringServerSocketChannel").asSubclass(ServerChannel.class);
+    }
+
+    /**
+     * @return 运行时存在io_uring传输且内核支持
+     */
+    public static boolean isAvailable() {
+        try {
+            return (Boolean) loadClass("IOUring").getMethod("isAvailable").invoke(null);
+        } catch (ReflectiveOperationException | IllegalStateException | LinkageError e) {
+            return false;
+        }
+    }
+
+    private static EventLoopGroup newEventLoopGroup(int nThreads, ThreadFactory threadFactory) {
+        try {
+            return (EventLoopGroup) loadClass("IOUringEventLoopGroup")
+                    .getConstructor(int.class, ThreadFactory.class)
+                    .newInstance(nThreads, threadFactory);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("io_uring传输不可用", e);
+        }
+    }
+
+    /**
+     * @return IOUringChannelOption中的选项，包括继承自UnixChannelOption的
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> ChannelOption<T> channelOption(String name) {
+        try {
+            return (ChannelOption<T>) loadClass("IOUringChannelOption").getField(name).get(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("io_uring传输不支持选项" + name, e);
+        }
+    }
+
+    private static Class<?> loadClass(String simpleName) {
+        try {
+            return Class.forName(PACKAGE + simpleName);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("io_uring传输不可用", e);
+        }
+    }
+
+    @Override
+    public EventLoopGroup boss() {
+        return this.boss;
+    }
+
+    @Override
+    public EventLoopGroup selectors() {
+        return this.selectors;
+    }
+
+    @Override
+    public Class<? extends ServerChannel> getChannelClass() {
+        return channelClass;
+    }
+
+    @Override
+    public int listeners() {
+        return listeners;
+    }
+
+    @Override
+    public void configure(ServerBootstrap serverBootstrap) {
+        if (listeners > 1) {
+            serverBootstrap.option(IoUringChannelOption.<Boolean>channelOption("SO_REUSEPORT"), true);
+        }
+        if (PropertiesUtil.getEpollBusyPoll() > 0) {
+            log.warn("io_uring传输不支持SO_BUSY_POLL，忽略epoll_busy_poll");
+        }
+        if (PropertiesUtil.getTcpQuickAck()) {
+            serverBootstrap.childOption(IoUringChannelOption.<Boolean>channelOption("TCP_QUICKACK"), true);
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package com.wiqer.redis.resp;
 
 import com.wiqer.redis.datatype.BytesWrapper;
+import io.netty.buffer.ByteBuf;
+import lombok.AccessLevel;
 import lombok.Getter;
 
 import static com.wiqer.redis.command.Command.CHARSET;
@@ -8,16 +10,25 @@ import static com.wiqer.redis.command.Command.CHARSET;
 @Getter
 public class BulkString implements Resp {
 
-    public static final BulkString NullBulkString = new BulkString();
+    public static final BulkString NullBulkString = shared(null);
 
     public static final BulkString DATABASES = new BulkString(new BytesWrapper("databases".getBytes(CHARSET)));
 
-    public static final BulkString ONE = new BulkString(new BytesWrapper("1".getBytes(CHARSET)));
+    public static final BulkString ONE = shared(new BytesWrapper("1".getBytes(CHARSET)));
 
-    public static final BulkString ZERO = new BulkString(new BytesWrapper("0".getBytes(CHARSET)));
+    public static final BulkString ZERO = shared(new BytesWrapper("0".getBytes(CHARSET)));
 
     private BytesWrapper content;
 
+    @Getter(AccessLevel.NONE)
+    private ByteBuf preEncoded;
+
+    /**
+     * 只有nil在RESP3下编码不同
+     */
+    @Getter(AccessLevel.NONE)
+    private ByteBuf preEncodedResp3;
+
     public BulkString(BytesWrapper content) {
         this.content = content;
     }
@@ -28,4 +39,21 @@ public class BulkString implements Resp {
     public BulkString(byte[] content) {
         this.content = new BytesWrapper(content);
     }
+
+    private static BulkString shared(BytesWrapper content) {
+        BulkString bulkString = new BulkString(content);
+        bulkString.preEncoded = Resp.preEncode(bulkString, false);
+        bulkString.preEncodedResp3 = content == null ? Resp.preEncode(bulkString, true) : bulkString.preEncoded;
+        return bulkString;
+    }
+
+    @Override
+    public RespType type() {
+        return RespType.BULK;
+    }
+
+    @Override
+    public ByteBuf preEncoded(boolean resp3) {
+        return resp3 ? preEncodedResp3 : preEncoded;
+    }
 }
@@ -11,4 +11,9 @@ public class Errors implements Resp {
         this.content = content;
     }
 
+    @Override
+    public RespType type() {
+        return RespType.ERROR;
+    }
+
 }
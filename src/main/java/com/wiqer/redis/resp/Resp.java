@@ -1,9 +1,13 @@
 package com.wiqer.redis.resp;
 
 import com.wiqer.redis.datatype.BytesWrapper;
+import com.wiqer.redis.util.Format;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.util.AttributeKey;
 
-import java.util.ArrayList;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 /**
@@ -11,166 +15,231 @@ import java.util.List;
  */
 public interface Resp {
 
+    short CRLF = ('\r' << 8) | '\n';
+
+    /**
+     * 连接协商的协议版本，HELLO 3之后为true，编码器据此选择RESP3编码或降级为RESP2
+     */
+    AttributeKey<Boolean> RESP3 = AttributeKey.valueOf("resp3");
+
+    /**
+     * @return 编码时分派用的类型标记
+     */
+    RespType type();
+
+    /**
+     * @param resp3 连接是否使用RESP3
+     * @return 预编码的共享回复，编码器直接写出其retainedDuplicate；非共享回复返回null
+     */
+    default ByteBuf preEncoded(boolean resp3) {
+        return null;
+    }
+
+    /**
+     * 将多个元素编码为一个数组，用于AOF记录命令
+     */
     static void write(List<Resp> list, ByteBuf buffer) {
         if (list == null || list.isEmpty()) {
             throw new IllegalArgumentException("响应列表不能为空");
         }
-
-        if (list.size() == 1) {
-            writeSingleResp(list.get(0), buffer);
-        } else {
-            writeMultiBulk(list, buffer);
-        }
-    }
-
-    private static void writeSingleResp(Resp resp, ByteBuf buffer) {
-        if (resp instanceof SimpleString) {
-            writeSimpleString(RespType.STATUS.getCode(), ((SimpleString) resp).getContent(), buffer);
-        } else if (resp instanceof Errors) {
-            writeSimpleString(RespType.ERROR.getCode(), ((Errors) resp).getContent(), buffer);
-        } else if (resp instanceof RespInt) {
-            writeSimpleString(RespType.INTEGER.getCode(), String.valueOf(((RespInt) resp).getValue()), buffer);
-        } else if (resp instanceof BulkString) {
-            writeBulkString((BulkString) resp, buffer);
+        buffer.ensureWritable(encodedLength(list));
+        writeHeader(RespType.MULTYBULK.getCode(), list.size(), buffer);
+        for (Resp each : list) {
+            writeSingleResp(each, buffer, false);
         }
     }
 
-    private static void writeSimpleString(byte typeCode, String content, ByteBuf buffer) {
-        buffer.writeByte(typeCode);
-        writeString(content, buffer);
-        writeCRLF(buffer);
+    static void write(Resp resp, ByteBuf buffer) {
+        write(resp, buffer, false);
     }
 
-    private static void writeBulkString(BulkString resp, ByteBuf buffer) {
-        buffer.writeByte(RespType.BULK.getCode());
-        BytesWrapper content = resp.getContent();
-
-        if (content == null) {
-            buffer.writeByte(RespType.ERROR.getCode());
-            buffer.writeByte(RespType.ONE.getCode());
-            writeCRLF(buffer);
-        } else if (content.getByteArray().length == 0) {
-            buffer.writeByte(RespType.ZERO.getCode());
-            writeCRLF(buffer);
-            writeCRLF(buffer);
-        } else {
-            writeString(String.valueOf(content.getByteArray().length), buffer);
-            writeCRLF(buffer);
-            buffer.writeBytes(content.getByteArray());
-            writeCRLF(buffer);
+    static void write(Resp resp, ByteBuf buffer, boolean resp3) {
+        ByteBuf shared = resp.preEncoded(resp3);
+        if (shared != null) {
+            buffer.writeBytes(shared, shared.readerIndex(), shared.readableBytes());
+            return;
         }
+        writeSingleResp(resp, buffer, resp3);
     }
 
-    private static void writeMultiBulk(List<Resp> list, ByteBuf buffer) {
-        buffer.writeByte(RespType.MULTYBULK.getCode());
-        writeString(String.valueOf(list.size()), buffer);
-        writeCRLF(buffer);
-        for (Resp each : list) {
-            write(List.of(each), buffer);
+    /**
+     * 写出数组中的一个元素，元素类型见{@link RespArray}
+     */
+    static void writeElement(Object element, ByteBuf buffer, boolean resp3) {
+        if (element == null) {
+            writeNil(RespType.BULK, buffer, resp3);
+        } else if (element instanceof BytesWrapper bytesWrapper) {
+            writeBulk(bytesWrapper, buffer);
+        } else {
+            write((Resp) element, buffer, resp3);
         }
     }
 
-    private static void writeString(String content, ByteBuf buffer) {
-        for (char each : content.toCharArray()) {
-            buffer.writeByte((byte) each);
+    /**
+     * 写出聚合类型的头部，RESP2下map、set、push都降级为普通数组
+     *
+     * @return 是否还需要写出元素，nil数组没有元素
+     */
+    static boolean writeAggregateHeader(RespArray respArray, ByteBuf buffer, boolean resp3) {
+        int size = respArray.getSize();
+        if (size < 0) {
+            writeNil(RespType.MULTYBULK, buffer, resp3);
+            return false;
         }
-    }
-
-    private static void writeCRLF(ByteBuf buffer) {
-        buffer.writeByte(RespType.R.getCode());
-        buffer.writeByte(RespType.N.getCode());
+        RespType type = resp3 ? respArray.getType() : RespType.MULTYBULK;
+        writeHeader(type.getCode(), type == RespType.MAP ? size >> 1 : size, buffer);
+        return true;
     }
 
     /**
-     * 无法解码压测客户端
+     * @return RESP2下编码后的字节数，用于一次性分配大小合适的缓冲区，标量的RESP3编码不会更长；
+     * 聚合类型的元素在编码时才遍历，只计算头部
      */
-    static List<Resp> decode(ByteBuf buffer) {
-        if (buffer.readableBytes() <= 0) {
-            throw new IllegalStateException("没有读取到完整的命令");
-        }
-        byte c = buffer.readByte();
-        RespType respType = RespType.getByCode(c);
-        switch (respType) {
+    static int encodedLength(Resp resp) {
+        switch (resp.type()) {
             case STATUS -> {
-                return List.of(new SimpleString(getString(buffer)));
+                return ByteBufUtil.utf8Bytes(((SimpleString) resp).getContent()) + 3;
             }
             case ERROR -> {
-                return List.of(new Errors(getString(buffer)));
+                return ByteBufUtil.utf8Bytes(((Errors) resp).getContent()) + 3;
             }
             case INTEGER -> {
-                int value = getNumber(buffer);
-                return List.of(new RespInt(value));
+                return Format.decimalLength(((RespInt) resp).getValue()) + 3;
             }
             case BULK -> {
-                int length = getNumber(buffer);
-                if (buffer.readableBytes() < length + 2) {
-                    throw new IllegalStateException("没有读取到完整的命令");
-                }
-                byte[] content;
-                if (length == -1) {
-                    content = null;
-                } else {
-                    content = new byte[length];
-                    buffer.readBytes(content);
-                }
-                if (buffer.readByte() != RespType.R.getCode()
-                        || buffer.readByte() != RespType.N.getCode()) {
-                    throw new IllegalStateException("没有读取到完整的命令");
+                BytesWrapper content = ((BulkString) resp).getContent();
+                if (content == null) {
+                    return 5;
                 }
-                return List.of(new BulkString(new BytesWrapper(content)));
+                return Format.decimalLength(content.length()) + content.length() + 5;
             }
-            case MULTYBULK -> {
-                int numOfElement = getNumber(buffer);
-                List<Resp> list = new ArrayList<>(numOfElement);
-                for (int i = 0; i < numOfElement; i++) {
-                    list.addAll(decode(buffer));
-                }
-                return list;
+            case DOUBLE -> {
+                return numberLength(((RespDouble) resp).getContent());
+            }
+            case BIG_NUMBER -> {
+                return numberLength(((RespBigNumber) resp).getContent());
+            }
+            case MULTYBULK, MAP, SET, PUSH -> {
+                return Format.decimalLength(((RespArray) resp).getSize()) + 3;
+            }
+            case ATTRIBUTE -> {
+                RespAttribute attribute = (RespAttribute) resp;
+                return encodedLength(attribute.getAttributes()) + encodedLength(attribute.getReply());
             }
             default -> {
-                if (c > 64 && c < 91) {
-                    return List.of(new SimpleString(c + getString(buffer)));
-                } else {
-                    return decode(buffer);
-                }
+                return 0;
             }
         }
     }
 
-    static int getNumber(ByteBuf buffer) {
-        char t;
-        t = (char) buffer.readByte();
-        boolean positive = true;
-        int value = 0;
-        // 错误（Errors）： 响应的首字节是 "-"
-        if (t == RespType.ERROR.getCode()) {
-            positive = false;
-        } else {
-            value = t - RespType.ZERO.getCode();
-        }
-        while (buffer.readableBytes() > 0
-                && (t = (char) buffer.readByte()) != RespType.R.getCode()) {
-            value = value * 10 + (t - RespType.ZERO.getCode());
+    static int encodedLength(List<Resp> list) {
+        int length = Format.decimalLength(list.size()) + 3;
+        for (Resp each : list) {
+            length += encodedLength(each);
         }
-        if (buffer.readableBytes() == 0 || buffer.readByte() != RespType.N.getCode()) {
-            throw new IllegalStateException("没有读取到完整的命令");
+        return length;
+    }
+
+    private static int numberLength(String content) {
+        return Format.decimalLength(content.length()) + content.length() + 5;
+    }
+
+    /**
+     * 将回复预编码为只读的共享直接内存缓冲区
+     */
+    static ByteBuf preEncode(Resp resp, boolean resp3) {
+        ByteBuf buffer = Unpooled.directBuffer(encodedLength(resp));
+        writeSingleResp(resp, buffer, resp3);
+        return Unpooled.unreleasableBuffer(buffer.asReadOnly());
+    }
+
+    private static void writeSingleResp(Resp resp, ByteBuf buffer, boolean resp3) {
+        switch (resp.type()) {
+            case STATUS -> writeSimpleString(RespType.STATUS, ((SimpleString) resp).getContent(), buffer);
+            case ERROR -> writeSimpleString(RespType.ERROR, ((Errors) resp).getContent(), buffer);
+            case INTEGER -> writeHeader(RespType.INTEGER.getCode(), ((RespInt) resp).getValue(), buffer);
+            case BULK -> writeBulkString((BulkString) resp, buffer, resp3);
+            case DOUBLE -> writeNumber(RespType.DOUBLE, ((RespDouble) resp).getContent(), buffer, resp3);
+            case BIG_NUMBER -> writeNumber(RespType.BIG_NUMBER, ((RespBigNumber) resp).getContent(), buffer, resp3);
+            case MULTYBULK, MAP, SET, PUSH -> {
+                RespArray respArray = (RespArray) resp;
+                if (writeAggregateHeader(respArray, buffer, resp3)) {
+                    for (Object element : respArray.getElements()) {
+                        writeElement(element, buffer, resp3);
+                    }
+                }
+            }
+            case ATTRIBUTE -> {
+                RespAttribute attribute = (RespAttribute) resp;
+                if (resp3) {
+                    RespArray attributes = attribute.getAttributes();
+                    writeHeader(RespType.ATTRIBUTE.getCode(), attributes.getSize() >> 1, buffer);
+                    for (Object element : attributes.getElements()) {
+                        writeElement(element, buffer, true);
+                    }
+                }
+                write(attribute.getReply(), buffer, resp3);
+            }
+            default -> throw new IllegalArgumentException("不支持的回复类型: " + resp.type());
         }
-        if (!positive) {
-            value = -value;
+    }
+
+    private static void writeSimpleString(RespType type, String content, ByteBuf buffer) {
+        buffer.writeByte(type.getCode());
+        ByteBufUtil.writeUtf8(buffer, content);
+        writeCRLF(buffer);
+    }
+
+    private static void writeBulkString(BulkString resp, ByteBuf buffer, boolean resp3) {
+        BytesWrapper content = resp.getContent();
+        if (content == null) {
+            writeNil(RespType.BULK, buffer, resp3);
+            return;
         }
-        return value;
+        writeBulk(content, buffer);
+    }
+
+    private static void writeBulk(BytesWrapper content, ByteBuf buffer) {
+        writeHeader(RespType.BULK.getCode(), content.length(), buffer);
+        content.writeTo(buffer);
+        writeCRLF(buffer);
     }
 
-    static String getString(ByteBuf buffer) {
-        char c;
-        StringBuilder builder = new StringBuilder();
-        while (buffer.readableBytes() > 0
-                && (c = (char) buffer.readByte()) != RespType.R.getCode()) {
-            builder.append(c);
+    /**
+     * double和大整数在RESP3下是独立类型，RESP2下降级为bulk string
+     */
+    private static void writeNumber(RespType type, String content, ByteBuf buffer, boolean resp3) {
+        if (resp3) {
+            writeSimpleString(type, content, buffer);
+            return;
         }
-        if (buffer.readableBytes() == 0 || buffer.readByte() != RespType.N.getCode()) {
-            throw new IllegalStateException("没有读取到完整的命令");
+        writeHeader(RespType.BULK.getCode(), content.length(), buffer);
+        buffer.writeCharSequence(content, StandardCharsets.US_ASCII);
+        writeCRLF(buffer);
+    }
+
+    /**
+     * RESP3只有一种null，RESP2区分nil bulk string和nil数组
+     */
+    private static void writeNil(RespType type, ByteBuf buffer, boolean resp3) {
+        if (resp3) {
+            buffer.writeByte(RespType.NIL.getCode());
+            writeCRLF(buffer);
+            return;
         }
-        return builder.toString();
+        writeHeader(type.getCode(), -1, buffer);
+    }
+
+    /**
+     * 写出类型字节、十进制数值和CRLF，用于长度行和整数回复
+     */
+    private static void writeHeader(byte typeCode, long value, ByteBuf buffer) {
+        buffer.writeByte(typeCode);
+        Format.writeLong(buffer, value);
+        writeCRLF(buffer);
+    }
+
+    private static void writeCRLF(ByteBuf buffer) {
+        buffer.writeShort(CRLF);
     }
 }
@@ -0,0 +1,205 @@
+package com.wiqer.redis.resp;
+
+import com.wiqer.redis.datatype.BytesWrapper;
+import io.netty.buffer.ByteBuf;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * 数组回复，支持嵌套
+ * <p>
+ * 元素可以是：
+ * 1. Resp，包括嵌套的RespArray
+ * 2. BytesWrapper，直接按bulk string编码，不创建BulkString包装
+ * 3. null，编码为nil
+ * <p>
+ * RESP3下还可以作为map（键值交替）、set、push编码，RESP2连接上降级为普通数组
+ * <p>
+ * 元素在编码时才遍历，命令回复在执行它的分片线程上编码，
+ * 因此可以直接引用数据结构的视图，由编码器从迭代器流式写入出站缓冲区；需要交给其他线程时先{@link #materialize()}
+ *
+ * @author lilan
+ */
+@Getter
+public class RespArray implements Resp {
+
+    public static final RespArray EMPTY = shared(0);
+
+    public static final RespArray NULL = shared(-1);
+
+    private final RespType type;
+
+    /**
+     * 元素个数，map为键值个数之和，-1表示nil数组
+     */
+    private final int size;
+
+    private final Iterable<?> elements;
+
+    @Getter(AccessLevel.NONE)
+    private ByteBuf preEncoded;
+
+    @Getter(AccessLevel.NONE)
+    private ByteBuf preEncodedResp3;
+
+    private RespArray(int size, Iterable<?> elements) {
+        this(RespType.MULTYBULK, size, elements);
+    }
+
+    private RespArray(RespType type, int size, Iterable<?> elements) {
+        this.type = type;
+        this.size = size;
+        this.elements = elements;
+    }
+
+    public static RespArray of(Resp... elements) {
+        return new RespArray(elements.length, Arrays.asList(elements));
+    }
+
+    public static RespArray of(List<? extends Resp> elements) {
+        return new RespArray(elements.size(), elements);
+    }
+
+    /**
+     * @param elements 元素为null时编码为nil
+     */
+    public static RespArray ofBulk(Collection<BytesWrapper> elements) {
+        return new RespArray(elements.size(), elements);
+    }
+
+    /**
+     * @param size     elements将产生的元素个数
+     * @param elements 可以只遍历一次，例如stream::iterator
+     */
+    public static RespArray ofBulk(int size, Iterable<BytesWrapper> elements) {
+        return new RespArray(size, elements);
+    }
+
+    /**
+     * 将每个元素映射为回复，映射在编码时逐个进行
+     */
+    public static <T> RespArray of(Collection<T> source, Function<? super T, ?> mapper) {
+        return new RespArray(source.size(), () -> new Iterator<Object>() {
+            private final Iterator<T> iterator = source.iterator();
+
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public Object next() {
+                return mapper.apply(iterator.next());
+            }
+        });
+    }
+
+    /**
+     * 将每个元素映射为相邻的两个回复，例如field、value或member、score
+     */
+    public static <T> RespArray ofPairs(Collection<T> source, Function<? super T, ?> first, Function<? super T, ?> second) {
+        return new RespArray(source.size() << 1, () -> new Iterator<Object>() {
+            private final Iterator<T> iterator = source.iterator();
+            private T current;
+
+            @Override
+            public boolean hasNext() {
+                return current != null || iterator.hasNext();
+            }
+
+            @Override
+            public Object next() {
+                if (current != null) {
+                    T pair = current;
+                    current = null;
+                    return second.apply(pair);
+                }
+                current = iterator.next();
+                return first.apply(current);
+            }
+        });
+    }
+
+    /**
+     * 将map展开为field、value交替的数组
+     */
+    public static RespArray ofBulkEntries(Map<BytesWrapper, BytesWrapper> map) {
+        return ofPairs(map.entrySet(), Map.Entry::getKey, Map.Entry::getValue);
+    }
+
+    /**
+     * @param elements 元素类型见类注释
+     */
+    public static RespArray ofElements(RespType type, List<?> elements) {
+        return new RespArray(type, elements.size(), elements);
+    }
+
+    /**
+     * 在当前线程遍历全部元素，生成不再引用数据结构和请求缓冲区的副本，副本可以交给其他线程
+     */
+    public RespArray materialize() {
+        if (preEncoded != null) {
+            return this;
+        }
+        List<Object> copy = new ArrayList<>(size);
+        for (Object element : elements) {
+            if (element instanceof RespArray nested) {
+                copy.add(nested.materialize());
+            } else if (element instanceof BytesWrapper bytesWrapper) {
+                copy.add(bytesWrapper.persist());
+            } else {
+                copy.add(element);
+            }
+        }
+        return new RespArray(type, size, copy);
+    }
+
+    /**
+     * 以RESP3 map编码，元素必须键值交替
+     */
+    public RespArray asMap() {
+        if ((size & 1) != 0) {
+            throw new IllegalArgumentException("map必须由键值对组成");
+        }
+        return new RespArray(RespType.MAP, size, elements);
+    }
+
+    /**
+     * 以RESP3 set编码
+     */
+    public RespArray asSet() {
+        return new RespArray(RespType.SET, size, elements);
+    }
+
+    /**
+     * 以RESP3 push编码，用于带外推送
+     */
+    public RespArray asPush() {
+        return new RespArray(RespType.PUSH, size, elements);
+    }
+
+    private static RespArray shared(int size) {
+        RespArray respArray = new RespArray(size, List.of());
+        respArray.preEncoded = Resp.preEncode(respArray, false);
+        respArray.preEncodedResp3 = size < 0 ? Resp.preEncode(respArray, true) : respArray.preEncoded;
+        return respArray;
+    }
+
+    @Override
+    public RespType type() {
+        return type;
+    }
+
+    @Override
+    public ByteBuf preEncoded(boolean resp3) {
+        return resp3 ? preEncodedResp3 : preEncoded;
+    }
+}
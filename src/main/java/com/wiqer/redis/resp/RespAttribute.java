@@ -0,0 +1,30 @@
+package com.wiqer.redis.resp;
+
+import lombok.Getter;
+
+/**
+ * RESP3 attribute，附加在回复之前的键值对元信息；RESP2下只写出回复本身
+ */
+@Getter
+public class RespAttribute implements Resp {
+
+    /**
+     * 键、值交替的元素
+     */
+    private final RespArray attributes;
+
+    private final Resp reply;
+
+    public RespAttribute(RespArray attributes, Resp reply) {
+        if ((attributes.getSize() & 1) != 0) {
+            throw new IllegalArgumentException("attribute必须由键值对组成");
+        }
+        this.attributes = attributes;
+        this.reply = reply;
+    }
+
+    @Override
+    public RespType type() {
+        return RespType.ATTRIBUTE;
+    }
+}
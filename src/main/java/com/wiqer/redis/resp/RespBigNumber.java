@@ -0,0 +1,23 @@
+package com.wiqer.redis.resp;
+
+import lombok.Getter;
+
+import java.math.BigInteger;
+
+/**
+ * RESP3 big number，RESP2下降级为bulk string
+ */
+@Getter
+public class RespBigNumber implements Resp {
+
+    private final String content;
+
+    public RespBigNumber(BigInteger value) {
+        this.content = value.toString();
+    }
+
+    @Override
+    public RespType type() {
+        return RespType.BIG_NUMBER;
+    }
+}
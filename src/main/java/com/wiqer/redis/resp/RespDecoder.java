@@ -0,0 +1,277 @@
+package com.wiqer.redis.resp;
+
+import com.wiqer.redis.datatype.BytesWrapper;
+import io.netty.buffer.ByteBuf;
+import io.netty.util.ByteProcessor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 可续传的RESP请求解码状态机
+ * 特点：
+ * 1. 解析进度（数组元素个数、当前bulk长度、已解析字节数）在多次读取之间保留
+ * 2. 数据不足时返回null，从不抛出异常，也不回退重解析，解码开销与收到的字节数成线性关系
+ * 3. 整条命令解析完成前不移动readerIndex，已解析位置以相对readerIndex的偏移记录
+ * 4. 整条命令作为一个retained slice交给{@link RespRequest}，参数直接借用其中的字节，不做拷贝
+ * 5. 不以'*'开头的行按inline命令（telnet风格）解析，参数以空白分隔，支持不含转义的引号
+ * <p>
+ * 非线程安全，每个连接持有一个实例
+ *
+ * @author lilan
+ */
+public class RespDecoder {
+
+    /**
+     * 单条命令最多参数个数，与redis保持一致
+     */
+    private static final int MAX_MULTI_BULK_LENGTH = 1024 * 1024;
+    /**
+     * 单个bulk最大长度，与redis的proto-max-bulk-len默认值保持一致
+     */
+    private static final int MAX_BULK_LENGTH = 512 * 1024 * 1024;
+    /**
+     * 长度行（*N\r\n / $N\r\n）的最大字节数
+     */
+    private static final int MAX_HEADER_LENGTH = 64 * 1024;
+    /**
+     * inline命令一行的最大字节数，与redis的PROTO_INLINE_MAX_SIZE保持一致
+     */
+    private static final int MAX_INLINE_LENGTH = 64 * 1024;
+    private static final int INITIAL_ARGS = 8;
+
+    private enum State {
+        ARRAY_HEADER,
+        BULK_HEADER,
+        BULK_CONTENT
+    }
+
+    private State state = State.ARRAY_HEADER;
+    /**
+     * 当前命令已解析的字节数（相对readerIndex）
+     */
+    private int offset;
+    /**
+     * 当前命令尚未解析的参数个数
+     */
+    private int remaining;
+    /**
+     * 当前bulk的长度
+     */
+    private int bulkLength;
+    private int argCount;
+    private int[] argOffsets = new int[INITIAL_ARGS];
+    private int[] argLengths = new int[INITIAL_ARGS];
+
+    /**
+     * 从缓冲区解码一条完整的命令
+     *
+     * @param in 入站缓冲区
+     * @return 请求命令，使用完毕后需要release；数据不足时返回null，缓冲区的readerIndex保持不变
+     * @throws IllegalStateException 协议错误
+     */
+    public RespRequest decode(ByteBuf in) {
+        while (true) {
+            switch (state) {
+                case ARRAY_HEADER -> {
+                    if (!in.isReadable()) {
+                        return null;
+                    }
+                    byte type = in.getByte(in.readerIndex());
+                    if (type != RespType.MULTYBULK.getCode()) {
+                        if (!readInline(in)) {
+                            return null;
+                        }
+                        if (argCount == 0) {
+                            // 空行直接丢弃
+                            in.skipBytes(offset);
+                            reset();
+                            continue;
+                        }
+                        RespRequest request = materialize(in.readRetainedSlice(offset));
+                        reset();
+                        return request;
+                    }
+                    long length = readHeader(in);
+                    if (length == Long.MIN_VALUE) {
+                        return null;
+                    }
+                    if (length > MAX_MULTI_BULK_LENGTH) {
+                        throw protocolError("invalid multibulk length");
+                    }
+                    if (length <= 0) {
+                        // 空命令直接丢弃，继续解析后续数据
+                        in.skipBytes(offset);
+                        reset();
+                        continue;
+                    }
+                    remaining = (int) length;
+                    state = State.BULK_HEADER;
+                }
+                case BULK_HEADER -> {
+                    if (in.readableBytes() <= offset) {
+                        return null;
+                    }
+                    byte type = in.getByte(in.readerIndex() + offset);
+                    if (type != RespType.BULK.getCode()) {
+                        throw protocolError("expected '$', got '" + (char) type + "'");
+                    }
+                    long length = readHeader(in);
+                    if (length == Long.MIN_VALUE) {
+                        return null;
+                    }
+                    if (length < 0 || length > MAX_BULK_LENGTH) {
+                        throw protocolError("invalid bulk length");
+                    }
+                    bulkLength = (int) length;
+                    state = State.BULK_CONTENT;
+                }
+                case BULK_CONTENT -> {
+                    if ((long) in.readableBytes() - offset < (long) bulkLength + 2) {
+                        return null;
+                    }
+                    int contentIndex = in.readerIndex() + offset;
+                    if (in.getByte(contentIndex + bulkLength) != RespType.R.getCode()
+                            || in.getByte(contentIndex + bulkLength + 1) != RespType.N.getCode()) {
+                        throw protocolError("bulk not terminated by CRLF");
+                    }
+                    ensureArgCapacity(argCount + 1);
+                    argOffsets[argCount] = offset;
+                    argLengths[argCount] = bulkLength;
+                    argCount++;
+                    offset += bulkLength + 2;
+                    if (--remaining > 0) {
+                        state = State.BULK_HEADER;
+                        continue;
+                    }
+                    RespRequest request = materialize(in.readRetainedSlice(offset));
+                    reset();
+                    return request;
+                }
+            }
+        }
+    }
+
+    /**
+     * 丢弃当前的解析进度
+     */
+    public void reset() {
+        state = State.ARRAY_HEADER;
+        offset = 0;
+        remaining = 0;
+        bulkLength = 0;
+        argCount = 0;
+    }
+
+    private RespRequest materialize(ByteBuf frame) {
+        List<Resp> args = new ArrayList<>(argCount);
+        for (int i = 0; i < argCount; i++) {
+            args.add(new BulkString(BytesWrapper.wrap(frame, argOffsets[i], argLengths[i])));
+        }
+        return new RespRequest(frame, args);
+    }
+
+    /**
+     * 解析一整行inline命令，成功时offset为整行（含换行）的字节数
+     *
+     * @return 行是否完整
+     */
+    private boolean readInline(ByteBuf in) {
+        int start = in.readerIndex();
+        int searchable = Math.min(in.readableBytes(), MAX_INLINE_LENGTH);
+        int lf = in.forEachByte(start, searchable, ByteProcessor.FIND_LF);
+        if (lf < 0) {
+            if (searchable >= MAX_INLINE_LENGTH) {
+                throw protocolError("too big inline request");
+            }
+            return false;
+        }
+        int end = lf > start && in.getByte(lf - 1) == RespType.R.getCode() ? lf - 1 : lf;
+        int index = start;
+        while (index < end) {
+            byte b = in.getByte(index);
+            if (b == ' ' || b == '\t') {
+                index++;
+                continue;
+            }
+            int argStart;
+            int argEnd;
+            if (b == '"' || b == '\'') {
+                argStart = index + 1;
+                argEnd = in.indexOf(argStart, end, b);
+                if (argEnd < 0) {
+                    throw protocolError("unbalanced quotes in request");
+                }
+                index = argEnd + 1;
+                if (index < end && in.getByte(index) != ' ' && in.getByte(index) != '\t') {
+                    throw protocolError("unbalanced quotes in request");
+                }
+            } else {
+                argStart = index;
+                while (index < end && in.getByte(index) != ' ' && in.getByte(index) != '\t') {
+                    index++;
+                }
+                argEnd = index;
+            }
+            ensureArgCapacity(argCount + 1);
+            argOffsets[argCount] = argStart - start;
+            argLengths[argCount] = argEnd - argStart;
+            argCount++;
+        }
+        offset = lf - start + 1;
+        return true;
+    }
+
+    /**
+     * 解析offset处的长度行（类型字节 + 十进制数字 + CRLF），成功时offset移到下一行行首
+     *
+     * @return 长度；行不完整时返回Long.MIN_VALUE
+     */
+    private long readHeader(ByteBuf in) {
+        int start = in.readerIndex() + offset;
+        int searchable = Math.min(in.readableBytes() - offset, MAX_HEADER_LENGTH);
+        int lf = in.forEachByte(start, searchable, ByteProcessor.FIND_LF);
+        if (lf < 0) {
+            if (searchable >= MAX_HEADER_LENGTH) {
+                throw protocolError("too big header");
+            }
+            return Long.MIN_VALUE;
+        }
+        if (lf - start < 2 || in.getByte(lf - 1) != RespType.R.getCode()) {
+            throw protocolError("invalid header line");
+        }
+        long value = parseNumber(in, start + 1, lf - 1);
+        offset += lf - start + 1;
+        return value;
+    }
+
+    private static long parseNumber(ByteBuf in, int from, int to) {
+        boolean negative = in.getByte(from) == '-';
+        int index = negative ? from + 1 : from;
+        if (index >= to || to - index > 18) {
+            throw protocolError("invalid length");
+        }
+        long value = 0;
+        for (; index < to; index++) {
+            int digit = in.getByte(index) - '0';
+            if (digit < 0 || digit > 9) {
+                throw protocolError("invalid length");
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    private void ensureArgCapacity(int count) {
+        if (argOffsets.length < count) {
+            int capacity = argOffsets.length << 1;
+            argOffsets = Arrays.copyOf(argOffsets, capacity);
+            argLengths = Arrays.copyOf(argLengths, capacity);
+        }
+    }
+
+    private static IllegalStateException protocolError(String message) {
+        return new IllegalStateException("Protocol error: " + message);
+    }
+}
@@ -0,0 +1,40 @@
+package com.wiqer.redis.resp;
+
+import lombok.Getter;
+
+/**
+ * RESP3 double，RESP2下降级为bulk string
+ */
+@Getter
+public class RespDouble implements Resp {
+
+    private final double value;
+
+    private final String content;
+
+    public RespDouble(double value) {
+        this.value = value;
+        this.content = format(value);
+    }
+
+    /**
+     * 与redis一致：整数值不带小数部分，无穷和NaN使用inf、-inf、nan
+     */
+    private static String format(double value) {
+        if (Double.isNaN(value)) {
+            return "nan";
+        }
+        if (Double.isInfinite(value)) {
+            return value > 0 ? "inf" : "-inf";
+        }
+        if (value == Math.rint(value) && Math.abs(value) < 1e17) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    @Override
+    public RespType type() {
+        return RespType.DOUBLE;
+    }
+}
@@ -1,18 +1,57 @@
 package com.wiqer.redis.resp;
 
+import io.netty.buffer.ByteBuf;
+import lombok.AccessLevel;
 import lombok.Getter;
 
 @Getter
 public class RespInt implements Resp {
 
+    /**
+     * 预编码的小整数缓存范围[CACHE_LOW, CACHE_HIGH]
+     */
+    private static final int CACHE_LOW = -2;
+    private static final int CACHE_HIGH = 1024;
+    private static final RespInt[] CACHE = new RespInt[CACHE_HIGH - CACHE_LOW + 1];
+
+    static {
+        for (int i = 0; i < CACHE.length; i++) {
+            RespInt respInt = new RespInt(i + CACHE_LOW);
+            respInt.preEncoded = Resp.preEncode(respInt, false);
+            CACHE[i] = respInt;
+        }
+    }
+
     int value;
 
-    public static final RespInt ZERO = new RespInt(0);
+    @Getter(AccessLevel.NONE)
+    private ByteBuf preEncoded;
 
-    public static final RespInt ONE = new RespInt(1);
+    public static final RespInt ZERO = valueOf(0);
+
+    public static final RespInt ONE = valueOf(1);
 
     public RespInt(int value) {
         this.value = value;
     }
 
+    /**
+     * 小整数返回预编码的共享实例
+     */
+    public static RespInt valueOf(int value) {
+        if (value >= CACHE_LOW && value <= CACHE_HIGH) {
+            return CACHE[value - CACHE_LOW];
+        }
+        return new RespInt(value);
+    }
+
+    @Override
+    public RespType type() {
+        return RespType.INTEGER;
+    }
+
+    @Override
+    public ByteBuf preEncoded(boolean resp3) {
+        return preEncoded;
+    }
 }
@@ -0,0 +1,80 @@
+package com.wiqer.redis.resp;
+
+import com.wiqer.redis.trace.RequestTrace;
+import io.netty.buffer.ByteBuf;
+import io.netty.util.ReferenceCounted;
+
+import java.util.List;
+
+/**
+ * 解码后的一条请求命令
+ * <p>
+ * 参数以借用形态的BulkString引用frame，frame是入站缓冲区中整条命令的retained slice，
+ * 请求释放后参数随之失效，需要长期持有的内容必须先persist
+ * <p>
+ * 被采样的请求带有{@link RequestTrace}，其余请求为null
+ *
+ * @author lilan
+ */
+public class RespRequest implements ReferenceCounted {
+
+    private final ByteBuf frame;
+    private final List<Resp> args;
+    private RequestTrace trace;
+
+    public RespRequest(ByteBuf frame, List<Resp> args) {
+        this.frame = frame;
+        this.args = args;
+    }
+
+    public List<Resp> getArgs() {
+        return args;
+    }
+
+    public RequestTrace getTrace() {
+        return trace;
+    }
+
+    public void setTrace(RequestTrace trace) {
+        this.trace = trace;
+    }
+
+    @Override
+    public int refCnt() {
+        return frame.refCnt();
+    }
+
+    @Override
+    public RespRequest retain() {
+        frame.retain();
+        return this;
+    }
+
+    @Override
+    public RespRequest retain(int increment) {
+        frame.retain(increment);
+        return this;
+    }
+
+    @Override
+    public RespRequest touch() {
+        frame.touch();
+        return this;
+    }
+
+    @Override
+    public RespRequest touch(Object hint) {
+        frame.touch(hint);
+        return this;
+    }
+
+    @Override
+    public boolean release() {
+        return frame.release();
+    }
+
+    @Override
+    public boolean release(int decrement) {
+        return frame.release(decrement);
+    }
+}
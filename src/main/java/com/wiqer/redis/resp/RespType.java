@@ -18,6 +18,16 @@ public enum RespType {
     BULK((byte) '$'),
     INTEGER((byte) ':'),
     MULTYBULK((byte) '*'),
+    /**
+     * 以下为RESP3类型，RESP2连接上降级编码
+     */
+    NIL((byte) '_'),
+    DOUBLE((byte) ','),
+    BIG_NUMBER((byte) '('),
+    MAP((byte) '%'),
+    SET((byte) '~'),
+    ATTRIBUTE((byte) '|'),
+    PUSH((byte) '>'),
     R((byte) '\r'),
     N((byte) '\n'),
     ZERO((byte) '0'),
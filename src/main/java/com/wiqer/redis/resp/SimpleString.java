@@ -1,5 +1,7 @@
 package com.wiqer.redis.resp;
 
+import io.netty.buffer.ByteBuf;
+import lombok.AccessLevel;
 import lombok.Getter;
 
 /**
@@ -8,16 +10,34 @@ import lombok.Getter;
 @Getter
 public class SimpleString implements Resp {
 
-    public static final SimpleString OK = new SimpleString("OK");
+    public static final SimpleString OK = shared("OK");
 
     public static final SimpleString ERROR = new SimpleString("-ERR invalid DB index");
 
-    public static final SimpleString PONG = new SimpleString("PONG");
+    public static final SimpleString PONG = shared("PONG");
 
     private final String content;
 
+    @Getter(AccessLevel.NONE)
+    private ByteBuf preEncoded;
+
     public SimpleString(String content) {
         this.content = content;
     }
 
+    private static SimpleString shared(String content) {
+        SimpleString simpleString = new SimpleString(content);
+        simpleString.preEncoded = Resp.preEncode(simpleString, false);
+        return simpleString;
+    }
+
+    @Override
+    public RespType type() {
+        return RespType.STATUS;
+    }
+
+    @Override
+    public ByteBuf preEncoded(boolean resp3) {
+        return preEncoded;
+    }
 }
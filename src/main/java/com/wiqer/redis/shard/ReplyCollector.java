@@ -0,0 +1,137 @@
+package com.wiqer.redis.shard;
+
+import com.wiqer.redis.ResponseEncoder;
+import com.wiqer.redis.resp.Resp;
+import com.wiqer.redis.resp.RespArray;
+import com.wiqer.redis.trace.RequestTrace;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.util.ReferenceCountUtil;
+import lombok.experimental.Delegate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 命令在分片线程上执行时使用的ChannelHandlerContext，截获命令写出的回复，其余方法委托给连接真实的ctx
+ * <p>
+ * 回复不直接写入channel，以免不同分片的回复乱序：
+ * 1. encode模式在分片线程上直接编码为缓冲区，数组回复可以安全地引用分片内的数据结构
+ * 2. capture模式保留materialize后的回复，交给IO线程与其他分片的回复合并
+ * <p>
+ * close只记录请求，由CommandHandler在该回复写出后关闭连接
+ *
+ * @author lilan
+ */
+public class ReplyCollector implements ChannelHandlerContext {
+
+    @Delegate(excludes = Intercepted.class)
+    private final ChannelHandlerContext ctx;
+
+    private boolean capture;
+    private boolean resp3;
+    private List<Object> encoded;
+    private Resp captured;
+    private boolean closeRequested;
+    private RequestTrace trace;
+
+    public ReplyCollector(ChannelHandlerContext ctx) {
+        this.ctx = ctx;
+    }
+
+    /**
+     * 开始收集下一条命令的回复
+     */
+    public void reset(boolean capture, boolean resp3) {
+        this.capture = capture;
+        this.resp3 = resp3;
+        this.encoded = capture ? null : new ArrayList<>(1);
+        this.captured = null;
+        this.closeRequested = false;
+        this.trace = null;
+    }
+
+    /**
+     * 当前命令被采样时，encode模式的编码耗时计入trace
+     */
+    public void setTrace(RequestTrace trace) {
+        this.trace = trace;
+    }
+
+    /**
+     * @return encode模式为编码后的缓冲区列表，capture模式为回复
+     */
+    public Object result() {
+        return capture ? captured : encoded;
+    }
+
+    public boolean isCloseRequested() {
+        return closeRequested;
+    }
+
+    @Override
+    public ChannelFuture write(Object msg) {
+        return write(msg, ctx.voidPromise());
+    }
+
+    @Override
+    public ChannelFuture write(Object msg, ChannelPromise promise) {
+        if (!(msg instanceof Resp resp)) {
+            ReferenceCountUtil.release(msg);
+            throw new IllegalArgumentException("unsupported reply: " + msg);
+        }
+        if (capture) {
+            captured = resp instanceof RespArray array ? array.materialize() : resp;
+        } else if (trace == null) {
+            ResponseEncoder.encode(ctx.alloc(), resp, resp3, encoded);
+        } else {
+            long start = System.nanoTime();
+            ResponseEncoder.encode(ctx.alloc(), resp, resp3, encoded);
+            trace.addEncodeNanos(System.nanoTime() - start);
+        }
+        return promise;
+    }
+
+    @Override
+    public ChannelFuture writeAndFlush(Object msg) {
+        return write(msg);
+    }
+
+    @Override
+    public ChannelFuture writeAndFlush(Object msg, ChannelPromise promise) {
+        return write(msg, promise);
+    }
+
+    @Override
+    public ChannelHandlerContext flush() {
+        return this;
+    }
+
+    @Override
+    public ChannelFuture close() {
+        return close(ctx.voidPromise());
+    }
+
+    @Override
+    public ChannelFuture close(ChannelPromise promise) {
+        closeRequested = true;
+        return promise;
+    }
+
+    private interface Intercepted {
+        ChannelFuture write(Object msg);
+
+        ChannelFuture write(Object msg, ChannelPromise promise);
+
+        ChannelFuture writeAndFlush(Object msg);
+
+        ChannelFuture writeAndFlush(Object msg, ChannelPromise promise);
+
+        ChannelHandlerContext flush();
+
+        ChannelFuture close();
+
+        ChannelFuture close(ChannelPromise promise);
+    }
+}
@@ -0,0 +1,132 @@
+package com.wiqer.redis.shard;
+
+import com.wiqer.redis.resp.BulkString;
+import com.wiqer.redis.resp.Errors;
+import com.wiqer.redis.resp.Resp;
+import com.wiqer.redis.resp.RespArray;
+import com.wiqer.redis.resp.RespInt;
+import com.wiqer.redis.resp.RespType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * 命令拆分到多个分片执行后，合并各分片回复的方式
+ * <p>
+ * 各分片的回复都已在分片线程上materialize，合并在连接的IO线程上进行；任一分片回复错误时整体回复该错误
+ *
+ * @author lilan
+ */
+public enum ReplyMerge {
+
+    /**
+     * 不允许跨分片
+     */
+    NONE {
+        @Override
+        Resp combine(List<ShardPart> parts, List<Resp> replies) {
+            return replies.get(0);
+        }
+    },
+
+    /**
+     * 整数求和，例如DEL、EXISTS
+     */
+    SUM {
+        @Override
+        Resp combine(List<ShardPart> parts, List<Resp> replies) {
+            int sum = 0;
+            for (Resp reply : replies) {
+                sum += ((RespInt) reply).getValue();
+            }
+            return RespInt.valueOf(sum);
+        }
+    },
+
+    /**
+     * 全部成功时回复任一分片的回复，例如MSET的OK
+     */
+    ALL_OK {
+        @Override
+        Resp combine(List<ShardPart> parts, List<Resp> replies) {
+            return replies.get(0);
+        }
+    },
+
+    /**
+     * 按key在请求中的顺序还原数组，例如MGET
+     */
+    ORDERED {
+        @Override
+        Resp combine(List<ShardPart> parts, List<Resp> replies) {
+            int keyCount = 0;
+            for (ShardPart part : parts) {
+                keyCount += part.getKeyIndexes().length;
+            }
+            Object[] elements = new Object[keyCount];
+            for (int i = 0; i < parts.size(); i++) {
+                int[] keyIndexes = parts.get(i).getKeyIndexes();
+                int j = 0;
+                for (Object element : ((RespArray) replies.get(i)).getElements()) {
+                    elements[keyIndexes[j++]] = element;
+                }
+            }
+            return RespArray.ofElements(RespType.MULTYBULK, Arrays.asList(elements));
+        }
+    },
+
+    /**
+     * 数组拼接，例如KEYS
+     */
+    CONCAT {
+        @Override
+        Resp combine(List<ShardPart> parts, List<Resp> replies) {
+            return RespArray.ofElements(RespType.MULTYBULK, concat(replies));
+        }
+    },
+
+    /**
+     * SCAN一次返回全部key，拼接各分片的key数组，游标固定为0
+     */
+    SCAN {
+        @Override
+        Resp combine(List<ShardPart> parts, List<Resp> replies) {
+            List<Resp> keys = new ArrayList<>(replies.size());
+            for (Resp reply : replies) {
+                keys.add(second((RespArray) reply));
+            }
+            return RespArray.of(BulkString.ZERO, RespArray.ofElements(RespType.MULTYBULK, concat(keys)));
+        }
+    };
+
+    /**
+     * @param parts   拆分出的各部分
+     * @param replies 与parts一一对应的回复
+     */
+    public Resp merge(List<ShardPart> parts, List<Resp> replies) {
+        for (Resp reply : replies) {
+            if (reply instanceof Errors) {
+                return reply;
+            }
+        }
+        return combine(parts, replies);
+    }
+
+    abstract Resp combine(List<ShardPart> parts, List<Resp> replies);
+
+    private static List<Object> concat(List<Resp> arrays) {
+        List<Object> elements = new ArrayList<>();
+        for (Resp array : arrays) {
+            ((RespArray) array).getElements().forEach(elements::add);
+        }
+        return elements;
+    }
+
+    private static Resp second(RespArray array) {
+        Iterator<?> iterator = array.getElements().iterator();
+        iterator.next();
+        return (Resp) iterator.next();
+    }
+}
@@ -0,0 +1,29 @@
+package com.wiqer.redis.shard;
+
+import com.wiqer.redis.command.Argv;
+import com.wiqer.redis.core.RedisCore;
+import io.netty.util.concurrent.EventExecutor;
+import lombok.Getter;
+
+/**
+ * 一个数据分片及其独占的执行线程，分片内的数据只在该线程上读写
+ *
+ * @author lilan
+ */
+@Getter
+public class Shard {
+
+    private final int index;
+    private final RedisCore redisCore;
+    private final EventExecutor executor;
+    /**
+     * 分片线程执行命令时复用的参数视图
+     */
+    private final Argv argv = new Argv();
+
+    public Shard(int index, EventExecutor executor) {
+        this.index = index;
+        this.redisCore = new RedisCore();
+        this.executor = executor;
+    }
+}
@@ -0,0 +1,164 @@
+package com.wiqer.redis.shard;
+
+import com.wiqer.redis.command.CommonCommandType;
+import com.wiqer.redis.datatype.BytesWrapper;
+import com.wiqer.redis.resp.BulkString;
+import com.wiqer.redis.resp.Resp;
+import com.wiqer.redis.util.PropertiesUtil;
+import com.wiqer.redis.util.ThreadFactoryUtil;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.EventExecutorGroup;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 按key的hash把数据划分到多个分片，每个分片由一个执行线程独占
+ * <p>
+ * 单key命令整体路由到key所在分片；多key命令按分片拆分参数，各分片回复由{@link ReplyMerge}合并；
+ * 不带key的遍历类命令在所有分片上执行
+ *
+ * @author lilan
+ */
+public class ShardGroup {
+
+    private static final String CROSS_SLOT = "CROSSSLOT Keys in request don't hash to the same slot";
+
+    @Getter
+    private final EventExecutorGroup executorGroup;
+    private final Shard[] shards;
+    /**
+     * 分片上同一时刻只能有一个快照在写时复制，BGSAVE与混合格式的AOF重写共用
+     */
+    private final AtomicBoolean snapshotting = new AtomicBoolean();
+
+    public ShardGroup(int shardCount) {
+        this.executorGroup = new NioEventLoopGroup(shardCount, ThreadFactoryUtil.create("Redis-Worker-", true, PropertiesUtil.getShardCpus()));
+        this.shards = new Shard[shardCount];
+        Iterator<EventExecutor> executors = executorGroup.iterator();
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(i, executors.next());
+        }
+    }
+
+    public int size() {
+        return shards.length;
+    }
+
+    public Shard get(int index) {
+        return shards[index];
+    }
+
+    public Shard shardOf(BytesWrapper key) {
+        return shards[indexOf(key)];
+    }
+
+    /**
+     * @return 命令名不是bulk string或不支持时返回null
+     */
+    public static CommonCommandType typeOf(List<Resp> args) {
+        if (args.isEmpty() || !(args.get(0) instanceof BulkString bulkString)) {
+            return null;
+        }
+        return CommonCommandType.lookup(bulkString.getContent());
+    }
+
+    /**
+     * 按key所在分片拆分命令，所有key落在同一分片时不拷贝参数
+     *
+     * @throws IllegalArgumentException 命令不支持合并回复，而key落在多个分片；或者key与值不成组
+     */
+    public List<ShardPart> split(CommonCommandType type, List<Resp> args) {
+        if (type.isBroadcast()) {
+            List<ShardPart> parts = new ArrayList<>(shards.length);
+            for (Shard shard : shards) {
+                parts.add(new ShardPart(shard, args, null));
+            }
+            return parts;
+        }
+        int firstKey = type.getFirstKey();
+        int keyStep = type.getKeyStep();
+        if (keyStep > 1 && (args.size() - firstKey) % keyStep != 0) {
+            // 拆分前拒绝，否则收到完整分组的分片会先提交，只有最后一个分片报错
+            throw new IllegalArgumentException(type.arityError());
+        }
+        int lastKey = type.getLastKey() < 0 ? args.size() + type.getLastKey() : Math.min(type.getLastKey(), args.size() - 1);
+        if (shards.length == 1 || type.isLocal() || firstKey > lastKey) {
+            // 参数个数不对时交给命令自己报错
+            return Collections.singletonList(new ShardPart(shards[0], args, null));
+        }
+        int keyCount = (lastKey - firstKey) / keyStep + 1;
+        int[] owners = new int[keyCount];
+        int[] counts = new int[shards.length];
+        boolean cross = false;
+        for (int k = 0; k < keyCount; k++) {
+            owners[k] = indexOf(((BulkString) args.get(firstKey + k * keyStep)).getContent());
+            counts[owners[k]]++;
+            cross |= owners[k] != owners[0];
+        }
+        if (!cross) {
+            return Collections.singletonList(new ShardPart(shards[owners[0]], args, null));
+        }
+        if (type.getMerge() == ReplyMerge.NONE) {
+            throw new IllegalArgumentException(CROSS_SLOT);
+        }
+        return splitKeys(args, firstKey, keyStep, owners, counts);
+    }
+
+    private List<ShardPart> splitKeys(List<Resp> args, int firstKey, int keyStep, int[] owners, int[] counts) {
+        List<List<Resp>> argsByShard = new ArrayList<>(Collections.nCopies(shards.length, null));
+        int[][] keyIndexes = new int[shards.length][];
+        for (int k = 0; k < owners.length; k++) {
+            int owner = owners[k];
+            List<Resp> shardArgs = argsByShard.get(owner);
+            if (shardArgs == null) {
+                shardArgs = new ArrayList<>(1 + counts[owner] * keyStep);
+                shardArgs.add(args.get(0));
+                argsByShard.set(owner, shardArgs);
+                keyIndexes[owner] = new int[counts[owner]];
+                counts[owner] = 0;
+            }
+            int from = firstKey + k * keyStep;
+            shardArgs.addAll(args.subList(from, Math.min(from + keyStep, args.size())));
+            keyIndexes[owner][counts[owner]++] = k;
+        }
+        List<ShardPart> parts = new ArrayList<>();
+        for (int i = 0; i < shards.length; i++) {
+            if (argsByShard.get(i) != null) {
+                parts.add(new ShardPart(shards[i], argsByShard.get(i), keyIndexes[i]));
+            }
+        }
+        return parts;
+    }
+
+    /**
+     * 等待此前投递到各分片的任务全部执行完毕，用于启动时确认重放结束
+     */
+    public void awaitIdle() {
+        for (Shard shard : shards) {
+            shard.getExecutor().submit(() -> {
+            }).syncUninterruptibly();
+        }
+    }
+
+    /**
+     * @return 已有快照在进行时返回false
+     */
+    public boolean tryBeginSnapshot() {
+        return snapshotting.compareAndSet(false, true);
+    }
+
+    public void endSnapshot() {
+        snapshotting.set(false);
+    }
+
+    private int indexOf(BytesWrapper key) {
+        int h = key.hashCode();
+        return Math.floorMod(h ^ (h >>> 16), shards.length);
+    }
+}
@@ -0,0 +1,33 @@
+package com.wiqer.redis.shard;
+
+import com.wiqer.redis.resp.Resp;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * 命令在一个分片上执行的部分
+ *
+ * @author lilan
+ */
+@Getter
+public class ShardPart {
+
+    private final Shard shard;
+
+    /**
+     * 只含本分片key的参数，命令名在首位；未拆分时就是原请求的参数
+     */
+    private final List<Resp> args;
+
+    /**
+     * 本部分每个key在原请求key序列中的下标，未拆分时为null
+     */
+    private final int[] keyIndexes;
+
+    public ShardPart(Shard shard, List<Resp> args, int[] keyIndexes) {
+        this.shard = shard;
+        this.args = args;
+        this.keyIndexes = keyIndexes;
+    }
+}
@@ -0,0 +1,145 @@
+package com.wiqer.redis.snapshot;
+
+import com.wiqer.redis.shard.ShardGroup;
+import com.wiqer.redis.util.PropertiesUtil;
+import com.wiqer.redis.util.ThreadFactoryUtil;
+import io.netty.util.AttributeKey;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 快照持久化：BGSAVE在后台把切点时刻的全部数据写为二进制快照，启动时并行加载
+ * <p>
+ * 先写临时文件path.tmp并force，再原子地改名为path；重启时间只与快照中的数据量有关，与写入历史无关
+ *
+ * @author lilan
+ */
+@Slf4j
+public class Snapshot {
+
+    /**
+     * 连接上的快照实例
+     */
+    public static final AttributeKey<Snapshot> SNAPSHOT = AttributeKey.valueOf("snapshot");
+
+    private static final String TEMP = ".tmp";
+
+    private final ShardGroup shardGroup;
+    private final Path path;
+    private final AtomicBoolean saving = new AtomicBoolean();
+    /**
+     * 最近一次成功保存的unix时间，秒；没有保存过时为启动时间
+     */
+    private volatile long lastSave = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+
+    public Snapshot(ShardGroup shardGroup) {
+        this(shardGroup, PropertiesUtil.getSnapshotPath());
+    }
+
+    public Snapshot(ShardGroup shardGroup, String path) {
+        this.shardGroup = shardGroup;
+        this.path = Path.of(path);
+    }
+
+    /**
+     * 快照文件存在时加载，应在接受连接之前调用
+     *
+     * @return 加载的key数，没有快照文件时为0
+     */
+    public long load() {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        try {
+            return new SnapshotLoader(shardGroup, PropertiesUtil.getSnapshotLoadThreads()).load(path);
+        } catch (IOException e) {
+            throw new IllegalStateException("读取快照失败: " + path, e);
+        }
+    }
+
+    /**
+     * 开始后台保存，返回时所有分片都已经过切点，之后执行的命令不影响这次快照
+     *
+     * @return 已有保存在进行时返回false
+     * @throws IllegalStateException 无法开始保存，或者AOF重写正在写快照
+     */
+    public boolean save() {
+        if (!saving.compareAndSet(false, true)) {
+            return false;
+        }
+        if (!shardGroup.tryBeginSnapshot()) {
+            saving.set(false);
+            throw new IllegalStateException("ERR An AOF log rewriting in progress: can't BGSAVE right now");
+        }
+        CompletableFuture<Void> cut = new CompletableFuture<>();
+        Thread thread = ThreadFactoryUtil.create("Snapshot_Thread", true).newThread(() -> {
+            try {
+                doSave(cut);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.warn("快照保存被中断");
+                cut.completeExceptionally(e);
+            } catch (Exception e) {
+                log.error("快照保存失败", e);
+                cut.completeExceptionally(e);
+            } finally {
+                shardGroup.endSnapshot();
+                saving.set(false);
+            }
+        });
+        thread.setName("Snapshot_Thread");
+        thread.start();
+        try {
+            cut.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("ERR Background save failed: " + e.getCause().getMessage(), e.getCause());
+        }
+        return true;
+    }
+
+    private void doSave(CompletableFuture<Void> cut) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        Path temp = Path.of(path + TEMP);
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        long keys;
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            SnapshotWriter writer = new SnapshotWriter(shardGroup);
+            writer.cut(shard -> {
+            });
+            cut.complete(null);
+            keys = writer.write(channel);
+            channel.force(true);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        lastSave = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+        log.info("快照保存完成，{}个key，{}字节，耗时{}ms", keys, Files.size(path),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    public boolean isSaving() {
+        return saving.get();
+    }
+
+    public long getLastSave() {
+        return lastSave;
+    }
+}
@@ -0,0 +1,241 @@
+package com.wiqer.redis.snapshot;
+
+import com.wiqer.redis.datatype.BytesWrapper;
+import com.wiqer.redis.datatype.RedisData;
+import com.wiqer.redis.datatype.RedisHash;
+import com.wiqer.redis.datatype.RedisList;
+import com.wiqer.redis.datatype.RedisSet;
+import com.wiqer.redis.datatype.RedisStream;
+import com.wiqer.redis.datatype.RedisString;
+import com.wiqer.redis.datatype.RedisZset;
+import io.netty.buffer.ByteBuf;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 快照中一个key的二进制编码：
+ * <pre>
+ * | 类型 byte，最高位表示带过期时间 | [过期时间 long] | key | 值 |
+ * </pre>
+ * 字符串为varint长度加内容；集合类型先写varint元素个数，zset的分数与stream的id用varint编码
+ *
+ * @author lilan
+ */
+final class SnapshotCodec {
+
+    private static final int STRING = 0;
+    private static final int LIST = 1;
+    private static final int SET = 2;
+    private static final int HASH = 3;
+    private static final int ZSET = 4;
+    private static final int STREAM = 5;
+    private static final int EXPIRES = 0x80;
+
+    private SnapshotCodec() {
+    }
+
+    static void encode(ByteBuf out, BytesWrapper key, RedisData redisData) {
+        int type = typeOf(redisData);
+        long timeout = redisData.timeout();
+        out.writeByte(timeout == -1 ? type : type | EXPIRES);
+        if (timeout != -1) {
+            out.writeLong(timeout);
+        }
+        writeBytes(out, key);
+        switch (type) {
+            case STRING -> writeBytes(out, ((RedisString) redisData).getValue());
+            case LIST -> writeAll(out, ((RedisList) redisData).values());
+            case SET -> writeAll(out, ((RedisSet) redisData).smembers());
+            case HASH -> {
+                Map<BytesWrapper, BytesWrapper> map = ((RedisHash) redisData).getMap();
+                writeVarLong(out, map.size());
+                map.forEach((field, value) -> {
+                    writeBytes(out, field);
+                    writeBytes(out, value);
+                });
+            }
+            case ZSET -> {
+                Collection<RedisZset.ZsetKey> members = ((RedisZset) redisData).members();
+                writeVarLong(out, members.size());
+                for (RedisZset.ZsetKey member : members) {
+                    writeVarLong(out, zigZag(member.getScore()));
+                    writeBytes(out, member.getKey());
+                }
+            }
+            default -> {
+                RedisStream stream = (RedisStream) redisData;
+                Map<RedisStream.StreamId, List<BytesWrapper>> entries = stream.entries();
+                writeId(out, stream.lastId());
+                writeVarLong(out, entries.size());
+                entries.forEach((id, fields) -> {
+                    writeId(out, id);
+                    writeAll(out, fields);
+                });
+            }
+        }
+    }
+
+    /**
+     * @throws IllegalStateException 类型未知或内容不完整
+     */
+    static Entry decode(ByteBuf in) {
+        int flags = in.readUnsignedByte();
+        long timeout = (flags & EXPIRES) != 0 ? in.readLong() : -1;
+        BytesWrapper key = readBytes(in);
+        RedisData redisData = switch (flags & ~EXPIRES) {
+            case STRING -> new RedisString(readBytes(in));
+            case LIST -> {
+                RedisList list = new RedisList();
+                list.rpush(readAll(in));
+                yield list;
+            }
+            case SET -> {
+                RedisSet set = new RedisSet();
+                set.sadd(readAll(in));
+                yield set;
+            }
+            case HASH -> {
+                RedisHash hash = new RedisHash();
+                for (long i = readCount(in); i > 0; i--) {
+                    hash.put(readBytes(in), readBytes(in));
+                }
+                yield hash;
+            }
+            case ZSET -> {
+                long count = readCount(in);
+                List<RedisZset.ZsetKey> members = new ArrayList<>((int) count);
+                for (long i = 0; i < count; i++) {
+                    long score = unZigZag(readVarLong(in));
+                    members.add(new RedisZset.ZsetKey(readBytes(in), score));
+                }
+                RedisZset zset = new RedisZset();
+                zset.add(members);
+                yield zset;
+            }
+            case STREAM -> {
+                RedisStream stream = new RedisStream();
+                RedisStream.StreamId lastId = readId(in);
+                for (long i = readCount(in); i > 0; i--) {
+                    stream.restore(readId(in), readAll(in));
+                }
+                stream.restoreLastId(lastId);
+                yield stream;
+            }
+            default -> throw new IllegalStateException("未知的快照数据类型: " + (flags & ~EXPIRES));
+        };
+        redisData.setTimeout(timeout);
+        return new Entry(key, redisData);
+    }
+
+    private static int typeOf(RedisData redisData) {
+        if (redisData instanceof RedisString) {
+            return STRING;
+        } else if (redisData instanceof RedisList) {
+            return LIST;
+        } else if (redisData instanceof RedisSet) {
+            return SET;
+        } else if (redisData instanceof RedisHash) {
+            return HASH;
+        } else if (redisData instanceof RedisZset) {
+            return ZSET;
+        } else if (redisData instanceof RedisStream) {
+            return STREAM;
+        }
+        throw new IllegalStateException("不支持快照的数据类型: " + redisData.getClass().getSimpleName());
+    }
+
+    private static void writeBytes(ByteBuf out, BytesWrapper bytes) {
+        writeVarLong(out, bytes.length());
+        bytes.writeTo(out);
+    }
+
+    private static BytesWrapper readBytes(ByteBuf in) {
+        long length = readVarLong(in);
+        if (length > in.readableBytes()) {
+            throw new IllegalStateException("快照内容不完整");
+        }
+        byte[] content = new byte[(int) length];
+        in.readBytes(content);
+        return new BytesWrapper(content);
+    }
+
+    private static void writeAll(ByteBuf out, Collection<BytesWrapper> values) {
+        writeVarLong(out, values.size());
+        for (BytesWrapper value : values) {
+            writeBytes(out, value);
+        }
+    }
+
+    private static List<BytesWrapper> readAll(ByteBuf in) {
+        long count = readCount(in);
+        List<BytesWrapper> values = new ArrayList<>((int) count);
+        for (long i = 0; i < count; i++) {
+            values.add(readBytes(in));
+        }
+        return values;
+    }
+
+    /**
+     * 每个元素至少占一个字节，个数不会超过剩余的字节数
+     */
+    private static long readCount(ByteBuf in) {
+        long count = readVarLong(in);
+        if (count > in.readableBytes()) {
+            throw new IllegalStateException("快照内容不完整");
+        }
+        return count;
+    }
+
+    private static void writeId(ByteBuf out, RedisStream.StreamId id) {
+        writeVarLong(out, id.getMs());
+        writeVarLong(out, id.getSeq());
+    }
+
+    private static RedisStream.StreamId readId(ByteBuf in) {
+        return new RedisStream.StreamId(readVarLong(in), readVarLong(in));
+    }
+
+    /**
+     * 无符号LEB128，每字节7位
+     */
+    private static void writeVarLong(ByteBuf out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(ByteBuf in) {
+        long value = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            byte b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("快照中的varint过长");
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static final class Entry {
+        final BytesWrapper key;
+        final RedisData redisData;
+
+        private Entry(BytesWrapper key, RedisData redisData) {
+            this.key = key;
+            this.redisData = redisData;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.wiqer.redis.snapshot;
+
+import com.wiqer.redis.shard.Shard;
+import com.wiqer.redis.shard.ShardGroup;
+import com.wiqer.redis.util.ThreadFactoryUtil;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.CRC32C;
+
+/**
+ * 并行加载{@link SnapshotWriter}写出的快照
+ * <p>
+ * 先顺序读取各块的块头建立块列表并确认结束标记完整，再由多个线程各自读取、校验、解码整块，
+ * 按key分到各分片后整批投递到分片线程执行put；分片线程只做插入，解码与构造值都在加载线程上完成
+ *
+ * @author lilan
+ */
+@Slf4j
+public final class SnapshotLoader {
+
+    /**
+     * 已投递、分片线程尚未执行完的批次上限
+     */
+    private static final int MAX_APPLYING_BATCHES = 64;
+
+    private final ShardGroup shardGroup;
+    private final int threads;
+    private final Semaphore applying = new Semaphore(MAX_APPLYING_BATCHES);
+    private final AtomicLong loaded = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+
+    public SnapshotLoader(ShardGroup shardGroup, int threads) {
+        this.shardGroup = shardGroup;
+        this.threads = Math.max(threads, 1);
+    }
+
+    /**
+     * 加载快照，返回前等待分片线程执行完所有插入
+     *
+     * @return 加载的key数，不含已过期的key
+     * @throws IllegalStateException 快照不完整或校验失败
+     */
+    public long load(Path path) throws IOException {
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            List<long[]> blocks = index(channel, path);
+            AtomicInteger next = new AtomicInteger();
+            AtomicReference<Exception> failure = new AtomicReference<>();
+            ExecutorService loaders = Executors.newFixedThreadPool(Math.min(threads, Math.max(blocks.size(), 1)),
+                    ThreadFactoryUtil.create("Snapshot_Loader_", true));
+            try {
+                for (int i = 0; i < threads; i++) {
+                    loaders.execute(() -> {
+                        ByteBuffer buffer = ByteBuffer.allocate(0);
+                        for (int index; failure.get() == null && (index = next.getAndIncrement()) < blocks.size(); ) {
+                            try {
+                                buffer = loadBlock(channel, blocks.get(index), buffer);
+                            } catch (Exception e) {
+                                failure.compareAndSet(null, e);
+                            }
+                        }
+                    });
+                }
+                loaders.shutdown();
+                while (!loaders.awaitTermination(1, TimeUnit.SECONDS)) {
+                    log.info("快照加载中，已加载{}个key", loaded.get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("快照加载被中断", e);
+            } finally {
+                loaders.shutdownNow();
+            }
+            shardGroup.awaitIdle();
+            if (failure.get() != null) {
+                throw new IllegalStateException("加载快照失败: " + path, failure.get());
+            }
+        }
+        log.info("快照{}加载完成，{}个key，跳过{}个已过期的key，耗时{}ms", path, loaded.get(), expired.get(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return loaded.get();
+    }
+
+    /**
+     * @return 每块内容的{偏移, 长度, CRC32C}
+     */
+    private static List<long[]> index(FileChannel channel, Path path) throws IOException {
+        ByteBuffer magic = ByteBuffer.allocate(SnapshotWriter.MAGIC.length);
+        readFully(channel, magic, 0);
+        if (!Arrays.equals(magic.array(), SnapshotWriter.MAGIC)) {
+            throw new IllegalStateException("不是快照文件: " + path);
+        }
+        List<long[]> blocks = new ArrayList<>();
+        ByteBuffer header = ByteBuffer.allocate(SnapshotWriter.BLOCK_HEADER_LENGTH);
+        long position = SnapshotWriter.MAGIC.length;
+        long size = channel.size();
+        while (true) {
+            if (position + SnapshotWriter.BLOCK_HEADER_LENGTH > size) {
+                throw new IllegalStateException("快照文件不完整: " + path);
+            }
+            readFully(channel, header.clear(), position);
+            int length = header.getInt(0);
+            position += SnapshotWriter.BLOCK_HEADER_LENGTH;
+            if (length == 0) {
+                break;
+            }
+            if (length < 0 || position + length > size) {
+                throw new IllegalStateException("快照文件在偏移" + position + "处损坏: " + path);
+            }
+            blocks.add(new long[]{position, length, header.getInt(Integer.BYTES)});
+            position += length;
+        }
+        ByteBuffer end = ByteBuffer.allocate(SnapshotWriter.END_LENGTH);
+        if (position + SnapshotWriter.END_LENGTH > size) {
+            throw new IllegalStateException("快照文件不完整: " + path);
+        }
+        readFully(channel, end, position);
+        if (checksum(end.flip()) != header.getInt(Integer.BYTES)) {
+            throw new IllegalStateException("快照文件的结束标记校验失败: " + path);
+        }
+        return blocks;
+    }
+
+    /**
+     * @return 可以复用的读缓冲区
+     */
+    private ByteBuffer loadBlock(FileChannel channel, long[] block, ByteBuffer buffer) throws IOException, InterruptedException {
+        int length = (int) block[1];
+        if (buffer.capacity() < length) {
+            buffer = ByteBuffer.allocate(length);
+        }
+        buffer.clear().limit(length);
+        readFully(channel, buffer, block[0]);
+        buffer.flip();
+        if (checksum(buffer.duplicate()) != (int) block[2]) {
+            throw new IllegalStateException("快照在偏移" + block[0] + "处的块校验失败");
+        }
+        ByteBuf in = Unpooled.wrappedBuffer(buffer);
+        @SuppressWarnings("unchecked")
+        List<SnapshotCodec.Entry>[] byShard = (List<SnapshotCodec.Entry>[]) new List<?>[shardGroup.size()];
+        long now = System.currentTimeMillis();
+        while (in.isReadable()) {
+            SnapshotCodec.Entry entry = SnapshotCodec.decode(in);
+            long timeout = entry.redisData.timeout();
+            if (timeout != -1 && timeout < now) {
+                expired.incrementAndGet();
+                continue;
+            }
+            int index = shardGroup.shardOf(entry.key).getIndex();
+            if (byShard[index] == null) {
+                byShard[index] = new ArrayList<>();
+            }
+            byShard[index].add(entry);
+        }
+        for (int i = 0; i < byShard.length; i++) {
+            List<SnapshotCodec.Entry> entries = byShard[i];
+            if (entries == null) {
+                continue;
+            }
+            Shard shard = shardGroup.get(i);
+            applying.acquire();
+            shard.getExecutor().execute(() -> {
+                try {
+                    for (SnapshotCodec.Entry entry : entries) {
+                        shard.getRedisCore().put(entry.key, entry.redisData);
+                    }
+                } finally {
+                    applying.release();
+                }
+            });
+            loaded.addAndGet(entries.size());
+        }
+        return buffer;
+    }
+
+    private static int checksum(ByteBuffer buffer) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer);
+        return (int) crc.getValue();
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IllegalStateException("快照文件不完整");
+            }
+            position += read;
+        }
+    }
+}
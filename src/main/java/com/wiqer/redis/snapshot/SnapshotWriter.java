@@ -0,0 +1,241 @@
+package com.wiqer.redis.snapshot;
+
+import com.wiqer.redis.core.CopyOnWrite;
+import com.wiqer.redis.core.RedisCore;
+import com.wiqer.redis.datatype.BytesWrapper;
+import com.wiqer.redis.datatype.RedisData;
+import com.wiqer.redis.shard.Shard;
+import com.wiqer.redis.shard.ShardGroup;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntConsumer;
+import java.util.zip.CRC32C;
+
+/**
+ * 一次快照：所有分片在同一时刻切点，之后不停止执行命令，得到切点时刻的数据
+ * <p>
+ * 1. 切点时各分片只取出当前所有key，不拷贝值；之后分片线程每次编码{@link #KEYS_PER_SLICE}个key，
+ * 与命令交替执行
+ * 2. 写时复制以key为单位：命令第一次访问切点时已存在、还没有编码的key之前，先把它的值编码进快照，
+ * 每个值用快照编号标记是否已经编码，见{@link RedisCore#beginSnapshot(CopyOnWrite)}
+ * 3. 编码好的块由调用{@link #write(FileChannel)}的后台线程写入文件，积压超过{@link #MAX_PENDING_BYTES}时分片暂停编码
+ * <p>
+ * 文件格式：
+ * <pre>
+ * | MAGIC | 块 ... | 结束标记 |
+ * 块：| 长度 int | CRC32C int | 若干个key的编码 |
+ * 结束标记：| 0 int | CRC32C int | key数 long | 切点时间 long |
+ * </pre>
+ * 每个块只包含完整的key，块之间没有顺序要求，加载时并行解码
+ *
+ * @author lilan
+ */
+@Slf4j
+public final class SnapshotWriter {
+
+    static final byte[] MAGIC = "EFRDB01\n".getBytes(StandardCharsets.US_ASCII);
+    static final int BLOCK_HEADER_LENGTH = 8;
+    static final int END_LENGTH = 16;
+    private static final int BLOCK_SIZE = 1 << 20;
+    private static final int KEYS_PER_SLICE = 1024;
+    private static final long MAX_PENDING_BYTES = 64L << 20;
+    private static final long POLL_MILLIS = 100;
+    /**
+     * 分片编码完成的标记
+     */
+    private static final ByteBuf FINISHED = Unpooled.buffer(0);
+
+    private final ShardGroup shardGroup;
+    private final BlockingQueue<ByteBuf> blocks = new LinkedBlockingQueue<>();
+    private final AtomicLong pendingBytes = new AtomicLong();
+    private final AtomicLong keys = new AtomicLong();
+    private volatile boolean failed;
+    private long cutMillis;
+
+    public SnapshotWriter(ShardGroup shardGroup) {
+        this.shardGroup = shardGroup;
+    }
+
+    /**
+     * 所有分片都执行到切点任务后同时切点，返回时所有分片都已经过切点，之后执行的命令不影响快照
+     *
+     * @param atCut 在各分片线程上于切点调用，参数为分片下标
+     */
+    public void cut(IntConsumer atCut) throws InterruptedException {
+        cutMillis = System.currentTimeMillis();
+        CountDownLatch arrived = new CountDownLatch(shardGroup.size());
+        CountDownLatch cut = new CountDownLatch(shardGroup.size());
+        for (int i = 0; i < shardGroup.size(); i++) {
+            Shard shard = shardGroup.get(i);
+            shard.getExecutor().execute(() -> {
+                arrived.countDown();
+                try {
+                    arrived.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                ShardWriter writer = new ShardWriter(shard);
+                writer.keys = shard.getRedisCore().beginSnapshot(writer);
+                try {
+                    atCut.accept(shard.getIndex());
+                } finally {
+                    cut.countDown();
+                }
+                shard.getExecutor().execute(writer::slice);
+            });
+        }
+        cut.await();
+    }
+
+    /**
+     * 在调用线程上写出切点之后各分片编码的所有块，不force
+     *
+     * @return 写入的key数
+     */
+    public long write(FileChannel channel) throws IOException, InterruptedException {
+        IOException failure = null;
+        try {
+            writeFully(channel, ByteBuffer.wrap(MAGIC));
+        } catch (IOException e) {
+            failure = e;
+            failed = true;
+        }
+        // 写入失败后仍然取完所有块，分片在下一次编码时结束快照
+        for (int finished = 0; finished < shardGroup.size(); ) {
+            ByteBuf block = blocks.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            if (block == null) {
+                if (shardGroup.getExecutorGroup().isShuttingDown()) {
+                    throw new IllegalStateException("分片已关闭，快照没有完成");
+                }
+                continue;
+            }
+            if (block == FINISHED) {
+                finished++;
+                continue;
+            }
+            try {
+                if (failure == null) {
+                    writeFully(channel, header(block.readableBytes(), block.nioBuffer()), block.nioBuffer());
+                }
+            } catch (IOException e) {
+                failure = e;
+                failed = true;
+            } finally {
+                pendingBytes.addAndGet(-block.readableBytes());
+                block.release();
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        ByteBuffer end = ByteBuffer.allocate(END_LENGTH).putLong(0, keys.get()).putLong(Long.BYTES, cutMillis);
+        writeFully(channel, header(0, end), end);
+        return keys.get();
+    }
+
+    static ByteBuffer header(int length, ByteBuffer payload) {
+        CRC32C crc = new CRC32C();
+        crc.update(payload.duplicate());
+        return ByteBuffer.allocate(BLOCK_HEADER_LENGTH).putInt(0, length).putInt(Integer.BYTES, (int) crc.getValue());
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer... buffers) throws IOException {
+        long remaining = 0;
+        for (ByteBuffer buffer : buffers) {
+            remaining += buffer.remaining();
+        }
+        while (remaining > 0) {
+            remaining -= channel.write(buffers);
+        }
+    }
+
+    /**
+     * 一个分片的编码进度，只在分片线程上访问
+     */
+    private final class ShardWriter implements CopyOnWrite {
+        private final Shard shard;
+        private BytesWrapper[] keys;
+        private int cursor;
+        private ByteBuf block;
+
+        private ShardWriter(Shard shard) {
+            this.shard = shard;
+        }
+
+        @Override
+        public void copy(BytesWrapper key, RedisData data) {
+            encode(key, data);
+        }
+
+        private void slice() {
+            if (failed) {
+                finish();
+                return;
+            }
+            if (pendingBytes.get() > MAX_PENDING_BYTES) {
+                shard.getExecutor().schedule(this::slice, 1, TimeUnit.MILLISECONDS);
+                return;
+            }
+            RedisCore redisCore = shard.getRedisCore();
+            int end = Math.min(cursor + KEYS_PER_SLICE, keys.length);
+            for (; cursor < end; cursor++) {
+                RedisData data = redisCore.snapshotValue(keys[cursor]);
+                if (data != null) {
+                    encode(keys[cursor], data);
+                }
+                keys[cursor] = null;
+            }
+            if (cursor == keys.length) {
+                finish();
+            } else {
+                shard.getExecutor().execute(this::slice);
+            }
+        }
+
+        private void encode(BytesWrapper key, RedisData data) {
+            // 切点时已经过期
+            if (data.timeout() != -1 && data.timeout() < cutMillis) {
+                return;
+            }
+            if (block == null) {
+                block = PooledByteBufAllocator.DEFAULT.directBuffer(BLOCK_SIZE);
+            }
+            SnapshotCodec.encode(block, key, data);
+            SnapshotWriter.this.keys.incrementAndGet();
+            if (block.readableBytes() >= BLOCK_SIZE) {
+                emit();
+            }
+        }
+
+        private void emit() {
+            if (block == null) {
+                return;
+            }
+            if (block.isReadable()) {
+                pendingBytes.addAndGet(block.readableBytes());
+                blocks.add(block);
+            } else {
+                block.release();
+            }
+            block = null;
+        }
+
+        private void finish() {
+            shard.getRedisCore().endSnapshot();
+            emit();
+            blocks.add(FINISHED);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.wiqer.redis.trace;
+
+import lombok.Getter;
+
+/**
+ * 一条被采样请求各阶段的时间戳（System.nanoTime）
+ * <p>
+ * 随请求从IO线程交给分片线程再交回IO线程，每个时间戳只由当时处理请求的线程写入，
+ * 线程之间经由executor投递建立happens-before，不需要volatile；拆分到多个分片的命令只记录第一个部分
+ *
+ * @author lilan
+ */
+@Getter
+public final class RequestTrace {
+
+    private final long id;
+    private final long decodeStart;
+    private long decoded;
+    private String command;
+    private long queued;
+    private long executeStart;
+    private long executeEnd;
+    /**
+     * 编码耗时之和，分片线程上的编码发生在执行阶段之内，合并后的回复在IO线程上编码，各自从所在阶段中扣除
+     */
+    private long encodeNanos;
+    private long executeEncodeNanos;
+    private long written;
+    private long flushed;
+
+    RequestTrace(long id, long decodeStart, long decoded) {
+        this.id = id;
+        this.decodeStart = decodeStart;
+        this.decoded = decoded;
+    }
+
+    /**
+     * 请求已分派，进入分片队列或在IO线程上直接执行
+     */
+    public void queued(String command) {
+        this.command = command;
+        this.queued = System.nanoTime();
+    }
+
+    public void executeStart() {
+        executeStart = System.nanoTime();
+    }
+
+    public void executeEnd() {
+        executeEnd = System.nanoTime();
+    }
+
+    public void addEncodeNanos(long nanos) {
+        encodeNanos += nanos;
+        if (executeEnd == 0) {
+            executeEncodeNanos += nanos;
+        }
+    }
+
+    public void written() {
+        written = System.nanoTime();
+    }
+
+    /**
+     * 回复已flush，上报本条记录
+     */
+    public void flushed() {
+        flushed = System.nanoTime();
+        Tracer.report(this);
+    }
+
+    public long decodeNanos() {
+        return decoded - decodeStart;
+    }
+
+    public long queueNanos() {
+        return executeStart - queued;
+    }
+
+    public long executeNanos() {
+        return executeEnd - executeStart - executeEncodeNanos;
+    }
+
+    /**
+     * 执行完成到回复写出，包括交回IO线程和等待前面的回复
+     */
+    public long replyNanos() {
+        return written - executeEnd - (encodeNanos - executeEncodeNanos);
+    }
+
+    public long flushNanos() {
+        return flushed - written;
+    }
+
+    public long totalNanos() {
+        return flushed - decodeStart;
+    }
+}
@@ -0,0 +1,58 @@
+package com.wiqer.redis.trace;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * 请求采样追踪
+ * <p>
+ * 每个连接每sampleRate条请求采样一条，采样率为0时不采样；未被采样的请求不创建任何对象，
+ * 各阶段只多一次null判断。采样的记录默认以INFO级别输出到本类的logger
+ *
+ * @author lilan
+ */
+@Slf4j
+public final class Tracer {
+
+    private static final AtomicLong IDS = new AtomicLong();
+
+    private static volatile Consumer<RequestTrace> reporter = Tracer::log;
+
+    private Tracer() {
+    }
+
+    /**
+     * @param decodeStart 完成该请求的那次解码开始的时间
+     */
+    public static RequestTrace start(long decodeStart) {
+        return new RequestTrace(IDS.incrementAndGet(), decodeStart, System.nanoTime());
+    }
+
+    /**
+     * 替换采样记录的输出，例如汇总到监控系统
+     */
+    public static void setReporter(Consumer<RequestTrace> reporter) {
+        Tracer.reporter = reporter == null ? Tracer::log : reporter;
+    }
+
+    static void report(RequestTrace trace) {
+        try {
+            reporter.accept(trace);
+        } catch (RuntimeException e) {
+            log.warn("追踪记录输出失败", e);
+        }
+    }
+
+    private static void log(RequestTrace trace) {
+        log.info("trace id={} cmd={} decode={}us queue={}us execute={}us encode={}us reply={}us flush={}us total={}us",
+                trace.getId(), trace.getCommand(), micros(trace.decodeNanos()), micros(trace.queueNanos()),
+                micros(trace.executeNanos()), micros(trace.getEncodeNanos()), micros(trace.replyNanos()),
+                micros(trace.flushNanos()), micros(trace.totalNanos()));
+    }
+
+    private static String micros(long nanos) {
+        return String.format("%.1f", nanos / 1000.0);
+    }
+}
@@ -1,5 +1,7 @@
 package com.wiqer.redis.util;
 
+import io.netty.buffer.ByteBuf;
+
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 public class Format {
@@ -12,6 +14,8 @@ public class Format {
     static final byte[] DigitTens = new byte[]{'0', '0', '0', '0', '0', '0', '0', '0', '0', '0', '1', '1', '1', '1', '1', '1', '1', '1', '1', '1', '2', '2', '2', '2', '2', '2', '2', '2', '2', '2', '3', '3', '3', '3', '3', '3', '3', '3', '3', '3', '4', '4', '4', '4', '4', '4', '4', '4', '4', '4', '5', '5', '5', '5', '5', '5', '5', '5', '5', '5', '6', '6', '6', '6', '6', '6', '6', '6', '6', '6', '7', '7', '7', '7', '7', '7', '7', '7', '7', '7', '8', '8', '8', '8', '8', '8', '8', '8', '8', '8', '9', '9', '9', '9', '9', '9', '9', '9', '9', '9'};
     static final byte[] DigitOnes = new byte[]{'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', '0', '1', '2', '3', '4', '5', '6', '7', '8', '9'};
 
+    private static final byte[] MIN_LONG_BYTES = "-9223372036854775808".getBytes(UTF_8);
+
     public static int uint32(long z) {
         // if(z<0) z=-z;
         return (int) (z & 0x7fffffff);
@@ -69,8 +73,8 @@ public class Format {
         long result = 0;
         boolean negative = false;
         int i = 0, len = content.length;
-        int limit = -Integer.MAX_VALUE;
-        int multmin;
+        long limit = -Long.MAX_VALUE;
+        long multmin;
         int digit;
 
         if (len > 0) {
@@ -78,7 +82,7 @@ public class Format {
             if (firstChar < '0') {
                 if (firstChar == '-') {
                     negative = true;
-                    limit = Integer.MIN_VALUE;
+                    limit = Long.MIN_VALUE;
                 } else if (firstChar != '+') {
                     throw new NumberFormatException();
                 }
@@ -112,8 +116,8 @@ public class Format {
     }
 
     public static byte[] toByteArray(long value) {
-        if (value == -9223372036854775808L) {
-            return "-9223372036854775808".getBytes(UTF_8);
+        if (value == Long.MIN_VALUE) {
+            return MIN_LONG_BYTES.clone();
         } else {
             int size = value < 0L ? stringSize(-value) + 1 : stringSize(value);
             byte[] arr = new byte[size];
@@ -122,6 +126,47 @@ public class Format {
         }
     }
 
+    /**
+     * @return value的十进制表示的字节数（含负号）
+     */
+    public static int decimalLength(long value) {
+        if (value == Long.MIN_VALUE) {
+            return MIN_LONG_BYTES.length;
+        }
+        return value < 0L ? stringSize(-value) + 1 : stringSize(value);
+    }
+
+    /**
+     * 按十进制直接写入缓冲区，利用DigitTens/DigitOnes每次处理两位，不产生中间对象
+     */
+    public static void writeLong(ByteBuf buffer, long value) {
+        if (value == Long.MIN_VALUE) {
+            buffer.writeBytes(MIN_LONG_BYTES);
+            return;
+        }
+        int size = decimalLength(value);
+        buffer.ensureWritable(size);
+        int end = buffer.writerIndex() + size;
+        int index = end;
+        long remain = value < 0L ? -value : value;
+        while (remain >= 100L) {
+            long quotient = remain / 100L;
+            int twoDigits = (int) (remain - quotient * 100L);
+            remain = quotient;
+            buffer.setByte(--index, DigitOnes[twoDigits]);
+            buffer.setByte(--index, DigitTens[twoDigits]);
+        }
+        int twoDigits = (int) remain;
+        buffer.setByte(--index, DigitOnes[twoDigits]);
+        if (twoDigits >= 10) {
+            buffer.setByte(--index, DigitTens[twoDigits]);
+        }
+        if (value < 0L) {
+            buffer.setByte(--index, '-');
+        }
+        buffer.writerIndex(end);
+    }
+
     static int stringSize(long value) {
         long var2 = 10L;
 
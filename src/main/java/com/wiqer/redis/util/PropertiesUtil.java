@@ -5,18 +5,31 @@ import lombok.Getter;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 
 public class PropertiesUtil {
 
+    private static final String SYSTEM_PROPERTY_PREFIX = "redis.";
+
     private PropertiesUtil() {
     }
 
     @Getter
     private static final PropertiesUtil Instance = new PropertiesUtil();
 
+    /**
+     * 配置文件redis_conf.properties，JVM系统属性redis.&lt;key&gt;覆盖文件中的同名配置
+     */
     public static Properties getProParams() {
-        return PropertiesUtil.getInstance().getProParams("/redis_conf.properties");
+        Properties properties = PropertiesUtil.getInstance().getProParams("/redis_conf.properties");
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith(SYSTEM_PROPERTY_PREFIX)) {
+                properties.setProperty(name.substring(SYSTEM_PROPERTY_PREFIX.length()), System.getProperty(name));
+            }
+        }
+        return properties;
     }
 
     public static String getNodeAddress() {
@@ -46,6 +59,52 @@ public class PropertiesUtil {
         return false;
     }
 
+    /**
+     * AOF刷盘策略always、everysec或no，为空时为everysec
+     */
+    public static String getAppendFsync() {
+        return getProParams().getProperty("appendfsync");
+    }
+
+    /**
+     * 分片线程交给AOF线程的队列满时的处理方式block、spin或drop，为空时为block
+     */
+    public static String getAofQueueFullPolicy() {
+        return getProParams().getProperty("aof_queue_full_policy");
+    }
+
+    /**
+     * 启动时并行解析AOF文件的线程数，为空时为CPU数与4中的较小值
+     */
+    public static int getAofReplayThreads() {
+        return Math.max(getInt("aof_replay_threads", Math.min(Runtime.getRuntime().availableProcessors(), 4)), 1);
+    }
+
+    /**
+     * BGREWRITEAOF是否把基础文件写为二进制快照，之后的段仍为RESP命令，默认yes
+     */
+    public static boolean getAofUseRdbPreamble() {
+        return getBoolean("aof_use_rdb_preamble", true);
+    }
+
+    /**
+     * BGSAVE写出、启动时加载的快照文件
+     */
+    public static String getSnapshotPath() {
+        String path = getProParams().getProperty("snapshot_file");
+        if (StringUtil.isNullOrEmpty(path)) {
+            return "./dump.rdb";
+        }
+        return path.trim();
+    }
+
+    /**
+     * 启动时并行加载快照的线程数，为空时为CPU数与4中的较小值
+     */
+    public static int getSnapshotLoadThreads() {
+        return Math.max(getInt("snapshot_load_threads", Math.min(Runtime.getRuntime().availableProcessors(), 4)), 1);
+    }
+
     public static boolean getTcpKeepAlive() {
         String appendOnly = getProParams().getProperty("tcp_keepalive");
         if (!StringUtil.isNullOrEmpty(appendOnly)) {
@@ -54,6 +113,148 @@ public class PropertiesUtil {
         return false;
     }
 
+    /**
+     * 是否按selector_cpulist、shard_cpulist与aof_cpulist把IO线程、分片线程与AOF线程绑定到CPU
+     */
+    public static boolean getCpuAffinity() {
+        String cpuAffinity = getProParams().getProperty("cpu_affinity");
+        if (!StringUtil.isNullOrEmpty(cpuAffinity)) {
+            return cpuAffinity.trim().equals("yes");
+        }
+        return false;
+    }
+
+    /**
+     * IO线程（selector）绑定的CPU，为空时不绑定
+     */
+    public static int[] getSelectorCpus() {
+        return getCpuList("selector_cpulist");
+    }
+
+    /**
+     * 分片线程绑定的CPU，为空时不绑定
+     */
+    public static int[] getShardCpus() {
+        return getCpuList("shard_cpulist");
+    }
+
+    /**
+     * AOF写线程绑定的CPU，为空时不绑定
+     */
+    public static int[] getAofCpus() {
+        return getCpuList("aof_cpulist");
+    }
+
+    /**
+     * 数据分片数，每个分片由一个线程独占；0表示与CPU核数相同，默认1
+     */
+    public static int getShardCount() {
+        String shardCount = getProParams().getProperty("shard_count");
+        if (StringUtil.isNullOrEmpty(shardCount)) {
+            return 1;
+        }
+        try {
+            int count = Integer.parseInt(shardCount.trim());
+            if (count == 0) {
+                return Runtime.getRuntime().availableProcessors();
+            }
+            return Math.max(count, 1);
+        } catch (NumberFormatException e) {
+            return 1;
+        }
+    }
+
+    /**
+     * 连接是否关闭Nagle算法，默认开启TCP_NODELAY
+     */
+    public static boolean getTcpNoDelay() {
+        return getBoolean("tcp_nodelay", true);
+    }
+
+    /**
+     * 连接的发送缓冲区大小，0表示使用系统默认值
+     */
+    public static int getSoSndBuf() {
+        return getInt("so_sndbuf", 0);
+    }
+
+    /**
+     * 连接的接收缓冲区大小，0表示使用系统默认值
+     */
+    public static int getSoRcvBuf() {
+        return getInt("so_rcvbuf", 0);
+    }
+
+    /**
+     * 出站缓冲的低水位，低于该值时连接恢复可写
+     */
+    public static int getWriteBufferLowWaterMark() {
+        return getInt("write_buffer_low_water_mark", 32 * 1024);
+    }
+
+    /**
+     * 出站缓冲的高水位，超过该值时连接变为不可写
+     */
+    public static int getWriteBufferHighWaterMark() {
+        return getInt("write_buffer_high_water_mark", 64 * 1024);
+    }
+
+    /**
+     * 按客户端类别的出站缓冲限制，格式见OutputBufferLimit，为空时使用redis的默认值
+     */
+    public static String getClientOutputBufferLimit() {
+        return getProParams().getProperty("client_output_buffer_limit");
+    }
+
+    /**
+     * epoll下通过SO_REUSEPORT绑定的监听socket数，由内核在它们之间分摊accept，默认1
+     */
+    public static int getReusePortListeners() {
+        return Math.max(getInt("reuseport_listeners", 1), 1);
+    }
+
+    /**
+     * epoll下连接的SO_BUSY_POLL微秒数，0表示关闭
+     */
+    public static int getEpollBusyPoll() {
+        return getInt("epoll_busy_poll", 0);
+    }
+
+    /**
+     * epoll下连接是否开启TCP_QUICKACK
+     */
+    public static boolean getTcpQuickAck() {
+        return getBoolean("tcp_quickack", false);
+    }
+
+    /**
+     * unix domain socket监听路径，为空时不监听
+     */
+    public static String getUnixSocket() {
+        return getProParams().getProperty("unixsocket");
+    }
+
+    /**
+     * unix domain socket文件的权限，八进制，例如700；为空时保持umask决定的权限
+     */
+    public static String getUnixSocketPerm() {
+        return getProParams().getProperty("unixsocketperm");
+    }
+
+    /**
+     * 共享内存连接文件所在目录，为空时不启用共享内存传输
+     */
+    public static String getShmDir() {
+        return getProParams().getProperty("shm_dir");
+    }
+
+    /**
+     * 请求追踪的采样率，每个连接每N条请求采样一条，0表示关闭
+     */
+    public static int getTraceSampleRate() {
+        return Math.max(getInt("trace_sample_rate", 0), 0);
+    }
+
     public static Integer getNodePort() {
         int port = 6379;
         try {
@@ -68,6 +269,55 @@ public class PropertiesUtil {
         return port;
     }
 
+    private static boolean getBoolean(String key, boolean defaultValue) {
+        String value = getProParams().getProperty(key);
+        if (StringUtil.isNullOrEmpty(value)) {
+            return defaultValue;
+        }
+        return value.trim().equals("yes");
+    }
+
+    /**
+     * 与redis的server_cpulist相同的格式，例如0-3,8,10
+     *
+     * @throws IllegalArgumentException 格式错误
+     */
+    private static int[] getCpuList(String key) {
+        String value = getProParams().getProperty(key);
+        if (StringUtil.isNullOrEmpty(value) || value.isBlank()) {
+            return new int[0];
+        }
+        List<Integer> cpus = new ArrayList<>();
+        try {
+            for (String range : value.trim().split(",")) {
+                int dash = range.indexOf('-');
+                int first = Integer.parseInt(range.substring(0, dash < 0 ? range.length() : dash).trim());
+                int last = dash < 0 ? first : Integer.parseInt(range.substring(dash + 1).trim());
+                if (first < 0 || last < first) {
+                    throw new IllegalArgumentException(key + "格式错误: " + value);
+                }
+                for (int cpu = first; cpu <= last; cpu++) {
+                    cpus.add(cpu);
+                }
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(key + "格式错误: " + value, e);
+        }
+        return cpus.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static int getInt(String key, int defaultValue) {
+        String value = getProParams().getProperty(key);
+        if (StringUtil.isNullOrEmpty(value)) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
     private Properties getProParams(String propertiesName) {
         InputStream is = getClass().getResourceAsStream(propertiesName);
         Properties prop = new Properties();
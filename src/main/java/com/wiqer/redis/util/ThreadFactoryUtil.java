@@ -0,0 +1,56 @@
+package com.wiqer.redis.util;
+
+import net.openhft.affinity.Affinity;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 服务端线程工厂
+ * <p>
+ * 开启cpu_affinity时，只有IO线程、分片线程与AOF写线程按配置的CPU列表绑核，每个线程启动时绑定到列表中的下一个CPU，
+ * 不再在核之间迁移；boss线程与重写、快照、重放等临时线程不绑定，不占用为它们保留的CPU
+ *
+ * @author lilan
+ */
+public class ThreadFactoryUtil {
+
+    private ThreadFactoryUtil() {
+    }
+
+    /**
+     * 不绑核的线程工厂
+     *
+     * @param name 线程名前缀，线程名为前缀加序号
+     */
+    public static ThreadFactory create(String name, boolean daemon) {
+        AtomicInteger index = new AtomicInteger(0);
+        return r -> {
+            Thread thread = new Thread(r, name + index.getAndIncrement());
+            thread.setDaemon(daemon);
+            return thread;
+        };
+    }
+
+    /**
+     * 开启cpu_affinity且cpus不为空时，第i个线程启动后绑定到cpus[i % cpus.length]，否则与{@link #create(String, boolean)}相同
+     *
+     * @param cpus 配置的CPU列表，见{@link PropertiesUtil#getSelectorCpus()}
+     */
+    public static ThreadFactory create(String name, boolean daemon, int[] cpus) {
+        if (!PropertiesUtil.getCpuAffinity() || cpus.length == 0) {
+            return create(name, daemon);
+        }
+        AtomicInteger index = new AtomicInteger(0);
+        return r -> {
+            int i = index.getAndIncrement();
+            int cpu = cpus[i % cpus.length];
+            Thread thread = new Thread(() -> {
+                Affinity.setAffinity(cpu);
+                r.run();
+            }, name + i);
+            thread.setDaemon(daemon);
+            return thread;
+        };
+    }
+}
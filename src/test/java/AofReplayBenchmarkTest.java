@@ -0,0 +1,144 @@
+import com.wiqer.redis.aof.Aof;
+import com.wiqer.redis.aof.AppendFsync;
+import com.wiqer.redis.datatype.BytesWrapper;
+import com.wiqer.redis.datatype.RedisString;
+import com.wiqer.redis.shard.Shard;
+import com.wiqer.redis.shard.ShardGroup;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.*;
+
+/**
+ * 启动时重放合成AOF的吞吐，默认1GB，可以用-Daof.replay.benchmark.mb调整
+ */
+public class AofReplayBenchmarkTest {
+
+    private static final int SHARDS = 4;
+    private static final int KEYS = 100_000;
+    private static final int SEGMENT_BYTES = 64 << 20;
+    private static final int CHUNK_BYTES = 1 << 20;
+    private static final byte[] MAGIC = "EFAOF01\n".getBytes(US_ASCII);
+
+    private Path directory;
+    private ShardGroup shardGroup;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("aof");
+        shardGroup = new ShardGroup(SHARDS);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        shardGroup.getExecutorGroup().shutdownGracefully();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Test
+    public void replayThroughput() throws Exception {
+        long totalBytes = Long.getLong("aof.replay.benchmark.mb", 1024) << 20;
+        String prefix = directory.resolve("replay").toString();
+        long commands = generate(prefix, totalBytes);
+        long bytes;
+        try (Stream<Path> files = Files.list(directory)) {
+            bytes = files.mapToLong(file -> file.toFile().length()).sum();
+        }
+
+        long start = System.nanoTime();
+        Aof aof = new Aof(shardGroup, prefix, AppendFsync.NO);
+        long nanos = System.nanoTime() - start;
+        aof.close();
+        assertEquals(commands, aof.getReplayer().getCommands());
+        assertEquals(0, aof.getReplayer().getFailedCommands());
+        assertEquals(100, aof.getReplayer().percent(), 0.001);
+
+        Shard shard = shardGroup.shardOf(key(KEYS - 2));
+        RedisString last = shard.getExecutor().submit(() ->
+                shard.getRedisCore().get(key(KEYS - 2), RedisString.class)).get();
+        assertNotNull(last);
+        long keys = 0;
+        for (int i = 0; i < SHARDS; i++) {
+            Shard each = shardGroup.get(i);
+            keys += each.getExecutor().submit(() -> each.getRedisCore().keys().size()).get();
+        }
+        assertEquals(Math.min(commands, KEYS), keys);
+        System.out.printf("replay %4d MB, %,d commands in %6d ms, %7.1f MB/s, %,10.0f commands/s%n", bytes >> 20,
+                commands, TimeUnit.NANOSECONDS.toMillis(nanos), bytes * 1e9 / nanos / (1 << 20), commands * 1e9 / nanos);
+    }
+
+    /**
+     * 按段写入SET与HSET交替的命令，每1MB为一条带CRC32C的记录，格式与AOF线程写入的相同
+     *
+     * @return 写入的命令数
+     */
+    private static long generate(String prefix, long totalBytes) throws IOException {
+        String value = "v".repeat(100);
+        ByteArrayOutputStream chunk = new ByteArrayOutputStream(CHUNK_BYTES + 1024);
+        long commands = 0;
+        long written = 0;
+        for (int id = 0; written < totalBytes; id++) {
+            long segment = MAGIC.length;
+            long sequence = 0;
+            try (FileChannel channel = FileChannel.open(Path.of(prefix + "_" + id + ".aof"),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                channel.write(ByteBuffer.wrap(MAGIC));
+                while (written < totalBytes && segment + CHUNK_BYTES <= SEGMENT_BYTES) {
+                    chunk.reset();
+                    while (chunk.size() < CHUNK_BYTES - 1024) {
+                        String key = "key:" + commands % KEYS;
+                        chunk.write((commands % 4 == 3
+                                ? command("HSET", key + ":h", "field:" + commands % 16, value)
+                                : command("SET", key, value + commands)).getBytes(UTF_8));
+                        commands++;
+                    }
+                    byte[] payload = chunk.toByteArray();
+                    CRC32C crc = new CRC32C();
+                    crc.update(ByteBuffer.allocate(Long.BYTES).putLong(0, sequence));
+                    crc.update(payload);
+                    ByteBuffer header = ByteBuffer.allocate(16).putInt(0, payload.length)
+                            .putInt(4, (int) crc.getValue()).putLong(8, sequence++);
+                    ByteBuffer[] bytes = {header, ByteBuffer.wrap(payload)};
+                    long remaining = 16 + payload.length;
+                    while (remaining > 0) {
+                        long count = channel.write(bytes);
+                        remaining -= count;
+                        segment += count;
+                    }
+                    written += payload.length;
+                }
+            }
+        }
+        return commands;
+    }
+
+    private static BytesWrapper key(int i) {
+        return new BytesWrapper(("key:" + i).getBytes(UTF_8));
+    }
+
+    private static String command(String... args) {
+        StringBuilder builder = new StringBuilder("*").append(args.length).append("\r\n");
+        for (String arg : args) {
+            builder.append('$').append(arg.length()).append("\r\n").append(arg).append("\r\n");
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,438 @@
+import com.wiqer.redis.MyRedisServer;
+import com.wiqer.redis.aof.AppendFsync;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.*;
+
+/**
+ * 写命令经AOF持久化后重启恢复，损坏与不完整记录的恢复，以及三种刷盘策略下的写吞吐
+ */
+public class AofTest {
+
+    private static final int WRITES = 100_000;
+    private static final int PIPELINE = 64;
+
+    private Path directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("aof");
+        System.setProperty("redis.aof_data_dir", directory + File.separator);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        System.clearProperty("redis.aof_data_dir");
+        System.clearProperty("redis.appendonly");
+        System.clearProperty("redis.appendfsync");
+        System.clearProperty("redis.shard_count");
+        System.clearProperty("redis.aof_use_rdb_preamble");
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Test
+    public void parsesAppendFsync() {
+        assertEquals(AppendFsync.EVERYSEC, AppendFsync.parse(null));
+        assertEquals(AppendFsync.ALWAYS, AppendFsync.parse(" Always "));
+        assertEquals(AppendFsync.NO, AppendFsync.parse("no"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownAppendFsync() {
+        AppendFsync.parse("sometimes");
+    }
+
+    @Test
+    public void restoresWritesAfterRestart() throws IOException {
+        System.setProperty("redis.appendonly", "yes");
+        System.setProperty("redis.appendfsync", "always");
+        System.setProperty("redis.shard_count", "4");
+        String popped;
+        String counter;
+        try (MyRedisServer server = new MyRedisServer()) {
+            server.start();
+            try (Socket socket = connect()) {
+                OutputStream out = socket.getOutputStream();
+                InputStream in = new BufferedInputStream(socket.getInputStream());
+                assertEquals("+OK", send(out, in, command("SET", "name", "ef-redis")));
+                assertEquals("+OK", send(out, in, command("MSET", "a", "1", "b", "2", "c", "3")));
+                send(out, in, command("INCR", "counter"));
+                readLine(in);
+                send(out, in, command("INCR", "counter"));
+                counter = readLine(in);
+                assertEquals(":3", send(out, in, command("RPUSH", "list", "x", "y", "z")));
+                assertEquals(":3", send(out, in, command("SADD", "set", "m1", "m2", "m3")));
+                assertEquals("$2", send(out, in, command("SPOP", "set")));
+                popped = readLine(in);
+                assertEquals(":1", send(out, in, command("DEL", "a")));
+                // 失败的写命令不记录
+                assertTrue(send(out, in, command("SADD", "name", "m")).startsWith("-WRONGTYPE"));
+            }
+        }
+        try (MyRedisServer server = new MyRedisServer()) {
+            server.start();
+            try (Socket socket = connect()) {
+                OutputStream out = socket.getOutputStream();
+                InputStream in = new BufferedInputStream(socket.getInputStream());
+                assertEquals("$8", send(out, in, command("GET", "name")));
+                assertEquals("ef-redis", readLine(in));
+                assertEquals("$-1", send(out, in, command("GET", "a")));
+                assertEquals("$1", send(out, in, command("GET", "c")));
+                assertEquals("3", readLine(in));
+                send(out, in, command("GET", "counter"));
+                assertEquals(counter, readLine(in));
+                assertEquals(":4", send(out, in, command("RPUSH", "list", "w")));
+                // SPOP以SREM记录，重放后弹出的元素不在集合中
+                assertEquals(":0", send(out, in, command("SREM", "set", popped)));
+                assertEquals("*2", send(out, in, command("SMEMBERS", "set")));
+            }
+        }
+    }
+
+    @Test
+    public void replaysAbsoluteTtlAndGeneratedStreamIds() throws Exception {
+        System.setProperty("redis.appendonly", "yes");
+        System.setProperty("redis.appendfsync", "always");
+        String lastId;
+        try (MyRedisServer server = new MyRedisServer()) {
+            server.start();
+            try (Socket socket = connect()) {
+                OutputStream out = socket.getOutputStream();
+                InputStream in = new BufferedInputStream(socket.getInputStream());
+                assertEquals("+OK", send(out, in, command("SET", "px", "v", "PX", "1500")));
+                assertEquals("+OK", send(out, in, command("SETEX", "setex", "1", "v")));
+                assertEquals("+OK", send(out, in, command("SET", "expire", "v")));
+                assertEquals(":1", send(out, in, command("EXPIRE", "expire", "1")));
+                assertEquals("+OK", send(out, in, command("SET", "long", "v", "EX", "1000")));
+                // 条件不满足的SET不记录，重放时也不会以新的过期时间写入
+                assertEquals("$-1", send(out, in, command("SET", "px", "other", "NX", "EX", "1000")));
+                send(out, in, command("XADD", "stream", "*", "f", "1"));
+                readLine(in);
+                send(out, in, command("XADD", "stream", "MAXLEN", "~", "10", "*", "f", "2"));
+                lastId = readLine(in);
+            }
+            // 重放时从重放时刻重新计时的话，这些key在重启后仍然存在
+            Thread.sleep(1600);
+        }
+        try (MyRedisServer server = new MyRedisServer()) {
+            server.start();
+            try (Socket socket = connect()) {
+                OutputStream out = socket.getOutputStream();
+                InputStream in = new BufferedInputStream(socket.getInputStream());
+                assertEquals("$-1", send(out, in, command("GET", "px")));
+                assertEquals("$-1", send(out, in, command("GET", "setex")));
+                assertEquals("$-1", send(out, in, command("GET", "expire")));
+                long ttl = Long.parseLong(send(out, in, command("TTL", "long")).substring(1));
+                assertTrue("ttl " + ttl, ttl > 900 && ttl < 999);
+                assertEquals(":2", send(out, in, command("XLEN", "stream")));
+                assertTrue(send(out, in, command("XADD", "stream", lastId, "f", "3")).startsWith("-ERR"));
+                int dash = lastId.indexOf('-');
+                String nextId = lastId.substring(0, dash + 1) + (Long.parseLong(lastId.substring(dash + 1)) + 1);
+                assertEquals("$" + nextId.length(), send(out, in, command("XADD", "stream", nextId, "f", "3")));
+                assertEquals(nextId, readLine(in));
+            }
+        }
+    }
+
+    @Test
+    public void rewriteShrinksAofAndKeepsConcurrentWrites() throws Exception {
+        rewriteAndRestart("_base_1.rdb", "EFRDB01\n");
+    }
+
+    @Test
+    public void rewriteWithoutRdbPreamble() throws Exception {
+        System.setProperty("redis.aof_use_rdb_preamble", "no");
+        rewriteAndRestart("_base_1.aof", "EFAOF01\n");
+    }
+
+    /**
+     * 重写期间继续写入，重启后基础文件与其后的段合起来恢复全部数据
+     */
+    private void rewriteAndRestart(String baseFile, String baseMagic) throws Exception {
+        System.setProperty("redis.appendonly", "yes");
+        System.setProperty("redis.appendfsync", "everysec");
+        System.setProperty("redis.shard_count", "4");
+        try (MyRedisServer server = new MyRedisServer()) {
+            server.start();
+            try (Socket socket = connect()) {
+                OutputStream out = socket.getOutputStream();
+                InputStream in = new BufferedInputStream(socket.getInputStream());
+                // 同一批key被反复覆盖，重写后只剩最终状态
+                for (int i = 0; i < 200; i++) {
+                    StringBuilder pipeline = new StringBuilder();
+                    for (int j = 0; j < 100; j++) {
+                        pipeline.append(command("SET", "key:" + j, "value:" + i));
+                        pipeline.append(command("INCR", "counter"));
+                    }
+                    out.write(pipeline.toString().getBytes(UTF_8));
+                    // INCR的回复为bulk string，每组三行
+                    for (int j = 0; j < 300; j++) {
+                        readLine(in);
+                    }
+                }
+                for (int i = 0; i < 150; i++) {
+                    send(out, in, command("RPUSH", "list", "item:" + i));
+                    send(out, in, command("SADD", "set", "member:" + i));
+                    send(out, in, command("HSET", "hash", "field:" + i, "v" + i));
+                    send(out, in, command("ZADD", "zset", Integer.toString(i), "member:" + i));
+                }
+                send(out, in, command("XADD", "stream", "1-1", "f", "v"));
+                readLine(in);
+                assertEquals("+OK", send(out, in, command("SET", "session", "s")));
+                assertEquals(":1", send(out, in, command("EXPIRE", "session", "1000")));
+            }
+        }
+        long before = aofBytes();
+        String counter;
+        try (MyRedisServer server = new MyRedisServer()) {
+            server.start();
+            try (Socket socket = connect()) {
+                OutputStream out = socket.getOutputStream();
+                InputStream in = new BufferedInputStream(socket.getInputStream());
+                assertEquals("+Background append only file rewriting started", send(out, in, command("BGREWRITEAOF")));
+                // 重写期间继续写入，这些命令要保留在新文件中
+                for (int i = 0; i < 1000; i++) {
+                    out.write((command("INCR", "counter") + command("RPUSH", "list", "late:" + i)).getBytes(UTF_8));
+                    readLine(in);
+                    readLine(in);
+                    readLine(in);
+                }
+                awaitRewrite();
+                send(out, in, command("GET", "counter"));
+                counter = readLine(in);
+            }
+        }
+        long after = aofBytes();
+        assertTrue("重写后" + after + "字节，重写前" + before + "字节", after < before / 4);
+        byte[] base = Files.readAllBytes(directory.resolve(baseFile));
+        assertEquals(baseMagic, new String(base, 0, 8, US_ASCII));
+        try (MyRedisServer server = new MyRedisServer()) {
+            server.start();
+            try (Socket socket = connect()) {
+                OutputStream out = socket.getOutputStream();
+                InputStream in = new BufferedInputStream(socket.getInputStream());
+                send(out, in, command("GET", "counter"));
+                assertEquals(counter, readLine(in));
+                assertEquals("$9", send(out, in, command("GET", "key:42")));
+                assertEquals("value:199", readLine(in));
+                assertEquals(":1151", send(out, in, command("RPUSH", "list", "x")));
+                assertEquals(":0", send(out, in, command("SADD", "set", "member:149")));
+                assertEquals(":0", send(out, in, command("HSET", "hash", "field:149", "v149")));
+                assertEquals("*1", send(out, in, command("ZREVRANGE", "zset", "0", "0")));
+                assertEquals("$10", readLine(in));
+                assertEquals("member:149", readLine(in));
+                assertEquals(":1", send(out, in, command("XLEN", "stream")));
+                long ttl = Long.parseLong(send(out, in, command("TTL", "session")).substring(1));
+                assertTrue("ttl " + ttl, ttl > 900 && ttl <= 1000);
+            }
+        }
+    }
+
+    @Test
+    public void skipsCorruptRecordsAndTruncatesTornTail() throws Exception {
+        System.setProperty("redis.appendonly", "yes");
+        System.setProperty("redis.appendfsync", "everysec");
+        System.setProperty("redis.shard_count", "1");
+        int keys = 3000;
+        String value = "v".repeat(1000);
+        try (MyRedisServer server = new MyRedisServer()) {
+            server.start();
+            try (Socket socket = connect()) {
+                OutputStream out = socket.getOutputStream();
+                InputStream in = new BufferedInputStream(socket.getInputStream());
+                // 逐条发送，每条命令是一条记录
+                for (int i = 0; i < keys; i++) {
+                    assertEquals("+OK", send(out, in, command("SET", "key:" + i, value)));
+                }
+            }
+        }
+        Path segment = directory.resolve("_0.aof");
+        ByteBuffer file = ByteBuffer.wrap(Files.readAllBytes(segment));
+        List<Integer> records = new ArrayList<>();
+        for (int position = 8; position + 16 <= file.limit() && file.getInt(position) > 0; ) {
+            records.add(position);
+            position += 16 + file.getInt(position);
+        }
+        assertEquals(keys, records.size());
+        // 内容损坏而长度完好，只丢这一条
+        int flipped = records.get(100) + 16 + 20;
+        file.put(flipped, (byte) (file.get(flipped) ^ 0xff));
+        // 长度损坏，从下一个索引项继续
+        int broken = records.get(1200);
+        file.putInt(broken, 0x7fff0000);
+        ByteBuffer index = ByteBuffer.wrap(Files.readAllBytes(directory.resolve("_0.aof.idx")));
+        int resumed = -1;
+        for (int entry = 0; entry + 16 <= index.limit(); entry += 16) {
+            if (index.getInt(entry) > broken) {
+                resumed = records.indexOf(index.getInt(entry));
+                break;
+            }
+        }
+        assertTrue("索引中没有损坏记录之后的项", resumed > 1200);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(file);
+            // 结尾写了一半的记录
+            channel.write(ByteBuffer.allocate(100).putInt(0, 1000).putLong(8, keys));
+        }
+        try (MyRedisServer server = new MyRedisServer()) {
+            server.start();
+            try (Socket socket = connect()) {
+                OutputStream out = socket.getOutputStream();
+                InputStream in = new BufferedInputStream(socket.getInputStream());
+                assertEquals(":2", send(out, in, command("EXISTS", "key:99", "key:101")));
+                assertEquals(":0", send(out, in, command("EXISTS", "key:100", "key:1200", "key:" + (resumed - 1))));
+                assertEquals(":2", send(out, in, command("EXISTS", "key:1199", "key:" + resumed)));
+                int restored = 0;
+                for (int i = 0; i < keys; i++) {
+                    restored += Integer.parseInt(send(out, in, command("EXISTS", "key:" + i)).substring(1));
+                }
+                assertEquals(keys - 1 - (resumed - 1200), restored);
+                assertEquals("+OK", send(out, in, command("SET", "after", "recovery")));
+            }
+        }
+        try (MyRedisServer server = new MyRedisServer()) {
+            server.start();
+            try (Socket socket = connect()) {
+                OutputStream out = socket.getOutputStream();
+                InputStream in = new BufferedInputStream(socket.getInputStream());
+                assertEquals("$8", send(out, in, command("GET", "after")));
+                assertEquals("recovery", readLine(in));
+                assertEquals(":1", send(out, in, command("EXISTS", "key:" + (keys - 1))));
+            }
+        }
+    }
+
+    @Test
+    public void replaysLegacySegmentAndAppendsToNewSegment() throws Exception {
+        System.setProperty("redis.appendonly", "yes");
+        System.setProperty("redis.appendfsync", "always");
+        System.setProperty("redis.shard_count", "2");
+        Files.writeString(directory.resolve("_0.aof"), command("SET", "old", "legacy") + command("RPUSH", "list", "a"));
+        try (MyRedisServer server = new MyRedisServer()) {
+            server.start();
+            try (Socket socket = connect()) {
+                OutputStream out = socket.getOutputStream();
+                InputStream in = new BufferedInputStream(socket.getInputStream());
+                assertEquals(":2", send(out, in, command("RPUSH", "list", "b")));
+            }
+        }
+        byte[] segment = Files.readAllBytes(directory.resolve("_1.aof"));
+        assertEquals("EFAOF01\n", new String(segment, 0, 8, US_ASCII));
+        try (MyRedisServer server = new MyRedisServer()) {
+            server.start();
+            try (Socket socket = connect()) {
+                OutputStream out = socket.getOutputStream();
+                InputStream in = new BufferedInputStream(socket.getInputStream());
+                assertEquals("$6", send(out, in, command("GET", "old")));
+                assertEquals("legacy", readLine(in));
+                assertEquals(":3", send(out, in, command("RPUSH", "list", "c")));
+            }
+        }
+    }
+
+    private void awaitRewrite() throws Exception {
+        for (int i = 0; i < 500; i++) {
+            if (Files.exists(directory.resolve("_manifest")) && !Files.exists(directory.resolve("_rewrite.tmp"))) {
+                return;
+            }
+            Thread.sleep(20);
+        }
+        fail("AOF重写没有完成");
+    }
+
+    private long aofBytes() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.mapToLong(file -> file.toFile().length()).sum();
+        }
+    }
+
+    @Test
+    public void writeThroughput() throws IOException {
+        System.setProperty("redis.shard_count", "4");
+        // 预热
+        measure();
+        double baseline = measure();
+        System.setProperty("redis.appendonly", "yes");
+        for (AppendFsync appendFsync : AppendFsync.values()) {
+            System.setProperty("redis.appendfsync", appendFsync.name().toLowerCase());
+            double opsPerSecond = measure();
+            System.out.printf("appendfsync %-8s %,10.0f ops/s (%.0f%% of no AOF %,.0f ops/s)%n",
+                    appendFsync.name().toLowerCase(), opsPerSecond, opsPerSecond * 100 / baseline, baseline);
+        }
+    }
+
+    private static double measure() throws IOException {
+        try (MyRedisServer server = new MyRedisServer()) {
+            server.start();
+            try (Socket socket = connect()) {
+                OutputStream out = socket.getOutputStream();
+                InputStream in = new BufferedInputStream(socket.getInputStream());
+                long start = System.nanoTime();
+                for (int i = 0; i < WRITES; i += PIPELINE) {
+                    StringBuilder pipeline = new StringBuilder();
+                    for (int j = 0; j < PIPELINE; j++) {
+                        pipeline.append(command("SET", "key:" + (i + j) % 10_000, "value:" + i));
+                    }
+                    out.write(pipeline.toString().getBytes(UTF_8));
+                    for (int j = 0; j < PIPELINE; j++) {
+                        assertEquals("+OK", readLine(in));
+                    }
+                }
+                return WRITES * 1e9 / (System.nanoTime() - start);
+            }
+        }
+    }
+
+    private static Socket connect() throws IOException {
+        return new Socket("127.0.0.1", 6379);
+    }
+
+    private static String send(OutputStream out, InputStream in, String command) throws IOException {
+        out.write(command.getBytes(UTF_8));
+        return readLine(in);
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) {
+                throw new IOException("连接已关闭");
+            }
+            if (b != '\r') {
+                line.append((char) b);
+            }
+        }
+        return line.toString();
+    }
+
+    private static String command(String... args) {
+        StringBuilder builder = new StringBuilder("*").append(args.length).append("\r\n");
+        for (String arg : args) {
+            builder.append('$').append(arg.length()).append("\r\n").append(arg).append("\r\n");
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,87 @@
+import com.wiqer.redis.aof.Aof;
+import com.wiqer.redis.aof.AppendFsync;
+import com.wiqer.redis.shard.ShardGroup;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.*;
+
+/**
+ * AOF线程的写入吞吐：分片线程交来的批次整批拷入按段映射的文件，跨越多个段
+ */
+public class AofWriterBenchmarkTest {
+
+    private static final int COMMANDS_PER_BATCH = 128;
+    private static final int TOTAL_BYTES = 256 << 20;
+
+    private Path directory;
+    private ShardGroup shardGroup;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("aof");
+        shardGroup = new ShardGroup(1);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        shardGroup.getExecutorGroup().shutdownGracefully();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Test
+    public void writeThroughput() throws Exception {
+        for (AppendFsync appendFsync : new AppendFsync[]{AppendFsync.NO, AppendFsync.EVERYSEC, AppendFsync.ALWAYS}) {
+            for (int valueSize : new int[]{16, 1024}) {
+                run(appendFsync, valueSize);
+            }
+        }
+    }
+
+    private void run(AppendFsync appendFsync, int valueSize) throws Exception {
+        String prefix = directory.resolve(appendFsync.name() + valueSize).toString();
+        byte[] command = ("*3\r\n$3\r\nSET\r\n$16\r\nkey:000000000000\r\n$" + valueSize + "\r\n"
+                + "x".repeat(valueSize) + "\r\n").getBytes(UTF_8);
+        int batches = TOTAL_BYTES / (command.length * COMMANDS_PER_BATCH);
+        CountDownLatch durable = new CountDownLatch(batches);
+        Aof aof = new Aof(shardGroup, prefix, appendFsync);
+        long start = System.nanoTime();
+        for (int i = 0; i < batches; i++) {
+            ByteBuf batch = PooledByteBufAllocator.DEFAULT.directBuffer(command.length * COMMANDS_PER_BATCH);
+            for (int j = 0; j < COMMANDS_PER_BATCH; j++) {
+                batch.writeBytes(command);
+            }
+            aof.append(0, batch, failure -> durable.countDown());
+        }
+        assertTrue(durable.await(60, TimeUnit.SECONDS));
+        // 关闭时写完剩余批次并force
+        aof.close();
+        long nanos = System.nanoTime() - start;
+        long bytes = (long) batches * COMMANDS_PER_BATCH * command.length;
+        long written = 0;
+        int segments = 0;
+        for (int id = 0; new File(prefix + "_" + id + ".aof").exists(); id++, segments++) {
+            written += new File(prefix + "_" + id + ".aof").length();
+        }
+        // 每段8字节的文件头，每批16字节的记录头
+        assertEquals(bytes + segments * 8L + batches * 16L, written);
+        System.out.printf("appendfsync %-8s value %4dB: %4d MB in %5d ms, %7.1f MB/s, %,10.0f commands/s%n",
+                appendFsync.name().toLowerCase(), valueSize, bytes >> 20, TimeUnit.NANOSECONDS.toMillis(nanos),
+                bytes * 1e9 / nanos / (1 << 20), (double) batches * COMMANDS_PER_BATCH * 1e9 / nanos);
+    }
+}
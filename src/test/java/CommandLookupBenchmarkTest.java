@@ -0,0 +1,105 @@
+import com.wiqer.redis.command.CommonCommandType;
+import com.wiqer.redis.datatype.BytesWrapper;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.*;
+
+/**
+ * 命令名查找：按字节的完美哈希与原先toUtf8String、toLowerCase后查HashMap的对比，并校验查找不分配内存
+ */
+public class CommandLookupBenchmarkTest {
+
+    private static final int ITERATIONS = 2_000_000;
+
+    private static final String[] NAMES = {"GET", "set", "Lpush", "PING", "mget", "XADD", "hset", "ZPOPMIN", "unknown", "gett"};
+
+    @Test
+    public void resolvesCaseInsensitively() {
+        for (CommonCommandType type : CommonCommandType.values()) {
+            assertSame(type, CommonCommandType.lookup(borrowed(type.name())));
+            assertSame(type, CommonCommandType.lookup(borrowed(type.name().toUpperCase(Locale.ROOT))));
+        }
+        assertNull(CommonCommandType.lookup(borrowed("gett")));
+        assertNull(CommonCommandType.lookup(borrowed("ge")));
+        assertNull(CommonCommandType.lookup(borrowed("")));
+        assertNull(CommonCommandType.lookup(new BytesWrapper(new byte[]{(byte) 0xe4, (byte) 0xb8, (byte) 0xad})));
+    }
+
+    @Test
+    public void lookupDoesNotAllocate() {
+        BytesWrapper[] names = names();
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        int found = lookupAll(names);
+        long before = threads.getThreadAllocatedBytes(threadId);
+        found += lookupAll(names);
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+        // 最后两个名字不存在
+        assertEquals(2 * (NAMES.length - 2) * ITERATIONS / NAMES.length, found);
+        // 留一点余量给计数器本身
+        assertTrue("allocated " + allocated + " bytes", allocated < 4096);
+    }
+
+    @Test
+    @Ignore("吞吐对比依赖机器负载，只在手动调优时运行")
+    public void compareWithStringLookup() {
+        BytesWrapper[] names = names();
+        Map<String, CommonCommandType> map = new HashMap<>();
+        for (CommonCommandType type : CommonCommandType.values()) {
+            map.put(type.name(), type);
+        }
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            int bytesFound = lookupAll(names);
+            long bytesNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            int stringFound = 0;
+            for (int i = 0; i < ITERATIONS; i++) {
+                if (map.get(names[i % names.length].toUtf8String().toLowerCase()) != null) {
+                    stringFound++;
+                }
+            }
+            long stringNanos = System.nanoTime() - start;
+            assertEquals(stringFound, bytesFound);
+            System.out.printf("bytes %5.1f ns/op  string %5.1f ns/op%n",
+                    (double) bytesNanos / ITERATIONS, (double) stringNanos / ITERATIONS);
+        }
+    }
+
+    private static int lookupAll(BytesWrapper[] names) {
+        int found = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            if (CommonCommandType.lookup(names[i % names.length]) != null) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    private static BytesWrapper[] names() {
+        BytesWrapper[] names = new BytesWrapper[NAMES.length];
+        for (int i = 0; i < NAMES.length; i++) {
+            names[i] = borrowed(NAMES[i]);
+        }
+        return names;
+    }
+
+    /**
+     * 与解码器一致，借用请求缓冲区中的命令名
+     */
+    private static BytesWrapper borrowed(String name) {
+        ByteBuf buffer = Unpooled.copiedBuffer("*1\r\n$" + name.length() + "\r\n" + name + "\r\n", UTF_8);
+        int index = buffer.readableBytes() - name.length() - 2;
+        return BytesWrapper.wrap(buffer, index, name.length());
+    }
+}
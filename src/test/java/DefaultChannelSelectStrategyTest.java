@@ -3,6 +3,7 @@ import com.wiqer.redis.netty.channel.LocalChannelOption;
 import com.wiqer.redis.netty.channel.epoll.EpollChannelOption;
 import com.wiqer.redis.netty.channel.kqueue.KqueueChannelOption;
 import com.wiqer.redis.netty.channel.select.NioSelectChannelOption;
+import com.wiqer.redis.netty.channel.uring.IoUringChannelOption;
 import org.junit.Test;
 
 public class DefaultChannelSelectStrategyTest {
@@ -11,6 +12,7 @@ public class DefaultChannelSelectStrategyTest {
     @Test
     public void testChannelSelect() {
         LocalChannelOption localChannelOption = selectStrategy.select();
+        System.out.println("IoUringChannelOption:" + (localChannelOption instanceof IoUringChannelOption));
         System.out.println("KqueueChannelOption:" + (localChannelOption instanceof KqueueChannelOption));
         System.out.println("EpollChannelOption:" + (localChannelOption instanceof EpollChannelOption));
         System.out.println("NioSelectChannelOption:" + (localChannelOption instanceof NioSelectChannelOption));
@@ -0,0 +1,193 @@
+import com.wiqer.redis.aof.queue.FullPolicy;
+import com.wiqer.redis.aof.queue.MpscRingQueue;
+import com.wiqer.redis.aof.queue.RingBlockingQueue;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * MpscRingQueue的正确性，以及与RingBlockingQueue、LinkedBlockingQueue在1、4、16个生产者下的吞吐对比
+ */
+public class MpscRingQueueTest {
+
+    private static final int CAPACITY = 1 << 16;
+    private static final int ITEMS = 4_000_000;
+
+    @Test
+    public void roundsCapacityUpToPowerOfTwo() {
+        assertEquals(16, new MpscRingQueue<>(10, FullPolicy.BLOCK).capacity());
+        assertEquals(1, new MpscRingQueue<>(1, FullPolicy.BLOCK).capacity());
+    }
+
+    @Test
+    public void dropPolicyCountsRejectedElements() throws InterruptedException {
+        MpscRingQueue<Integer> queue = new MpscRingQueue<>(4, FullPolicy.DROP);
+        int accepted = 0;
+        for (int i = 0; i < 10; i++) {
+            if (queue.enqueue(i)) {
+                accepted++;
+            }
+        }
+        assertEquals(4, accepted);
+        assertEquals(6, queue.getDropped());
+        List<Integer> drained = new ArrayList<>();
+        assertEquals(4, queue.drainTo(drained));
+        assertEquals(List.of(0, 1, 2, 3), drained);
+        assertTrue(queue.isEmpty());
+        // 取走后槽位交还给生产者
+        assertTrue(queue.enqueue(4));
+        assertEquals(Integer.valueOf(4), queue.poll());
+    }
+
+    @Test
+    public void pollWakesUpOnPublish() throws Exception {
+        MpscRingQueue<String> queue = new MpscRingQueue<>(16, FullPolicy.BLOCK);
+        assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+        Thread producer = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            queue.offer("x");
+        });
+        producer.start();
+        long start = System.nanoTime();
+        assertEquals("x", queue.poll(10, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        producer.join();
+    }
+
+    @Test
+    public void producersKeepTheirOrderWhenQueueIsFull() throws Exception {
+        for (FullPolicy policy : new FullPolicy[]{FullPolicy.BLOCK, FullPolicy.SPIN}) {
+            int producers = 4;
+            int perProducer = 200_000;
+            MpscRingQueue<long[]> queue = new MpscRingQueue<>(64, policy);
+            List<Thread> threads = new ArrayList<>();
+            for (int p = 0; p < producers; p++) {
+                int id = p;
+                threads.add(new Thread(() -> {
+                    try {
+                        for (int i = 0; i < perProducer; i++) {
+                            assertTrue(queue.enqueue(new long[]{id, i}));
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }));
+            }
+            threads.forEach(Thread::start);
+            long[] next = new long[producers];
+            List<long[]> batch = new ArrayList<>();
+            int received = 0;
+            while (received < producers * perProducer) {
+                long[] first = queue.poll(5, TimeUnit.SECONDS);
+                assertNotNull(first);
+                batch.add(first);
+                queue.drainTo(batch);
+                for (long[] element : batch) {
+                    assertEquals(next[(int) element[0]]++, element[1]);
+                }
+                received += batch.size();
+                batch.clear();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertTrue(queue.isEmpty());
+            assertEquals(0, queue.getDropped());
+        }
+    }
+
+    @Test
+    @Ignore("吞吐对比依赖机器负载，只在手动调优时运行")
+    public void compareWithBlockingQueues() throws Exception {
+        for (int producers : new int[]{1, 4, 16}) {
+            // 预热
+            runMpsc(producers);
+            runBlocking(new LinkedBlockingQueue<>(CAPACITY), producers);
+            double mpsc = runMpsc(producers);
+            double ring = runBlocking(new RingBlockingQueue<>(4096, CAPACITY), producers);
+            double linked = runBlocking(new LinkedBlockingQueue<>(CAPACITY), producers);
+            System.out.printf("%2d producers: MpscRingQueue %,12.0f ops/s, RingBlockingQueue %,12.0f ops/s, LinkedBlockingQueue %,12.0f ops/s%n",
+                    producers, mpsc, ring, linked);
+        }
+    }
+
+    private static double runMpsc(int producers) throws Exception {
+        MpscRingQueue<Object> queue = new MpscRingQueue<>(CAPACITY, FullPolicy.BLOCK);
+        Object element = new Object();
+        CountDownLatch ready = new CountDownLatch(1);
+        List<Thread> threads = startProducers(producers, ready, () -> queue.enqueue(element));
+        List<Object> batch = new ArrayList<>();
+        long start = System.nanoTime();
+        ready.countDown();
+        for (int received = 0; received < ITEMS; ) {
+            Object first = queue.poll(5, TimeUnit.SECONDS);
+            assertNotNull(first);
+            received += 1 + queue.drainTo(batch);
+            batch.clear();
+        }
+        long nanos = System.nanoTime() - start;
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return ITEMS * 1e9 / nanos;
+    }
+
+    private static double runBlocking(BlockingQueue<Object> queue, int producers) throws Exception {
+        Object element = new Object();
+        CountDownLatch ready = new CountDownLatch(1);
+        List<Thread> threads = startProducers(producers, ready, () -> {
+            queue.put(element);
+            return true;
+        });
+        List<Object> batch = new ArrayList<>();
+        long start = System.nanoTime();
+        ready.countDown();
+        for (int received = 0; received < ITEMS; ) {
+            Object first = queue.poll(5, TimeUnit.SECONDS);
+            assertNotNull(first);
+            received += 1 + queue.drainTo(batch);
+            batch.clear();
+        }
+        long nanos = System.nanoTime() - start;
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return ITEMS * 1e9 / nanos;
+    }
+
+    private static List<Thread> startProducers(int producers, CountDownLatch ready, Producer producer) {
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            int count = ITEMS / producers + (p < ITEMS % producers ? 1 : 0);
+            Thread thread = new Thread(() -> {
+                try {
+                    ready.await();
+                    for (int i = 0; i < count; i++) {
+                        producer.produce();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        return threads;
+    }
+
+    private interface Producer {
+        boolean produce() throws InterruptedException;
+    }
+}
@@ -0,0 +1,131 @@
+import com.wiqer.redis.CommandHandler;
+import com.wiqer.redis.MyRedisServer;
+import com.wiqer.redis.OutputBufferLimit;
+import com.wiqer.redis.OutputBufferLimit.ClientClass;
+import com.wiqer.redis.util.PropertiesUtil;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.*;
+
+/**
+ * 出站缓冲限制的配置解析，以及不读回复的慢客户端被断开、其他连接不受影响
+ */
+public class OutputBufferLimitTest {
+
+    @Test
+    public void parsesRedisFormat() {
+        Map<ClientClass, OutputBufferLimit> limits = OutputBufferLimit.parse("normal 1mb 512kb 10 slave 1gb 0 0");
+        assertEquals(1 << 20, limits.get(ClientClass.NORMAL).getHardBytes());
+        assertEquals(512 << 10, limits.get(ClientClass.NORMAL).getSoftBytes());
+        assertEquals(10, limits.get(ClientClass.NORMAL).getSoftSeconds());
+        assertEquals(1L << 30, limits.get(ClientClass.REPLICA).getHardBytes());
+        // 未配置的类别使用默认值
+        assertEquals(32 << 20, limits.get(ClientClass.PUBSUB).getHardBytes());
+        assertFalse(limits.get(ClientClass.REPLICA).isSoftReached(Long.MAX_VALUE));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsIncompleteGroup() {
+        OutputBufferLimit.parse("normal 1mb 0");
+    }
+
+    @Test
+    public void disconnectsSlowConsumer() throws IOException, InterruptedException {
+        System.setProperty("redis.client_output_buffer_limit", "normal 1mb 0 0");
+        try (MyRedisServer server = new MyRedisServer()) {
+            server.start();
+            try (Socket setup = connect()) {
+                StringBuilder rpush = new StringBuilder();
+                for (int i = 0; i < 1000; i++) {
+                    rpush.append(command("RPUSH", "biglist", "x".repeat(100)));
+                }
+                setup.getOutputStream().write(rpush.toString().getBytes(UTF_8));
+                assertTrue(readUntil(setup.getInputStream(), ":1000\r\n"));
+            }
+            try (Socket slow = connect(); Socket fast = connect()) {
+                fast.getOutputStream().write("PING\r\n".getBytes(UTF_8));
+                assertArrayEquals("+PONG\r\n".getBytes(UTF_8), fast.getInputStream().readNBytes(7));
+                int connections = CommandHandler.getActiveConnections();
+
+                // 每条回复约100kb，慢客户端一直不读，服务端积压超过1mb后断开
+                slow.getOutputStream().write(command("LRANGE", "biglist", "0", "-1").repeat(200).getBytes(UTF_8));
+                long deadline = System.currentTimeMillis() + 10_000;
+                while (CommandHandler.getActiveConnections() == connections && System.currentTimeMillis() < deadline) {
+                    fast.getOutputStream().write("PING\r\n".getBytes(UTF_8));
+                    assertArrayEquals("+PONG\r\n".getBytes(UTF_8), fast.getInputStream().readNBytes(7));
+                    Thread.sleep(10);
+                }
+                assertEquals(connections - 1, CommandHandler.getActiveConnections());
+                fast.getOutputStream().write("PING\r\n".getBytes(UTF_8));
+                assertArrayEquals("+PONG\r\n".getBytes(UTF_8), fast.getInputStream().readNBytes(7));
+            }
+        } finally {
+            System.clearProperty("redis.client_output_buffer_limit");
+        }
+    }
+
+    @Test
+    public void disconnectsAfterSoftLimitLasts() throws IOException, InterruptedException {
+        System.setProperty("redis.client_output_buffer_limit", "normal 0 512kb 1");
+        try (MyRedisServer server = new MyRedisServer()) {
+            server.start();
+            try (Socket setup = connect()) {
+                StringBuilder rpush = new StringBuilder();
+                for (int i = 0; i < 1000; i++) {
+                    rpush.append(command("RPUSH", "biglist", "x".repeat(100)));
+                }
+                setup.getOutputStream().write(rpush.toString().getBytes(UTF_8));
+                assertTrue(readUntil(setup.getInputStream(), ":1000\r\n"));
+            }
+            try (Socket slow = connect()) {
+                slow.getOutputStream().write("PING\r\n".getBytes(UTF_8));
+                assertArrayEquals("+PONG\r\n".getBytes(UTF_8), slow.getInputStream().readNBytes(7));
+                int connections = CommandHandler.getActiveConnections();
+                // 积压超过soft限制后慢客户端不再读，服务端也不再写出，只能靠定时复查断开
+                slow.getOutputStream().write(command("LRANGE", "biglist", "0", "-1").repeat(200).getBytes(UTF_8));
+                long deadline = System.currentTimeMillis() + 10_000;
+                while (CommandHandler.getActiveConnections() == connections && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(10);
+                }
+                assertEquals(connections - 1, CommandHandler.getActiveConnections());
+            }
+        } finally {
+            System.clearProperty("redis.client_output_buffer_limit");
+        }
+    }
+
+    private static boolean readUntil(InputStream in, String last) throws IOException {
+        StringBuilder tail = new StringBuilder();
+        int b;
+        while ((b = in.read()) >= 0) {
+            tail.append((char) b);
+            if (tail.length() > last.length()) {
+                tail.deleteCharAt(0);
+            }
+            if (tail.toString().equals(last)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Socket connect() throws IOException {
+        Socket socket = new Socket(PropertiesUtil.getNodeAddress(), PropertiesUtil.getNodePort());
+        socket.setSoTimeout(10_000);
+        return socket;
+    }
+
+    private static String command(String... args) {
+        StringBuilder builder = new StringBuilder().append('*').append(args.length).append("\r\n");
+        for (String arg : args) {
+            builder.append('$').append(arg.getBytes(UTF_8).length).append("\r\n").append(arg).append("\r\n");
+        }
+        return builder.toString();
+    }
+}
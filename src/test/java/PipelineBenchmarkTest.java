@@ -0,0 +1,179 @@
+import com.wiqer.redis.MyRedisServer;
+import com.wiqer.redis.util.PropertiesUtil;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.*;
+
+/**
+ * 按redis-benchmark的命令集和流水线方式驱动服务端，校验每条回复
+ */
+public class PipelineBenchmarkTest {
+
+    private static final int PIPELINE = 16;
+    private static final int REQUESTS = 2000;
+
+    private static MyRedisServer server;
+
+    @BeforeClass
+    public static void startServer() {
+        server = new MyRedisServer();
+        server.start();
+    }
+
+    @AfterClass
+    public static void stopServer() {
+        server.close();
+    }
+
+    @Test
+    public void benchmarkCommands() throws IOException {
+        try (Socket socket = connect()) {
+            OutputStream out = socket.getOutputStream();
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+
+            assertEquals("", ((List<?>) send(out, in, command("CONFIG", "GET", "save")).get(0)).get(1));
+            assertEquals(2, ((List<?>) send(out, in, command("CONFIG", "GET", "appendonly")).get(0)).size());
+
+            run(out, in, i -> "PING\r\n", "PONG");
+            run(out, in, i -> command("PING"), "PONG");
+            run(out, in, i -> command("SET", "key:" + i % 100, "xxx"), "OK");
+            run(out, in, i -> command("GET", "key:" + i % 100), "xxx");
+            run(out, in, i -> command("INCR", "counter:" + i % 100), null);
+            run(out, in, i -> command("LPUSH", "mylist", "xxx"), null);
+            run(out, in, i -> command("RPUSH", "mylist", "xxx"), null);
+            run(out, in, i -> command("LPOP", "mylist"), "xxx");
+            run(out, in, i -> command("RPOP", "mylist"), "xxx");
+            run(out, in, i -> command("SADD", "myset", "element:" + i), 1L);
+            run(out, in, i -> command("HSET", "myhash", "element:" + i, "xxx"), 1L);
+            run(out, in, i -> command("SPOP", "myset"), null);
+            run(out, in, i -> command("ZADD", "myzset", "0", "element:" + i), 1L);
+            run(out, in, i -> command("ZPOPMIN", "myzset"), null);
+            run(out, in, i -> command("XADD", "mystream", "*", "myfield", "xxx"), null);
+
+            String[] mset = new String[21];
+            mset[0] = "MSET";
+            for (int i = 0; i < 10; i++) {
+                mset[2 * i + 1] = "key:" + i;
+                mset[2 * i + 2] = "xxx";
+            }
+            run(out, in, i -> command(mset), "OK");
+
+            String[] lpush = new String[602];
+            lpush[0] = "LPUSH";
+            lpush[1] = "biglist";
+            for (int i = 2; i < lpush.length; i++) {
+                lpush[i] = "xxx";
+            }
+            send(out, in, command(lpush));
+            for (int range : new int[]{100, 300, 600}) {
+                List<Object> replies = send(out, in, command("LRANGE", "biglist", "0", String.valueOf(range - 1)));
+                assertEquals(range, ((List<?>) replies.get(0)).size());
+            }
+            assertEquals(600, ((List<?>) send(out, in, command("LRANGE", "biglist", "0", "-1")).get(0)).size());
+            assertEquals(10, ((List<?>) send(out, in, command("LRANGE", "biglist", "-10", "-1")).get(0)).size());
+        }
+    }
+
+    private static void run(OutputStream out, InputStream in, Request request, Object expected) throws IOException {
+        for (int sent = 0; sent < REQUESTS; sent += PIPELINE) {
+            StringBuilder batch = new StringBuilder();
+            for (int i = sent; i < sent + PIPELINE; i++) {
+                batch.append(request.build(i));
+            }
+            out.write(batch.toString().getBytes(UTF_8));
+            out.flush();
+            for (int i = 0; i < PIPELINE; i++) {
+                Object reply = read(in);
+                assertFalse(String.valueOf(reply), reply instanceof Error);
+                if (expected != null) {
+                    assertEquals(expected, reply);
+                }
+            }
+        }
+    }
+
+    private static List<Object> send(OutputStream out, InputStream in, String command) throws IOException {
+        out.write(command.getBytes(UTF_8));
+        out.flush();
+        List<Object> replies = new ArrayList<>();
+        replies.add(read(in));
+        return replies;
+    }
+
+    private static Socket connect() throws IOException {
+        Socket socket = new Socket(PropertiesUtil.getNodeAddress(), PropertiesUtil.getNodePort());
+        socket.setSoTimeout(10_000);
+        return socket;
+    }
+
+    private static String command(String... args) {
+        StringBuilder builder = new StringBuilder().append('*').append(args.length).append("\r\n");
+        for (String arg : args) {
+            builder.append('$').append(arg.getBytes(UTF_8).length).append("\r\n").append(arg).append("\r\n");
+        }
+        return builder.toString();
+    }
+
+    private static Object read(InputStream in) throws IOException {
+        int type = in.read();
+        String line = readLine(in);
+        switch (type) {
+            case '+':
+                return line;
+            case '-':
+                return new Error(line);
+            case ':':
+                return Long.parseLong(line);
+            case '$': {
+                int length = Integer.parseInt(line);
+                if (length < 0) {
+                    return null;
+                }
+                byte[] content = in.readNBytes(length + 2);
+                return new String(content, 0, length, UTF_8);
+            }
+            case '*': {
+                int size = Integer.parseInt(line);
+                if (size < 0) {
+                    return null;
+                }
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(read(in));
+                }
+                return list;
+            }
+            default:
+                throw new IOException("unexpected reply type " + type);
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != '\r') {
+            if (b < 0) {
+                throw new IOException("connection closed");
+            }
+            line.write(b);
+        }
+        in.read();
+        return line.toString(UTF_8);
+    }
+
+    private interface Request {
+        String build(int i);
+    }
+}
@@ -0,0 +1,56 @@
+import com.wiqer.redis.MyRedisServer;
+import com.wiqer.redis.trace.RequestTrace;
+import com.wiqer.redis.trace.Tracer;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.*;
+
+/**
+ * 采样的请求跨越分片线程后各阶段时间戳依次递增，按采样率只记录部分请求
+ */
+public class RequestTraceTest {
+
+    @Test
+    public void tracesSampledRequestsAcrossShards() throws IOException, InterruptedException {
+        System.setProperty("redis.trace_sample_rate", "2");
+        System.setProperty("redis.shard_count", "4");
+        List<RequestTrace> traces = new CopyOnWriteArrayList<>();
+        Tracer.setReporter(traces::add);
+        try (MyRedisServer server = new MyRedisServer()) {
+            server.start();
+            try (Socket socket = new Socket("127.0.0.1", 6379)) {
+                // 第2、4、6条被采样：SET（分片）、PING（IO线程）、MGET（拆分到多个分片后合并）
+                String pipeline = "SET a 1\r\nSET b 2\r\nGET a\r\nPING\r\nSET c 3\r\nMGET a b c\r\n";
+                socket.getOutputStream().write(pipeline.getBytes(UTF_8));
+                String expected = "+OK\r\n+OK\r\n$1\r\n1\r\n+PONG\r\n+OK\r\n*3\r\n$1\r\n1\r\n$1\r\n2\r\n$1\r\n3\r\n";
+                assertArrayEquals(expected.getBytes(UTF_8), socket.getInputStream().readNBytes(expected.length()));
+            }
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (traces.size() < 3 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+        } finally {
+            Tracer.setReporter(null);
+            System.clearProperty("redis.trace_sample_rate");
+            System.clearProperty("redis.shard_count");
+        }
+        assertEquals(List.of("set", "ping", "mget"), traces.stream().map(RequestTrace::getCommand).toList());
+        for (RequestTrace trace : traces) {
+            assertTrue(trace.getDecodeStart() <= trace.getDecoded());
+            assertTrue(trace.getDecoded() <= trace.getQueued());
+            assertTrue(trace.getQueued() <= trace.getExecuteStart());
+            assertTrue(trace.getExecuteStart() <= trace.getExecuteEnd());
+            assertTrue(trace.getExecuteEnd() <= trace.getWritten());
+            assertTrue(trace.getWritten() <= trace.getFlushed());
+            assertTrue(trace.executeNanos() >= 0);
+            assertTrue(trace.replyNanos() >= 0);
+        }
+    }
+}
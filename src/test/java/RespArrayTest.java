@@ -0,0 +1,114 @@
+import com.wiqer.redis.ResponseEncoder;
+import com.wiqer.redis.datatype.BytesWrapper;
+import com.wiqer.redis.resp.BulkString;
+import com.wiqer.redis.resp.Resp;
+import com.wiqer.redis.resp.RespArray;
+import com.wiqer.redis.resp.RespAttribute;
+import com.wiqer.redis.resp.RespBigNumber;
+import com.wiqer.redis.resp.RespDouble;
+import com.wiqer.redis.resp.RespInt;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RespArrayTest {
+
+    @Test
+    public void nestedArray() {
+        Map<BytesWrapper, BytesWrapper> map = new LinkedHashMap<>();
+        map.put(bytes("f"), bytes("v"));
+        RespArray reply = RespArray.of(BulkString.ZERO, RespArray.ofBulkEntries(map), RespArray.EMPTY);
+        assertEquals("*3\r\n$1\r\n0\r\n*2\r\n$1\r\nf\r\n$1\r\nv\r\n*0\r\n", encode(reply));
+    }
+
+    @Test
+    public void nilElements() {
+        RespArray reply = RespArray.of(Arrays.asList("a", null), value -> value == null ? null : bytes(value));
+        assertEquals("*2\r\n$1\r\na\r\n$-1\r\n", encode(reply));
+    }
+
+    @Test
+    public void pairs() {
+        RespArray reply = RespArray.ofPairs(Arrays.asList(1, 2), RespInt::valueOf, value -> bytes(value.toString()));
+        assertEquals("*4\r\n:1\r\n$1\r\n1\r\n:2\r\n$1\r\n2\r\n", encode(reply));
+        assertEquals("*-1\r\n", encode(RespArray.NULL));
+    }
+
+    @Test
+    public void resp3Types() {
+        Map<BytesWrapper, BytesWrapper> map = new LinkedHashMap<>();
+        map.put(bytes("f"), bytes("v"));
+        RespArray reply = RespArray.of(RespArray.ofBulkEntries(map).asMap(), new RespDouble(1.5),
+                new RespBigNumber(BigInteger.TEN.pow(20)), RespArray.of(BulkString.NullBulkString).asSet());
+        assertEquals("*4\r\n%1\r\n$1\r\nf\r\n$1\r\nv\r\n,1.5\r\n(100000000000000000000\r\n~1\r\n_\r\n",
+                encode(reply, true));
+        assertEquals("*4\r\n*2\r\n$1\r\nf\r\n$1\r\nv\r\n$3\r\n1.5\r\n$21\r\n100000000000000000000\r\n*1\r\n$-1\r\n",
+                encode(reply, false));
+    }
+
+    @Test
+    public void attributeDroppedInResp2() {
+        RespAttribute reply = new RespAttribute(RespArray.of(BulkString.ONE, new RespDouble(2)), RespInt.ONE);
+        assertEquals("|1\r\n$1\r\n1\r\n,2\r\n:1\r\n", encode(reply, true));
+        assertEquals(":1\r\n", encode(reply, false));
+    }
+
+    @Test
+    public void smallArrayReplyDoesNotReserveChunk() {
+        List<Object> out = new ArrayList<>();
+        ResponseEncoder.encode(UnpooledByteBufAllocator.DEFAULT, RespArray.ofBulk(List.of(bytes("f"), bytes("v"))), false, out);
+        assertEquals(1, out.size());
+        ByteBuf buffer = (ByteBuf) out.get(0);
+        assertTrue("capacity " + buffer.capacity(), buffer.capacity() <= 64);
+        assertEquals("*2\r\n$1\r\nf\r\n$1\r\nv\r\n", buffer.toString(UTF_8));
+        buffer.release();
+    }
+
+    @Test
+    public void largeArrayReplySplitsIntoChunks() {
+        List<BytesWrapper> elements = new ArrayList<>();
+        StringBuilder expected = new StringBuilder("*20000\r\n");
+        for (int i = 0; i < 20000; i++) {
+            String value = "value:" + i;
+            elements.add(bytes(value));
+            expected.append('$').append(value.length()).append("\r\n").append(value).append("\r\n");
+        }
+        List<Object> out = new ArrayList<>();
+        ResponseEncoder.encode(UnpooledByteBufAllocator.DEFAULT, RespArray.ofBulk(elements), false, out);
+        assertTrue("chunks " + out.size(), out.size() > 1);
+        StringBuilder actual = new StringBuilder();
+        for (Object chunk : out) {
+            ByteBuf buffer = (ByteBuf) chunk;
+            assertTrue("chunk " + buffer.readableBytes(), buffer.readableBytes() < 128 * 1024);
+            actual.append(buffer.toString(UTF_8));
+            buffer.release();
+        }
+        assertEquals(expected.toString(), actual.toString());
+    }
+
+    private static BytesWrapper bytes(String value) {
+        return new BytesWrapper(value.getBytes(UTF_8));
+    }
+
+    private static String encode(Resp resp) {
+        return encode(resp, false);
+    }
+
+    private static String encode(Resp resp, boolean resp3) {
+        ByteBuf buffer = Unpooled.buffer();
+        Resp.write(resp, buffer, resp3);
+        return buffer.toString(UTF_8);
+    }
+}
@@ -0,0 +1,97 @@
+import com.wiqer.redis.datatype.BytesWrapper;
+import com.wiqer.redis.resp.BulkString;
+import com.wiqer.redis.resp.Resp;
+import com.wiqer.redis.resp.RespDecoder;
+import com.wiqer.redis.resp.RespRequest;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.Test;
+
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.*;
+
+public class RespDecoderTest {
+
+    @Test
+    public void decodeWholeFrame() {
+        RespDecoder decoder = new RespDecoder();
+        ByteBuf in = Unpooled.copiedBuffer("*3\r\n$3\r\nset\r\n$3\r\nkey\r\n$5\r\nvalue\r\n", UTF_8);
+        RespRequest request = decoder.decode(in);
+        assertNotNull(request);
+        List<Resp> args = request.getArgs();
+        assertEquals(3, args.size());
+        assertEquals("set", content(args.get(0)));
+        assertEquals("key", content(args.get(1)));
+        assertEquals("value", content(args.get(2)));
+        assertFalse(in.isReadable());
+        assertEquals(2, in.refCnt());
+        request.release();
+        assertEquals(1, in.refCnt());
+    }
+
+    @Test
+    public void resumeByteByByte() {
+        RespDecoder decoder = new RespDecoder();
+        byte[] frame = "*2\r\n$4\r\nping\r\n$11\r\nhello world\r\n".getBytes(UTF_8);
+        ByteBuf in = Unpooled.buffer();
+        RespRequest request = null;
+        for (int i = 0; i < frame.length; i++) {
+            in.writeByte(frame[i]);
+            request = decoder.decode(in);
+            if (i < frame.length - 1) {
+                assertNull(request);
+                assertEquals(0, in.readerIndex());
+            }
+        }
+        assertNotNull(request);
+        assertEquals("hello world", content(request.getArgs().get(1)));
+    }
+
+    @Test
+    public void pipelinedFrames() {
+        RespDecoder decoder = new RespDecoder();
+        ByteBuf in = Unpooled.copiedBuffer("*1\r\n$4\r\nping\r\n*0\r\n*2\r\n$3\r\nget\r\n$1\r\na\r\n*1\r\n$4\r", UTF_8);
+        assertEquals("ping", content(decoder.decode(in).getArgs().get(0)));
+        assertEquals("get", content(decoder.decode(in).getArgs().get(0)));
+        assertNull(decoder.decode(in));
+        in.writeBytes("\nquit\r\n".getBytes(UTF_8));
+        assertEquals("quit", content(decoder.decode(in).getArgs().get(0)));
+    }
+
+    @Test
+    public void borrowedArgumentMatchesStoredKey() {
+        ByteBuf in = Unpooled.copiedBuffer("*2\r\n$3\r\nget\r\n$3\r\nkey\r\n", UTF_8);
+        BytesWrapper borrowed = ((BulkString) new RespDecoder().decode(in).getArgs().get(1)).getContent();
+        BytesWrapper stored = new BytesWrapper("key".getBytes(UTF_8));
+        assertEquals(stored, borrowed);
+        assertEquals(borrowed, stored);
+        assertEquals(stored.hashCode(), borrowed.hashCode());
+        assertEquals(0, stored.compareTo(borrowed));
+        assertEquals(stored, borrowed.persist());
+    }
+
+    @Test
+    public void inlineCommands() {
+        RespDecoder decoder = new RespDecoder();
+        ByteBuf in = Unpooled.copiedBuffer("PING\r\n\r\nset  k \"hello world\"\nget k", UTF_8);
+        assertEquals("PING", content(decoder.decode(in).getArgs().get(0)));
+        List<Resp> args = decoder.decode(in).getArgs();
+        assertEquals(3, args.size());
+        assertEquals("k", content(args.get(1)));
+        assertEquals("hello world", content(args.get(2)));
+        assertNull(decoder.decode(in));
+        in.writeBytes("\r\n".getBytes(UTF_8));
+        assertEquals("get", content(decoder.decode(in).getArgs().get(0)));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectNonBulkArgument() {
+        new RespDecoder().decode(Unpooled.copiedBuffer("*1\r\n:1\r\n", UTF_8));
+    }
+
+    private static String content(Resp resp) {
+        return ((BulkString) resp).getContent().toUtf8String();
+    }
+}
@@ -0,0 +1,93 @@
+import com.wiqer.redis.command.CommonCommandType;
+import com.wiqer.redis.datatype.BytesWrapper;
+import com.wiqer.redis.resp.BulkString;
+import com.wiqer.redis.resp.Resp;
+import com.wiqer.redis.resp.RespArray;
+import com.wiqer.redis.resp.RespInt;
+import com.wiqer.redis.shard.ShardGroup;
+import com.wiqer.redis.shard.ShardPart;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.*;
+
+public class ShardGroupTest {
+
+    private static ShardGroup shardGroup;
+
+    @BeforeClass
+    public static void createShards() {
+        shardGroup = new ShardGroup(4);
+    }
+
+    @AfterClass
+    public static void shutdownShards() {
+        shardGroup.getExecutorGroup().shutdownGracefully();
+    }
+
+    @Test
+    public void singleKeyRoutesToOwner() {
+        List<Resp> args = args("get", "key:1");
+        List<ShardPart> parts = shardGroup.split(CommonCommandType.get, args);
+        assertEquals(1, parts.size());
+        assertSame(args, parts.get(0).getArgs());
+        assertSame(shardGroup.shardOf(bytes("key:1")), parts.get(0).getShard());
+    }
+
+    @Test
+    public void mgetSplitsAndMergesInOrder() {
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 32; i++) {
+            keys.add("key:" + i);
+        }
+        List<String> command = new ArrayList<>(keys);
+        command.add(0, "mget");
+        List<ShardPart> parts = shardGroup.split(CommonCommandType.mget, args(command.toArray(new String[0])));
+        assertTrue(parts.size() > 1);
+
+        List<Resp> replies = new ArrayList<>();
+        for (ShardPart part : parts) {
+            assertEquals(part.getKeyIndexes().length + 1, part.getArgs().size());
+            List<BytesWrapper> values = new ArrayList<>();
+            for (int i = 1; i < part.getArgs().size(); i++) {
+                BytesWrapper key = ((BulkString) part.getArgs().get(i)).getContent();
+                assertSame(part.getShard(), shardGroup.shardOf(key));
+                values.add(key);
+            }
+            replies.add(RespArray.ofBulk(values));
+        }
+        RespArray merged = (RespArray) CommonCommandType.mget.getMerge().merge(parts, replies);
+        List<String> mergedKeys = new ArrayList<>();
+        merged.getElements().forEach(element -> mergedKeys.add(((BytesWrapper) element).toUtf8String()));
+        assertEquals(keys, mergedKeys);
+    }
+
+    @Test
+    public void delSumsReplies() {
+        List<ShardPart> parts = shardGroup.split(CommonCommandType.del, args("del", "a", "b", "c", "d", "e", "f"));
+        List<Resp> replies = new ArrayList<>();
+        for (ShardPart part : parts) {
+            replies.add(RespInt.valueOf(part.getKeyIndexes().length));
+        }
+        assertEquals(6, ((RespInt) CommonCommandType.del.getMerge().merge(parts, replies)).getValue());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void msetRejectsUnpairedKeyBeforeSplitting() {
+        shardGroup.split(CommonCommandType.mset, args("mset", "k1", "a", "k2", "b", "k3", "c", "k4"));
+    }
+
+    private static List<Resp> args(String... values) {
+        return new ArrayList<>(Arrays.stream(values).map(value -> (Resp) new BulkString(bytes(value))).toList());
+    }
+
+    private static BytesWrapper bytes(String value) {
+        return new BytesWrapper(value.getBytes(UTF_8));
+    }
+}
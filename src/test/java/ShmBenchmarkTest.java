@@ -0,0 +1,139 @@
+import com.wiqer.redis.MyRedisServer;
+import com.wiqer.redis.netty.channel.shm.ShmClient;
+import com.wiqer.redis.util.PropertiesUtil;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.kqueue.KQueue;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 比较TCP回环、unix domain socket与共享内存上的往返延迟和管道化吞吐
+ */
+public class ShmBenchmarkTest {
+
+    private static final int ROUND_TRIPS = 5_000;
+    private static final int PIPELINE = 16;
+    private static final int PIPELINED_REQUESTS = 50_000;
+    private static final byte[] SET = "*3\r\n$3\r\nSET\r\n$3\r\nkey\r\n$3\r\nxxx\r\n".getBytes(UTF_8);
+    private static final byte[] OK = "+OK\r\n".getBytes(UTF_8);
+
+    @Test
+    public void compareTransports() throws IOException {
+        Path directory = Files.createTempDirectory("ef-redis");
+        Path socket = directory.resolve("redis.sock");
+        boolean unixSupported = Epoll.isAvailable() || KQueue.isAvailable();
+        System.setProperty("redis.shm_dir", directory.resolve("shm").toString());
+        if (unixSupported) {
+            System.setProperty("redis.unixsocket", socket.toString());
+        }
+        try (MyRedisServer server = new MyRedisServer()) {
+            server.start();
+            try (ShmClient client = ShmClient.connect(directory.resolve("shm"))) {
+                assertEquals("OK", client.call("SET", "shm", "value"));
+                assertEquals("value", client.call("GET", "shm"));
+                assertEquals(List.of("value", "value"), client.call("MGET", "shm", "shm"));
+                report("shm", new ShmTransport(client));
+            }
+            try (SocketChannel tcp = SocketChannel.open(new InetSocketAddress(
+                    PropertiesUtil.getNodeAddress(), PropertiesUtil.getNodePort()))) {
+                tcp.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                report("tcp", new SocketTransport(tcp));
+            }
+            if (unixSupported) {
+                try (SocketChannel unix = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+                    unix.connect(UnixDomainSocketAddress.of(socket));
+                    report("unix", new SocketTransport(unix));
+                }
+            }
+        } finally {
+            System.clearProperty("redis.shm_dir");
+            System.clearProperty("redis.unixsocket");
+        }
+    }
+
+    private static void report(String name, Transport transport) throws IOException {
+        byte[] pipelined = new byte[SET.length * PIPELINE];
+        for (int i = 0; i < PIPELINE; i++) {
+            System.arraycopy(SET, 0, pipelined, i * SET.length, SET.length);
+        }
+        // 预热
+        for (int i = 0; i < ROUND_TRIPS / 10; i++) {
+            transport.roundTrip(SET, 1);
+        }
+        long[] latencies = new long[ROUND_TRIPS];
+        for (int i = 0; i < ROUND_TRIPS; i++) {
+            long start = System.nanoTime();
+            transport.roundTrip(SET, 1);
+            latencies[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(latencies);
+        long start = System.nanoTime();
+        for (int sent = 0; sent < PIPELINED_REQUESTS; sent += PIPELINE) {
+            transport.roundTrip(pipelined, PIPELINE);
+        }
+        double throughput = PIPELINED_REQUESTS * 1e9 / (System.nanoTime() - start);
+        System.out.printf("%-5s p50 %6.1f us  p99 %6.1f us  pipelined %10.0f req/s%n", name,
+                latencies[latencies.length / 2] / 1e3, latencies[latencies.length * 99 / 100] / 1e3, throughput);
+    }
+
+    private interface Transport {
+        /**
+         * 发送请求并读完replies条+OK回复
+         */
+        void roundTrip(byte[] request, int replies) throws IOException;
+    }
+
+    private static class ShmTransport implements Transport {
+        private final ShmClient client;
+
+        ShmTransport(ShmClient client) {
+            this.client = client;
+        }
+
+        @Override
+        public void roundTrip(byte[] request, int replies) throws IOException {
+            client.send(request);
+            for (int i = 0; i < replies; i++) {
+                assertEquals("OK", client.readReply());
+            }
+        }
+    }
+
+    private static class SocketTransport implements Transport {
+        private final SocketChannel channel;
+        private final ByteBuffer reply = ByteBuffer.allocate(OK.length * PIPELINE);
+
+        SocketTransport(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public void roundTrip(byte[] request, int replies) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(request);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            reply.clear().limit(OK.length * replies);
+            while (reply.hasRemaining()) {
+                if (channel.read(reply) < 0) {
+                    throw new IOException("connection closed");
+                }
+            }
+            assertEquals("+OK\r\n".repeat(replies), new String(reply.array(), 0, reply.limit(), UTF_8));
+        }
+    }
+}
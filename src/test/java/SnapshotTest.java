@@ -0,0 +1,190 @@
+import com.wiqer.redis.MyRedisServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.*;
+
+/**
+ * BGSAVE在写入继续进行时保存切点时刻的数据，重启后加载
+ */
+public class SnapshotTest {
+
+    private static final int KEYS = 200_000;
+    private static final int PIPELINE = 100;
+
+    private Path directory;
+    private Path dump;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("snapshot");
+        dump = directory.resolve("dump.rdb");
+        System.setProperty("redis.snapshot_file", dump.toString());
+        System.setProperty("redis.shard_count", "4");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        System.clearProperty("redis.snapshot_file");
+        System.clearProperty("redis.shard_count");
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Test
+    public void savesPointInTimeWhileWritesContinue() throws Exception {
+        try (MyRedisServer server = new MyRedisServer()) {
+            server.start();
+            try (Socket socket = connect()) {
+                OutputStream out = socket.getOutputStream();
+                InputStream in = new BufferedInputStream(socket.getInputStream());
+                for (int i = 0; i < KEYS; i += PIPELINE) {
+                    StringBuilder pipeline = new StringBuilder();
+                    for (int j = i; j < i + PIPELINE; j++) {
+                        pipeline.append(command("SET", "key:" + j, "value:" + j));
+                    }
+                    out.write(pipeline.toString().getBytes(UTF_8));
+                    for (int j = 0; j < PIPELINE; j++) {
+                        readLine(in);
+                    }
+                }
+                assertEquals(":3", send(out, in, command("RPUSH", "list", "a", "b", "c")));
+                assertEquals(":2", send(out, in, command("SADD", "set", "m1", "m2")));
+                assertEquals(":2", send(out, in, command("HSET", "hash", "f1", "v1", "f2", "v2")));
+                assertEquals(":3", send(out, in, command("ZADD", "zset", "-5", "low", "0", "mid", "7", "high")));
+                send(out, in, command("XADD", "stream", "5-1", "f", "v"));
+                readLine(in);
+                send(out, in, command("XADD", "stream", "6-1", "f", "w"));
+                readLine(in);
+                assertEquals("+OK", send(out, in, command("SET", "session", "s")));
+                assertEquals(":1", send(out, in, command("EXPIRE", "session", "1000")));
+
+                assertEquals("+Background saving started", send(out, in, command("BGSAVE")));
+                // 切点之后的修改，分片仍在编码切点时的数据
+                for (int i = 0; i < KEYS; i += 1000) {
+                    assertEquals("+OK", send(out, in, command("SET", "key:" + i, "changed")));
+                    assertEquals(":1", send(out, in, command("DEL", "key:" + (i + 1))));
+                }
+                assertEquals(":4", send(out, in, command("RPUSH", "list", "late")));
+                assertEquals(":1", send(out, in, command("HDEL", "hash", "f1")));
+                assertEquals("+OK", send(out, in, command("SET", "created", "late")));
+                awaitSaved();
+            }
+        }
+        long start = System.nanoTime();
+        try (MyRedisServer server = new MyRedisServer()) {
+            server.start();
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            System.out.printf("snapshot %d KB, start with %,d keys in %d ms%n", Files.size(dump) >> 10, KEYS + 6, millis);
+            try (Socket socket = connect()) {
+                OutputStream out = socket.getOutputStream();
+                InputStream in = new BufferedInputStream(socket.getInputStream());
+                for (int i = 0; i < KEYS; i += 1000) {
+                    assertEquals("$" + ("value:" + i).length(), send(out, in, command("GET", "key:" + i)));
+                    assertEquals("value:" + i, readLine(in));
+                    assertEquals(":1", send(out, in, command("EXISTS", "key:" + (i + 1))));
+                }
+                assertEquals("$12", send(out, in, command("GET", "key:123457")));
+                assertEquals("value:123457", readLine(in));
+                assertEquals(":0", send(out, in, command("EXISTS", "created")));
+                assertEquals(":4", send(out, in, command("RPUSH", "list", "d")));
+                assertEquals(":0", send(out, in, command("SADD", "set", "m1")));
+                assertEquals(":0", send(out, in, command("HSET", "hash", "f1", "v1")));
+                assertEquals("*1", send(out, in, command("ZREVRANGE", "zset", "0", "0")));
+                assertEquals("$4", readLine(in));
+                assertEquals("high", readLine(in));
+                assertEquals("*1", send(out, in, command("ZREVRANGE", "zset", "2", "2")));
+                assertEquals("$3", readLine(in));
+                assertEquals("low", readLine(in));
+                assertEquals(":2", send(out, in, command("XLEN", "stream")));
+                assertTrue(send(out, in, command("XADD", "stream", "6-1", "f", "v")).startsWith("-ERR"));
+                long ttl = Long.parseLong(send(out, in, command("TTL", "session")).substring(1));
+                assertTrue("ttl " + ttl, ttl > 900 && ttl <= 1000);
+            }
+        }
+    }
+
+    @Test
+    public void refusesToStartFromCorruptSnapshot() throws Exception {
+        try (MyRedisServer server = new MyRedisServer()) {
+            server.start();
+            try (Socket socket = connect()) {
+                OutputStream out = socket.getOutputStream();
+                InputStream in = new BufferedInputStream(socket.getInputStream());
+                for (int i = 0; i < 1000; i++) {
+                    assertEquals("+OK", send(out, in, command("SET", "key:" + i, "value:" + i)));
+                }
+                assertEquals("+Background saving started", send(out, in, command("BGSAVE")));
+                awaitSaved();
+            }
+        }
+        byte[] bytes = Files.readAllBytes(dump);
+        bytes[bytes.length / 2] ^= 0xff;
+        Files.write(dump, bytes);
+        MyRedisServer server = new MyRedisServer();
+        try {
+            server.start();
+            fail("损坏的快照不应被加载");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("加载快照失败"));
+        } finally {
+            server.getShardGroup().getExecutorGroup().shutdownGracefully();
+        }
+    }
+
+    private void awaitSaved() throws InterruptedException {
+        for (int i = 0; i < 1000; i++) {
+            if (Files.exists(dump)) {
+                return;
+            }
+            Thread.sleep(20);
+        }
+        fail("快照没有保存完成");
+    }
+
+    private static Socket connect() throws IOException {
+        return new Socket("127.0.0.1", 6379);
+    }
+
+    private static String send(OutputStream out, InputStream in, String command) throws IOException {
+        out.write(command.getBytes(UTF_8));
+        return readLine(in);
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) {
+                throw new IOException("连接已关闭");
+            }
+            if (b != '\r') {
+                line.append((char) b);
+            }
+        }
+        return line.toString();
+    }
+
+    private static String command(String... args) {
+        StringBuilder builder = new StringBuilder("*").append(args.length).append("\r\n");
+        for (String arg : args) {
+            builder.append('$').append(arg.length()).append("\r\n").append(arg).append("\r\n");
+        }
+        return builder.toString();
+    }
+}
@@ -1,11 +1,14 @@
 import com.wiqer.redis.util.Format;
 import com.wiqer.redis.util.StringUtil;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import org.junit.Test;
 
 import java.nio.charset.StandardCharsets;
 import java.util.regex.Pattern;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
 
 public class StringTest {
     @Test
@@ -52,6 +55,18 @@ public class StringTest {
         System.out.println(new String(Format.toByteArray(value), UTF_8));
     }
 
+    @Test
+    public void writeLong() {
+        long[] values = {0, 7, 10, 99, 100, -1, -99, 123456789, Integer.MAX_VALUE, Long.MAX_VALUE, Long.MIN_VALUE};
+        ByteBuf buffer = Unpooled.buffer();
+        for (long value : values) {
+            buffer.clear();
+            Format.writeLong(buffer, value);
+            assertEquals(String.valueOf(value), buffer.toString(UTF_8));
+            assertEquals(buffer.readableBytes(), Format.decimalLength(value));
+        }
+    }
+
     public long parseInt(byte[] content, int radix)
             throws NumberFormatException {
         /*
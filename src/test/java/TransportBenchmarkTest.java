@@ -0,0 +1,84 @@
+import com.sun.management.OperatingSystemMXBean;
+import com.wiqer.redis.MyRedisServer;
+import com.wiqer.redis.netty.channel.LocalChannelOption;
+import com.wiqer.redis.netty.channel.epoll.EpollChannelOption;
+import com.wiqer.redis.netty.channel.kqueue.KqueueChannelOption;
+import com.wiqer.redis.netty.channel.select.NioSelectChannelOption;
+import com.wiqer.redis.netty.channel.uring.IoUringChannelOption;
+import com.wiqer.redis.util.PropertiesUtil;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.kqueue.KQueue;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.Socket;
+import java.util.function.Supplier;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 在当前平台可用的传输上分别跑同样的管道化SET负载，输出每秒请求数与每请求CPU时间（含客户端线程）
+ */
+public class TransportBenchmarkTest {
+
+    private static final int PIPELINE = 16;
+    private static final int REQUESTS = 50_000;
+
+    @Test
+    public void compareTransports() throws IOException {
+        if (IoUringChannelOption.isAvailable()) {
+            benchmark("io_uring", IoUringChannelOption::new);
+        }
+        if (Epoll.isAvailable()) {
+            benchmark("epoll", EpollChannelOption::new);
+        }
+        if (KQueue.isAvailable()) {
+            benchmark("kqueue", KqueueChannelOption::new);
+        }
+        benchmark("nio", NioSelectChannelOption::new);
+    }
+
+    private static void benchmark(String name, Supplier<LocalChannelOption> option) throws IOException {
+        OperatingSystemMXBean os = (OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        try (MyRedisServer server = new MyRedisServer(option.get())) {
+            server.start();
+            try (Socket socket = new Socket(PropertiesUtil.getNodeAddress(), PropertiesUtil.getNodePort())) {
+                socket.setSoTimeout(10_000);
+                OutputStream out = socket.getOutputStream();
+                InputStream in = new BufferedInputStream(socket.getInputStream());
+                byte[] batch = "*3\r\n$3\r\nSET\r\n$3\r\nkey\r\n$3\r\nxxx\r\n".repeat(PIPELINE).getBytes(UTF_8);
+                // 预热
+                run(out, in, batch, REQUESTS / 10);
+                long cpu = os.getProcessCpuTime();
+                long start = System.nanoTime();
+                run(out, in, batch, REQUESTS);
+                long elapsed = System.nanoTime() - start;
+                cpu = os.getProcessCpuTime() - cpu;
+                System.out.printf("%-8s %10.0f req/s %8.2f us cpu/req%n",
+                        name, REQUESTS * 1e9 / elapsed, cpu / 1e3 / REQUESTS);
+            }
+        }
+    }
+
+    private static void run(OutputStream out, InputStream in, byte[] batch, int requests) throws IOException {
+        byte[] reply = new byte[5 * PIPELINE];
+        for (int sent = 0; sent < requests; sent += PIPELINE) {
+            out.write(batch);
+            out.flush();
+            int read = 0;
+            while (read < reply.length) {
+                int n = in.read(reply, read, reply.length - read);
+                if (n < 0) {
+                    throw new IOException("connection closed");
+                }
+                read += n;
+            }
+            assertEquals("+OK\r\n".repeat(PIPELINE), new String(reply, UTF_8));
+        }
+    }
+}
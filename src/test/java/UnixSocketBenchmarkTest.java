@@ -0,0 +1,88 @@
+import com.wiqer.redis.MyRedisServer;
+import com.wiqer.redis.util.PropertiesUtil;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.kqueue.KQueue;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 比较TCP回环与unix domain socket上逐条PING的往返延迟
+ */
+public class UnixSocketBenchmarkTest {
+
+    private static final int ROUND_TRIPS = 20_000;
+    private static final byte[] PING = "*1\r\n$4\r\nPING\r\n".getBytes(UTF_8);
+    private static final byte[] PONG = "+PONG\r\n".getBytes(UTF_8);
+
+    @Test
+    public void compareLatency() throws IOException {
+        if (!Epoll.isAvailable() && !KQueue.isAvailable()) {
+            System.out.println("当前平台不支持unix domain socket，跳过");
+            return;
+        }
+        Path path = Files.createTempDirectory("ef-redis").resolve("redis.sock");
+        System.setProperty("redis.unixsocket", path.toString());
+        try (MyRedisServer server = new MyRedisServer()) {
+            server.start();
+            try (SocketChannel tcp = SocketChannel.open(new InetSocketAddress(
+                    PropertiesUtil.getNodeAddress(), PropertiesUtil.getNodePort()))) {
+                tcp.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                report("tcp", tcp);
+            }
+            try (SocketChannel unix = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+                unix.connect(UnixDomainSocketAddress.of(path));
+                report("unix", unix);
+            }
+        } finally {
+            System.clearProperty("redis.unixsocket");
+        }
+    }
+
+    private static void report(String name, SocketChannel channel) throws IOException {
+        SocketAddress remote = channel.getRemoteAddress();
+        // 预热
+        roundTrips(channel, ROUND_TRIPS / 10);
+        long[] latencies = roundTrips(channel, ROUND_TRIPS);
+        Arrays.sort(latencies);
+        System.out.printf("%-5s %-40s avg %6.1f us  p50 %6.1f us  p99 %6.1f us%n", name, remote,
+                Arrays.stream(latencies).average().orElse(0) / 1e3,
+                latencies[latencies.length / 2] / 1e3,
+                latencies[latencies.length * 99 / 100] / 1e3);
+    }
+
+    private static long[] roundTrips(SocketChannel channel, int count) throws IOException {
+        long[] latencies = new long[count];
+        ByteBuffer request = ByteBuffer.wrap(PING);
+        ByteBuffer reply = ByteBuffer.allocate(PONG.length);
+        for (int i = 0; i < count; i++) {
+            long start = System.nanoTime();
+            request.clear();
+            while (request.hasRemaining()) {
+                channel.write(request);
+            }
+            reply.clear();
+            while (reply.hasRemaining()) {
+                if (channel.read(reply) < 0) {
+                    throw new IOException("connection closed");
+                }
+            }
+            latencies[i] = System.nanoTime() - start;
+            assertEquals(new String(PONG, UTF_8), new String(reply.array(), UTF_8));
+        }
+        return latencies;
+    }
+}